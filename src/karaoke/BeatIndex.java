@@ -0,0 +1,413 @@
+package karaoke;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * An index of the notes a voice plays by the beat they are played on, for finding what sounds and
+ * what is sung at any beat without walking the voice's Music tree.
+ *
+ * Every note the voice plays is one Event, on the beat playing the music would play it: repeats are
+ * unrolled, tuplets and chords are played as their play methods play them, and the notes of a view
+ * are the notes as the view plays them. Events are sorted by the beat they start on, notes that start
+ * together staying in the order the voice plays them. Lookups are binary searches, taking time
+ * logarithmic in the number of notes plus the number of notes they return.
+ *
+ * notesAt can't just scan back from the beat, since a note held for the whole voice sounds on every
+ * beat. It keeps, for every run of events whose length is a power of two, the one that ends latest,
+ * so the event ending latest among those starting by a beat is found in constant time. If it ends
+ * after the beat it sounds, and the events before and after it are searched the same way; if not,
+ * none of them sounds. Every search either finds a note or ends one of at most two ranges per note
+ * found, so notesAt takes time logarithmic in the number of notes plus the number it returns.
+ */
+public class BeatIndex {
+
+    /** Syllable index of a note that has no syllable of its own, like every note of a chord but the first */
+    public static final int NO_LYRIC = Timeline.NO_LYRIC;
+
+    /**
+     * A note played on a beat.
+     */
+    public static class Event {
+        private final double beat;
+        private final Note note;
+        private final Chord chord;
+        private final int lyricIndex;
+
+        // AF(beat, note, chord, lyricIndex) = note played on beat, as one of the notes of chord if chord isn't
+        //      null, with the syllable lyricIndex sung as it starts, or none if NO_LYRIC
+        //
+        // Rep Invariant
+        // - beat is non-negative, note is not null
+        // - lyricIndex is non-negative or NO_LYRIC
+        //
+        // Safety from Rep Exposure
+        // - All fields are private, final and immutable
+        //
+        // Thread Safety Argument
+        // - Immutable
+
+        private Event(double beat, Note note, Chord chord, int lyricIndex) {
+            this.beat = beat;
+            this.note = note;
+            this.chord = chord;
+            this.lyricIndex = lyricIndex;
+            checkRep();
+        }
+
+        private void checkRep() {
+            assert beat >= 0;
+            assert note != null;
+            assert lyricIndex >= 0 || lyricIndex == NO_LYRIC;
+        }
+
+        /**
+         * @return the beat the note starts on
+         */
+        public double beat() {
+            return beat;
+        }
+
+        /**
+         * @return the beat the note ends on
+         */
+        public double endBeat() {
+            return beat + note.duration();
+        }
+
+        /**
+         * @return the note as it is played, transposed, stretched or on another instrument if a view plays it
+         */
+        public Note note() {
+            return note;
+        }
+
+        /**
+         * @return the chord the note is played in, as it is written, or null if it is played alone
+         */
+        public Chord chord() {
+            return chord;
+        }
+
+        /**
+         * @return the index of the syllable sung as the note starts, or NO_LYRIC
+         */
+        public int lyricIndex() {
+            return lyricIndex;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if(!(that instanceof Event)) {
+                return false;
+            }
+            final Event other = (Event) that;
+            return beat == other.beat && note.equals(other.note) && lyricIndex == other.lyricIndex
+                    && (chord == null ? other.chord == null : chord.equals(other.chord));
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(beat) + 31 * note.hashCode() + lyricIndex;
+        }
+
+        @Override
+        public String toString() {
+            return note + "@" + beat + (lyricIndex == NO_LYRIC ? "" : " sings " + lyricIndex);
+        }
+    }
+
+    private final Event[] events;
+    private final double[] beats;
+    private final int[][] latest;
+    private final double[] lyricBeats;
+    private final int[] lyricIndices;
+    private final double duration;
+
+    // Abstraction Function
+    // AF(events, beats, latest, lyricBeats, lyricIndices, duration) = the voice lasting duration beats
+    //      that plays the notes of events in order; the i-th lyric it sings is syllable lyricIndices[i], on
+    //      beat lyricBeats[i]
+    //
+    // Rep Invariant
+    // - beats[i] == events[i].beat(), and beats is sorted
+    // - latest[j][i] is the index of an event ending latest among events[i .. i + 2^j - 1], for every
+    //   such run inside events
+    // - lyricBeats and lyricIndices hold the beats and syllables of the events sung, in the same order
+    // - duration is non-negative
+    //
+    // Safety from Rep Exposure
+    // - All fields are private and final, the arrays are never handed out, and Events are immutable
+    //
+    // Thread Safety Argument
+    // - Immutable
+
+    private BeatIndex(Event[] events, double duration) {
+        this.events = events;
+        this.beats = new double[events.length];
+        int sung = 0;
+        for(int i = 0; i < events.length; i++) {
+            beats[i] = events[i].beat();
+            if(events[i].lyricIndex() != NO_LYRIC) {
+                sung++;
+            }
+        }
+        this.latest = latestOfRuns(events);
+        this.lyricBeats = new double[sung];
+        this.lyricIndices = new int[sung];
+        int lyric = 0;
+        for(Event event: events) {
+            if(event.lyricIndex() != NO_LYRIC) {
+                lyricBeats[lyric] = event.beat();
+                lyricIndices[lyric] = event.lyricIndex();
+                lyric++;
+            }
+        }
+        this.duration = duration;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert beats.length == events.length;
+        for(int i = 0; i < events.length; i++) {
+            assert beats[i] == events[i].beat();
+            assert i == 0 || beats[i-1] <= beats[i];
+        }
+        for(int j = 0; j < latest.length; j++) {
+            assert latest[j].length == events.length - (1 << j) + 1;
+            for(int i = 0; i < latest[j].length; i++) {
+                assert j > 0 ? latest[j][i] == later(latest[j-1][i], latest[j-1][i + (1 << (j-1))]) : latest[j][i] == i;
+            }
+        }
+        assert lyricBeats.length == lyricIndices.length;
+        assert duration >= 0;
+    }
+
+    /**
+     * @param events events sorted by beat
+     * @return latest, where latest[j][i] is the index of an event ending latest among the 2^j events
+     *         starting at events[i], for every j and i such that those events are all in events
+     */
+    private static int[][] latestOfRuns(Event[] events) {
+        final List<int[]> runs = new ArrayList<>();
+        if(events.length > 0) {
+            final int[] single = new int[events.length];
+            for(int i = 0; i < events.length; i++) {
+                single[i] = i;
+            }
+            runs.add(single);
+        }
+        for(int half = 1; 2 * half <= events.length; half *= 2) {
+            final int[] shorter = runs.get(runs.size() - 1);
+            final int[] longer = new int[events.length - 2 * half + 1];
+            for(int i = 0; i < longer.length; i++) {
+                longer[i] = laterOf(events, shorter[i], shorter[i + half]);
+            }
+            runs.add(longer);
+        }
+        return runs.toArray(new int[runs.size()][]);
+    }
+
+    /**
+     * @return whichever of the events at indices one and other ends later, one if they end together
+     */
+    private static int laterOf(Event[] events, int one, int other) {
+        return events[other].endBeat() > events[one].endBeat() ? other : one;
+    }
+
+    private int later(int one, int other) {
+        return laterOf(events, one, other);
+    }
+
+    /**
+     * @param from the first index of a range of events, less than to
+     * @param to the index after it
+     * @return the index of an event ending latest in the range
+     */
+    private int latestIn(int from, int to) {
+        final int level = 31 - Integer.numberOfLeadingZeros(to - from);
+        return later(latest[level][from], latest[level][to - (1 << level)]);
+    }
+
+    /**
+     * Index the notes of a piece of music.
+     * @param music the music a voice sings
+     * @return an index of the notes music plays, starting on beat 0
+     */
+    public static BeatIndex of(Music music) {
+        final List<Event> played = new ArrayList<>();
+        add(music, 0, null, true, played);
+        final Event[] events = played.toArray(new Event[played.size()]);
+        // a stable sort, so notes that start together stay in the order they are played
+        Arrays.sort(events, (one, other) -> Double.compare(one.beat(), other.beat()));
+        return new BeatIndex(events, music.duration());
+    }
+
+    /**
+     * Add the events of a piece of music, in the order playing it plays them.
+     * @param piece the piece
+     * @param beat the beat the piece is played on
+     * @param chord the chord the piece is part of, or null
+     * @param sung true if the piece is sung in the voice, false if it is part of a chord
+     * @param played the events added so far
+     */
+    private static void add(Music piece, double beat, Chord chord, boolean sung, List<Event> played) {
+        if(piece instanceof Note) {
+            final Note note = (Note) piece;
+            played.add(new Event(beat, note, chord, sung ? note.lyricIndex() : NO_LYRIC));
+        }
+        else if(piece instanceof Chord) {
+            final Chord notes = (Chord) piece;
+            final int first = played.size();
+            for(Music note: notes.notes()) {
+                add(note, beat, notes, false, played);
+            }
+            // the chord's syllable is sung when its notes start, so it goes on the first of them
+            if(sung && played.size() > first) {
+                final Event firstNote = played.get(first);
+                played.set(first, new Event(beat, firstNote.note(), notes, notes.lyricIndex()));
+            }
+        }
+        else if(piece instanceof Tuplet) {
+            double currentBeat = beat;
+            for(Music note: ((Tuplet) piece).notes()) {
+                add(note, currentBeat, chord, sung, played);
+                currentBeat+=note.duration();
+            }
+        }
+        else if(piece instanceof MusicView) {
+            final MusicView view = (MusicView) piece;
+            final Transform transform = view.transform();
+            final List<Event> viewed = new ArrayList<>();
+            add(view.music(), beat, chord, sung, viewed);
+            // the notes as the view's player passes them on
+            for(Event event: viewed) {
+                final Note note = event.note();
+                final Note transformed = new Note(transform.beats(note.duration()), transform.pitch(note.pitch()),
+                        transform.instrument(note.instrument()), note.lyricIndex());
+                played.add(new Event(transform.beat(beat, event.beat()), transformed, event.chord(), event.lyricIndex()));
+            }
+        }
+        else if(piece instanceof Concat || piece instanceof Sequence || piece instanceof Repeat) {
+            MusicTraversal.forEachPiece(piece, beat, (part, partBeat) -> add(part, partBeat, chord, sung, played));
+        }
+        else if(!(piece instanceof Rest)) {
+            throw new IllegalArgumentException("unknown kind of music: "+piece.getClass());
+        }
+    }
+
+    /**
+     * @return the number of notes the voice plays, counting every time a repeated note is played
+     */
+    public int size() {
+        return events.length;
+    }
+
+    /**
+     * @return the number of beats the voice lasts
+     */
+    public double duration() {
+        return duration;
+    }
+
+    /**
+     * @param beat a beat
+     * @return the notes sounding on beat, that start on or before it and end after it, in the order
+     *         they start
+     */
+    public List<Event> notesAt(double beat) {
+        final List<Event> sounding = new ArrayList<>();
+        // ranges of events still to search, as {from, to}, and events found, as {index}; next on top
+        final Deque<int[]> unsearched = new ArrayDeque<>();
+        unsearched.push(new int[] {0, firstAfter(beats, beat, events.length)});
+        while(!unsearched.isEmpty()) {
+            final int[] next = unsearched.pop();
+            if(next.length == 1) {
+                sounding.add(events[next[0]]);
+                continue;
+            }
+            if(next[0] >= next[1]) {
+                continue;
+            }
+            final int longest = latestIn(next[0], next[1]);
+            if(events[longest].endBeat() > beat) {
+                unsearched.push(new int[] {longest + 1, next[1]});
+                unsearched.push(new int[] {longest});
+                unsearched.push(new int[] {next[0], longest});
+            }
+        }
+        return Collections.unmodifiableList(sounding);
+    }
+
+    /**
+     * @param beat a beat
+     * @return the index of the syllable most recently sung on or before beat, the one a voice playing
+     *         from the start would highlight then; NO_LYRIC if nothing is sung by then
+     */
+    public int lyricAt(double beat) {
+        final int next = firstAfter(lyricBeats, beat, lyricBeats.length);
+        return next == 0 ? NO_LYRIC : lyricIndices[next - 1];
+    }
+
+    /**
+     * @param fromBeat the first beat of the range
+     * @param toBeat the beat after the range
+     * @return the notes starting on a beat b with fromBeat <= b < toBeat, in the order they start;
+     *         those whose lyricIndex is not NO_LYRIC are the lyric events of the range
+     */
+    public List<Event> between(double fromBeat, double toBeat) {
+        final int first = firstAtOrAfter(beats, fromBeat);
+        final int last = Math.max(first, firstAtOrAfter(beats, toBeat));
+        return Collections.unmodifiableList(Arrays.asList(events).subList(first, last));
+    }
+
+    /**
+     * @param sorted a sorted array
+     * @param beat a beat
+     * @param length the number of elements of sorted to search
+     * @return the index of the first of those elements greater than beat, length if there is none
+     */
+    private static int firstAfter(double[] sorted, double beat, int length) {
+        int low = 0;
+        int high = length;
+        while(low < high) {
+            final int middle = (low + high) >>> 1;
+            if(sorted[middle] > beat) {
+                high = middle;
+            }
+            else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param sorted a sorted array
+     * @param beat a beat
+     * @return the index of the first element of sorted at least beat, sorted.length if there is none
+     */
+    private static int firstAtOrAfter(double[] sorted, double beat) {
+        int low = 0;
+        int high = sorted.length;
+        while(low < high) {
+            final int middle = (low + high) >>> 1;
+            if(sorted[middle] >= beat) {
+                high = middle;
+            }
+            else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "BeatIndex(" + events.length + " notes, " + lyricBeats.length + " sung, " + duration + " beats)";
+    }
+}
@@ -0,0 +1,170 @@
+package karaoke;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.parser.SourceText;
+
+/**
+ * Bulk ingestion of a catalog of abc files: every .abc file under a directory is parsed, using all
+ * cores, and the Compositions that parse are handed to a CatalogSink. A file that fails is recorded
+ * and the rest are still ingested.
+ */
+public class CatalogIngest {
+
+    private static final String ABC_SUFFIX = ".abc";
+
+    /**
+     * Entry point for ingesting a catalog.
+     *
+     * Command line arguments:
+     *  DIRECTORY [ENGINE]
+     *
+     *  DIRECTORY => directory searched recursively for .abc files
+     *  ENGINE => MusicParser engine to parse with, GRAMMAR or DESCENT; GRAMMAR if omitted
+     *
+     * Prints the throughput, parse time percentiles and every failure, and exits with status 1 if any
+     * file failed.
+     * @param args is a list of command line arguments as specified above
+     * @throws IOException if the directory can't be searched
+     */
+    public static void main(String[] args) throws IOException {
+        final Queue<String> arguments = new LinkedList<>(Arrays.asList(args));
+        final File directory;
+        final Engine engine;
+        if(arguments.isEmpty()) {
+            throw new IllegalArgumentException("missing DIRECTORY");
+        }
+        directory = new File(arguments.remove());
+        try {
+            engine = arguments.isEmpty() ? Engine.GRAMMAR : Engine.valueOf(arguments.remove());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid ENGINE", e);
+        }
+
+        final IngestReport report = ingest(directory, new MusicParser(engine), (source, composition) -> {},
+                Runtime.getRuntime().availableProcessors());
+        System.out.print(report);
+        if(!report.failures().isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parse every .abc file under a directory in parallel and send the Compositions that parse to a sink.
+     * @param directory directory searched recursively for .abc files
+     * @param parser parser to parse every file with
+     * @param sink receives every Composition that parses; it is called from several threads at once
+     * @param threads number of files to parse at once, must be positive
+     * @return a report of the files read, the failures, and the time taken
+     * @throws IOException if the directory can't be searched
+     */
+    public static IngestReport ingest(File directory, MusicParser parser, CatalogSink sink, int threads) throws IOException {
+        if(threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        final List<Path> paths;
+        try(Stream<Path> walk = Files.walk(directory.toPath())) {
+            paths = walk.filter(path -> path.toString().endsWith(ABC_SUFFIX) && Files.isRegularFile(path))
+                    .sorted().collect(Collectors.toList());
+        }
+
+        // each task writes only its own index; awaitTermination makes the writes visible here
+        final long[] bytes = new long[paths.size()];
+        final long[] nanos = new long[paths.size()];
+        final Map<File, String> failures = Collections.synchronizedMap(new HashMap<>());
+
+        final long start = System.nanoTime();
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            for(int i = 0; i < paths.size(); i++) {
+                final int index = i;
+                final File file = paths.get(i).toFile();
+                workers.execute(() -> {
+                    final long fileStart = System.nanoTime();
+                    final Composition composition;
+                    try {
+                        bytes[index] = Files.size(file.toPath());
+                        composition = parser.parse(SourceText.read(file));
+                    }
+                    catch(Throwable e) {
+                        // an AssertionError is a rep invariant broken by input the grammar lets through, and a
+                        // StackOverflowError a tune too long for the parser; every file gets an outcome
+                        nanos[index] = System.nanoTime() - fileStart;
+                        failures.put(file, reason(e));
+                        rethrowIfFatal(e);
+                        return;
+                    }
+                    nanos[index] = System.nanoTime() - fileStart;
+                    try {
+                        sink.accept(file, composition);
+                    }
+                    catch(Throwable e) {
+                        failures.put(file, "sink failed: "+reason(e));
+                        rethrowIfFatal(e);
+                    }
+                });
+            }
+        }
+        finally {
+            workers.shutdown();
+        }
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while ingesting "+directory, e);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        long totalBytes = 0;
+        final List<Long> parseNanos = new ArrayList<>();
+        for(int i = 0; i < paths.size(); i++) {
+            totalBytes += bytes[i];
+            parseNanos.add(nanos[i]);
+        }
+        return new IngestReport(totalBytes, elapsed, parseNanos, failures);
+    }
+
+    /**
+     * Rethrow a failure the virtual machine may not recover from, once it has been recorded. A stack
+     * overflow has unwound by the time it is caught, so the worker carries on with the next file.
+     * @param e a failure ingesting a file
+     */
+    private static void rethrowIfFatal(Throwable e) {
+        if(e instanceof VirtualMachineError && !(e instanceof StackOverflowError)) {
+            throw (VirtualMachineError) e;
+        }
+    }
+
+    /**
+     * @return the first line of the failure's message, or its class if it has none
+     */
+    private static String reason(Throwable e) {
+        final String message = e.getMessage();
+        if(message == null || message.isEmpty()) {
+            return e.getClass().getSimpleName();
+        }
+        final int lineEnd = message.indexOf('\n');
+        return lineEnd < 0 ? message : message.substring(0, lineEnd);
+    }
+}
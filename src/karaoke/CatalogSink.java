@@ -0,0 +1,20 @@
+package karaoke;
+
+import java.io.File;
+
+/**
+ * A CatalogSink receives the Compositions validated by a catalog ingestion, for later stages
+ * such as indexing or storage to consume.
+ *
+ * Ingestion parses files in parallel, so accept may be called from several threads at once and
+ * implementations must be threadsafe.
+ */
+public interface CatalogSink {
+    
+    /**
+     * Called once for every file that parsed.
+     * @param source the abc file the composition was parsed from
+     * @param composition the composition parsed from source, owned by the sink
+     */
+    public void accept(File source, Composition composition);
+}
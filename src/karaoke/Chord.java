@@ -1,5 +1,6 @@
 package karaoke;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -12,17 +13,21 @@ public class Chord implements Music{
     
     private final List<Music> notes;
     private final int lyricIndex;
+    private final double duration;
+    private final int hash;
     
-    // AF(notes, lyricIndex) = a Chord consisting of the notes in <notes>
+    // AF(notes, lyricIndex, duration, hash) = a Chord consisting of the notes in <notes>
     //                         associated with a lyric at index <lyricIndex>
     
     // Rep Invariant
     // lyricIndex is non-negative
+    // duration is the duration of the first note, 0 if there are none
+    // hash == lyricIndex + notes.hashCode()
     
     // Safety from Rep Exposure
     // all variables are private
     // lyricIndex is an immutable reference to an immutable value
-    // we do not return references to notes
+    // notes is a copy of the list given, and we only return unmodifiable views of it
     
     // Thread safety Argument:
     // - Player Wrapper Class that plays music is a threadsafe datatype
@@ -34,8 +39,10 @@ public class Chord implements Music{
      * @param lyricIndex the index of the syllable corresponding to the chord in the list of syllables
      */
     public Chord(List<Music> notes, int lyricIndex) {
-        this.notes = notes;
+        this.notes = new ArrayList<>(notes);
         this.lyricIndex = lyricIndex;
+        this.duration = notes.isEmpty() ? 0 : notes.get(0).duration();
+        this.hash = ((Integer)lyricIndex).hashCode() + this.notes.hashCode();
         checkRep();
     }
     
@@ -47,7 +54,21 @@ public class Chord implements Music{
     
     @Override
     public double duration() {
-        return notes.get(0).duration();
+        return this.duration;
+    }
+    
+    /**
+     * @return the notes of the chord in order
+     */
+    public List<Music> notes() {
+        return Collections.unmodifiableList(notes);
+    }
+    
+    /**
+     * @return the index of the syllable sung on this chord
+     */
+    public int lyricIndex() {
+        return this.lyricIndex;
     }
     
     @Override
@@ -61,12 +82,14 @@ public class Chord implements Music{
     
     @Override
     public boolean equals(Object that) {
-    	return that instanceof Chord && ((Chord)that).lyricIndex == lyricIndex && ((Chord)that).notes.equals(notes);
+    	return this == that || that instanceof Chord && ((Chord)that).hash == hash
+    	        && ((Chord)that).lyricIndex == lyricIndex && ((Chord)that).notes.equals(notes)
+    	        || MusicTraversal.isChain(that) && MusicTraversal.equal(this, that);
     }
     
     @Override
     public int hashCode() {
-    	return ((Integer)lyricIndex).hashCode() + notes.hashCode();
+    	return this.hash;
     }
     
     @Override
@@ -1,14 +1,20 @@
 package karaoke;
 
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
 import karaoke.Voice.LyricListener;
 import karaoke.sound.SequencePlayer;
 
 //Mutable class
 public class Composition {
     private Map<String, Voice> voices;
+    private Map<String, LazyVoice> unbuilt;
     public enum Key{C, Am, G, Em, D, Bm, A, Fsharpm, E, Csharpm, B, Gsharpm, Cflat, Aflatm, Gflat, Eflatm,
     	Fsharp, Dsharpm, Dflat, Bflatm, Csharp, Asharpm, Aflat, Fm, Eflat, Cm, Bflat, Gm, F, Dm};
     
@@ -40,17 +46,50 @@ public class Composition {
     private final int trackNumber;
     private final Key key;
     
-    //AF(Voices) = A composition music piece which consists of all the voices in voices played
-    //             together
+    //AF(Voices, unbuilt) = A composition music piece which consists of all the voices in voices and in
+    //             unbuilt played together. The voices in unbuilt are built the first time they are
+    //             used, which moves them to voices without changing the piece
     //
-    //RI(): True
+    //RI(): voices and unbuilt have no name in common
     //
     //Safety from rep Exposure:
     //  All internal variables are private, final and never returned. 
     //  The client has no access to any of the variables. 
+    //  voices() returns a copy of the voice map; the voices in it are shared, like in
+    //  addVoiceListener, but the client can only add listeners to them.
+    //  The LazyVoices in unbuilt are shared with copies, but they only ever hand out the
+    //  same listener-free Voice, which every composition copies before using.
     // Thread Safety Argument
     // - Player Wrapper Class that plays music is a threadsafe datatype
     // - Player Class is the only class that is called upon from multiple threads
+    // - Copies in different threads share LazyVoices, which build their voice under their own lock
+    
+    /**
+     * A voice that is built the first time it is needed. It is built at most once, even when it is
+     * shared by copies of a composition used from several threads.
+     */
+    private static class LazyVoice {
+        private Supplier<Voice> source;
+        private Voice voice;
+        
+        // AF(source, voice) = the voice returned by source, which is voice once it has been built
+        // RI: exactly one of source and voice is null
+        // Thread Safety Argument: the rep is only accessed while synchronized on this, and the
+        //                         voice handed out has no listeners and is only ever copied
+        
+        private LazyVoice(Supplier<Voice> source) {
+            this.source = source;
+            this.voice = null;
+        }
+        
+        private synchronized Voice get() {
+            if(voice == null) {
+                voice = source.get();
+                source = null;
+            }
+            return voice;
+        }
+    }
     
     /**
      * Creates a new composition with default values
@@ -64,12 +103,15 @@ public class Composition {
     	this.trackNumber = tracknumber;
     	this.key = key;
     	this.voices = new HashMap<>();
+    	this.unbuilt = new HashMap<>();
     	checkRep();
     }
     
     private void checkRep() {
         assert title != null;
         assert voices != null;
+        assert unbuilt != null;
+        assert Collections.disjoint(voices.keySet(), unbuilt.keySet());
         assert key != null;
         assert composer != null;
     }
@@ -78,12 +120,48 @@ public class Composition {
      * @param player the player to have play the music
      */
     public void play(SequencePlayer player) {
+        buildAll();
         for(String voiceKey: voices.keySet()) {
             voices.get(voiceKey).play(player);
         }
         checkRep();
     }
     
+    /**
+     * modifies the player to play the part of all the voices in a window of beats at once, moved to
+     * start on another beat, as Voice.playBetween plays each of them
+     * @param player the player to have play the music
+     * @param fromBeat the first beat of the window
+     * @param toBeat the beat after the window, at least fromBeat
+     * @param atBeat the beat to play fromBeat on
+     */
+    public void playBetween(SequencePlayer player, double fromBeat, double toBeat, double atBeat) {
+        buildAll();
+        for(String voiceKey: voices.keySet()) {
+            voices.get(voiceKey).playBetween(player, fromBeat, toBeat, atBeat);
+        }
+        checkRep();
+    }
+    
+    /**
+     * modifies the player to play a window of beats of all the voices several times over, starting on
+     * beat 0, each time right after the last, as Voice.loop plays each of them
+     * @param player the player to have play the music
+     * @param fromBeat the first beat of the window
+     * @param toBeat the beat after the window, at least fromBeat
+     * @param times the number of times to play the window, non-negative
+     */
+    public void loop(SequencePlayer player, double fromBeat, double toBeat, int times) {
+        if(times < 0) {
+            throw new IllegalArgumentException("cannot loop a negative number of times: "+times);
+        }
+        buildAll();
+        for(String voiceKey: voices.keySet()) {
+            voices.get(voiceKey).loop(player, fromBeat, toBeat, times);
+        }
+        checkRep();
+    }
+    
     /**
      * Add in a new listener to be updated with the line and highlighted syllable 
      * on each note
@@ -91,6 +169,7 @@ public class Composition {
      * @param listener the listener object 
      */
     public void addVoiceListener(String voice, LyricListener listener) {
+        build(voice);
         if(voices.containsKey(voice)) {
             voices.get(voice).addListener(listener);
         }
@@ -101,6 +180,7 @@ public class Composition {
      * @return the duration of the entire Composition
      */
     public double duration() {
+        buildAll();
         double maxDuration = 0;
         for(String voiceKey: voices.keySet()) {
             Voice voice = voices.get(voiceKey);
@@ -166,16 +246,136 @@ public class Composition {
         return this.meter;
     }
     
+    /**
+     * @return a map from the name of each voice of this piece to the voice
+     */
+    public Map<String, Voice> voices() {
+        buildAll();
+        return new HashMap<>(voices);
+    }
+    
+    /**
+     * @return the names of the voices of this piece, without building any of them
+     */
+    public Set<String> voiceNames() {
+        final Set<String> names = new HashSet<>(voices.keySet());
+        names.addAll(unbuilt.keySet());
+        return names;
+    }
+    
+    /**
+     * @return the names of the voices of this piece that have been built
+     */
+    public Set<String> builtVoices() {
+        return new HashSet<>(voices.keySet());
+    }
+    
     /**
      * Set the voices of this piece to voicemap
      * @param voiceMap a map of voice names to voices
      */
     public void setVoices(Map<String, Voice> voiceMap) {
         voices = new HashMap<>(voiceMap);
+        unbuilt = new HashMap<>();
+        checkRep();
+    }
+    
+    /**
+     * Set the voices of this piece to voices that are built the first time they are used: when the
+     * piece is played, its duration or voices are asked for, or a listener is added to that voice.
+     * Each voice is built at most once, however many copies of this piece use it.
+     * @param voiceSources a map of voice names to suppliers of voices without listeners, which
+     *        must not fail and may be called from any thread
+     */
+    public void setLazyVoices(Map<String, Supplier<Voice>> voiceSources) {
+        voices = new HashMap<>();
+        unbuilt = new HashMap<>();
+        for(Map.Entry<String, Supplier<Voice>> source: voiceSources.entrySet()) {
+            unbuilt.put(source.getKey(), new LazyVoice(source.getValue()));
+        }
+        checkRep();
+    }
+    
+    /**
+     * Build the voice named voice if it is not built yet
+     */
+    private void build(String voice) {
+        final LazyVoice lazy = unbuilt.remove(voice);
+        if(lazy != null) {
+            voices.put(voice, lazy.get().copy());
+        }
+    }
+    
+    /**
+     * Build every voice that is not built yet
+     */
+    private void buildAll() {
+        for(String voice: new HashSet<>(unbuilt.keySet())) {
+            build(voice);
+        }
+    }
+    
+    /**
+     * @return a new composition with the same header and voices as this one. The copy shares the
+     *         immutable music of this composition, but has its own voices, so adding listeners to or
+     *         setting the voices of one does not affect the other. Voices that are not built yet are
+     *         built once for both
+     */
+    public Composition copy() {
+        Composition copy = new Composition(title, composer, length, tempo, meter, trackNumber, key);
+        Map<String, Voice> copiedVoices = new HashMap<>();
+        for(String voiceKey: voices.keySet()) {
+            copiedVoices.put(voiceKey, voices.get(voiceKey).copy());
+        }
+        copy.setVoices(copiedVoices);
+        copy.unbuilt = new HashMap<>(unbuilt);
+        checkRep();
+        copy.checkRep();
+        return copy;
+    }
+
+    /**
+     * @param transform the transform to apply
+     * @return a new composition with the same header and voices as this one, each of whose voices plays
+     *         a view of this one's music with transform applied. Like a copy, it shares the music of this
+     *         composition and has its own voices, without listeners; every voice is built first
+     */
+    public Composition transformed(Transform transform) {
+        buildAll();
+        Composition view = new Composition(title, composer, length, tempo, meter, trackNumber, key);
+        Map<String, Voice> viewedVoices = new HashMap<>();
+        for(String voiceKey: voices.keySet()) {
+            Voice voice = voices.get(voiceKey);
+            viewedVoices.put(voiceKey, new Voice(new MusicView(voice.music(), transform), voice.syllables(), voice.name()));
+        }
+        view.setVoices(viewedVoices);
+        view.checkRep();
+        return view;
+    }
+    
+    @Override
+    public boolean equals(Object that) {
+    	if(that instanceof Composition) {
+    	    buildAll();
+    	    ((Composition)that).buildAll();
+    	}
+    	return that instanceof Composition && ((Composition)that).title.equals(title)
+    			&& ((Composition)that).composer.equals(composer) && ((Composition)that).tempo == tempo
+    			&& ((Composition)that).length == length && ((Composition)that).meter == meter
+    			&& ((Composition)that).trackNumber == trackNumber && ((Composition)that).key.equals(key)
+    			&& ((Composition)that).voices.equals(voices);
+    }
+    
+    @Override
+    public int hashCode() {
+    	buildAll();
+    	return title.hashCode() + composer.hashCode() + ((Double)tempo).hashCode() + ((Integer)trackNumber).hashCode()
+    			+ key.hashCode() + voices.hashCode();
     }
     
     @Override 
     public String toString() {
+        buildAll();
         String outString = "";
         for(String voiceKey: voices.keySet()) {
             Voice voice = voices.get(voiceKey);
@@ -6,11 +6,14 @@ public class Concat implements Music{
     
     private final Music left;
     private final Music right;
+    private final double duration;
+    private final int hash;
     
     /*
-     * AF(left, right) = A piece of music with left played first and then immediately followed by right
+     * AF(left, right, duration, hash) = A piece of music with left played first and then immediately followed by right;
+     *     equal to any chain of Concats and Sequences, or other piece, playing equal pieces in the same order
      * 
-     * RI(): true
+     * RI(): duration == left.duration()+right.duration() and hash == right.hashCode()+left.hashCode()
      * 
      * Safety from rep exposure:
      *     - All internal variables are private and final and immutable
@@ -29,37 +32,53 @@ public class Concat implements Music{
     public Concat(Music left, Music right) {
         this.left = left;
         this.right = right;
+        this.duration = left.duration()+right.duration();
+        this.hash = right.hashCode() + left.hashCode();
     }
     
     private void checkRep() {
         assert left != null;
         assert right != null;
+        assert duration == left.duration()+right.duration();
+    }
+    
+    /**
+     * @return the earlier part of the music
+     */
+    public Music left() {
+        return this.left;
+    }
+    
+    /**
+     * @return the later part of the music
+     */
+    public Music right() {
+        return this.right;
     }
     
     @Override
     public double duration() {
-        return left.duration()+right.duration();
+        return this.duration;
     }
     
     @Override
     public void play(SequencePlayer player, double beat, Voice voice) {
-        left.play(player, beat, voice);
-        right.play(player, beat+left.duration(), voice);
+        MusicTraversal.play(this, player, beat, voice);
     }
     
     @Override
     public boolean equals(Object that) {
-    	return that instanceof Concat && ((Concat)that).right.equals(right) && ((Concat)that).left.equals(left);
+    	return this == that || that instanceof Music && MusicTraversal.equal(this, that);
     }
     
     @Override
     public int hashCode() {
-    	return right.hashCode() + left.hashCode();
+    	return this.hash;
     }
     
     @Override
     public String toString() {
-        return left.toString() + right.toString();
+        return MusicTraversal.toString(this);
     }
 
 }
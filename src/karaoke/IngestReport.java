@@ -0,0 +1,156 @@
+package karaoke;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable summary of a catalog ingestion: how many files were read, which ones failed to parse
+ * and why, and how fast files were parsed.
+ */
+public class IngestReport {
+    
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double NANOS_PER_MILLI = 1e6;
+    
+    private final int files;
+    private final long bytes;
+    private final long elapsedNanos;
+    private final long[] sortedParseNanos;
+    private final Map<File, String> failures;
+    
+    // AF(files, bytes, elapsedNanos, sortedParseNanos, failures) = an ingestion that read <files> files of <bytes> bytes
+    //                  in total in <elapsedNanos> nanoseconds of wall clock time, where parsing the files took
+    //                  <sortedParseNanos> nanoseconds each, and the files in <failures> failed for the given reasons
+    //
+    // Rep Invariant
+    // - files, bytes and elapsedNanos are non-negative
+    // - sortedParseNanos has length files and is sorted in ascending order
+    // - failures.size() <= files
+    //
+    // Safety from Rep Exposure
+    // - All fields are private and final
+    // - sortedParseNanos and failures are copied in the constructor and never returned, only copies or
+    //   unmodifiable views of them
+    //
+    // Thread Safety Argument
+    // - IngestReport is immutable
+    
+    /**
+     * Make a report of an ingestion.
+     * @param bytes total size of the files read
+     * @param elapsedNanos wall clock time of the whole ingestion
+     * @param parseNanos time taken to read and parse each file, in any order
+     * @param failures the files that failed, mapped to the reason; must be at most parseNanos.size() files
+     */
+    public IngestReport(long bytes, long elapsedNanos, List<Long> parseNanos, Map<File, String> failures) {
+        this.files = parseNanos.size();
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+        this.sortedParseNanos = new long[files];
+        for(int i = 0; i < files; i++) {
+            sortedParseNanos[i] = parseNanos.get(i);
+        }
+        Arrays.sort(sortedParseNanos);
+        this.failures = Collections.unmodifiableMap(new TreeMap<>(failures));
+        checkRep();
+    }
+    
+    private void checkRep() {
+        assert files >= 0;
+        assert bytes >= 0;
+        assert elapsedNanos >= 0;
+        assert sortedParseNanos.length == files;
+        for(int i = 1; i < files; i++) {
+            assert sortedParseNanos[i-1] <= sortedParseNanos[i];
+        }
+        assert failures.size() <= files;
+    }
+    
+    /**
+     * @return the number of files read
+     */
+    public int files() {
+        return files;
+    }
+    
+    /**
+     * @return the number of files that parsed
+     */
+    public int parsed() {
+        return files - failures.size();
+    }
+    
+    /**
+     * @return the files that failed to be read or parsed, mapped to the reason, in path order
+     */
+    public Map<File, String> failures() {
+        return failures;
+    }
+    
+    /**
+     * @return the total size of the files read, in bytes
+     */
+    public long bytes() {
+        return bytes;
+    }
+    
+    /**
+     * @return files read per second of wall clock time
+     */
+    public double filesPerSecond() {
+        return elapsedNanos == 0 ? 0 : files * NANOS_PER_SECOND / elapsedNanos;
+    }
+    
+    /**
+     * @return bytes read per second of wall clock time
+     */
+    public double bytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes * NANOS_PER_SECOND / elapsedNanos;
+    }
+    
+    /**
+     * @param percentile a percentile in (0, 100]
+     * @return the time in nanoseconds within which that percentage of files were read and parsed,
+     *         by the nearest rank method, or 0 if no files were read
+     */
+    public long parseNanosPercentile(double percentile) {
+        if(percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100]: "+percentile);
+        }
+        if(files == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percentile / 100 * files);
+        return sortedParseNanos[Math.max(rank, 1) - 1];
+    }
+    
+    /**
+     * @return the parse time of every file, in nanoseconds, in ascending order
+     */
+    public List<Long> parseNanos() {
+        final List<Long> parseNanos = new ArrayList<>();
+        for(long nanos: sortedParseNanos) {
+            parseNanos.add(nanos);
+        }
+        return parseNanos;
+    }
+    
+    @Override
+    public String toString() {
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format("%d files, %d parsed, %d failed, %d bytes in %.2fs%n", files, parsed(),
+                failures.size(), bytes, elapsedNanos / NANOS_PER_SECOND));
+        report.append(String.format("%.1f files/s, %.1f bytes/s%n", filesPerSecond(), bytesPerSecond()));
+        report.append(String.format("parse time per file: p50 %.2fms, p99 %.2fms%n",
+                parseNanosPercentile(50) / NANOS_PER_MILLI, parseNanosPercentile(99) / NANOS_PER_MILLI));
+        for(Map.Entry<File, String> failure: failures.entrySet()) {
+            report.append("FAILED ").append(failure.getKey()).append(": ").append(failure.getValue()).append('\n');
+        }
+        return report.toString();
+    }
+}
@@ -14,7 +14,7 @@ import java.util.NoSuchElementException;
 import java.util.Queue;
 
 import edu.mit.eecs.parserlib.UnableToParseException;
-import karaoke.player.Player;
+import karaoke.parser.SongHeader;
 import karaoke.server.StreamingServer;
 
 
@@ -55,8 +55,8 @@ public class Main {
 
         StreamingServer server = new StreamingServer(filename,port);
         server.start();
-        Player karaoke = new Player(new File(filename));
-        String songInfo = karaoke.songInfo();
+        // the server has parsed the piece already, so only scan its header for the song info
+        String songInfo = SongHeader.scanFile(new File(filename)).songInfo();
         System.out.println(songInfo);
         
         List<String> allHostnames = new ArrayList<>();
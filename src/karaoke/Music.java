@@ -3,6 +3,8 @@ import karaoke.sound.SequencePlayer;
 
 /**
  * Music represents a piece of music played by multiple instruments.
+ * Chains of Concats and Sequences are equal when they play equal pieces in the same order, whatever
+ * their shape, as MusicTraversal.equal describes.
  */
 public interface Music {
     
@@ -10,11 +12,13 @@ public interface Music {
     // Music = Note(duration: double, pitch:Pitch, instrument: Instrument) + Rest(duration: double)
     //         + Chord(notes: List<Note>) + Tuplet(tupletNumber:int, notes: List<Music>)  
     //         + Repeat(main: Music, Endings: List<Music>) + Concat(left: Music, right: Music)
+    //         + Sequence(parts: List<Music>) + MusicView(music: Music, transform: Transform)
 
 
     
     /**
-     * @return the length of this piece in beats
+     * @return the length of this piece in beats, in constant time: every kind of Music works out
+     *         its duration, and its hash code, once when it is made
      */
     public double duration();
     
@@ -0,0 +1,81 @@
+package karaoke;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out one shared instance for every piece of music it is given that equals a piece it has
+ * seen before, so that measures repeated throughout a tune, or played by several voices, are held
+ * in memory once.
+ *
+ * intern rebuilds a tree from the bottom up, replacing every node by the first equal node interned,
+ * so equal subtrees anywhere in the trees interned end up being the same object. Music is immutable,
+ * which is what makes sharing it safe. Two pieces are only shared when they are equal, and a Note or
+ * Chord is equal to another only if it is sung to the same syllable, so measures sung to different
+ * words stay apart while measures sung to the same ones, or to none, are shared.
+ */
+public class MusicInterner {
+
+    private final Map<Music, Music> canonical;
+
+    // Abstraction Function
+    // AF(canonical) = an interner that has handed out canonical.get(m) for every piece equal to m
+    //                 interned so far
+    //
+    // Rep Invariant
+    // - every key of canonical is equal to its value, and the parts of every value are values too
+    //
+    // Safety from Rep Exposure
+    // - canonical is private and final; the Music handed out is immutable, so sharing it is safe
+    //
+    // Thread Safety Argument
+    // - canonical is a ConcurrentHashMap and is only changed by putIfAbsent, so when threads race to
+    //   intern equal pieces they are all handed the one piece that won
+
+    /**
+     * Make an interner that has seen no music yet.
+     */
+    public MusicInterner() {
+        this.canonical = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param music a piece of music
+     * @return a piece equal to music, built of the pieces interned before wherever they are equal to
+     *         a part of music; the same instance for every piece equal to music that is interned
+     */
+    public Music intern(Music music) {
+        return MusicTraversal.rebuild(music, node -> {
+            final Music shared = canonical.putIfAbsent(node, node);
+            return shared == null ? node : shared;
+        });
+    }
+
+    /**
+     * @return the number of different pieces interned so far
+     */
+    public int size() {
+        return canonical.size();
+    }
+
+    /**
+     * @param composition a composition, whose voices are built if they aren't yet
+     * @return the number of nodes of the Music of its voices as trees, counting a node once for every
+     *         place it is used, divided by the number of different node objects among them; 1 if nothing
+     *         is shared or there are no voices
+     */
+    public static double sharingRatio(Composition composition) {
+        final long[] nodes = {0};
+        final Set<Music> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Voice voice: composition.voices().values()) {
+            MusicTraversal.forEachNode(voice.music(), node -> {
+                nodes[0]++;
+                distinct.add(node);
+            });
+        }
+        return distinct.isEmpty() ? 1 : (double) nodes[0] / distinct.size();
+    }
+}
@@ -0,0 +1,171 @@
+package karaoke;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Rewrites Music trees into smaller, shallower trees that play the same notes on the same beats.
+ *
+ * The parsers build every line and measure as a left-deep chain of binary Concats that starts with
+ * a zero-length Rest, so their trees are several times larger than the music and as deep as a voice
+ * is long. optimize removes the zero-length rests and flattens every chain into one Sequence. Only the
+ * left spine of a chain is flattened into it: a piece on the right that is itself a chain becomes a
+ * Sequence of its own, because adding its parts' durations to the beats before it in another order
+ * could round the start of a note differently. The optimized tree is equal to the tree, has the same
+ * toString and the same duration, and plays every note on exactly the same beat. Chains are taken apart a spine at a time,
+ * the chains and repeats being optimized kept on a stack as MusicTraversal keeps its walks.
+ *
+ * mergeRests also merges each run of adjacent rests into one rest. The tree plays the same notes,
+ * but its toString writes the run as a single rest, and the notes after a run can start a rounding
+ * error away from where they did.
+ */
+public class MusicOptimizer {
+
+    private MusicOptimizer() {
+        throw new AssertionError("MusicOptimizer is not instantiable");
+    }
+
+    /**
+     * Remove zero-length rests and flatten chains of Concats into Sequences.
+     * @param music the music to optimize
+     * @return music equal to music, with the same toString and duration, that plays the same notes on the same beats
+     */
+    public static Music optimize(Music music) {
+        return optimize(music, false);
+    }
+
+    /**
+     * Optimize like optimize(music), and also merge every run of adjacent rests into one rest.
+     * @param music the music to optimize
+     * @return music that plays the same notes, each within a rounding error of the beat it did
+     */
+    public static Music mergeRests(Music music) {
+        return optimize(music, true);
+    }
+
+    /** A chain or repeat being optimized, whose pieces are optimized one after another */
+    private static class Frame {
+        private final boolean chain;
+        private final List<Music> pieces;
+        private final List<Music> optimized;
+        private int next;
+
+        private Frame(boolean chain, List<Music> pieces) {
+            this.chain = chain;
+            this.pieces = pieces;
+            this.optimized = new ArrayList<>();
+            this.next = 0;
+        }
+    }
+
+    private static Music optimize(Music music, boolean mergeRests) {
+        if(!isComposite(music)) {
+            return music;
+        }
+        // the chains and repeats being optimized, innermost on top
+        final Deque<Frame> open = new ArrayDeque<>();
+        open.push(frame(music));
+        while(true) {
+            final Frame top = open.peek();
+            if(top.next < top.pieces.size()) {
+                final Music piece = top.pieces.get(top.next++);
+                if(isComposite(piece)) {
+                    open.push(frame(piece));
+                }
+                else {
+                    accept(top, piece, mergeRests);
+                }
+                continue;
+            }
+            open.pop();
+            final Music result = build(top);
+            if(open.isEmpty()) {
+                return result;
+            }
+            accept(open.peek(), result, mergeRests);
+        }
+    }
+
+    private static boolean isComposite(Music music) {
+        return music instanceof Concat || music instanceof Sequence || music instanceof Repeat;
+    }
+
+    /**
+     * @return a frame for optimizing a chain or a repeat: the pieces of a chain are those of its
+     *         left spine followed by those to its right, and the pieces of a repeat are its measures
+     *         followed by its endings
+     */
+    private static Frame frame(Music music) {
+        if(music instanceof Repeat) {
+            final List<Music> pieces = new ArrayList<>();
+            pieces.add(((Repeat) music).measures());
+            pieces.addAll(((Repeat) music).endings());
+            return new Frame(false, pieces);
+        }
+        // walk down the left spine, keeping the pieces to its right, the last one on the bottom
+        final Deque<Music> rights = new ArrayDeque<>();
+        Music left = music;
+        while(left instanceof Concat || left instanceof Sequence && !((Sequence) left).parts().isEmpty()) {
+            if(left instanceof Concat) {
+                rights.push(((Concat) left).right());
+                left = ((Concat) left).left();
+            }
+            else {
+                final List<Music> parts = ((Sequence) left).parts();
+                for(int i = parts.size()-1; i > 0; i--) {
+                    rights.push(parts.get(i));
+                }
+                left = parts.get(0);
+            }
+        }
+        final List<Music> pieces = new ArrayList<>();
+        // the spine ends in a piece that isn't a chain, or in an empty Sequence that has nothing to add
+        if(!(left instanceof Sequence)) {
+            pieces.add(left);
+        }
+        while(!rights.isEmpty()) {
+            pieces.add(rights.pop());
+        }
+        return new Frame(true, pieces);
+    }
+
+    private static void accept(Frame frame, Music piece, boolean mergeRests) {
+        if(frame.chain) {
+            append(frame.optimized, piece, mergeRests);
+        }
+        else {
+            frame.optimized.add(piece);
+        }
+    }
+
+    private static Music build(Frame frame) {
+        final List<Music> parts = frame.optimized;
+        if(!frame.chain) {
+            return new Repeat(parts.get(0), parts.subList(1, parts.size()));
+        }
+        if(parts.isEmpty()) {
+            return new Rest(0);
+        }
+        if(parts.size() == 1) {
+            return parts.get(0);
+        }
+        return new Sequence(parts);
+    }
+
+    /**
+     * Add an optimized piece to the end of a sequence, leaving out zero-length rests.
+     */
+    private static void append(List<Music> parts, Music piece, boolean mergeRests) {
+        if(piece instanceof Rest && piece.duration() == 0) {
+            return;
+        }
+        final int last = parts.size()-1;
+        if(mergeRests && piece instanceof Rest && last >= 0 && parts.get(last) instanceof Rest) {
+            parts.set(last, new Rest(parts.get(last).duration() + piece.duration()));
+            return;
+        }
+        parts.add(piece);
+    }
+}
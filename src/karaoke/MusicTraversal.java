@@ -0,0 +1,494 @@
+package karaoke;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import karaoke.sound.SequencePlayer;
+
+/**
+ * Walks whole Music trees with a stack of its own instead of the thread's stack, so that a tree as
+ * deep as it is long, like a chain of Concats with one level per note, can be played, printed,
+ * compared and rebuilt on a thread with a small stack. Every other whole-tree operation keeps to that
+ * rule: MusicInterner rebuilds trees through rebuild, and MusicOptimizer and ScoreCodec, which take
+ * chains of Concats apart in their own way, keep stacks of their own too.
+ *
+ * Concat, Sequence and Repeat hand their play, toString and equals to this class, which takes them
+ * apart itself and only calls those methods on the other kinds of Music. Notes, rests, chords and
+ * tuplets are at most a few levels deep. duration and hashCode need no walk: every kind of Music
+ * works them out once when it is made, from the values its parts have already worked out.
+ *
+ * playBetween plays only the part of a piece inside a window of beats. It uses those durations to
+ * skip every piece that ends before the window or starts after it without walking into it, and finds
+ * the first part of a Sequence in the window by binary search, so it takes time proportional to what
+ * is in the window rather than to the whole piece.
+ */
+public class MusicTraversal {
+
+    /** A piece of music waiting to be played on a beat */
+    private static class Pending {
+        private final Music music;
+        private final double beat;
+
+        private Pending(Music music, double beat) {
+            this.music = music;
+            this.beat = beat;
+        }
+    }
+
+    /** A node waiting for its parts to be rebuilt, or to be visited for the first time */
+    private static class Unbuilt {
+        private final Music node;
+        private final boolean expanded;
+
+        private Unbuilt(Music node, boolean expanded) {
+            this.node = node;
+            this.expanded = expanded;
+        }
+    }
+
+    /** A pair of pieces of music waiting to be compared */
+    private static class Pair {
+        private final Music left;
+        private final Music right;
+
+        private Pair(Music left, Music right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    /** Something done with every piece of music a walk reaches, on the beat it is played */
+    public interface PieceVisitor {
+        /**
+         * @param piece a note, rest, chord, tuplet or other piece that isn't a Concat or Sequence, and
+         *              isn't a Repeat either when the walk unrolls repeats
+         * @param beat the beat the piece is played on
+         */
+        void visit(Music piece, double beat);
+    }
+
+    /**
+     * How far outside a window a piece is still played by playBetween, in beats: far more than rounding
+     * beats can add up to, and far less than any note lasts
+     */
+    static final double WINDOW_SLACK = 1e-6;
+
+    private MusicTraversal() {
+        throw new AssertionError("MusicTraversal is not instantiable");
+    }
+
+    /**
+     * Play a piece of music, scheduling exactly what its play method would, in the same order.
+     * @param music the piece to play
+     * @param player to play the piece on
+     * @param beat to start the piece on
+     * @param voice the voice the piece is sung in
+     */
+    public static void play(Music music, SequencePlayer player, double beat, Voice voice) {
+        forEachPiece(music, beat, (piece, pieceBeat) -> piece.play(player, pieceBeat, voice));
+    }
+
+    /**
+     * Visit every piece of a piece of music that isn't a Concat, Sequence or Repeat, in the order and
+     * on the beats play plays them; a piece in a repeat is visited once for every time it is played.
+     * @param music the piece to walk
+     * @param beat to start the piece on
+     * @param visitor called on every piece reached
+     */
+    public static void forEachPiece(Music music, double beat, PieceVisitor visitor) {
+        walk(music, beat, visitor, true, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Visit every piece of a piece of music that isn't a Concat or Sequence, in the order and on the
+     * beats play plays them; a repeat is visited once, as a whole, on the beat it starts.
+     * @param music the piece to walk
+     * @param beat to start the piece on
+     * @param visitor called on every piece reached
+     */
+    public static void forEachPart(Music music, double beat, PieceVisitor visitor) {
+        walk(music, beat, visitor, false, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Play the pieces of a piece of music that could schedule a note or an event on a beat b with
+     * fromBeat <= b < toBeat, skipping the rest without walking into them. Every note and event play
+     * would schedule in the window is scheduled, on the same beat and in the same order, but a piece
+     * partly in the window is played whole, so the player should drop what falls outside it.
+     * @param music the piece to play
+     * @param player to play the piece on
+     * @param beat to start the piece on
+     * @param voice the voice the piece is sung in
+     * @param fromBeat the first beat of the window
+     * @param toBeat the beat after the window
+     */
+    public static void playBetween(Music music, SequencePlayer player, double beat, Voice voice,
+            double fromBeat, double toBeat) {
+        walk(music, beat, (piece, pieceBeat) -> {
+            if(piece instanceof MusicView) {
+                ((MusicView) piece).playBetween(player, pieceBeat, voice, fromBeat, toBeat);
+            }
+            else {
+                piece.play(player, pieceBeat, voice);
+            }
+        }, true, fromBeat, toBeat);
+    }
+
+    /**
+     * @return true iff a piece played on beat could schedule something on a beat b with fromBeat <= b < toBeat,
+     *         give or take WINDOW_SLACK
+     */
+    private static boolean inWindow(Music piece, double beat, double fromBeat, double toBeat) {
+        return beat < toBeat + WINDOW_SLACK && beat + piece.duration() + WINDOW_SLACK >= fromBeat;
+    }
+
+    private static void walk(Music music, double beat, PieceVisitor visitor, boolean unrollRepeats,
+            double fromBeat, double toBeat) {
+        final Deque<Pending> unplayed = new ArrayDeque<>();
+        unplayed.push(new Pending(music, beat));
+        while(!unplayed.isEmpty()) {
+            final Pending next = unplayed.pop();
+            final Music piece = next.music;
+            if(!inWindow(piece, next.beat, fromBeat, toBeat)) {
+                continue;
+            }
+            if(piece instanceof Concat) {
+                final Concat concat = (Concat) piece;
+                unplayed.push(new Pending(concat.right(), next.beat+concat.left().duration()));
+                unplayed.push(new Pending(concat.left(), next.beat));
+            }
+            else if(piece instanceof Sequence) {
+                final Sequence sequence = (Sequence) piece;
+                final List<Music> parts = sequence.parts();
+                final int first = next.beat < fromBeat ? firstInWindow(sequence, next.beat, fromBeat) : 0;
+                int last = first;
+                while(last < parts.size() && next.beat+sequence.start(last) < toBeat + WINDOW_SLACK) {
+                    last++;
+                }
+                for(int i = last-1; i >= first; i--) {
+                    unplayed.push(new Pending(parts.get(i), next.beat+sequence.start(i)));
+                }
+            }
+            else if(unrollRepeats && piece instanceof Repeat) {
+                final Repeat repeat = (Repeat) piece;
+                final Music measures = repeat.measures();
+                // the beats are added up in the order Repeat always played them
+                final List<Pending> passes = new ArrayList<>();
+                double currentBeat = next.beat;
+                if(repeat.endings().size() == 0) {
+                    passes.add(new Pending(measures, currentBeat));
+                    currentBeat+=measures.duration();
+                    passes.add(new Pending(measures, currentBeat));
+                }
+                else {
+                    for(Music ending: repeat.endings()) {
+                        passes.add(new Pending(measures, currentBeat));
+                        currentBeat+=measures.duration();
+                        passes.add(new Pending(ending, currentBeat));
+                        currentBeat+=ending.duration();
+                    }
+                }
+                for(int i = passes.size()-1; i >= 0; i--) {
+                    unplayed.push(passes.get(i));
+                }
+            }
+            else {
+                visitor.visit(piece, next.beat);
+            }
+        }
+    }
+
+    /**
+     * @param sequence a sequence played on beat
+     * @param beat the beat it is played on
+     * @param fromBeat the first beat of a window
+     * @return the index of the first part of sequence that ends on or after fromBeat, give or take
+     *         WINDOW_SLACK; the number of parts if there is none
+     */
+    private static int firstInWindow(Sequence sequence, double beat, double fromBeat) {
+        final List<Music> parts = sequence.parts();
+        int low = 0;
+        int high = parts.size();
+        while(low < high) {
+            final int middle = (low + high) >>> 1;
+            if(beat+sequence.start(middle) + parts.get(middle).duration() + WINDOW_SLACK >= fromBeat) {
+                high = middle;
+            }
+            else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param music a piece of music
+     * @return the same string as the toString method of music
+     */
+    public static String toString(Music music) {
+        final StringBuilder out = new StringBuilder();
+        // pieces of music and literal text still to be written, next on top
+        final Deque<Object> unwritten = new ArrayDeque<>();
+        unwritten.push(music);
+        while(!unwritten.isEmpty()) {
+            final Object next = unwritten.pop();
+            if(next instanceof String) {
+                out.append((String) next);
+            }
+            else if(next instanceof Concat) {
+                unwritten.push(((Concat) next).right());
+                unwritten.push(((Concat) next).left());
+            }
+            else if(next instanceof Sequence) {
+                final List<Music> parts = ((Sequence) next).parts();
+                for(int i = parts.size()-1; i >= 0; i--) {
+                    unwritten.push(parts.get(i));
+                }
+            }
+            else if(next instanceof Repeat) {
+                final Repeat repeat = (Repeat) next;
+                final List<Music> endings = repeat.endings();
+                final List<Object> written = new ArrayList<>();
+                written.add("|:");
+                written.add(repeat.measures());
+                if(endings.size() == 0) {
+                    written.add(":|");
+                }
+                else {
+                    for(int i = 0; i < endings.size(); i++) {
+                        written.add("["+(i+1));
+                        written.add(endings.get(i));
+                        if(i != endings.size()-1) {
+                            written.add(":|");
+                        }
+                    }
+                }
+                for(int i = written.size()-1; i >= 0; i--) {
+                    unwritten.push(written.get(i));
+                }
+            }
+            else {
+                out.append(next.toString());
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Compare two pieces of music as their equals methods do. Chains of Concats and Sequences are
+     * compared by the pieces they play one after another, whatever shape the chain has, leaving out
+     * zero-length rests: a chain equals another chain, or a piece that isn't a chain, that plays
+     * equal pieces in the same order. So a chain equals the Sequence MusicOptimizer flattens it into,
+     * and the piece it leaves when only one is left. Every other kind of music is equal only to
+     * music of its own kind with equal parts.
+     * @param music a piece of music
+     * @param that any object
+     * @return true iff that is a piece of music structurally equal to music, as music.equals(that)
+     */
+    public static boolean equal(Music music, Object that) {
+        if(!(that instanceof Music)) {
+            return false;
+        }
+        final Deque<Pair> uncompared = new ArrayDeque<>();
+        uncompared.push(new Pair(music, (Music) that));
+        while(!uncompared.isEmpty()) {
+            final Pair next = uncompared.pop();
+            final Music left = next.left;
+            final Music right = next.right;
+            if(left == right) {
+                continue;
+            }
+            if(left.hashCode() != right.hashCode()) {
+                return false;
+            }
+            if(isChain(left) || isChain(right)) {
+                final List<Music> leftPieces = pieces(left);
+                final List<Music> rightPieces = pieces(right);
+                if(leftPieces.size() != rightPieces.size()) {
+                    return false;
+                }
+                for(int i = leftPieces.size()-1; i >= 0; i--) {
+                    uncompared.push(new Pair(leftPieces.get(i), rightPieces.get(i)));
+                }
+            }
+            else if(left instanceof Repeat) {
+                if(!(right instanceof Repeat)) {
+                    return false;
+                }
+                final List<Music> leftEndings = ((Repeat) left).endings();
+                final List<Music> rightEndings = ((Repeat) right).endings();
+                if(leftEndings.size() != rightEndings.size()) {
+                    return false;
+                }
+                for(int i = leftEndings.size()-1; i >= 0; i--) {
+                    uncompared.push(new Pair(leftEndings.get(i), rightEndings.get(i)));
+                }
+                uncompared.push(new Pair(((Repeat) left).measures(), ((Repeat) right).measures()));
+            }
+            else if(!left.equals(right)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param music any object
+     * @return true iff music is a Concat or a Sequence
+     */
+    static boolean isChain(Object music) {
+        return music instanceof Concat || music instanceof Sequence;
+    }
+
+    /**
+     * @param music a piece of music
+     * @return the pieces music plays one after another, in order: the pieces that aren't chains in
+     *         the chains of Concats and Sequences it is made of, or music itself if it isn't a chain,
+     *         leaving out zero-length rests
+     */
+    private static List<Music> pieces(Music music) {
+        final List<Music> pieces = new ArrayList<>();
+        // chains still to take apart and pieces still to add, next on top
+        final Deque<Music> untaken = new ArrayDeque<>();
+        untaken.push(music);
+        while(!untaken.isEmpty()) {
+            final Music next = untaken.pop();
+            if(next instanceof Concat) {
+                untaken.push(((Concat) next).right());
+                untaken.push(((Concat) next).left());
+            }
+            else if(next instanceof Sequence) {
+                final List<Music> parts = ((Sequence) next).parts();
+                for(int i = parts.size()-1; i >= 0; i--) {
+                    untaken.push(parts.get(i));
+                }
+            }
+            else if(!(next instanceof Rest && next.duration() == 0)) {
+                pieces.add(next);
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * Visit every node of a piece of music: the piece itself, then the parts of each node in order
+     * before the nodes after it, the same order a recursive walk would visit them in.
+     * @param music a piece of music
+     * @param visitor called on every node
+     */
+    public static void forEachNode(Music music, Consumer<Music> visitor) {
+        final Deque<Music> unvisited = new ArrayDeque<>();
+        unvisited.push(music);
+        while(!unvisited.isEmpty()) {
+            final Music node = unvisited.pop();
+            visitor.accept(node);
+            final List<Music> parts = parts(node);
+            for(int i = parts.size()-1; i >= 0; i--) {
+                unvisited.push(parts.get(i));
+            }
+        }
+    }
+
+    /**
+     * Rebuild a tree from the bottom up. Every node, once its parts are rebuilt, is replaced by a node
+     * of the same kind made of the rebuilt parts, or left as it is if none of its parts changed, and
+     * then by what rebuilder returns for that node.
+     * @param music the root of the tree
+     * @param rebuilder called on every node after its parts, the parts of a node in the order they are
+     *                  played; must return music equal to the node it is given
+     * @return what rebuilder returns for the rebuilt root
+     */
+    public static Music rebuild(Music music, UnaryOperator<Music> rebuilder) {
+        final Deque<Unbuilt> unvisited = new ArrayDeque<>();
+        // rebuilt parts of the nodes being rebuilt, last part on top
+        final Deque<Music> rebuilt = new ArrayDeque<>();
+        unvisited.push(new Unbuilt(music, false));
+        while(!unvisited.isEmpty()) {
+            final Unbuilt next = unvisited.pop();
+            final List<Music> parts = parts(next.node);
+            if(!next.expanded && !parts.isEmpty()) {
+                unvisited.push(new Unbuilt(next.node, true));
+                for(int i = parts.size()-1; i >= 0; i--) {
+                    unvisited.push(new Unbuilt(parts.get(i), false));
+                }
+                continue;
+            }
+            final List<Music> rebuiltParts = new ArrayList<>();
+            for(int i = 0; i < parts.size(); i++) {
+                rebuiltParts.add(rebuilt.pop());
+            }
+            Collections.reverse(rebuiltParts);
+            rebuilt.push(rebuilder.apply(withParts(next.node, parts, rebuiltParts)));
+        }
+        assert rebuilt.size() == 1;
+        return rebuilt.pop();
+    }
+
+    /**
+     * @param node a node
+     * @param parts the parts of node, as parts returns them
+     * @param newParts the parts to replace them with
+     * @return node itself if newParts are its parts already, otherwise a node of the same kind of newParts
+     */
+    private static Music withParts(Music node, List<Music> parts, List<Music> newParts) {
+        boolean same = true;
+        for(int i = 0; i < parts.size(); i++) {
+            same = same && parts.get(i) == newParts.get(i);
+        }
+        if(same) {
+            return node;
+        }
+        if(node instanceof Concat) {
+            return new Concat(newParts.get(0), newParts.get(1));
+        }
+        else if(node instanceof Sequence) {
+            return new Sequence(newParts);
+        }
+        else if(node instanceof Repeat) {
+            return new Repeat(newParts.get(0), newParts.subList(1, newParts.size()));
+        }
+        else if(node instanceof Chord) {
+            return new Chord(newParts, ((Chord) node).lyricIndex());
+        }
+        else if(node instanceof Tuplet) {
+            return new Tuplet(((Tuplet) node).tupletNumber(), newParts);
+        }
+        else if(node instanceof MusicView) {
+            return new MusicView(newParts.get(0), ((MusicView) node).transform());
+        }
+        throw new IllegalArgumentException("unknown kind of music: "+node.getClass());
+    }
+
+    /**
+     * @return the parts of a node in the order they are played, empty for a note or a rest; the music of a view
+     */
+    static List<Music> parts(Music node) {
+        final List<Music> parts = new ArrayList<>();
+        if(node instanceof Concat) {
+            parts.add(((Concat) node).left());
+            parts.add(((Concat) node).right());
+        }
+        else if(node instanceof Sequence) {
+            parts.addAll(((Sequence) node).parts());
+        }
+        else if(node instanceof Repeat) {
+            parts.add(((Repeat) node).measures());
+            parts.addAll(((Repeat) node).endings());
+        }
+        else if(node instanceof Chord) {
+            parts.addAll(((Chord) node).notes());
+        }
+        else if(node instanceof Tuplet) {
+            parts.addAll(((Tuplet) node).notes());
+        }
+        else if(node instanceof MusicView) {
+            parts.add(((MusicView) node).music());
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,147 @@
+package karaoke;
+
+import java.util.function.Consumer;
+
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+import karaoke.sound.SequencePlayer;
+
+/**
+ * A MusicView is a piece of music played with a Transform applied: in another key, slower or faster,
+ * or on another instrument. The view shares the music it transforms instead of copying it, and applies
+ * the transform to each note and lyric event as the music is played.
+ */
+public class MusicView implements Music {
+
+    private final Music music;
+    private final Transform transform;
+    private final double duration;
+    private final int hash;
+
+    // AF(music, transform, duration, hash) = music played with transform applied, time stretched from
+    //                                        the beat the view starts on
+    //
+    // Rep Invariant
+    // music and transform are not null, duration == transform.beats(music.duration())
+    // hash == 31 * music.hashCode() + transform.hashCode()
+    //
+    // Safety from Rep Exposure
+    // All fields are private, final and immutable
+    //
+    // Thread Safety Argument
+    // - Player Wrapper Class that plays music is a threadsafe datatype
+    // - Player Class is the only class that is called upon from multiple threads
+
+    /**
+     * A SequencePlayer that transforms what a view's music schedules on it before passing it on.
+     */
+    private static class TransformingPlayer implements SequencePlayer {
+        private final SequencePlayer player;
+        private final Transform transform;
+        private final double origin;
+
+        private TransformingPlayer(SequencePlayer player, Transform transform, double origin) {
+            this.player = player;
+            this.transform = transform;
+            this.origin = origin;
+        }
+
+        @Override
+        public void addNote(Instrument instr, Pitch pitch, double startBeat, double numBeats) {
+            player.addNote(transform.instrument(instr), transform.pitch(pitch), transform.beat(origin, startBeat),
+                    transform.beats(numBeats));
+        }
+
+        @Override
+        public void addEvent(double atBeat, Consumer<Double> callback) {
+            player.addEvent(transform.beat(origin, atBeat), callback);
+        }
+
+        @Override
+        public void play() {
+            player.play();
+        }
+    }
+
+    /**
+     * Creates a view of music with transform applied
+     * @param music the music to transform
+     * @param transform the transform to apply to it
+     */
+    public MusicView(Music music, Transform transform) {
+        this.music = music;
+        this.transform = transform;
+        this.duration = transform.beats(music.duration());
+        this.hash = 31 * music.hashCode() + transform.hashCode();
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert music != null;
+        assert transform != null;
+    }
+
+    /**
+     * @return the music this view transforms
+     */
+    public Music music() {
+        return this.music;
+    }
+
+    /**
+     * @return the transform this view applies
+     */
+    public Transform transform() {
+        return this.transform;
+    }
+
+    @Override
+    public double duration() {
+        return this.duration;
+    }
+
+    @Override
+    public void play(SequencePlayer player, double beat, Voice voice) {
+        music.play(new TransformingPlayer(player, transform, beat), beat, voice);
+    }
+
+    /**
+     * Play the part of this view in a window of beats, as MusicTraversal.playBetween plays other music.
+     * The window is mapped back onto the beats of the music as written, so only the part of it that
+     * plays in the window is walked.
+     * @param player to play the view on
+     * @param beat to start the view on
+     * @param voice the voice the view is sung in
+     * @param fromBeat the first beat of the window
+     * @param toBeat the beat after the window
+     */
+    void playBetween(SequencePlayer player, double beat, Voice voice, double fromBeat, double toBeat) {
+        MusicTraversal.playBetween(music, new TransformingPlayer(player, transform, beat), beat, voice,
+                transform.writtenBeat(beat, fromBeat), transform.writtenBeat(beat, toBeat));
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if(this == that) {
+            return true;
+        }
+        if(MusicTraversal.isChain(that)) {
+            return MusicTraversal.equal(this, that);
+        }
+        if(!(that instanceof MusicView) || ((MusicView)that).hash != hash) {
+            return false;
+        }
+        final MusicView other = (MusicView) that;
+        return transform.equals(other.transform) && music.equals(other.music);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        return "{" + transform + ": " + music + "}";
+    }
+}
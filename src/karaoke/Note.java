@@ -13,14 +13,16 @@ public class Note implements Music{
     private final Pitch pitch;
     private final Instrument instrument;
     private final int lyricIndex;
+    private final int hash;
     
-    // AF(duration, pitch, instrument, lyricIndex) = a Note of duration <duration> with pitch <pitch>
+    // AF(duration, pitch, instrument, lyricIndex, hash) = a Note of duration <duration> with pitch <pitch>
     //                                              played on an instrument <instrument> and associated
     //                                              with a lyric that is at location <lyricIndex> in a line
     //                                              of lyrics.
     
     // Rep Invariant
     // duration and lyricIndex are non-negative
+    // hash is the hash code of the other fields
     
     // Safety from Rep Exposure
     // All fields are private and immutable
@@ -42,6 +44,7 @@ public class Note implements Music{
         this.pitch = pitch;
         this.instrument = instrument;
         this.lyricIndex = lyricIndex;
+        this.hash = instrument.hashCode() + ((Integer)lyricIndex).hashCode() + ((Double)duration).hashCode() + pitch.hashCode();
         checkRep();
     }
     
@@ -58,6 +61,27 @@ public class Note implements Music{
         return this.duration;
     }
 
+    /**
+     * @return the pitch of the note
+     */
+    public Pitch pitch() {
+        return this.pitch;
+    }
+    
+    /**
+     * @return the instrument the note is played on
+     */
+    public Instrument instrument() {
+        return this.instrument;
+    }
+    
+    /**
+     * @return the index of the syllable sung on this note
+     */
+    public int lyricIndex() {
+        return this.lyricIndex;
+    }
+
     @Override
     public void play(SequencePlayer player, double beat, Voice myVoice) {
         player.addEvent(beat, (endBeat) -> myVoice.notifyAll(this.lyricIndex));
@@ -67,12 +91,13 @@ public class Note implements Music{
     @Override
     public boolean equals(Object that) {
     	return that instanceof Note && ((Note)that).duration == duration && ((Note)that).pitch.equals(pitch)
-    			&& ((Note)that).instrument.equals(instrument) && ((Note)that).lyricIndex == lyricIndex;
+    			&& ((Note)that).instrument.equals(instrument) && ((Note)that).lyricIndex == lyricIndex
+    			|| MusicTraversal.isChain(that) && MusicTraversal.equal(this, that);
     }
     
     @Override
     public int hashCode() {
-    	return instrument.hashCode() + ((Integer)lyricIndex).hashCode() + ((Double)duration).hashCode() + pitch.hashCode();
+    	return this.hash;
     }
     
     @Override
@@ -1,6 +1,7 @@
 package karaoke;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import karaoke.sound.SequencePlayer;
@@ -9,18 +10,22 @@ public class Repeat implements Music{
     
     private final Music measures;
     private final List<Music> endings;
+    private final double duration;
+    private final int hash;
     
     // Repeat(Measures, Endings): A repeat with a main body <Measures> which is repeated every time, 
     //                            and has endings <endings> where the 1st ending is at index 0 of <endings>
     //                            and the following ending occur in order. With no endings, the repeat only happens twice
     //                            otherwise it repeats once for every ending
     //
+    // duration is the length of playing the repeat through, and hash == measures.hashCode() + endings.hashCode()
+    //
     // RI() = True
     //
     // Safety from Rep Exposure:
     //     - Client has no reference to any internal variables
     //     - All internal variables are private and final
-    //     - Never returns any of the internal rep variables
+    //     - Only returns immutable Music or unmodifiable views of endings
     // Thread Safety Argument
     // - Player Wrapper Class that plays music is a threadsafe datatype
     // - Player Class is the only class that is called upon from multiple threads
@@ -33,6 +38,19 @@ public class Repeat implements Music{
     public Repeat(Music measures, List<Music> endings) {
         this.measures = measures;
         this.endings = new ArrayList<>(endings);
+        double totalDuration = 0;
+        // Automatically set duration to playing the measure twice 
+        if(this.endings.size() ==0 ) {
+            totalDuration = 2*measures.duration();
+        }
+        else {
+            // Set duration to length of measure with all different endings
+            for(Music ending: this.endings) {
+                totalDuration += measures.duration()+ending.duration();
+            }
+        }
+        this.duration = totalDuration;
+        this.hash = measures.hashCode() + this.endings.hashCode();
         checkRep();
     }
     
@@ -41,69 +59,44 @@ public class Repeat implements Music{
         assert endings != null;
     }
     
+    /**
+     * @return the main body of the repeat
+     */
+    public Music measures() {
+        return this.measures;
+    }
+    
+    /**
+     * @return the endings of the repeat in order, empty if the body is simply played twice
+     */
+    public List<Music> endings() {
+        return Collections.unmodifiableList(endings);
+    }
+    
     @Override
     public double duration() {
-        double totalDuration = 0;
-        // Automatically set duration to playing the measure twice 
-        if(endings.size() ==0 ) {
-            totalDuration = 2*measures.duration();
-        }
-        else {
-            // Set duration to length of measure with all different endings
-            for(Music ending: endings) {
-                totalDuration += measures.duration()+ending.duration();
-            }
-        }
-        return totalDuration;
+        return this.duration;
     }
     
     @Override
     public void play(SequencePlayer player, double beat, Voice voice) {
-        double currentBeat = beat;
-        // Play measure twice 
-        if(endings.size() ==0 ) {
-            measures.play(player, currentBeat, voice);
-            currentBeat+=measures.duration();
-            measures.play(player, currentBeat, voice);
-        }
-        
-        else {
-            // Play meausre with each ending 
-            for(Music ending: endings) {
-                measures.play(player, currentBeat, voice);
-                currentBeat+=measures.duration();
-                ending.play(player, currentBeat, voice);
-                currentBeat+=ending.duration();
-            }
-        }
+        MusicTraversal.play(this, player, beat, voice);
     }
     
     @Override
     public boolean equals(Object that) {
-    	return that instanceof Repeat && ((Repeat)that).measures.equals(measures) && ((Repeat)that).endings.equals(endings);
+    	return this == that || (that instanceof Repeat && ((Repeat)that).hash == hash || MusicTraversal.isChain(that))
+    	        && MusicTraversal.equal(this, that);
     }
     
     @Override
     public int hashCode() {
-    	return measures.hashCode() + endings.hashCode();
+    	return this.hash;
     }
     
     @Override 
     public String toString() {
-        String outString ="|:";
-        outString+=measures.toString();
-        if(endings.size() ==0 ) { 
-            outString+=":|";
-        }
-        else {
-            for(int i = 0; i < endings.size(); i++) {
-                outString+="["+(i+1)+endings.get(i).toString();
-                if(i != endings.size() -1) {
-                    outString+=":|";
-                }
-            }
-        }
-        return outString;
+        return MusicTraversal.toString(this);
     }
     
 }
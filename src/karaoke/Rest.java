@@ -45,7 +45,13 @@ public class Rest implements Music {
     
     @Override
     public boolean equals(Object that) {
-    	return that instanceof Rest && ((Rest)that).duration == duration;
+    	return that instanceof Rest && ((Rest)that).duration == duration
+    	        || MusicTraversal.isChain(that) && MusicTraversal.equal(this, that);
+    }
+    
+    @Override
+    public int hashCode() {
+        return ((Double)duration).hashCode();
     }
     
     @Override
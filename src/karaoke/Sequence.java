@@ -0,0 +1,108 @@
+package karaoke;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import karaoke.sound.SequencePlayer;
+
+/**
+ * A Sequence is any number of pieces of music played one immediately after another.
+ * It plays like a left-deep chain of Concats of the same pieces, beat for beat, while
+ * holding them in one flat array, and is equal to any chain of Concats and Sequences that plays
+ * equal pieces in the same order, as MusicTraversal.equal compares them.
+ */
+public class Sequence implements Music {
+
+    private final Music[] parts;
+    private final double[] starts;
+    private final double duration;
+    private final int hash;
+
+    // AF(parts, starts, duration, hash) = the pieces parts[0], parts[1], ... played in order, where
+    //                                     parts[i] starts <starts[i]> beats after the sequence starts
+
+    // Rep Invariant
+    // parts and starts have the same length and parts contains no nulls
+    // starts[0] == 0 and starts[i+1] == starts[i] + parts[i].duration(), added up in that order so that
+    //      every piece starts on exactly the beat it would in a left-deep chain of Concats
+    // duration == starts[n-1] + parts[n-1].duration(), or 0 if there are no parts
+    // hash is the sum of the hashCodes of parts, as a chain of Concats of them adds up its hash
+
+    // Safety from Rep Exposure
+    // parts and starts are private, parts is a copy of the list given,
+    // and only an unmodifiable view of parts is returned to the client
+
+    // Thread Safety Argument
+    // - Player Wrapper Class that plays music is a threadsafe datatype
+    // - Player Class is the only class that is called upon from multiple threads
+
+    /**
+     * Creates a new Sequence of the given pieces
+     * @param parts the pieces to play, in order
+     */
+    public Sequence(List<Music> parts) {
+        this.parts = parts.toArray(new Music[0]);
+        this.starts = new double[this.parts.length];
+        double beat = 0;
+        for(int i = 0; i < this.parts.length; i++) {
+            starts[i] = beat;
+            beat += this.parts[i].duration();
+        }
+        this.duration = beat;
+        int hash = 0;
+        for(Music part: this.parts) {
+            hash += part.hashCode();
+        }
+        this.hash = hash;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert parts.length == starts.length;
+        for(Music part: parts) {
+            assert part != null;
+        }
+    }
+
+    /**
+     * @return the pieces of this sequence in the order they are played
+     */
+    public List<Music> parts() {
+        return Collections.unmodifiableList(Arrays.asList(parts));
+    }
+
+    /**
+     * @param index the index of a piece of this sequence
+     * @return the beat the piece starts on, counting from the start of the sequence
+     */
+    public double start(int index) {
+        return starts[index];
+    }
+
+    @Override
+    public double duration() {
+        return this.duration;
+    }
+
+    @Override
+    public void play(SequencePlayer player, double beat, Voice voice) {
+        MusicTraversal.play(this, player, beat, voice);
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return this == that || that instanceof Music && MusicTraversal.equal(this, that);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        return MusicTraversal.toString(this);
+    }
+
+}
@@ -0,0 +1,503 @@
+package karaoke;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import karaoke.sound.Instrument;
+import karaoke.sound.MidiSequencePlayer;
+import karaoke.sound.Pitch;
+import karaoke.sound.SequencePlayer;
+import karaoke.sound.TickSequencePlayer;
+
+/**
+ * A Composition compiled into flat arrays of the notes each voice plays, for playing and analyzing
+ * it over and over without walking its Music trees.
+ *
+ * Every note of a voice is one row of its Track: the tick it starts on, how many ticks it lasts, its
+ * MIDI note number, its instrument and the index of the syllable sung on it. Repeats and tuplets are
+ * unrolled into absolute ticks, the measures of a repeat compiled once and copied in for each pass,
+ * and the rows are sorted by start tick, notes that start together staying in the order the voice
+ * plays them. Beats are turned into ticks the way MidiSequencePlayer
+ * rounds them, so a timeline played on a MidiSequencePlayer with the same ticks per beat schedules
+ * exactly the notes and lyric events that playing the composition would.
+ */
+public class Timeline {
+
+    /** Syllable index of a note that has no syllable of its own, like every note of a chord but the first */
+    public static final int NO_LYRIC = -1;
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    /**
+     * The notes of one voice, in columns indexed by row.
+     */
+    public static class Track {
+        private final String name;
+        private final int[] startTicks;
+        private final int[] durationTicks;
+        private final int[] midiNotes;
+        private final byte[] instruments;
+        private final int[] lyricIndices;
+        private final int endTick;
+
+        // AF(name, startTicks, durationTicks, midiNotes, instruments, lyricIndices, endTick) =
+        //      the voice <name>, whose i-th note starts on tick startTicks[i], lasts durationTicks[i] ticks,
+        //      plays MIDI note midiNotes[i] on the instrument with ordinal instruments[i] and has the syllable
+        //      lyricIndices[i] sung on it, or none if NO_LYRIC. The voice ends on tick endTick
+        //
+        // Rep Invariant
+        // - the arrays all have the same length
+        // - startTicks is sorted, and startTicks, durationTicks and endTick are non-negative
+        // - lyricIndices are non-negative or NO_LYRIC
+        //
+        // Safety from Rep Exposure
+        // - All fields are private and final, and the arrays are never handed out, only their elements
+        //
+        // Thread Safety Argument
+        // - Immutable
+
+        private Track(String name, int[] startTicks, int[] durationTicks, int[] midiNotes, byte[] instruments,
+                int[] lyricIndices, int endTick) {
+            this.name = name;
+            this.startTicks = startTicks;
+            this.durationTicks = durationTicks;
+            this.midiNotes = midiNotes;
+            this.instruments = instruments;
+            this.lyricIndices = lyricIndices;
+            this.endTick = endTick;
+            checkRep();
+        }
+
+        private void checkRep() {
+            final int size = startTicks.length;
+            assert durationTicks.length == size && midiNotes.length == size;
+            assert instruments.length == size && lyricIndices.length == size;
+            for(int i = 0; i < size; i++) {
+                assert startTicks[i] >= 0 && durationTicks[i] >= 0;
+                assert i == 0 || startTicks[i-1] <= startTicks[i];
+                assert lyricIndices[i] >= 0 || lyricIndices[i] == NO_LYRIC;
+            }
+            assert endTick >= 0;
+        }
+
+        /**
+         * @return the name of the voice
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return the number of notes the voice plays, counting every time a repeated note is played
+         */
+        public int size() {
+            return startTicks.length;
+        }
+
+        /**
+         * @param row a row, 0 <= row < size()
+         * @return the tick the note of the row starts on
+         */
+        public int startTick(int row) {
+            return startTicks[row];
+        }
+
+        /**
+         * @param row a row, 0 <= row < size()
+         * @return the number of ticks the note of the row lasts
+         */
+        public int durationTicks(int row) {
+            return durationTicks[row];
+        }
+
+        /**
+         * @param row a row, 0 <= row < size()
+         * @return the MIDI note number of the note of the row, 60 for middle C
+         */
+        public int midiNote(int row) {
+            return midiNotes[row];
+        }
+
+        /**
+         * @param row a row, 0 <= row < size()
+         * @return the instrument the note of the row is played on
+         */
+        public Instrument instrument(int row) {
+            return INSTRUMENTS[instruments[row]];
+        }
+
+        /**
+         * @param row a row, 0 <= row < size()
+         * @return the index of the syllable sung on the note of the row, or NO_LYRIC
+         */
+        public int lyricIndex(int row) {
+            return lyricIndices[row];
+        }
+
+        /**
+         * @return the tick the voice ends on
+         */
+        public int endTick() {
+            return endTick;
+        }
+    }
+
+    /**
+     * Rows of a track being compiled, in the order the voice plays them.
+     *
+     * The measures of a repeat are compiled once, into a block of rows starting on tick 0, and the
+     * block is copied in at a tick offset for every pass instead of walking the measures again. That
+     * rounds every note exactly as walking would only when no beat involved needs rounding, so a
+     * block is only replayed when every duration in it and the beat of the pass are multiples of
+     * 2^-GRID_BITS, where sums of beats are exact, and the pass starts on a whole tick. Other repeats,
+     * like ones holding triplets, are walked pass by pass.
+     */
+    private static class TrackBuilder {
+        private static final int GRID_BITS = 20;
+
+        /** A view being added, and the views around it */
+        private static class Mapping {
+            private final double origin;
+            private final Transform transform;
+            private final Mapping outer;
+
+            private Mapping(double origin, Transform transform, Mapping outer) {
+                this.origin = origin;
+                this.transform = transform;
+                this.outer = outer;
+            }
+        }
+
+        private final int ticksPerBeat;
+        private final Map<Music, TrackBuilder> blocks;
+        private Mapping views = null;
+        private boolean exact = true;
+        private int size = 0;
+        private int[] startTicks = new int[16];
+        private int[] durationTicks = new int[16];
+        private int[] midiNotes = new int[16];
+        private byte[] instruments = new byte[16];
+        private int[] lyricIndices = new int[16];
+
+        /**
+         * @param ticksPerBeat ticks per beat to round to
+         * @param blocks compiled measures of the repeats met so far, shared by the builders of one voice
+         */
+        private TrackBuilder(int ticksPerBeat, Map<Music, TrackBuilder> blocks) {
+            this.ticksPerBeat = ticksPerBeat;
+            this.blocks = blocks;
+        }
+
+        /**
+         * @return true iff beat is a multiple of 2^-GRID_BITS, so adding it to others like it is exact
+         */
+        private static boolean onGrid(double beat) {
+            final double scaled = Math.scalb(beat, GRID_BITS);
+            return scaled == Math.rint(scaled);
+        }
+
+        /**
+         * Add the rows of a piece of music.
+         * @param piece the piece
+         * @param beat the beat the piece is played on
+         * @param sung true if the piece is sung in the voice, false if it is part of a chord
+         */
+        private void add(Music piece, double beat, boolean sung) {
+            exact = exact && onGrid(beat) && onGrid(piece.duration());
+            if(piece instanceof Note) {
+                final Note note = (Note) piece;
+                addRow(note, beat, sung ? note.lyricIndex() : NO_LYRIC);
+            }
+            else if(piece instanceof Chord) {
+                final Chord chord = (Chord) piece;
+                final int first = size;
+                for(Music note: chord.notes()) {
+                    add(note, beat, false);
+                }
+                // the chord's syllable is sung when its notes start, so it goes on the first of them
+                if(sung && size > first) {
+                    lyricIndices[first] = chord.lyricIndex();
+                }
+            }
+            else if(piece instanceof Tuplet) {
+                double currentBeat = beat;
+                for(Music note: ((Tuplet) piece).notes()) {
+                    add(note, currentBeat, sung);
+                    currentBeat+=note.duration();
+                }
+            }
+            else if(piece instanceof Repeat) {
+                addRepeat((Repeat) piece, beat, sung);
+            }
+            else if(piece instanceof MusicView) {
+                final MusicView view = (MusicView) piece;
+                // stretched beats aren't the same wherever a block lands, so blocks holding them are walked
+                exact = exact && view.transform().timeScale() == 1;
+                views = new Mapping(beat, view.transform(), views);
+                add(view.music(), beat, sung);
+                views = views.outer;
+            }
+            else if(piece instanceof Concat || piece instanceof Sequence) {
+                MusicTraversal.forEachPart(piece, beat, (part, partBeat) -> add(part, partBeat, sung));
+            }
+            else if(!(piece instanceof Rest)) {
+                throw new IllegalArgumentException("unknown kind of music: "+piece.getClass());
+            }
+        }
+
+        private void addRepeat(Repeat repeat, double beat, boolean sung) {
+            final Music measures = repeat.measures();
+            // the beats are added up in the order Repeat.play adds them
+            double currentBeat = beat;
+            if(repeat.endings().size() == 0) {
+                addMeasures(measures, currentBeat, sung);
+                currentBeat+=measures.duration();
+                addMeasures(measures, currentBeat, sung);
+            }
+            else {
+                for(Music ending: repeat.endings()) {
+                    addMeasures(measures, currentBeat, sung);
+                    currentBeat+=measures.duration();
+                    add(ending, currentBeat, sung);
+                    currentBeat+=ending.duration();
+                }
+            }
+        }
+
+        /**
+         * Add one pass of the measures of a repeat, replaying their block if that rounds exactly as walking them.
+         */
+        private void addMeasures(Music measures, double beat, boolean sung) {
+            final double startTick = beat * ticksPerBeat;
+            if(!sung || views != null || !onGrid(beat) || startTick != Math.rint(startTick)) {
+                add(measures, beat, sung);
+                return;
+            }
+            TrackBuilder block = blocks.get(measures);
+            if(block == null) {
+                block = new TrackBuilder(ticksPerBeat, blocks);
+                block.add(measures, 0, true);
+                blocks.put(measures, block);
+            }
+            if(!block.exact) {
+                add(measures, beat, sung);
+                return;
+            }
+            exact = exact && onGrid(measures.duration());
+            ensureCapacity(size + block.size);
+            final int offset = (int) startTick;
+            for(int row = 0; row < block.size; row++) {
+                startTicks[size] = block.startTicks[row] + offset;
+                durationTicks[size] = block.durationTicks[row];
+                midiNotes[size] = block.midiNotes[row];
+                instruments[size] = block.instruments[row];
+                lyricIndices[size] = block.lyricIndices[row];
+                size++;
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if(capacity <= startTicks.length) {
+                return;
+            }
+            final int grown = Math.max(capacity, 2 * startTicks.length);
+            startTicks = Arrays.copyOf(startTicks, grown);
+            durationTicks = Arrays.copyOf(durationTicks, grown);
+            midiNotes = Arrays.copyOf(midiNotes, grown);
+            instruments = Arrays.copyOf(instruments, grown);
+            lyricIndices = Arrays.copyOf(lyricIndices, grown);
+        }
+
+        private void addRow(Note note, double beat, int lyricIndex) {
+            ensureCapacity(size + 1);
+            // transformed by the views around the note from the innermost out, as playing them does
+            double start = beat;
+            double duration = note.duration();
+            Pitch pitch = note.pitch();
+            Instrument instrument = note.instrument();
+            for(Mapping view = views; view != null; view = view.outer) {
+                start = view.transform.beat(view.origin, start);
+                duration = view.transform.beats(duration);
+                pitch = view.transform.pitch(pitch);
+                instrument = view.transform.instrument(instrument);
+            }
+            // rounded exactly as MidiSequencePlayer.addNote rounds them
+            final int startTick = (int) (start * ticksPerBeat);
+            final int endTick = (int) ((start + duration) * ticksPerBeat);
+            startTicks[size] = startTick;
+            durationTicks[size] = endTick - startTick;
+            midiNotes[size] = MidiSequencePlayer.getMidiNote(pitch);
+            instruments[size] = (byte) instrument.ordinal();
+            lyricIndices[size] = lyricIndex;
+            size++;
+        }
+
+        /**
+         * @return the track of the rows added, sorted by start tick
+         */
+        private Track build(String name, double duration) {
+            // sort by start tick, then by the order the rows were added in
+            final long[] order = new long[size];
+            for(int row = 0; row < size; row++) {
+                order[row] = (long) startTicks[row] << Integer.SIZE | row;
+            }
+            Arrays.sort(order);
+            final int[] sortedStarts = new int[size];
+            final int[] sortedDurations = new int[size];
+            final int[] sortedNotes = new int[size];
+            final byte[] sortedInstruments = new byte[size];
+            final int[] sortedLyrics = new int[size];
+            for(int i = 0; i < size; i++) {
+                final int row = (int) order[i];
+                sortedStarts[i] = startTicks[row];
+                sortedDurations[i] = durationTicks[row];
+                sortedNotes[i] = midiNotes[row];
+                sortedInstruments[i] = instruments[row];
+                sortedLyrics[i] = lyricIndices[row];
+            }
+            return new Track(name, sortedStarts, sortedDurations, sortedNotes, sortedInstruments, sortedLyrics,
+                    (int) (duration * ticksPerBeat));
+        }
+    }
+
+    private final int ticksPerBeat;
+    private final Map<String, Track> tracks;
+
+    // Abstraction Function
+    // AF(ticksPerBeat, tracks) = a composition compiled at ticksPerBeat ticks per beat, whose voice
+    //                            named v plays the notes of tracks.get(v)
+    //
+    // Rep Invariant
+    // - ticksPerBeat is positive, and every track is the value of its own name
+    //
+    // Safety from Rep Exposure
+    // - All fields are private and final, tracks is never handed out and Tracks are immutable
+    //
+    // Thread Safety Argument
+    // - Immutable; play only reads it
+
+    private Timeline(int ticksPerBeat, Map<String, Track> tracks) {
+        this.ticksPerBeat = ticksPerBeat;
+        this.tracks = tracks;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert ticksPerBeat > 0;
+        for(Map.Entry<String, Track> track: tracks.entrySet()) {
+            assert track.getKey().equals(track.getValue().name());
+        }
+    }
+
+    /**
+     * Compile the voices of a composition, building any voice that is not built yet.
+     * @param composition the composition to compile
+     * @param ticksPerBeat the number of ticks per beat to round the start and end of every note to, positive
+     * @return the timeline of the composition
+     */
+    public static Timeline compile(Composition composition, int ticksPerBeat) {
+        final Map<String, Track> tracks = new TreeMap<>();
+        for(Map.Entry<String, Voice> voice: composition.voices().entrySet()) {
+            final Music music = voice.getValue().music();
+            final TrackBuilder builder = new TrackBuilder(ticksPerBeat, new IdentityHashMap<>());
+            builder.add(music, 0, true);
+            tracks.put(voice.getKey(), builder.build(voice.getKey(), music.duration()));
+        }
+        return new Timeline(ticksPerBeat, tracks);
+    }
+
+    /**
+     * @return the number of ticks per beat the timeline was compiled at
+     */
+    public int ticksPerBeat() {
+        return ticksPerBeat;
+    }
+
+    /**
+     * @return the names of the voices of the timeline
+     */
+    public Set<String> voices() {
+        return Collections.unmodifiableSet(tracks.keySet());
+    }
+
+    /**
+     * @param voice the name of a voice of the timeline
+     * @return the notes of the voice
+     */
+    public Track track(String voice) {
+        if(!tracks.containsKey(voice)) {
+            throw new IllegalArgumentException("no voice named "+voice);
+        }
+        return tracks.get(voice);
+    }
+
+    /**
+     * Schedule the timeline on a player, notifying the lyric listeners of the composition it was
+     * compiled from as each syllable is sung and when each voice ends, as playing the composition does.
+     * A TickSequencePlayer with the same ticks per beat is given the ticks as they are; any other player
+     * is given them as beats, so notes start on the beats they were rounded to.
+     * @param player to play the timeline on
+     * @param composition the composition the timeline was compiled from
+     */
+    public void play(SequencePlayer player, Composition composition) {
+        final boolean inTicks = player instanceof TickSequencePlayer
+                && ((TickSequencePlayer) player).ticksPerBeat() == ticksPerBeat;
+        for(Map.Entry<String, Voice> entry: composition.voices().entrySet()) {
+            final Track track = tracks.get(entry.getKey());
+            if(track == null) {
+                continue;
+            }
+            final Voice voice = entry.getValue();
+            if(inTicks) {
+                playTicks(track, (TickSequencePlayer) player, voice);
+            }
+            else {
+                playBeats(track, player, voice);
+            }
+        }
+    }
+
+    /**
+     * @return a source of the callbacks that sing each syllable of voice, one per syllable however
+     *         often it is sung, like the syllables of repeated measures
+     */
+    private static Function<Integer, Consumer<Double>> singers(Voice voice) {
+        final Map<Integer, Consumer<Double>> singers = new HashMap<>();
+        return lyricIndex -> singers.computeIfAbsent(lyricIndex, index -> beat -> voice.notifyAll(index));
+    }
+
+    private static void playTicks(Track track, TickSequencePlayer player, Voice voice) {
+        final Function<Integer, Consumer<Double>> singers = singers(voice);
+        for(int row = 0; row < track.size(); row++) {
+            final int lyricIndex = track.lyricIndices[row];
+            if(lyricIndex != NO_LYRIC) {
+                player.addEventAtTick(track.startTicks[row], singers.apply(lyricIndex));
+            }
+            player.addNoteAtTick(track.instrument(row), track.midiNotes[row], track.startTicks[row],
+                    track.startTicks[row] + track.durationTicks[row]);
+        }
+        player.addEventAtTick(track.endTick, beat -> voice.notifyEnd());
+    }
+
+    private void playBeats(Track track, SequencePlayer player, Voice voice) {
+        final double beatsPerTick = 1.0 / ticksPerBeat;
+        final Function<Integer, Consumer<Double>> singers = singers(voice);
+        for(int row = 0; row < track.size(); row++) {
+            final int lyricIndex = track.lyricIndices[row];
+            final double startBeat = track.startTicks[row] * beatsPerTick;
+            if(lyricIndex != NO_LYRIC) {
+                player.addEvent(startBeat, singers.apply(lyricIndex));
+            }
+            final Pitch pitch = Pitch.MIDDLE_C.transpose(track.midiNotes[row] - MidiSequencePlayer.MIDI_NOTE_MIDDLE_C);
+            player.addNote(track.instrument(row), pitch, startBeat, track.durationTicks[row] * beatsPerTick);
+        }
+        player.addEvent(track.endTick * beatsPerTick, beat -> voice.notifyEnd());
+    }
+}
@@ -0,0 +1,220 @@
+package karaoke;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded, least recently used cache of compiled Timelines, keyed by the music of every voice of a
+ * composition and the ticks per beat it is compiled at.
+ *
+ * Copies of a composition share its music, and views of it made by Composition.transformed are equal
+ * whenever they view the same music with the same Transform, so every session playing a score in the
+ * same key and at the same speed shares one compiled timeline, however many copies of the score there are.
+ * Finding an entry compares music that is usually the very same objects, which takes time proportional
+ * to the number of voices.
+ */
+public class TimelineCache {
+
+    /** Default maximum number of cached Timelines */
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+    /** Default maximum estimated memory used by the cached Timelines, in bytes */
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    // a row of a track is four ints and a byte
+    private static final long BYTES_PER_ROW = 17;
+    private static final long BYTES_PER_ENTRY = 512;
+
+    private static final TimelineCache SHARED = new TimelineCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+
+    /** What a Timeline is compiled from */
+    private static class Key {
+        private final Map<String, Music> music;
+        private final int ticksPerBeat;
+
+        private Key(Composition composition, int ticksPerBeat) {
+            this.music = new HashMap<>();
+            for(Map.Entry<String, Voice> voice: composition.voices().entrySet()) {
+                music.put(voice.getKey(), voice.getValue().music());
+            }
+            this.ticksPerBeat = ticksPerBeat;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            return that instanceof Key && ((Key) that).ticksPerBeat == ticksPerBeat && ((Key) that).music.equals(music);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(music, ticksPerBeat);
+        }
+    }
+
+    /** A cached Timeline and its estimated size */
+    private static class Entry {
+        private final Timeline timeline;
+        private final long bytes;
+
+        private Entry(Timeline timeline) {
+            this.timeline = timeline;
+            long rows = 0;
+            for(String voice: timeline.voices()) {
+                rows += timeline.track(voice).size();
+            }
+            this.bytes = BYTES_PER_ENTRY + BYTES_PER_ROW * rows;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Map<Key, Entry> entries;
+    private long estimatedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Abstraction Function
+    // AF(maxEntries, maxBytes, entries, estimatedBytes, hits, misses, evictions) =
+    //      a cache of the Timelines compiled from the music of compositions, where entries maps the music
+    //      and ticks per beat of each to its Timeline and estimated size, from least to most recently used.
+    //      It holds at most maxEntries Timelines of at most maxBytes estimated bytes in total, which is
+    //      estimatedBytes now. Lookups found a cached Timeline hits times and had to compile misses times,
+    //      and evictions entries were dropped to stay within bounds
+    //
+    // Rep Invariant
+    // - entries.size() <= maxEntries
+    // - estimatedBytes is the sum of the sizes of entries, and estimatedBytes <= maxBytes
+    // - hits, misses and evictions are non-negative
+    //
+    // Safety from Rep Exposure
+    // - All fields are private
+    // - Timelines and the Music in keys are immutable, so they are safe to share
+    //
+    // Thread Safety Argument
+    // - Uses the monitor pattern: every access to the mutable rep is synchronized on this
+    // - Compiling happens outside the lock, so a slow compile doesn't block lookups of other music.
+    //   Two threads missing on the same music both compile it and the second result replaces the first
+
+    /**
+     * Make an empty cache.
+     * @param maxEntries maximum number of Timelines to cache, must be positive
+     * @param maxBytes maximum estimated memory of the cached Timelines in bytes, must be positive
+     */
+    public TimelineCache(int maxEntries, long maxBytes) {
+        if(maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("cache bounds must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.estimatedBytes = 0;
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+        checkRep();
+    }
+
+    /**
+     * @return the cache shared by every Player, with the default bounds
+     */
+    public static TimelineCache shared() {
+        return SHARED;
+    }
+
+    private synchronized void checkRep() {
+        assert entries.size() <= maxEntries;
+        assert estimatedBytes <= maxBytes;
+        long sum = 0;
+        for(Entry entry: entries.values()) {
+            sum += entry.bytes;
+        }
+        assert sum == estimatedBytes;
+        assert hits >= 0 && misses >= 0 && evictions >= 0;
+    }
+
+    /**
+     * Compile a composition, reusing the Timeline compiled earlier from equal music if it is still cached.
+     * @param composition the composition to compile, whose voices are built if they aren't yet
+     * @param ticksPerBeat the number of ticks per beat to compile at, positive
+     * @return a Timeline of the composition, as Timeline.compile makes
+     */
+    public Timeline timeline(Composition composition, int ticksPerBeat) {
+        final Key key = new Key(composition, ticksPerBeat);
+        synchronized(this) {
+            final Entry cached = entries.get(key);
+            if(cached != null) {
+                hits++;
+                return cached.timeline;
+            }
+            misses++;
+        }
+        final Timeline compiled = Timeline.compile(composition, ticksPerBeat);
+        put(key, new Entry(compiled));
+        return compiled;
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        if(entry.bytes > maxBytes) {
+            // too big to cache at all
+            return;
+        }
+        final Entry replaced = entries.put(key, entry);
+        if(replaced != null) {
+            estimatedBytes -= replaced.bytes;
+        }
+        estimatedBytes += entry.bytes;
+        final Iterator<Entry> leastRecent = entries.values().iterator();
+        while(entries.size() > maxEntries || estimatedBytes > maxBytes) {
+            estimatedBytes -= leastRecent.next().bytes;
+            leastRecent.remove();
+            evictions++;
+        }
+        checkRep();
+    }
+
+    /**
+     * Remove every cached Timeline. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        estimatedBytes = 0;
+        checkRep();
+    }
+
+    /**
+     * @return the number of cached Timelines
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of lookups that found a cached Timeline
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that had to compile
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of Timelines dropped to stay within the cache bounds
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TimelineCache(entries=" + entries.size() + ", bytes=" + estimatedBytes + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + ")";
+    }
+}
@@ -0,0 +1,152 @@
+package karaoke;
+
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+
+/**
+ * A change made to music as it is played: transposing it by a number of semitones, stretching its
+ * time by a factor, and playing it on another instrument. A MusicView plays music with a Transform
+ * applied, without copying the music.
+ */
+public class Transform {
+
+    /** The transform that changes nothing */
+    public static final Transform IDENTITY = new Transform(0, 1, null);
+
+    private final int semitones;
+    private final double timeScale;
+    private final Instrument instrument;
+
+    // Abstraction Function
+    // AF(semitones, timeScale, instrument) = the change that raises every note by <semitones> semitones,
+    //      makes every note and rest <timeScale> times as long, and plays every note on <instrument>, or on
+    //      the instrument it was written for if instrument is null
+    //
+    // Rep Invariant
+    // - timeScale is positive and finite
+    //
+    // Safety from Rep Exposure
+    // - All fields are private, final and immutable
+    //
+    // Thread Safety Argument
+    // - Immutable
+
+    private Transform(int semitones, double timeScale, Instrument instrument) {
+        this.semitones = semitones;
+        this.timeScale = timeScale;
+        this.instrument = instrument;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert timeScale > 0 && !Double.isInfinite(timeScale);
+    }
+
+    /**
+     * @param semitonesUp number of semitones to raise the music by, negative to lower it
+     * @return this transform, then transposed by semitonesUp more
+     */
+    public Transform transposedBy(int semitonesUp) {
+        return new Transform(semitones + semitonesUp, timeScale, instrument);
+    }
+
+    /**
+     * @param factor how many times as long to make every note and rest, positive and finite;
+     *               2 plays the music at half speed
+     * @return this transform, then stretched by factor
+     */
+    public Transform scaledBy(double factor) {
+        if(!(factor > 0) || Double.isInfinite(factor)) {
+            throw new IllegalArgumentException("time scale must be positive and finite: "+factor);
+        }
+        return new Transform(semitones, timeScale * factor, instrument);
+    }
+
+    /**
+     * @param newInstrument the instrument to play every note on
+     * @return this transform, but playing every note on newInstrument
+     */
+    public Transform playedOn(Instrument newInstrument) {
+        if(newInstrument == null) {
+            throw new IllegalArgumentException("instrument must not be null");
+        }
+        return new Transform(semitones, timeScale, newInstrument);
+    }
+
+    /**
+     * @return the number of semitones the music is raised by, negative if it is lowered
+     */
+    public int semitones() {
+        return semitones;
+    }
+
+    /**
+     * @return how many times as long every note and rest is made
+     */
+    public double timeScale() {
+        return timeScale;
+    }
+
+    /**
+     * @param pitch the pitch of a note as written
+     * @return the pitch the note is played at
+     */
+    public Pitch pitch(Pitch pitch) {
+        return semitones == 0 ? pitch : pitch.transpose(semitones);
+    }
+
+    /**
+     * @param written the instrument a note is written for
+     * @return the instrument the note is played on
+     */
+    public Instrument instrument(Instrument written) {
+        return instrument == null ? written : instrument;
+    }
+
+    /**
+     * @param origin the beat the transformed music starts on
+     * @param beat a beat the music would reach if it weren't transformed
+     * @return the beat the transformed music reaches instead; beat itself if the time isn't scaled
+     */
+    public double beat(double origin, double beat) {
+        return timeScale == 1 ? beat : origin + (beat - origin) * timeScale;
+    }
+
+    /**
+     * @param origin the beat the transformed music starts on
+     * @param beat a beat the transformed music reaches
+     * @return the beat the music would reach instead if it weren't transformed, as near as rounding
+     *         allows; beat itself if the time isn't scaled
+     */
+    public double writtenBeat(double origin, double beat) {
+        return timeScale == 1 ? beat : origin + (beat - origin) / timeScale;
+    }
+
+    /**
+     * @param beats a length of time in the music as written, in beats
+     * @return the length it lasts when transformed
+     */
+    public double beats(double beats) {
+        return timeScale == 1 ? beats : beats * timeScale;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if(!(that instanceof Transform)) {
+            return false;
+        }
+        final Transform other = (Transform) that;
+        return semitones == other.semitones && timeScale == other.timeScale && instrument == other.instrument;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * semitones + Double.hashCode(timeScale)) + (instrument == null ? 0 : instrument.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return "transposed " + semitones + ", scaled " + timeScale
+                + (instrument == null ? "" : ", on " + instrument);
+    }
+}
@@ -1,5 +1,7 @@
 package karaoke;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import karaoke.sound.SequencePlayer;
@@ -12,8 +14,10 @@ public class Tuplet implements Music {
     
     private final int tupletNumber;
     private final List<Music> notes;
+    private final double duration;
+    private final int hash;
     
-    // AF(tupletNumber, notes) = a tuplet of length <tupletNumber>
+    // AF(tupletNumber, notes, duration, hash) = a tuplet of length <tupletNumber>
     //                           containing notes or chords in the order
     //                           they appear in <notes>
     
@@ -21,10 +25,11 @@ public class Tuplet implements Music {
     // tupletNumber is 2, 3, or 4
     // notes has length tupletNumber
     // notes does not contain rests
+    // duration is the sum of the durations of notes, and hash == tupletNumber + notes.hashCode()
     
     // Safety from Rep Exposure
     // tupletNumber is private and immutable
-    // notes is private and references to the list are not returned to the client
+    // notes is a private copy of the list given and only unmodifiable views of it are returned to the client
     
     // Thread Safety Argument
     // - Player Wrapper Class that plays music is a threadsafe datatype
@@ -39,7 +44,14 @@ public class Tuplet implements Music {
      */
     public Tuplet(int tupletNumber, List<Music> notes) {
         this.tupletNumber = tupletNumber;
-        this.notes = notes;
+        this.notes = new ArrayList<>(notes);
+        double sum = 0;
+        // Duration is the sum of durations for all notes 
+        for(Music note: this.notes) {
+            sum+=note.duration();
+        }
+        this.duration = sum;
+        this.hash = ((Integer)tupletNumber).hashCode() + this.notes.hashCode();
         checkRep();
     }
     
@@ -52,14 +64,23 @@ public class Tuplet implements Music {
         }
     }
     
+    /**
+     * @return the number of notes in the tuplet
+     */
+    public int tupletNumber() {
+        return this.tupletNumber;
+    }
+    
+    /**
+     * @return the notes or chords of the tuplet in order
+     */
+    public List<Music> notes() {
+        return Collections.unmodifiableList(notes);
+    }
+    
     @Override
     public double duration() {
-        double duration = 0;
-        // Duration is the sum of durations for all notes 
-        for(Music note: this.notes) {
-            duration+=note.duration();
-        }
-        return duration;
+        return this.duration;
     }
     
     
@@ -75,13 +96,14 @@ public class Tuplet implements Music {
     
     @Override
     public boolean equals(Object that) {
-    	return that instanceof Tuplet && ((Tuplet)that).tupletNumber == tupletNumber
-    			&& ((Tuplet)that).notes.equals(notes);
+    	return this == that || that instanceof Tuplet && ((Tuplet)that).hash == hash
+    	        && ((Tuplet)that).tupletNumber == tupletNumber && ((Tuplet)that).notes.equals(notes)
+    	        || MusicTraversal.isChain(that) && MusicTraversal.equal(this, that);
     }
     
     @Override
     public int hashCode() {
-    	return ((Integer)tupletNumber).hashCode() + notes.hashCode();
+    	return this.hash;
     }
     
     @Override
@@ -3,7 +3,10 @@ package karaoke;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
 import karaoke.sound.SequencePlayer;
 
 public class Voice {    
@@ -12,24 +15,31 @@ public class Voice {
     private final List<LyricListener> listeners;
     private final List<Integer> lineBreaks;
     private final String name;
+    private BeatIndex index;
     
     // Abstraction Function
     // AF(piece, allSyllables, listeners, lineBreaks) => A Voice that sings the music piece which pronounces the syllables in allSyllables, and
     //                                       has listeners in the set listeners which provide callbacks for the lyric highlight, the lyrics 
     //										 start a newline at each index in lineBreaks
+    //                                       index, once made, indexes the notes of music by beat
     
     // Rep Invaraint
     // - true 
     
     // Safety from Rep Exposure 
     //  - Client has no reference to internal representation
-    //  - All fields are private and final
+    //  - All fields are private, and all but index are final
     //  - None of the internal rep variables are returned directly
+    //  - music is immutable, and syllables() returns a copy of allSyllables
+    //  - index is immutable, so handing it out is safe
     
     // Thread Safety Argument
     // - Player Wrapper Class that plays music is a threadsafe datatype
     // - Player Class is the only class that is called upon from multiple threads
     // - Multiple threads can have access to listeners at once so it is a threadsafe datatype 
+    // - index is only read and written while synchronized on this, but built outside the lock, so that
+    //   building it doesn't hold up play, notifyAll and notifyEnd; threads that race to build it all
+    //   get the one published first
     
     
     /**
@@ -67,6 +77,62 @@ public class Voice {
         assert lineBreaks != null;
     }
     
+    /**
+     * A SequencePlayer that passes on only the notes and events starting in a window of beats, moved
+     * to start on another beat, with every note cut off at the end of the window. Notes held from
+     * before the window are added to it apart, to start with it.
+     */
+    private static class WindowPlayer implements SequencePlayer {
+        private final SequencePlayer player;
+        private final double fromBeat;
+        private final double toBeat;
+        private final double atBeat;
+
+        private WindowPlayer(SequencePlayer player, double fromBeat, double toBeat, double atBeat) {
+            this.player = player;
+            this.fromBeat = fromBeat;
+            this.toBeat = toBeat;
+            this.atBeat = atBeat;
+        }
+
+        private boolean inWindow(double beat) {
+            return fromBeat <= beat && beat < toBeat;
+        }
+
+        private double moved(double beat) {
+            return atBeat == fromBeat ? beat : atBeat + (beat - fromBeat);
+        }
+
+        @Override
+        public void addNote(Instrument instr, Pitch pitch, double startBeat, double numBeats) {
+            if(inWindow(startBeat)) {
+                // cut off so that the window can be played again right after itself
+                final double beats = startBeat + numBeats > toBeat ? toBeat - startBeat : numBeats;
+                player.addNote(instr, pitch, moved(startBeat), beats);
+            }
+        }
+
+        /**
+         * Pass on a note held from before the window, from the start of the window.
+         */
+        private void addHeldNote(Note note, double startBeat) {
+            final double endBeat = Math.min(startBeat + note.duration(), toBeat);
+            player.addNote(note.instrument(), note.pitch(), moved(fromBeat), endBeat - fromBeat);
+        }
+
+        @Override
+        public void addEvent(double atBeat, Consumer<Double> callback) {
+            if(inWindow(atBeat)) {
+                player.addEvent(moved(atBeat), callback);
+            }
+        }
+
+        @Override
+        public void play() {
+            player.play();
+        }
+    }
+
    /** Listens for note being played and provides the necessary lyric */
     public interface LyricListener{
        /** Called when note is being played */
@@ -84,6 +150,72 @@ public class Voice {
         checkRep();
     }
     
+    /**
+     * Play the part of this voice in a window of beats, moved to start on another beat, then tell the
+     * listeners the song has ended where the window does. Only the notes sounding in the window are
+     * played: notes held from before it, found in index(), sound from its start, and notes still
+     * sounding at its end are cut off. Only the lyric events starting in it are played, and the music
+     * outside the window is skipped without being walked.
+     * @param player to add the notes to be played
+     * @param fromBeat the first beat of the window
+     * @param toBeat the beat after the window, at least fromBeat
+     * @param atBeat the beat to play fromBeat on
+     */
+    public void playBetween(SequencePlayer player, double fromBeat, double toBeat, double atBeat) {
+        checkWindow(fromBeat, toBeat);
+        final BeatIndex index = index();
+        synchronized(this) {
+            playWindow(player, index, fromBeat, toBeat, atBeat);
+            player.addEvent(atBeat + (toBeat - fromBeat), (beat) -> this.notifyEnd());
+            checkRep();
+        }
+    }
+
+    /**
+     * Play the part of this voice in a window of beats several times over, starting on beat 0, each
+     * time right after the last, as playBetween plays it, then tell the listeners the song has ended
+     * after the last time.
+     * @param player to add the notes to be played
+     * @param fromBeat the first beat of the window
+     * @param toBeat the beat after the window, at least fromBeat
+     * @param times the number of times to play the window, non-negative; nothing is played if 0
+     */
+    public void loop(SequencePlayer player, double fromBeat, double toBeat, int times) {
+        checkWindow(fromBeat, toBeat);
+        if(times < 0) {
+            throw new IllegalArgumentException("cannot loop a negative number of times: "+times);
+        }
+        final BeatIndex index = index();
+        synchronized(this) {
+            for(int pass = 0; pass < times; pass++) {
+                playWindow(player, index, fromBeat, toBeat, pass * (toBeat - fromBeat));
+            }
+            if(times > 0) {
+                player.addEvent(times * (toBeat - fromBeat), (beat) -> this.notifyEnd());
+            }
+            checkRep();
+        }
+    }
+
+    private static void checkWindow(double fromBeat, double toBeat) {
+        if(!(fromBeat <= toBeat)) {
+            throw new IllegalArgumentException("window ends before it starts: "+fromBeat+" to "+toBeat);
+        }
+    }
+
+    private void playWindow(SequencePlayer player, BeatIndex index, double fromBeat, double toBeat, double atBeat) {
+        final WindowPlayer window = new WindowPlayer(player, fromBeat, toBeat, atBeat);
+        if(fromBeat < toBeat) {
+            // found in the index, since a chord's notes can ring on past the chord and the pieces after it
+            for(BeatIndex.Event held: index.notesAt(fromBeat)) {
+                if(held.beat() < fromBeat && held.endBeat() > fromBeat + MusicTraversal.WINDOW_SLACK) {
+                    window.addHeldNote(held.note(), held.beat());
+                }
+            }
+        }
+        MusicTraversal.playBetween(this.music, window, 0, this, fromBeat, toBeat);
+    }
+    
     /**
      * Adds a LyricListener for the voice
      * @param listener that will call for the correct lyric
@@ -133,6 +265,45 @@ public class Voice {
         return new Voice(newMusic, combinedSyllables, name);
     }
     
+    /**
+     * @return the music sung by this voice
+     */
+    public Music music() {
+        return this.music;
+    }
+    
+    /**
+     * @return an index of the notes this voice plays by beat, made the first time it is asked for
+     */
+    public BeatIndex index() {
+        synchronized(this) {
+            if(this.index != null) {
+                return this.index;
+            }
+        }
+        final BeatIndex built = BeatIndex.of(music);
+        synchronized(this) {
+            if(this.index == null) {
+                this.index = built;
+            }
+            return this.index;
+        }
+    }
+    
+    /**
+     * @return the syllables sung by this voice, in order
+     */
+    public List<String> syllables() {
+        return new ArrayList<>(this.allSyllables);
+    }
+    
+    /**
+     * @return a new voice with the same music, syllables and name as this one but none of its listeners
+     */
+    public Voice copy() {
+        return new Voice(music, allSyllables, name);
+    }
+    
     /**
      * @return the duration of this voice's music
      */
@@ -146,7 +317,7 @@ public class Voice {
      * bolded
      */
     private String constructLine(int boldedIndex) {
-        String fullLine = "";
+        final StringBuilder fullLine = new StringBuilder();
         if(this.allSyllables.size() == 0) {
             return "No Lyrics";
         }
@@ -162,23 +333,20 @@ public class Voice {
                 boldedIndex--;
             }
         }
-        //find the closest set of line breaks
-        int lineIndex = 0;
-        while(this.lineBreaks.get(lineIndex+1) <= boldedIndex) {
-        	lineIndex++;
-        }
+        //find the closest set of line breaks, the last line starting at or before boldedIndex
+        final int lineIndex = lineContaining(boldedIndex);
         for(int index = this.lineBreaks.get(lineIndex); index < this.lineBreaks.get(lineIndex+1); index++) {
             // Syllable being held so add no extra syllable
             if(this.allSyllables.get(index).trim().equals("_")) {
             	 if(this.allSyllables.get(index).endsWith(" ")) {
-                     fullLine+=" ";
+                     fullLine.append(" ");
                  }
             }
             else if(this.allSyllables.get(index).equals("")) {
                 continue;
             }
             else if(this.allSyllables.get(index).trim().equals("")) {
-                fullLine+= " ";
+                fullLine.append(" ");
             }
             // Skipping a note so add no extra syllable 
             else if(this.allSyllables.get(index).trim().equals("*")) {
@@ -188,18 +356,38 @@ public class Voice {
             else if(index == boldedIndex) {
                 String syllable = this.allSyllables.get(index);
                 if(syllable.endsWith(" ")) {
-                    fullLine+="*"+this.allSyllables.get(index).trim()+"* ";
+                    fullLine.append("*").append(syllable.trim()).append("* ");
                 }
                 else {
-                    fullLine+="*"+this.allSyllables.get(index).trim()+"*";
+                    fullLine.append("*").append(syllable.trim()).append("*");
                 }
             }
             // If not the current syllable just display the normal syllable 
             else {
-                fullLine+=this.allSyllables.get(index);
+                fullLine.append(this.allSyllables.get(index));
+            }
+        }
+        return fullLine.toString().trim();
+    }
+    
+    /**
+     * @param syllable index of a syllable, less than the number of syllables
+     * @return the index i of the line containing the syllable, the first i such that
+     *         lineBreaks.get(i+1) > syllable; found by binary search since lineBreaks is sorted
+     */
+    private int lineContaining(int syllable) {
+        int low = 1;
+        int high = this.lineBreaks.size() - 1;
+        while(low < high) {
+            final int middle = (low + high) >>> 1;
+            if(this.lineBreaks.get(middle) > syllable) {
+                high = middle;
+            }
+            else {
+                low = middle + 1;
             }
         }
-        return fullLine.trim();
+        return low - 1;
     }
     
     @Override
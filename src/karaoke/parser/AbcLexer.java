@@ -0,0 +1,316 @@
+package karaoke.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition.Accidental;
+
+/**
+ * A character level lexer for one line of abc music (the body of a voice, without its lyrics).
+ * It splits the line into notes, rests, chord and tuplet brackets, endings and bar lines, reading
+ * every character once.
+ */
+class AbcLexer {
+
+    /** The kinds of tokens in a line of music */
+    enum Type {
+        NOTE, REST, CHORD_START, CHORD_END, TUPLET, ENDING,
+        BAR, DOUBLE_BAR, START_BAR, END_BAR, REPEAT_START, REPEAT_END, END
+    }
+
+    /**
+     * An immutable token of a music line. Notes and rests carry their length, notes also carry
+     * their letter, octave marks and accidental, and tuplets and endings carry their number.
+     */
+    static class Token {
+        final Type type;
+        final int position;
+        final boolean spaceBefore;
+        final String letter;
+        final int octavesUp;
+        final int octavesDown;
+        final Accidental accidental;
+        final int numerator;
+        final int denominator;
+        final int number;
+
+        // AF(type, position, spaceBefore, letter, octavesUp, octavesDown, accidental, numerator, denominator, number) =
+        //      a token of kind <type> starting at character <position> of the line, preceded by whitespace iff <spaceBefore>.
+        //      A NOTE is the note <letter> raised <octavesUp> and lowered <octavesDown> octaves with the written
+        //      <accidental> (null if none), and a NOTE or REST lasts <numerator>/<denominator> of the default length.
+        //      A TUPLET or ENDING has the written <number>
+        //
+        // Rep Invariant
+        // - numerator and denominator are positive
+        // - letter is non-null iff type is NOTE
+        //
+        // Safety from Rep Exposure
+        // - All fields are final and immutable
+        //
+        // Thread Safety Argument
+        // - Tokens are immutable
+
+        private Token(Type type, int position, boolean spaceBefore, String letter, int octavesUp, int octavesDown,
+                Accidental accidental, int numerator, int denominator, int number) {
+            this.type = type;
+            this.position = position;
+            this.spaceBefore = spaceBefore;
+            this.letter = letter;
+            this.octavesUp = octavesUp;
+            this.octavesDown = octavesDown;
+            this.accidental = accidental;
+            this.numerator = numerator;
+            this.denominator = denominator;
+            this.number = number;
+            checkRep();
+        }
+
+        private Token(Type type, int position, boolean spaceBefore) {
+            this(type, position, spaceBefore, null, 0, 0, null, 1, 1, 0);
+        }
+
+        private void checkRep() {
+            assert numerator > 0;
+            assert denominator > 0;
+            assert (letter != null) == (type == Type.NOTE);
+        }
+
+        @Override
+        public String toString() {
+            return type + "@" + position;
+        }
+    }
+
+    private static final int DEFAULT_DENOMINATOR = (int) MusicParser.DEFAULT_DENOMINATOR;
+
+    private final CharSequence line;
+    private int pos;
+
+    // AF(line, pos) = a lexer that has split line[0..pos) into tokens and will continue at line[pos]
+    //
+    // Rep Invariant
+    // - 0 <= pos <= line.length()
+    //
+    // Safety from Rep Exposure
+    // - All fields are private, and only new token lists are returned
+    //
+    // Thread Safety Argument
+    // - A lexer is confined to the thread that created it
+
+    private AbcLexer(CharSequence line) {
+        this.line = line;
+        this.pos = 0;
+    }
+
+    /**
+     * Split a line of music into tokens.
+     * Whitespace is allowed in the same places the Abc grammar skips it: between notes, inside
+     * chords, after accidentals and around octave marks and note denominators.
+     * @param line the music of a voice
+     * @return the tokens of the line, ending with an END token
+     * @throws UnableToParseException if the line contains a character that can't start a token
+     */
+    static List<Token> tokenize(CharSequence line) throws UnableToParseException {
+        return new AbcLexer(line).tokens();
+    }
+
+    private List<Token> tokens() throws UnableToParseException {
+        final List<Token> tokens = new ArrayList<>();
+        while(true) {
+            final boolean spaceBefore = skipSpace();
+            if(pos >= line.length()) {
+                tokens.add(new Token(Type.END, pos, spaceBefore));
+                return tokens;
+            }
+            tokens.add(nextToken(spaceBefore));
+        }
+    }
+
+    private Token nextToken(boolean spaceBefore) throws UnableToParseException {
+        final int start = pos;
+        final char c = line.charAt(pos);
+        switch(c) {
+        case '|':
+            pos++;
+            if(lookingAt('|')) {
+                pos++;
+                return new Token(Type.DOUBLE_BAR, start, spaceBefore);
+            }
+            if(lookingAt(']')) {
+                pos++;
+                return new Token(Type.END_BAR, start, spaceBefore);
+            }
+            // |:| is a bar followed by the end of a repeat
+            if(lookingAt(':') && !(pos+1 < line.length() && line.charAt(pos+1) == '|')) {
+                pos++;
+                return new Token(Type.REPEAT_START, start, spaceBefore);
+            }
+            return new Token(Type.BAR, start, spaceBefore);
+        case ':':
+            pos++;
+            if(lookingAt('|')) {
+                pos++;
+                return new Token(Type.REPEAT_END, start, spaceBefore);
+            }
+            throw error("expected :|");
+        case '[':
+            pos++;
+            if(lookingAt('|')) {
+                pos++;
+                return new Token(Type.START_BAR, start, spaceBefore);
+            }
+            final int afterBracket = pos;
+            skipSpace();
+            if(lookingAtDigit()) {
+                return new Token(Type.ENDING, start, spaceBefore, null, 0, 0, null, 1, 1, readNumber());
+            }
+            pos = afterBracket;
+            return new Token(Type.CHORD_START, start, spaceBefore);
+        case ']':
+            pos++;
+            // a chord swallows the whitespace after it
+            skipSpace();
+            return new Token(Type.CHORD_END, start, spaceBefore);
+        case '(':
+            pos++;
+            if(!lookingAtDigit()) {
+                throw error("expected tuplet size");
+            }
+            return new Token(Type.TUPLET, start, spaceBefore, null, 0, 0, null, 1, 1, readNumber());
+        case 'z':
+            pos++;
+            return new Token(Type.REST, start, spaceBefore, null, 0, 0, null, readNumerator(), readDenominator(), 0);
+        default:
+            return readNote(start, spaceBefore);
+        }
+    }
+
+    private Token readNote(int start, boolean spaceBefore) throws UnableToParseException {
+        Accidental accidental = null;
+        if(lookingAt('^')) {
+            pos++;
+            accidental = Accidental.SHARP;
+            if(lookingAt('^')) {
+                pos++;
+                accidental = Accidental.DOUBLE_SHARP;
+            }
+        }
+        else if(lookingAt('_')) {
+            pos++;
+            accidental = Accidental.FLAT;
+            if(lookingAt('_')) {
+                pos++;
+                accidental = Accidental.DOUBLE_FLAT;
+            }
+        }
+        else if(lookingAt('=')) {
+            pos++;
+            accidental = Accidental.NATURAL;
+        }
+        if(accidental != null) {
+            skipSpace();
+        }
+
+        if(pos >= line.length() || !isNoteLetter(line.charAt(pos))) {
+            throw error("unexpected character");
+        }
+        final String letter = String.valueOf(line.charAt(pos));
+        pos++;
+
+        int octavesUp = 0;
+        int octavesDown = 0;
+        while(true) {
+            final int beforeMark = pos;
+            skipSpace();
+            if(lookingAt('\'')) {
+                octavesUp++;
+            }
+            else if(lookingAt(',')) {
+                octavesDown++;
+            }
+            else {
+                pos = beforeMark;
+                break;
+            }
+            pos++;
+            skipSpace();
+        }
+
+        final int numerator = readNumerator();
+        final int denominator = readDenominator();
+        return new Token(Type.NOTE, start, spaceBefore, letter, octavesUp, octavesDown, accidental,
+                numerator, denominator, 0);
+    }
+
+    private int readNumerator() {
+        if(pos < line.length() && line.charAt(pos) >= '1' && line.charAt(pos) <= '9') {
+            return readNumber();
+        }
+        return 1;
+    }
+
+    private int readDenominator() {
+        final int beforeSlash = pos;
+        skipSpace();
+        if(!lookingAt('/')) {
+            pos = beforeSlash;
+            return 1;
+        }
+        pos++;
+        skipSpace();
+        int denominator = DEFAULT_DENOMINATOR;
+        if(pos < line.length() && line.charAt(pos) >= '1' && line.charAt(pos) <= '9') {
+            denominator = readNumber();
+        }
+        skipSpace();
+        return denominator;
+    }
+
+    private int readNumber() {
+        final int start = pos;
+        while(lookingAtDigit()) {
+            pos++;
+        }
+        return Integer.parseInt(line.subSequence(start, pos).toString());
+    }
+
+    /**
+     * Skip spaces, tabs, carriage returns and % comments.
+     * @return true iff anything was skipped
+     */
+    private boolean skipSpace() {
+        final int start = pos;
+        while(pos < line.length()) {
+            final char c = line.charAt(pos);
+            if(c == ' ' || c == '\t' || c == '\r') {
+                pos++;
+            }
+            else if(c == '%') {
+                while(pos < line.length() && line.charAt(pos) != '\n') {
+                    pos++;
+                }
+            }
+            else {
+                break;
+            }
+        }
+        return pos > start;
+    }
+
+    private boolean lookingAt(char c) {
+        return pos < line.length() && line.charAt(pos) == c;
+    }
+
+    private boolean lookingAtDigit() {
+        return pos < line.length() && line.charAt(pos) >= '0' && line.charAt(pos) <= '9';
+    }
+
+    private static boolean isNoteLetter(char c) {
+        return (c >= 'A' && c <= 'G') || (c >= 'a' && c <= 'g');
+    }
+
+    private UnableToParseException error(String message) {
+        return new UnableToParseException(message+" at character "+pos+" of music line: "+line);
+    }
+}
@@ -0,0 +1,167 @@
+package karaoke.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+
+/**
+ * A persistent cache of compiled scores in a directory, so that a restarted server can load the
+ * Compositions it parsed before without running a MusicParser.
+ *
+ * Each abc text is compiled to a file named after the hash of the text. Loading checks the format
+ * version, the hash and a checksum; a compiled score that is stale, from another format version or
+ * corrupt is ignored, and the text is parsed again and recompiled.
+ */
+public class CompiledScoreCache {
+
+    private static final String SUFFIX = ".score";
+
+    private final Path directory;
+    private final MusicParser parser;
+    private long loads;
+    private long parses;
+    private long rejected;
+
+    // Abstraction Function
+    // AF(directory, parser, loads, parses, rejected) = a cache of the Compositions parser builds for abc texts,
+    //      stored in directory as one compiled score per text. Lookups loaded a compiled score loads times
+    //      and had to parse parses times, of which rejected times a compiled score was found but unusable
+    //
+    // Rep Invariant
+    // - 0 <= rejected <= parses, and 0 <= loads
+    //
+    // Safety from Rep Exposure
+    // - All fields are private; Compositions returned are read from disk or parsed for each lookup
+    //
+    // Thread Safety Argument
+    // - Counters are only accessed while synchronized on this
+    // - Compiled scores are written to a temporary file and moved into place, so a reader in any thread
+    //   or process sees either no file or a complete one. A partly visible file would fail its checksum
+    //   and be recompiled anyway
+
+    /**
+     * Make a cache that stores compiled scores in a directory.
+     * @param directory the directory to store compiled scores in, created if it doesn't exist
+     * @param parser the parser used when no usable compiled score is found
+     * @throws IOException if the directory can't be created
+     */
+    public CompiledScoreCache(File directory, MusicParser parser) throws IOException {
+        this.directory = Files.createDirectories(directory.toPath());
+        this.parser = parser;
+        this.loads = 0;
+        this.parses = 0;
+        this.rejected = 0;
+        checkRep();
+    }
+
+    private synchronized void checkRep() {
+        assert 0 <= rejected && rejected <= parses;
+        assert 0 <= loads;
+    }
+
+    /**
+     * Load the compiled score of abc text, or parse and compile the text if there is no usable one.
+     * @param text abc text of one tune
+     * @return a new Composition for the text
+     * @throws UnableToParseException if the text has to be parsed and doesn't match the Abc grammar
+     */
+    public Composition parse(CharSequence text) throws UnableToParseException {
+        final CharSequence normalized = SourceHash.normalize(text);
+        final String hash = SourceHash.of(normalized);
+        final Path compiled = directory.resolve(hash + SUFFIX);
+
+        boolean found = false;
+        if(Files.exists(compiled)) {
+            found = true;
+            try {
+                final Composition loaded = ScoreCodec.decode(Files.readAllBytes(compiled), hash);
+                synchronized(this) {
+                    loads++;
+                }
+                return loaded;
+            }
+            catch(IOException e) {
+                // stale or corrupt, fall back to parsing
+            }
+        }
+
+        final Composition parsed = parser.parse(normalized);
+        synchronized(this) {
+            parses++;
+            if(found) {
+                rejected++;
+            }
+        }
+        store(compiled, ScoreCodec.encode(parsed, hash));
+        checkRep();
+        return parsed;
+    }
+
+    /**
+     * Load or parse an abc file as parse(String) does.
+     * @param file abc file of one tune
+     * @return a new Composition for the file
+     * @throws UnableToParseException if the file can't be read, or has to be parsed and doesn't match the Abc grammar
+     */
+    public Composition parseFile(File file) throws UnableToParseException {
+        final CharSequence text;
+        try {
+            text = SourceText.read(file);
+        }
+        catch(IOException e) {
+            throw new UnableToParseException("File not found");
+        }
+        return parse(text);
+    }
+
+    /**
+     * Write a compiled score. Failing to write only costs a parse on the next lookup, so errors are ignored.
+     */
+    private void store(Path compiled, byte[] score) {
+        try {
+            final Path temporary = Files.createTempFile(directory, "compiling", ".tmp");
+            try {
+                Files.write(temporary, score);
+                try {
+                    Files.move(temporary, compiled, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+                catch(AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, compiled, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        catch(IOException e) {
+            // the score will be parsed again next time
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from a compiled score
+     */
+    public synchronized long loads() {
+        return loads;
+    }
+
+    /**
+     * @return the number of lookups that had to parse
+     */
+    public synchronized long parses() {
+        return parses;
+    }
+
+    /**
+     * @return the number of lookups that found a stale or corrupt compiled score and had to parse
+     */
+    public synchronized long rejected() {
+        return rejected;
+    }
+}
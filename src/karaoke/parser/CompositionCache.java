@@ -0,0 +1,261 @@
+package karaoke.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+
+/**
+ * A bounded, least recently used cache of parsed Compositions, keyed by a hash of the abc text.
+ * Texts that differ only in their line endings share an entry. The cache bounds both its number of
+ * entries and an estimate of the memory they use, and counts its hits, misses and evictions.
+ *
+ * Compositions are mutable, so the cached Composition is never handed out: every lookup returns
+ * a new copy of it, with its own voices and listeners.
+ *
+ * Misses are parsed with a MusicParser, or loaded through a CompiledScoreCache so that they survive
+ * a restart.
+ */
+public class CompositionCache {
+
+    /** Default maximum number of cached Compositions */
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    /** Default maximum estimated memory used by the cached Compositions, in bytes */
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    // A parsed Composition takes roughly 15 to 45 bytes of heap per character of abc text on the sample files
+    private static final long BYTES_PER_SOURCE_CHAR = 32;
+    private static final long BYTES_PER_ENTRY = 1024;
+
+    /** System property naming a directory of compiled scores for the shared cache to use */
+    public static final String COMPILED_SCORES_PROPERTY = "karaoke.compiledScores";
+
+    private static final CompositionCache SHARED = makeSharedCache();
+
+    /** Something that turns abc text into a new Composition */
+    private interface Source {
+        Composition parse(CharSequence text) throws UnableToParseException;
+    }
+
+    private final Source source;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Map<String, Entry> entries;
+    private long estimatedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Abstraction Function
+    // AF(source, maxEntries, maxBytes, entries, estimatedBytes, hits, misses, evictions) =
+    //      a cache of the Compositions source builds for abc texts, where entries maps the hash of each
+    //      normalized text to its Composition and estimated size, from least to most recently used.
+    //      It holds at most maxEntries Compositions of at most maxBytes estimated bytes in total, which
+    //      is estimatedBytes now. Lookups found a cached Composition hits times and had to parse misses
+    //      times, and evictions entries were dropped to stay within bounds
+    //
+    // Rep Invariant
+    // - entries.size() <= maxEntries
+    // - estimatedBytes is the sum of the sizes of entries, and estimatedBytes <= maxBytes
+    // - hits, misses and evictions are non-negative
+    //
+    // Safety from Rep Exposure
+    // - All fields are private
+    // - Cached Compositions are never returned, only copies of them
+    //
+    // Thread Safety Argument
+    // - Uses the monitor pattern: every access to the mutable rep is synchronized on this
+    // - Parsing happens outside the lock, so a slow parse doesn't block lookups of other texts.
+    //   Two threads missing on the same text both parse it and the second result replaces the first
+
+    /** A cached Composition and its estimated size */
+    private static class Entry {
+        private final Composition composition;
+        private final long bytes;
+
+        private Entry(Composition composition, long bytes) {
+            this.composition = composition;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Make an empty cache.
+     * @param parser the parser used to parse texts that are not cached
+     * @param maxEntries maximum number of Compositions to cache, must be positive
+     * @param maxBytes maximum estimated memory of the cached Compositions in bytes, must be positive
+     */
+    public CompositionCache(MusicParser parser, int maxEntries, long maxBytes) {
+        this(parser::parse, maxEntries, maxBytes);
+    }
+
+    /**
+     * Make an empty cache in front of a cache of compiled scores.
+     * @param compiled the compiled scores used for texts that are not cached
+     * @param maxEntries maximum number of Compositions to cache, must be positive
+     * @param maxBytes maximum estimated memory of the cached Compositions in bytes, must be positive
+     */
+    public CompositionCache(CompiledScoreCache compiled, int maxEntries, long maxBytes) {
+        this(compiled::parse, maxEntries, maxBytes);
+    }
+
+    private CompositionCache(Source source, int maxEntries, long maxBytes) {
+        if(maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("cache bounds must be positive");
+        }
+        this.source = source;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.estimatedBytes = 0;
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+        checkRep();
+    }
+
+    /**
+     * @return the cache shared by every Player, with the default bounds and parser. If the system property
+     *         karaoke.compiledScores names a directory, misses are loaded through a CompiledScoreCache there
+     */
+    public static CompositionCache shared() {
+        return SHARED;
+    }
+
+    private static CompositionCache makeSharedCache() {
+        final String compiledScores = System.getProperty(COMPILED_SCORES_PROPERTY);
+        if(compiledScores != null) {
+            try {
+                return new CompositionCache(new CompiledScoreCache(new File(compiledScores), new MusicParser()),
+                        DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+            }
+            catch(IOException e) {
+                // no usable directory, so parse every miss
+            }
+        }
+        return new CompositionCache(new MusicParser(), DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    private synchronized void checkRep() {
+        assert entries.size() <= maxEntries;
+        assert estimatedBytes <= maxBytes;
+        long sum = 0;
+        for(Entry entry: entries.values()) {
+            sum += entry.bytes;
+        }
+        assert sum == estimatedBytes;
+        assert hits >= 0 && misses >= 0 && evictions >= 0;
+    }
+
+    /**
+     * Parse abc text, reusing the result of an earlier parse of the same text if it is still cached.
+     * @param text abc text of one tune
+     * @return a new Composition parsed from the text, owned by the caller
+     * @throws UnableToParseException if the text doesn't match the Abc grammar. Failures are not cached
+     */
+    public Composition parse(CharSequence text) throws UnableToParseException {
+        final CharSequence normalized = SourceHash.normalize(text);
+        final String key = SourceHash.of(normalized);
+        synchronized(this) {
+            final Entry cached = entries.get(key);
+            if(cached != null) {
+                hits++;
+                return cached.composition.copy();
+            }
+            misses++;
+        }
+        final Composition parsed = source.parse(normalized);
+        put(key, new Entry(parsed.copy(), BYTES_PER_ENTRY + BYTES_PER_SOURCE_CHAR * normalized.length()));
+        return parsed;
+    }
+
+    /**
+     * Parse an abc file as parse(String) does.
+     * @param file abc file of one tune
+     * @return a new Composition parsed from the file, owned by the caller
+     * @throws UnableToParseException if the file can't be read or doesn't match the Abc grammar
+     */
+    public Composition parseFile(File file) throws UnableToParseException {
+        final CharSequence text;
+        try {
+            text = SourceText.read(file);
+        }
+        catch(IOException e) {
+            throw new UnableToParseException("File not found");
+        }
+        return parse(text);
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        if(entry.bytes > maxBytes) {
+            // too big to cache at all
+            return;
+        }
+        final Entry replaced = entries.put(key, entry);
+        if(replaced != null) {
+            estimatedBytes -= replaced.bytes;
+        }
+        estimatedBytes += entry.bytes;
+        final Iterator<Entry> leastRecent = entries.values().iterator();
+        while(entries.size() > maxEntries || estimatedBytes > maxBytes) {
+            estimatedBytes -= leastRecent.next().bytes;
+            leastRecent.remove();
+            evictions++;
+        }
+        checkRep();
+    }
+
+    /**
+     * Remove every cached Composition. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        estimatedBytes = 0;
+        checkRep();
+    }
+
+    /**
+     * @return the number of cached Compositions
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated memory used by the cached Compositions, in bytes
+     */
+    public synchronized long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * @return the number of lookups that found a cached Composition
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that had to parse
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of Compositions dropped to stay within the cache bounds
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CompositionCache(entries=" + entries.size() + ", bytes=" + estimatedBytes + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + ")";
+    }
+}
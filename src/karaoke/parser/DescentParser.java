@@ -0,0 +1,800 @@
+package karaoke.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Chord;
+import karaoke.Composition;
+import karaoke.Composition.Key;
+import karaoke.Concat;
+import karaoke.Music;
+import karaoke.Repeat;
+import karaoke.Rest;
+import karaoke.Tuplet;
+import karaoke.Voice;
+import karaoke.parser.AbcLexer.Token;
+import karaoke.parser.AbcLexer.Type;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.parser.ParseStats.Phase;
+
+/**
+ * A hand-written recursive descent parser for the subset of abc notation accepted by Abc.g.
+ * It reads the header with a character scanner, every music line with AbcLexer, and the lyrics
+ * with a single pass syllable scanner, and builds the same Composition as the grammar engine.
+ *
+ * Where Abc.g is ambiguous the choices parserlib makes are reproduced: at each point of a music
+ * line the longest of a repeat, a measure ending in a bar line and a plain measure is taken, and
+ * repetitions never give back what they matched. Measure and repeat lookups are memoized by token
+ * position so a line is parsed in time linear in its number of tokens.
+ */
+class DescentParser {
+
+
+    private DescentParser() {
+        throw new AssertionError("DescentParser is not instantiable");
+    }
+
+    /**
+     * Parse the text of an abc tune into a Composition.
+     * @param input the text of the tune
+     * @return the Composition described by the input
+     * @throws UnableToParseException if the input is not valid abc
+     */
+    static Composition parse(CharSequence input) throws UnableToParseException {
+        return parse(input, false);
+    }
+
+    /**
+     * Parse the text of an abc tune into a Composition, possibly leaving its voices to be built on
+     * first use. A lazy voice keeps only its music text, which is checked now and parsed again
+     * when the voice is built.
+     * @param input the text of the tune
+     * @param lazyVoices true to build voices on first use, false to build them now
+     * @return the Composition described by the input
+     * @throws UnableToParseException if the input is not valid abc
+     */
+    static Composition parse(CharSequence input, boolean lazyVoices) throws UnableToParseException {
+        return parse(input, lazyVoices, new ParseRecorder(Engine.DESCENT, input.length(), false));
+    }
+
+    /**
+     * Parse the text of an abc tune into a Composition as parse(input, lazyVoices) does, recording
+     * the phases of the parse.
+     * @param input the text of the tune
+     * @param lazyVoices true to build voices on first use, false to build them now
+     * @param recorder records the phases of the parse, including building voices
+     * @return the Composition described by the input
+     * @throws UnableToParseException if the input is not valid abc
+     */
+    static Composition parse(CharSequence input, boolean lazyVoices, ParseRecorder recorder) throws UnableToParseException {
+        final ParseRecorder.Span split = recorder.begin(Phase.LAYOUT);
+        final TuneLayout layout = TuneLayout.split(input);
+        split.end();
+        if(layout.voiceNames().isEmpty()) {
+            throw new UnableToParseException("tune has no music");
+        }
+        final ParseRecorder.Span header = recorder.begin(Phase.PARSE);
+        final Composition composition = parseHeader(layout.header());
+        header.end();
+        final List<VoiceAssembler.VoiceLine> voiceLines = new ArrayList<>();
+        for(String voiceName: layout.voiceNames()) {
+            final ParseRecorder.Span lyrics = recorder.begin(Phase.LYRICS, voiceName);
+            final List<String> lyricList = layout.lyricLines(voiceName).isEmpty()
+                    ? Collections.emptyList() : LyricTokenizer.tokenize(layout.lyricText(voiceName));
+            lyrics.end();
+            recorder.countVoiceLine(lyricList.size());
+            final String musicText = layout.musicText(voiceName);
+            final ParseRecorder.Span music = recorder.begin(Phase.PARSE, voiceName);
+            final Syntax line = parseMusicLine(musicText);
+            music.end();
+            if(lazyVoices) {
+                // keep the text rather than the syntax, and parse it again when the voice is built
+                voiceLines.add(new VoiceAssembler.VoiceLine(voiceName, lyricList,
+                        environment -> reparseMusicLine(musicText).build(environment)));
+            }
+            else {
+                voiceLines.add(new VoiceAssembler.VoiceLine(voiceName, lyricList, line::build));
+            }
+        }
+        if(lazyVoices) {
+            composition.setLazyVoices(VoiceAssembler.defer(composition, voiceLines, recorder));
+        }
+        else {
+            final Map<String, Voice> voiceMap = VoiceAssembler.assemble(composition, voiceLines, ForkJoinPool.commonPool(), recorder);
+            composition.setVoices(voiceMap);
+        }
+        return composition;
+    }
+
+    //
+    // Header
+    //
+
+    /**
+     * Parse the header fields of a tune.
+     * @param header the header text, from X: up to and including the K: line
+     * @return a Composition with the header's fields and no voices
+     * @throws UnableToParseException if the header is malformed
+     */
+    static Composition parseHeader(String header) throws UnableToParseException {
+        final CharScanner in = new CharScanner(header);
+        String composer = MusicParser.DEFAULT_COMPOSER;
+        double length = MusicParser.DEFAULT_LENGTH;
+        double meter = MusicParser.DEFAULT_METER;
+        double tempo = MusicParser.DEFAULT_TEMPO;
+
+        in.skip();
+        in.expect("X:");
+        in.skip();
+        final int trackNumber = Integer.parseInt(in.digits(false));
+        in.skip();
+        in.expect("\n");
+        in.skip();
+        in.expect("T:");
+        in.skip();
+        final String title = in.fieldText();
+        in.skip();
+        in.expect("\n");
+        in.skip();
+
+        while(!in.lookingAt("K:")) {
+            if(in.lookingAt("C:")) {
+                in.expect("C:");
+                in.skip();
+                composer = in.fieldText();
+            }
+            else if(in.lookingAt("M:")) {
+                in.expect("M:");
+                in.skip();
+                if(in.lookingAt("C")) {
+                    //value is 'C', so the meter is left unchanged
+                    in.expect("C");
+                }
+                else {
+                    meter = in.fraction();
+                }
+            }
+            else if(in.lookingAt("L:")) {
+                in.expect("L:");
+                in.skip();
+                length = in.fraction();
+            }
+            else if(in.lookingAt("Q:")) {
+                in.expect("Q:");
+                in.skip();
+                in.fraction();
+                in.skip();
+                in.expect("=");
+                in.skip();
+                tempo = Integer.parseInt(in.digits(false));
+            }
+            else if(in.lookingAt("V:")) {
+                in.expect("V:");
+                in.skip();
+                in.fieldText();
+            }
+            else {
+                throw in.error("expected a header field");
+            }
+            in.skip();
+            in.expect("\n");
+            in.skip();
+        }
+
+        in.expect("K:");
+        in.skip();
+        String stringkey = in.keyLetter();
+        in.skip();
+        if(in.lookingAt("#")) {
+            in.expect("#");
+            stringkey+="flat";
+        }
+        else if(in.lookingAt("b")) {
+            in.expect("b");
+            stringkey+="sharp";
+        }
+        in.skip();
+        if(in.lookingAt("m")) {
+            in.expect("m");
+            stringkey+="m";
+        }
+        in.skip();
+        in.expect("\n");
+        in.skip();
+        if(!in.atEnd()) {
+            throw in.error("unexpected text after the K: field");
+        }
+        return new Composition(title, composer, length, tempo, meter, trackNumber, Key.valueOf(stringkey));
+    }
+
+    /**
+     * A cursor over header text that skips whitespace and comments the way Abc.g does.
+     */
+    private static class CharScanner {
+        private final String text;
+        private int pos;
+
+        // AF(text, pos) = the header text with text[0..pos) consumed
+        // RI: 0 <= pos <= text.length()
+        // Safety from rep exposure: confined to parseHeader, returns only new Strings
+        // Thread safety: confined to one thread
+
+        private CharScanner(String text) {
+            this.text = text;
+            this.pos = 0;
+        }
+
+        /** Skip spaces, tabs, carriage returns and whole comments, including their line break */
+        private void skip() {
+            while(pos < text.length()) {
+                final char c = text.charAt(pos);
+                if(c == ' ' || c == '\t' || c == '\r') {
+                    pos++;
+                }
+                else if(c == '%' && text.indexOf('\n', pos) >= 0) {
+                    pos = text.indexOf('\n', pos)+1;
+                }
+                else {
+                    return;
+                }
+            }
+        }
+
+        private boolean lookingAt(String prefix) {
+            return text.startsWith(prefix, pos);
+        }
+
+        private boolean atEnd() {
+            return pos >= text.length();
+        }
+
+        private void expect(String prefix) throws UnableToParseException {
+            if(!lookingAt(prefix)) {
+                throw error("expected "+prefix.replace("\n", "a line break"));
+            }
+            pos += prefix.length();
+        }
+
+        /** @return the text of a field up to a line break, tab or comment */
+        private String fieldText() throws UnableToParseException {
+            final int start = pos;
+            while(pos < text.length() && "\r\t\n%".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            if(pos == start) {
+                throw error("expected field text");
+            }
+            return text.substring(start, pos);
+        }
+
+        /**
+         * @param positive true if the number may not start with 0
+         * @return the digits of a number
+         */
+        private String digits(boolean positive) throws UnableToParseException {
+            final int start = pos;
+            if(positive && lookingAt("0")) {
+                throw error("expected a positive number");
+            }
+            while(pos < text.length() && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+                pos++;
+            }
+            if(pos == start) {
+                throw error("expected a number");
+            }
+            return text.substring(start, pos);
+        }
+
+        /** @return the value of a fraction numerator/denominator */
+        private double fraction() throws UnableToParseException {
+            final int numerator = Integer.parseInt(digits(true));
+            skip();
+            expect("/");
+            skip();
+            final int denominator = Integer.parseInt(digits(true));
+            return (double) numerator/denominator;
+        }
+
+        private String keyLetter() throws UnableToParseException {
+            if(pos < text.length() && "ABCDEFGabcdefg".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+                return text.substring(pos-1, pos);
+            }
+            throw error("expected a key");
+        }
+
+        private UnableToParseException error(String message) {
+            return new UnableToParseException(message+" at character "+pos+" of header: "+text);
+        }
+    }
+
+    //
+    // Music
+    //
+
+    /** A piece of parsed music that knows where it ends and how to build its Music */
+    private interface Syntax {
+        /** @return the index of the first token after this piece */
+        int end();
+
+        /**
+         * @param environment the environment of the voice line being built
+         * @return the Music for this piece, built exactly as MusicParser.makeMusicAST builds it
+         */
+        Music build(NoteEnvironment environment);
+    }
+
+    /**
+     * Parse a line of music.
+     * @param line the music of a voice
+     * @return the syntax of the whole line
+     * @throws UnableToParseException if the line is not a valid music line
+     */
+    private static Syntax parseMusicLine(String line) throws UnableToParseException {
+        final MusicLineParser parser = new MusicLineParser(AbcLexer.tokenize(line));
+        final Syntax musicLine = parser.musicLine(0);
+        if(musicLine == null || parser.tokens.get(musicLine.end()).type != Type.END) {
+            final Token stop = parser.tokens.get(musicLine == null ? 0 : musicLine.end());
+            throw new UnableToParseException("unexpected "+stop.type+" at character "+stop.position+" of music line: "+line);
+        }
+        return musicLine;
+    }
+
+    /**
+     * Parse a line of music that has been parsed successfully before.
+     * @param line the music of a voice, known to be a valid music line
+     * @return the syntax of the whole line
+     */
+    private static Syntax reparseMusicLine(String line) {
+        try {
+            return parseMusicLine(line);
+        }
+        catch(UnableToParseException e) {
+            throw new AssertionError("a music line that parsed before doesn't parse again", e);
+        }
+    }
+
+    /**
+     * Recursive descent over the tokens of one music line. Every method takes the index of the token
+     * to start at and returns the parsed syntax, or null if the construct does not start there.
+     */
+    private static class MusicLineParser {
+        private final List<Token> tokens;
+        private final Map<Integer, Syntax> measures = new HashMap<>();
+        private final Map<Integer, Integer> measureRuns = new HashMap<>();
+        private final Map<Integer, Syntax> musicLines = new HashMap<>();
+
+        // AF(tokens, measures, measureRuns, musicLines) = a parser of the music line <tokens>, where <measures> maps
+        //      an index to the measure starting there (null if none), <measureRuns> maps the index of a measure
+        //      to the end of the run of measures it starts, and <musicLines> maps an index to the music line
+        //      starting there
+        // RI: tokens ends with an END token
+        // Safety from rep exposure: confined to parseMusicLine, returns only immutable syntax objects
+        // Thread safety: confined to one thread
+
+        private MusicLineParser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        private Type type(int index) {
+            return tokens.get(index).type;
+        }
+
+        // MusicLine ::= (Repeat | EndSection | Measure)+
+        private Syntax musicLine(int start) {
+            if(musicLines.containsKey(start)) {
+                return musicLines.get(start);
+            }
+            final List<Syntax> elements = new ArrayList<>();
+            int pos = start;
+            while(true) {
+                // like parserlib, take the longest alternative, preferring earlier ones on ties
+                Syntax element = repeat(pos);
+                final Syntax endSection = endSection(pos);
+                if(endSection != null && (element == null || endSection.end() > element.end())) {
+                    element = endSection;
+                }
+                final Syntax measure = measure(pos);
+                if(measure != null && (element == null || measure.end() > element.end())) {
+                    element = measure;
+                }
+                if(element == null) {
+                    break;
+                }
+                elements.add(element);
+                pos = element.end();
+                if(element == measure && type(pos) == Type.REPEAT_START) {
+                    // the grammar ends the measure with the | of |: and cannot go on from the :
+                    break;
+                }
+            }
+            final Syntax musicLine = elements.isEmpty() ? null : new LineSyntax(elements, pos);
+            musicLines.put(start, musicLine);
+            return musicLine;
+        }
+
+        // Repeat ::= ('|:' | '[|' | '||' | '|]')? (Measure)+ ('|')? (':|' | FirstEnding SecondEnding)
+        // FirstEnding ::= '[' Number (Measure)+ ':|'
+        // SecondEnding ::= '[' Number MusicLine
+        private Syntax repeat(int start) {
+            int pos = start;
+            final Type opening = type(pos);
+            if(opening == Type.REPEAT_START || opening == Type.START_BAR || opening == Type.DOUBLE_BAR
+                    || opening == Type.END_BAR) {
+                pos++;
+            }
+            else if(opening == Type.BAR && type(pos+1) == Type.REPEAT_END
+                    && tokens.get(pos+1).position == tokens.get(pos).position+1) {
+                // the lexer reads |:| as | and :|, but here the grammar can also read it as the |: of
+                // this repeat and the | that starts its first measure, which then can't have another
+                if(type(pos+2) == Type.BAR) {
+                    return null;
+                }
+                pos += 2;
+            }
+            final int bodyEnd = measureRun(pos);
+            if(bodyEnd == pos) {
+                return null;
+            }
+            int tail = bodyEnd;
+            if(type(tail) == Type.BAR) {
+                tail++;
+            }
+            if(type(tail) == Type.REPEAT_END) {
+                return new RepeatSyntax(measuresBetween(pos, bodyEnd), null, null, tail+1);
+            }
+            if(type(tail) != Type.ENDING) {
+                return null;
+            }
+            final int firstStart = tail+1;
+            final int firstEnd = measureRun(firstStart);
+            if(firstEnd == firstStart || type(firstEnd) != Type.REPEAT_END || type(firstEnd+1) != Type.ENDING) {
+                return null;
+            }
+            final Syntax secondEnding = musicLine(firstEnd+2);
+            if(secondEnding == null) {
+                return null;
+            }
+            return new RepeatSyntax(measuresBetween(pos, bodyEnd), measuresBetween(firstStart, firstEnd),
+                    secondEnding, secondEnding.end());
+        }
+
+        // EndSection ::= Measure ('[|' | '|]' | '||' | '|')
+        private Syntax endSection(int start) {
+            final Syntax measure = measure(start);
+            if(measure == null) {
+                return null;
+            }
+            final Type bar = type(measure.end());
+            if(bar == Type.START_BAR || bar == Type.END_BAR || bar == Type.DOUBLE_BAR || bar == Type.BAR) {
+                return new EndSectionSyntax(measure, measure.end()+1);
+            }
+            return null;
+        }
+
+        /**
+         * @param start index of a token
+         * @return the index just after the longest run of consecutive measures starting at start,
+         *         or start if no measure starts there
+         */
+        private int measureRun(int start) {
+            final List<Integer> run = new ArrayList<>();
+            int pos = start;
+            while(!measureRuns.containsKey(pos)) {
+                final Syntax measure = measure(pos);
+                if(measure == null) {
+                    measureRuns.put(pos, pos);
+                    break;
+                }
+                run.add(pos);
+                pos = measure.end();
+            }
+            final int runEnd = measureRuns.get(pos);
+            for(int measureStart: run) {
+                measureRuns.put(measureStart, runEnd);
+            }
+            return runEnd;
+        }
+
+        private List<Syntax> measuresBetween(int start, int end) {
+            final List<Syntax> run = new ArrayList<>();
+            int pos = start;
+            while(pos < end) {
+                final Syntax measure = measure(pos);
+                run.add(measure);
+                pos = measure.end();
+            }
+            return run;
+        }
+
+        // Measure ::= ('|')? (Note | Chord | Tuple | Rest)+
+        private Syntax measure(int start) {
+            if(measures.containsKey(start)) {
+                return measures.get(start);
+            }
+            int pos = start;
+            if(type(pos) == Type.BAR) {
+                pos++;
+            }
+            final List<Syntax> primitives = new ArrayList<>();
+            while(true) {
+                final Syntax primitive = primitive(pos);
+                if(primitive == null) {
+                    break;
+                }
+                primitives.add(primitive);
+                pos = primitive.end();
+            }
+            final Syntax measure = primitives.isEmpty() ? null : new MeasureSyntax(primitives, pos);
+            measures.put(start, measure);
+            return measure;
+        }
+
+        private Syntax primitive(int start) {
+            switch(type(start)) {
+            case NOTE:
+                return new NoteSyntax(tokens.get(start), start+1);
+            case REST:
+                return new RestSyntax(tokens.get(start), start+1);
+            case CHORD_START:
+                return chord(start);
+            case TUPLET:
+                return tuplet(start);
+            default:
+                return null;
+            }
+        }
+
+        // Chord ::= '[' (Note)+ ']'
+        private Syntax chord(int start) {
+            if(type(start) != Type.CHORD_START) {
+                return null;
+            }
+            int pos = start+1;
+            final List<Token> notes = new ArrayList<>();
+            while(type(pos) == Type.NOTE) {
+                notes.add(tokens.get(pos));
+                pos++;
+            }
+            if(notes.isEmpty() || type(pos) != Type.CHORD_END) {
+                return null;
+            }
+            return new ChordSyntax(notes, pos+1);
+        }
+
+        // Tuple ::= '(' Number (Note | Chord)+
+        // Tuple is outside the grammar's @skip block, so its notes may not be separated by whitespace
+        // unless it is swallowed by an accidental or a chord
+        private Syntax tuplet(int start) {
+            int pos = start+1;
+            final List<Syntax> members = new ArrayList<>();
+            while(true) {
+                final Token next = tokens.get(pos);
+                if(next.type == Type.NOTE && (!next.spaceBefore || next.accidental != null)) {
+                    members.add(new NoteSyntax(next, pos+1));
+                    pos++;
+                }
+                else if(next.type == Type.CHORD_START && chord(pos) != null) {
+                    final Syntax chord = chord(pos);
+                    members.add(chord);
+                    pos = chord.end();
+                }
+                else {
+                    break;
+                }
+            }
+            if(members.isEmpty()) {
+                return null;
+            }
+            return new TupletSyntax(tokens.get(start).number, members, pos);
+        }
+    }
+
+    private static class LineSyntax implements Syntax {
+        private final List<Syntax> elements;
+        private final int end;
+
+        private LineSyntax(List<Syntax> elements, int end) {
+            this.elements = elements;
+            this.end = end;
+        }
+
+        @Override public int end() {
+            return end;
+        }
+
+        @Override public Music build(NoteEnvironment environment) {
+            Music base = new Rest(0);
+            for(Syntax element: elements) {
+                base = new Concat(base, element.build(environment));
+            }
+            return base;
+        }
+    }
+
+    private static class RepeatSyntax implements Syntax {
+        private final List<Syntax> measures;
+        private final List<Syntax> firstEnding;
+        private final Syntax secondEnding;
+        private final int end;
+
+        private RepeatSyntax(List<Syntax> measures, List<Syntax> firstEnding, Syntax secondEnding, int end) {
+            this.measures = measures;
+            this.firstEnding = firstEnding;
+            this.secondEnding = secondEnding;
+            this.end = end;
+        }
+
+        @Override public int end() {
+            return end;
+        }
+
+        @Override public Music build(NoteEnvironment environment) {
+            Music body = new Rest(0);
+            for(Syntax measure: measures) {
+                body = new Concat(body, measure.build(environment));
+            }
+            final List<Music> endings = new ArrayList<>();
+            if(firstEnding != null) {
+                Music endingMeasures = new Rest(0);
+                for(Syntax measure: firstEnding) {
+                    endingMeasures = new Concat(endingMeasures, measure.build(environment));
+                }
+                endings.add(endingMeasures);
+                endings.add(secondEnding.build(environment));
+            }
+            return new Repeat(body, endings);
+        }
+    }
+
+    private static class EndSectionSyntax implements Syntax {
+        private final Syntax measure;
+        private final int end;
+
+        private EndSectionSyntax(Syntax measure, int end) {
+            this.measure = measure;
+            this.end = end;
+        }
+
+        @Override public int end() {
+            return end;
+        }
+
+        @Override public Music build(NoteEnvironment environment) {
+            return measure.build(environment);
+        }
+    }
+
+    private static class MeasureSyntax implements Syntax {
+        private final List<Syntax> primitives;
+        private final int end;
+
+        private MeasureSyntax(List<Syntax> primitives, int end) {
+            this.primitives = primitives;
+            this.end = end;
+        }
+
+        @Override public int end() {
+            return end;
+        }
+
+        @Override public Music build(NoteEnvironment environment) {
+            environment.newMeasure();
+            Music base = new Rest(0);
+            for(Syntax primitive: primitives) {
+                base = new Concat(base, primitive.build(environment));
+            }
+            environment.resetAccidentals();
+            return base;
+        }
+    }
+
+    private static class TupletSyntax implements Syntax {
+        private final int tupletNumber;
+        private final List<Syntax> members;
+        private final int end;
+
+        private TupletSyntax(int tupletNumber, List<Syntax> members, int end) {
+            this.tupletNumber = tupletNumber;
+            this.members = members;
+            this.end = end;
+        }
+
+        @Override public int end() {
+            return end;
+        }
+
+        @Override public Music build(NoteEnvironment environment) {
+            final double tupleSize = tupletNumber;
+            if(tupleSize != 2) {
+                environment.scaleLength((tupleSize-1)/tupleSize);
+            }
+            else {
+                environment.scaleLength((tupleSize+1)/tupleSize);
+            }
+            final List<Music> notes = new ArrayList<>();
+            for(Syntax member: members) {
+                notes.add(member.build(environment));
+            }
+            //reset length to normal size
+            environment.resetLength();
+            return new Tuplet(tupletNumber, notes);
+        }
+    }
+
+    private static class ChordSyntax implements Syntax {
+        private final List<Token> notes;
+        private final int end;
+
+        private ChordSyntax(List<Token> notes, int end) {
+            this.notes = notes;
+            this.end = end;
+        }
+
+        @Override public int end() {
+            return end;
+        }
+
+        @Override public Music build(NoteEnvironment environment) {
+            final List<Music> chordNotes = new ArrayList<>();
+            //Don't let the syllable counter increment when parsing notes in chord
+            environment.lockSyllableCounter();
+            for(Token note: notes) {
+                chordNotes.add(NoteSyntax.makeNote(note, environment));
+                environment.incrementSyllable();
+            }
+            final Music chord = new Chord(chordNotes, environment.lyricIndex());
+            environment.unlockSyllableCounter();
+            environment.incrementSyllable();
+            return chord;
+        }
+    }
+
+    private static class NoteSyntax implements Syntax {
+        private final Token note;
+        private final int end;
+
+        private NoteSyntax(Token note, int end) {
+            this.note = note;
+            this.end = end;
+        }
+
+        private static Music makeNote(Token note, NoteEnvironment environment) {
+            return environment.makeNote(note.letter, note.octavesUp, note.octavesDown, note.accidental,
+                    note.numerator, note.denominator);
+        }
+
+        @Override public int end() {
+            return end;
+        }
+
+        @Override public Music build(NoteEnvironment environment) {
+            final Music built = makeNote(note, environment);
+            environment.incrementSyllable();
+            return built;
+        }
+    }
+
+    private static class RestSyntax implements Syntax {
+        private final Token rest;
+        private final int end;
+
+        private RestSyntax(Token rest, int end) {
+            this.rest = rest;
+            this.end = end;
+        }
+
+        @Override public int end() {
+            return end;
+        }
+
+        @Override public Music build(NoteEnvironment environment) {
+            return environment.makeRest(rest.numerator, rest.denominator);
+        }
+    }
+}
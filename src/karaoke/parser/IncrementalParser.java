@@ -0,0 +1,124 @@
+package karaoke.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.Voice;
+
+/**
+ * Parses successive versions of one abc tune, such as a file being edited, parsing again only the
+ * voices whose lines changed since the previous version.
+ *
+ * A voice is built from the header and its own music and lyric lines alone, so a voice whose lines
+ * are unchanged under an unchanged header is the same voice in the new version and is reused.
+ * Changed and added voices are parsed together, and voices that disappeared are dropped. If the
+ * header changed, every voice is parsed again.
+ */
+public class IncrementalParser {
+
+    private final MusicParser parser;
+    private TuneLayout layout;
+    private Composition composition;
+    private Set<String> reparsed;
+
+    // Abstraction Function
+    // AF(parser, layout, composition, reparsed) = a parser following versions of a tune, whose latest
+    //      version has the line structure layout and parses with parser to composition. The latest
+    //      version parsed again the voices named in reparsed and reused the others
+    //
+    // Rep Invariant
+    // - every name in reparsed is a voice of layout
+    //
+    // Safety from Rep Exposure
+    // - All fields are private
+    // - composition is a copy that is never returned; callers get their own copies, so listeners they
+    //   add never reach it. Voices without listeners are immutable, so they are shared between versions
+    // - reparsedVoices() returns an unmodifiable copy
+    //
+    // Thread Safety Argument
+    // - Uses the monitor pattern: every access to the rep is synchronized on this
+    // - parser is safe to share between threads
+
+    /**
+     * Start following a tune by parsing its first version.
+     * @param parser parser to parse the tune with
+     * @param text abc text of the first version of the tune
+     * @throws UnableToParseException if the text doesn't match the Abc grammar
+     */
+    public IncrementalParser(MusicParser parser, CharSequence text) throws UnableToParseException {
+        this(parser, text, parser.parse(text));
+    }
+
+    /**
+     * Start following a tune whose first version has already been parsed.
+     * @param parser parser to parse later versions of the tune with
+     * @param text abc text of the first version of the tune
+     * @param composition the Composition parser builds for text, which is only read
+     * @throws UnableToParseException if the text doesn't match the Abc grammar
+     */
+    public IncrementalParser(MusicParser parser, CharSequence text, Composition composition) throws UnableToParseException {
+        this.parser = parser;
+        this.layout = TuneLayout.split(text);
+        this.composition = composition.copy();
+        this.reparsed = new LinkedHashSet<>(layout.voiceNames());
+        checkRep();
+    }
+
+    private synchronized void checkRep() {
+        assert layout.voiceNames().containsAll(reparsed);
+    }
+
+    /**
+     * Parse the next version of the tune, reusing the voices it shares with the previous version.
+     * @param text abc text of the next version of the tune
+     * @return a new Composition equal to the one parser builds for text, owned by the caller
+     * @throws UnableToParseException if the text doesn't match the Abc grammar, in which case the
+     *         previous version is still the one compared against
+     */
+    public synchronized Composition reparse(CharSequence text) throws UnableToParseException {
+        final TuneLayout newLayout = TuneLayout.split(text);
+        final Set<String> changed = new LinkedHashSet<>();
+        final Composition parsed;
+        if(!newLayout.header().equals(layout.header())) {
+            parsed = parser.parse(text);
+            changed.addAll(newLayout.voiceNames());
+        }
+        else {
+            final Map<String, Voice> oldVoices = composition.voices();
+            final Map<String, Voice> voices = new HashMap<>();
+            for(String name: newLayout.voiceNames()) {
+                if(oldVoices.containsKey(name) && layout.voiceNames().contains(name)
+                        && newLayout.voiceText(name).equals(layout.voiceText(name))) {
+                    voices.put(name, oldVoices.get(name));
+                }
+                else {
+                    changed.add(name);
+                }
+            }
+            if(!changed.isEmpty()) {
+                voices.putAll(parser.parse(newLayout.voicesText(new ArrayList<>(changed))).voices());
+            }
+            parsed = composition.copy();
+            parsed.setVoices(voices);
+        }
+        layout = newLayout;
+        composition = parsed;
+        reparsed = changed;
+        checkRep();
+        return parsed.copy();
+    }
+
+    /**
+     * @return the names of the voices the latest version parsed again, which is every voice of the
+     *         first version or of a version whose header changed
+     */
+    public synchronized Set<String> reparsedVoices() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(reparsed));
+    }
+}
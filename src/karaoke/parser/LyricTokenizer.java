@@ -0,0 +1,202 @@
+package karaoke.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * A single pass tokenizer for the lyrics of a w: line, producing the syllables a Voice is built
+ * with by either engine: the GRAMMAR engine matches the Lyric production of Abc.g to check the
+ * lyrics and then tokenizes the text it matched. MusicParser.referenceLyrics still reads the
+ * syllables from the Lyric parse tree, as the reference this is tested against.
+ *
+ * A hyphen separates syllables of a word, extra hyphens and a hyphen after a space each skip a
+ * note, _ holds the previous syllable, * skips a note, | jumps to the next bar, ~ joins words into
+ * one syllable and \- is a literal hyphen. A run of spaces is appended to the syllable or marker
+ * before it. NEWLINE markers between lyric lines become a line break at the end of the syllable or
+ * marker before them.
+ *
+ * Every syllable and marker is appended to the result as soon as it is read. The grammar only
+ * accepts separators that are followed by a syllable or a hold, and any other text is rejected,
+ * so nothing read ever has to be taken back.
+ */
+class LyricTokenizer {
+
+    private static final String LYRIC_LINE_BREAK = "NEWLINE";
+    private static final String SKIP = "";
+    private static final String HOLD = "_";
+
+    private LyricTokenizer() {
+        throw new AssertionError("LyricTokenizer is not instantiable");
+    }
+
+    /**
+     * Split a lyric line into the syllables sung to each note.
+     * @param lyrics the text of a w: line without its w: prefix, lines joined by NEWLINE markers
+     * @return the syllables of the line
+     * @throws UnableToParseException if the lyrics don't match the Lyric production of the Abc grammar
+     */
+    static List<String> tokenize(CharSequence lyrics) throws UnableToParseException {
+        final List<String> syllables = new ArrayList<>();
+        final int length = lyrics.length();
+        int pos = 0;
+        while(pos < length && (lyrics.charAt(pos) == ' ' || lyrics.charAt(pos) == '\t' || lyrics.charAt(pos) == '\r')) {
+            pos++;
+        }
+        // index of the syllable or marker spaces are appended to, or -1 after a NEWLINE marker,
+        // whose spaces are dropped with it
+        int last = -1;
+        pos = syllableNote(lyrics, pos, syllables);
+        if(pos < 0) {
+            throw new UnableToParseException("lyrics must start with a syllable: "+lyrics);
+        }
+        last = endSyllable(syllables);
+
+        // (Hyphens|NewMeasure|Star|Spaces)* (SyllableNote|Hold), repeated to the end
+        while(pos < length) {
+            final char c = lyrics.charAt(pos);
+            if(c == ' ' && pos+1 < length && lyrics.charAt(pos+1) == '-') {
+                // Hyphens with a leading space: every hyphen skips a note
+                pos++;
+                while(pos < length && lyrics.charAt(pos) == '-') {
+                    syllables.add(SKIP);
+                    pos++;
+                }
+                last = syllables.size()-1;
+            }
+            else if(c == ' ') {
+                while(pos < length && lyrics.charAt(pos) == ' ') {
+                    pos++;
+                }
+                if(last >= 0) {
+                    syllables.set(last, syllables.get(last)+" ");
+                }
+            }
+            else if(c == '-') {
+                // the first hyphen separates syllables, the others each skip a note
+                pos++;
+                while(pos < length && lyrics.charAt(pos) == '-') {
+                    syllables.add(SKIP);
+                    last = syllables.size()-1;
+                    pos++;
+                }
+            }
+            else if(c == '|' || c == '*') {
+                syllables.add(c == '|' ? "|" : "*");
+                last = syllables.size()-1;
+                pos++;
+            }
+            else if(c == '_') {
+                syllables.add(HOLD);
+                last = syllables.size()-1;
+                pos++;
+            }
+            else {
+                final int after = syllableNote(lyrics, pos, syllables);
+                if(after < 0) {
+                    throw new UnableToParseException("unexpected character at "+pos+" of lyrics: "+lyrics);
+                }
+                pos = after;
+                last = endSyllable(syllables);
+            }
+        }
+
+        // separators must be followed by a syllable or a hold
+        final char end = lyrics.charAt(length-1);
+        if(end == ' ' || end == '-' || end == '|' || end == '*') {
+            throw new UnableToParseException("lyrics end with a separator: "+lyrics);
+        }
+        return syllables;
+    }
+
+    /**
+     * Finish the syllable just added: a NEWLINE marker is replaced by a line break at the end of the
+     * syllable or marker before it.
+     * @return the index spaces after the syllable are appended to, or -1 if they are dropped
+     */
+    private static int endSyllable(List<String> syllables) throws UnableToParseException {
+        final int index = syllables.size()-1;
+        if(!syllables.get(index).equals(LYRIC_LINE_BREAK)) {
+            return index;
+        }
+        syllables.remove(index);
+        if(index == 0) {
+            throw new UnableToParseException("lyrics start with a line break");
+        }
+        syllables.set(index-1, syllables.get(index-1)+"\n");
+        return -1;
+    }
+
+    /**
+     * Match SyllableNote ::= Syllable ((~|\-)+ Syllable)* at start.
+     * @param lyrics the lyric text
+     * @param start index to match at
+     * @param syllables list to add the matched syllable to
+     * @return the index after the match, or -1 if no syllable starts at start
+     */
+    private static int syllableNote(CharSequence lyrics, int start, List<String> syllables) {
+        int pos = syllableEnd(lyrics, start);
+        if(pos == start) {
+            return -1;
+        }
+        StringBuilder joined = null;
+        int wordStart = start;
+        while(true) {
+            // a run of joiners only belongs to the syllable if another word follows it
+            int next = pos;
+            while(true) {
+                if(next < lyrics.length() && lyrics.charAt(next) == '~') {
+                    next++;
+                }
+                else if(next+1 < lyrics.length() && lyrics.charAt(next) == '\\' && lyrics.charAt(next+1) == '-') {
+                    next += 2;
+                }
+                else {
+                    break;
+                }
+            }
+            final int wordEnd = syllableEnd(lyrics, next);
+            if(next == pos || wordEnd == next) {
+                break;
+            }
+            if(joined == null) {
+                joined = new StringBuilder();
+            }
+            joined.append(lyrics, wordStart, pos);
+            for(int i = pos; i < next; i++) {
+                if(lyrics.charAt(i) == '~') {
+                    joined.append(' ');
+                }
+                else if(lyrics.charAt(i) == '-') {
+                    joined.append('-');
+                }
+            }
+            wordStart = next;
+            pos = wordEnd;
+        }
+        if(joined == null) {
+            syllables.add(lyrics.subSequence(start, pos).toString());
+        }
+        else {
+            syllables.add(joined.append(lyrics, wordStart, pos).toString());
+        }
+        return pos;
+    }
+
+    // Syllable ::= [a-zA-Z0-9\!.\(\)\'\?\,]+
+    private static int syllableEnd(CharSequence lyrics, int start) {
+        int pos = start;
+        while(pos < lyrics.length()) {
+            final char c = lyrics.charAt(pos);
+            if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '!' || c == '.' || c == '(' || c == ')' || c == '\'' || c == '?' || c == ',') {
+                pos++;
+            }
+            else {
+                break;
+            }
+        }
+        return pos;
+    }
+}
@@ -5,16 +5,26 @@ package karaoke.parser;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import edu.mit.eecs.parserlib.ParseTree;
 import edu.mit.eecs.parserlib.Parser;
@@ -25,24 +35,30 @@ import karaoke.Composition;
 import karaoke.Composition.Key;
 import karaoke.Concat;
 import karaoke.Music;
-import karaoke.Note;
 import karaoke.Repeat;
 import karaoke.Rest;
 import karaoke.Tuplet;
 import karaoke.Voice;
+import karaoke.parser.ParseStats.Phase;
 import karaoke.sound.Instrument;
-import karaoke.sound.Pitch;
 
+/**
+ * Parses abc text into Compositions. A MusicParser is reentrant and may be shared by any number
+ * of threads parsing at once, without locking: the grammar is compiled once, and all the state of
+ * a parse is owned by that parse.
+ */
 public class MusicParser {
-    private static final double DEFAULT_DENOMINATOR = 2;
-    private static final Instrument DEFAULT_INSTRUMENT = Instrument.PIANO;
-    private static final double DEFAULT_NOTE_LENGTH = 1.0/4;
-    private static final double DEFAULT_TEMPO = 100;
-    private static String DEFAULT_COMPOSER = "Unknown";
-    private static double DEFAULT_LENGTH = 1.0/4;
-    private static double DEFAULT_METER = 1.0;
-    private static final Map<Key, Map<String, Accidental>> KEY_SIGNATURES = new HashMap<>();
+    static final double DEFAULT_DENOMINATOR = 2;
+    static final Instrument DEFAULT_INSTRUMENT = Instrument.PIANO;
+    static final double DEFAULT_NOTE_LENGTH = 1.0/4;
+    static final double DEFAULT_TEMPO = 100;
+    static final String DEFAULT_COMPOSER = "Unknown";
+    static final double DEFAULT_LENGTH = 1.0/4;
+    static final double DEFAULT_METER = 1.0;
+    // read by every parse at once, so unmodifiable all the way down
+    static final Map<Key, Map<String, Accidental>> KEY_SIGNATURES;
     static {
+        final Map<Key, Map<String, Accidental>> signatures = new HashMap<>();
     	Map<String, Accidental> c = new HashMap<>();
     	c.put("A", Accidental.NATURAL);
     	c.put("B", Accidental.NATURAL);
@@ -52,8 +68,8 @@ public class MusicParser {
     	c.put("F", Accidental.NATURAL);
     	c.put("G", Accidental.NATURAL);    	
     	
-        KEY_SIGNATURES.put(Key.C, c);
-        KEY_SIGNATURES.put(Key.Am, c);
+        signatures.put(Key.C, c);
+        signatures.put(Key.Am, c);
         
     	Map<String, Accidental> g = new HashMap<>();
     	g.put("A", Accidental.NATURAL);
@@ -64,8 +80,8 @@ public class MusicParser {
     	g.put("F", Accidental.SHARP);
     	g.put("G", Accidental.NATURAL);    	
     	
-        KEY_SIGNATURES.put(Key.G, g);
-        KEY_SIGNATURES.put(Key.Em, g);
+        signatures.put(Key.G, g);
+        signatures.put(Key.Em, g);
         
     	Map<String, Accidental> d = new HashMap<>();
     	d.put("A", Accidental.NATURAL);
@@ -76,8 +92,8 @@ public class MusicParser {
     	d.put("F", Accidental.SHARP);
     	d.put("G", Accidental.NATURAL);    	
     	
-        KEY_SIGNATURES.put(Key.D, d);
-        KEY_SIGNATURES.put(Key.Bm, d);
+        signatures.put(Key.D, d);
+        signatures.put(Key.Bm, d);
         
     	Map<String, Accidental> a = new HashMap<>();
     	a.put("A", Accidental.NATURAL);
@@ -88,8 +104,8 @@ public class MusicParser {
     	a.put("F", Accidental.SHARP);
     	a.put("G", Accidental.SHARP);    	
     	
-        KEY_SIGNATURES.put(Key.A, a);
-        KEY_SIGNATURES.put(Key.Fsharpm, a);
+        signatures.put(Key.A, a);
+        signatures.put(Key.Fsharpm, a);
         
     	Map<String, Accidental> e = new HashMap<>();
     	e.put("A", Accidental.NATURAL);
@@ -100,8 +116,8 @@ public class MusicParser {
     	e.put("F", Accidental.SHARP);
     	e.put("G", Accidental.SHARP);    	
     	
-        KEY_SIGNATURES.put(Key.E, e);
-        KEY_SIGNATURES.put(Key.Csharpm, e);
+        signatures.put(Key.E, e);
+        signatures.put(Key.Csharpm, e);
         
     	Map<String, Accidental> b = new HashMap<>();
     	b.put("A", Accidental.SHARP);
@@ -112,8 +128,8 @@ public class MusicParser {
     	b.put("F", Accidental.SHARP);
     	b.put("G", Accidental.SHARP);    	
     	
-        KEY_SIGNATURES.put(Key.B, b);
-        KEY_SIGNATURES.put(Key.Gsharpm, b);
+        signatures.put(Key.B, b);
+        signatures.put(Key.Gsharpm, b);
         
     	Map<String, Accidental> cFlat = new HashMap<>();
     	cFlat.put("A", Accidental.FLAT);
@@ -124,8 +140,8 @@ public class MusicParser {
     	cFlat.put("F", Accidental.FLAT);
     	cFlat.put("G", Accidental.FLAT);    	
     	
-        KEY_SIGNATURES.put(Key.Cflat, cFlat);
-        KEY_SIGNATURES.put(Key.Aflatm, cFlat);
+        signatures.put(Key.Cflat, cFlat);
+        signatures.put(Key.Aflatm, cFlat);
         
     	Map<String, Accidental> fSharp = new HashMap<>();
     	fSharp.put("A", Accidental.SHARP);
@@ -136,8 +152,8 @@ public class MusicParser {
     	fSharp.put("F", Accidental.SHARP);
     	fSharp.put("G", Accidental.SHARP);    	
     	
-        KEY_SIGNATURES.put(Key.Fsharp, fSharp);
-        KEY_SIGNATURES.put(Key.Dsharpm, fSharp);
+        signatures.put(Key.Fsharp, fSharp);
+        signatures.put(Key.Dsharpm, fSharp);
         
     	Map<String, Accidental> gFlat = new HashMap<>();
     	gFlat.put("A", Accidental.FLAT);
@@ -148,8 +164,8 @@ public class MusicParser {
     	gFlat.put("F", Accidental.NATURAL);
     	gFlat.put("G", Accidental.FLAT);    	
     	
-        KEY_SIGNATURES.put(Key.Gflat, gFlat);
-        KEY_SIGNATURES.put(Key.Eflatm, gFlat);
+        signatures.put(Key.Gflat, gFlat);
+        signatures.put(Key.Eflatm, gFlat);
         
     	Map<String, Accidental> cSharp = new HashMap<>();
     	cSharp.put("A", Accidental.SHARP);
@@ -160,8 +176,8 @@ public class MusicParser {
     	cSharp.put("F", Accidental.SHARP);
     	cSharp.put("G", Accidental.SHARP);    	
     	
-        KEY_SIGNATURES.put(Key.Csharp, cSharp);
-        KEY_SIGNATURES.put(Key.Asharpm, cSharp);
+        signatures.put(Key.Csharp, cSharp);
+        signatures.put(Key.Asharpm, cSharp);
         
     	Map<String, Accidental> dFlat = new HashMap<>();
     	dFlat.put("A", Accidental.FLAT);
@@ -172,8 +188,8 @@ public class MusicParser {
     	dFlat.put("F", Accidental.NATURAL);
     	dFlat.put("G", Accidental.FLAT);    	
     	
-        KEY_SIGNATURES.put(Key.Dflat, dFlat);
-        KEY_SIGNATURES.put(Key.Bflatm, dFlat);
+        signatures.put(Key.Dflat, dFlat);
+        signatures.put(Key.Bflatm, dFlat);
         
     	Map<String, Accidental> aFlat = new HashMap<>();
     	aFlat.put("A", Accidental.FLAT);
@@ -184,8 +200,8 @@ public class MusicParser {
     	aFlat.put("F", Accidental.NATURAL);
     	aFlat.put("G", Accidental.NATURAL);    	
     	
-        KEY_SIGNATURES.put(Key.Aflat, aFlat);
-        KEY_SIGNATURES.put(Key.Fm, aFlat);
+        signatures.put(Key.Aflat, aFlat);
+        signatures.put(Key.Fm, aFlat);
         
     	Map<String, Accidental> eFlat = new HashMap<>();
     	eFlat.put("A", Accidental.FLAT);
@@ -196,8 +212,8 @@ public class MusicParser {
     	eFlat.put("F", Accidental.NATURAL);
     	eFlat.put("G", Accidental.NATURAL);    	
     	
-        KEY_SIGNATURES.put(Key.Eflat, eFlat);
-        KEY_SIGNATURES.put(Key.Cm, eFlat);
+        signatures.put(Key.Eflat, eFlat);
+        signatures.put(Key.Cm, eFlat);
         
     	Map<String, Accidental> bFlat = new HashMap<>();
     	eFlat.put("A", Accidental.NATURAL);
@@ -208,8 +224,8 @@ public class MusicParser {
     	eFlat.put("F", Accidental.NATURAL);
     	eFlat.put("G", Accidental.NATURAL);    	
     	
-        KEY_SIGNATURES.put(Key.Bflat, bFlat);
-        KEY_SIGNATURES.put(Key.Gm, bFlat);
+        signatures.put(Key.Bflat, bFlat);
+        signatures.put(Key.Gm, bFlat);
         
     	Map<String, Accidental> f = new HashMap<>();
     	f.put("A", Accidental.NATURAL);
@@ -220,8 +236,11 @@ public class MusicParser {
     	f.put("F", Accidental.NATURAL);
     	f.put("G", Accidental.NATURAL);    	
     	
-        KEY_SIGNATURES.put(Key.F, f);
-        KEY_SIGNATURES.put(Key.Dm, f);
+        signatures.put(Key.F, f);
+        signatures.put(Key.Dm, f);
+        
+        signatures.replaceAll((key, signature) -> Collections.unmodifiableMap(signature));
+        KEY_SIGNATURES = Collections.unmodifiableMap(signatures);
     }
     
     /**
@@ -254,36 +273,34 @@ public class MusicParser {
         FIRSTENDING, ENDSECTION
     }
     
-    private static enum BaseGrammar{
-    	ABCTUNE, VOICE, VOICENAME, LYRICS, MUSICLINE, NEWLINE, ANYTHING, ABCHEADER, FIELDNUMBER, FIELDTITLE,
-    	OTHERFIELDS, FIELDCOMPOSER, FIELDDEFAULTLENGTH, FIELDMETER, FIELDTEMPO, FIELDVOICE, FIELDKEY,
-    	COMMENT, ENDOFLINE, SPACEORTAB,
-    	ABCBODY
-    }
+    /** Name of the grammar, as a classpath resource next to this class */
+    private static final String GRAMMAR_RESOURCE = "Abc.g";
+    /** Where the grammar is in a source checkout, for running without the resource on the classpath */
+    private static final String GRAMMAR_SOURCE_FILE = "src/karaoke/parser/Abc.g";
     
-    private static Parser<BaseGrammar> baseParser = makeBaseParser();
+    /**
+     * Holds the compiled grammar, so that it is compiled once, the first time a GRAMMAR parser
+     * parses, and never by programs that only use the DESCENT engine. Class initialization
+     * publishes it safely to every thread.
+     */
+    private static class CompiledGrammar {
+        private static final Parser<MusicGrammar> PARSER = makeParser();
+    }
     
     /**
-     * Compile the grammar into a parser.
+     * Compile the grammar into a parser. The grammar is read as a classpath resource, so that it is
+     * found when this code is packed in a jar; a source checkout without it on the classpath falls
+     * back to the grammar file relative to the project root.
      * 
      * @return parser for the grammar
      * @throws RuntimeException if grammar file can't be read or has syntax errors
      */
-    private static Parser<BaseGrammar> makeBaseParser() {
-        try {
-            // read the grammar as a file, relative to the project root.
-            final File grammarFile = new File("src/karaoke/parser/VoiceGrammar.g");
-            return Parser.compile(grammarFile, BaseGrammar.ABCTUNE);
-
-            // A better way would read the grammar as a "classpath resource", which would allow this code 
-            // to be packed up in a jar and still be able to find its grammar file:
-            //
-            // final InputStream grammarStream = Expression.class.openResourceAsStream("Expression.g");
-            // return Parser.compile(grammarStream, ExpressionGrammar.EXPRESSION);
-            //
-            // See http://www.javaworld.com/article/2077352/java-se/smartly-load-your-properties.html
-            // for a discussion of classpath resources.
-            
+    private static Parser<MusicGrammar> makeParser() {
+        try(InputStream grammarStream = MusicParser.class.getResourceAsStream(GRAMMAR_RESOURCE)) {
+            if(grammarStream != null) {
+                return Parser.compile(grammarStream, MusicGrammar.COMPOSITION);
+            }
+            return Parser.compile(new File(GRAMMAR_SOURCE_FILE), MusicGrammar.COMPOSITION);
 
         // Parser.compile() throws two checked exceptions.
         // Translate these checked exceptions into unchecked RuntimeExceptions,
@@ -295,143 +312,244 @@ public class MusicParser {
         }
     }
 
-    private static Parser<MusicGrammar> parser = makeParser();
+    /**
+     * The ways a MusicParser can turn abc text into a Composition.
+     * GRAMMAR parses with the parserlib grammar in Abc.g, DESCENT with the hand-written
+     * lexer and recursive descent parser in DescentParser. Both build the same Composition
+     * for every tune the grammar accepts.
+     */
+    public static enum Engine {
+        GRAMMAR, DESCENT
+    }
+    
+    private static final ForkJoinPool VOICE_POOL = ForkJoinPool.commonPool();
+    
+    private final Engine engine;
+    private final boolean lazyVoices;
+    
+    // Abstraction Function
+    // AF(engine, lazyVoices) = a parser of abc text that parses with engine, and leaves the voices of
+    //                          the Compositions it makes to be built on first use iff lazyVoices
+    //
+    // Rep Invariant
+    // - true
+    //
+    // Safety from Rep Exposure
+    // - All fields are private, final and immutable
+    //
+    // Thread Safety Argument
+    // - The rep is immutable
+    // - Static state (defaults, KEY_SIGNATURES and the compiled grammar) is final, unmodifiable and
+    //   initialized by class initialization; parserlib keeps the state of each parse in that call
+    // - Each parse makes its own TuneLayout, parse tree, lyric lists and a NoteEnvironment per voice
+    //   line, and shares nothing mutable with other parses. VoiceAssembler confines each
+    //   NoteEnvironment to the one task that builds its line
     
     /**
-     * Compile the grammar into a parser.
-     * 
-     * @return parser for the grammar
-     * @throws RuntimeException if grammar file can't be read or has syntax errors
+     * Make a MusicParser that uses the Abc grammar.
      */
-    private static Parser<MusicGrammar> makeParser() {
-        try {
-            // read the grammar as a file, relative to the project root.
-            final File grammarFile = new File("src/karaoke/parser/Abc.g");
-            return Parser.compile(grammarFile, MusicGrammar.COMPOSITION);
-
-            // A better way would read the grammar as a "classpath resource", which would allow this code 
-            // to be packed up in a jar and still be able to find its grammar file:
-            //
-            // final InputStream grammarStream = Expression.class.openResourceAsStream("Expression.g");
-            // return Parser.compile(grammarStream, ExpressionGrammar.EXPRESSION);
-            //
-            // See http://www.javaworld.com/article/2077352/java-se/smartly-load-your-properties.html
-            // for a discussion of classpath resources.
-            
-
-        // Parser.compile() throws two checked exceptions.
-        // Translate these checked exceptions into unchecked RuntimeExceptions,
-        // because these failures indicate internal bugs rather than client errors
-        } catch (IOException e) {
-            throw new RuntimeException("can't read the grammar file", e);
-        } catch (UnableToParseException e) {
-            throw new RuntimeException("the grammar has a syntax error", e);
-        }
+    public MusicParser() {
+        this(Engine.GRAMMAR);
+    }
+    
+    /**
+     * Make a MusicParser that uses the given engine.
+     * @param engine the engine to parse with
+     */
+    public MusicParser(Engine engine) {
+        this(engine, false);
+    }
+    
+    /**
+     * Make a MusicParser that uses the given engine, and that may leave the voices of the
+     * Compositions it makes to be built the first time they are used. Tunes are still checked
+     * against the grammar when they are parsed, so a lazy parse fails exactly when an eager one does.
+     * With the DESCENT engine only the text of an unbuilt voice is kept; with the GRAMMAR engine
+     * its parse tree is kept, so only the time to build it is saved.
+     * @param engine the engine to parse with
+     * @param lazyVoices true to build voices on first use, false to build them while parsing
+     */
+    public MusicParser(Engine engine, boolean lazyVoices) {
+        this.engine = engine;
+        this.lazyVoices = lazyVoices;
+    }
+    
+    /**
+     * @return the engine this parser uses
+     */
+    public Engine engine() {
+        return this.engine;
+    }
+    
+    /**
+     * @return true iff this parser leaves voices to be built on first use
+     */
+    public boolean lazyVoices() {
+        return this.lazyVoices;
     }
 
     /**
      * Parse a string into an Composition.
-     * @param string string to parse
+     * @param string string to parse, such as a String or the text SourceText reads from a file;
+     *        it must not change while it is parsed
      * @return Composition parsed from the string
      * @throws UnableToParseException if the string doesn't match the Abc grammar
      */
-    public Composition parse(final String string) throws UnableToParseException {
-    	final Map<String, List<String>> voiceNoteDict = new HashMap<>();
-    	final Map<String, List<String>> voiceLyricDict = new HashMap<>();
-    	final ParseTree<BaseGrammar> abcBodyTree = baseParser.parse(string).childrenByName(BaseGrammar.ABCBODY).get(0);
-    	final ParseTree<BaseGrammar> abcHeaderTree = baseParser.parse(string).childrenByName(BaseGrammar.ABCHEADER).get(0);
-    	for(ParseTree<BaseGrammar> voice: abcBodyTree.children()) {
-    		String voiceName = voice.childrenByName(BaseGrammar.VOICENAME).get(0).text();
-    		if (voiceNoteDict.containsKey(voiceName)){
-    			voiceNoteDict.get(voiceName).add(voice.childrenByName(BaseGrammar.MUSICLINE).get(0).childrenByName(BaseGrammar.ANYTHING).get(0).text());
-    		}
-    		else {
-    			voiceNoteDict.put(voiceName, new ArrayList<>());
-    			voiceNoteDict.get(voiceName).add(voice.childrenByName(BaseGrammar.MUSICLINE).get(0).childrenByName(BaseGrammar.ANYTHING).get(0).text());
-    		}
-    		if (voice.children().size() > 2) {
-        		if (voiceLyricDict.containsKey(voiceName)){
-        			voiceLyricDict.get(voiceName).add(voice.childrenByName(BaseGrammar.LYRICS).get(0).childrenByName(BaseGrammar.ANYTHING).get(0).text());
-        		}
-        		else {
-        			voiceLyricDict.put(voiceName, new ArrayList<>());
-        			voiceLyricDict.get(voiceName).add(voice.childrenByName(BaseGrammar.LYRICS).get(0).childrenByName(BaseGrammar.ANYTHING).get(0).text());
-        		}
-    		}
-    	}
-    	
-    	String reconstructedString = "";
-    	for(ParseTree<BaseGrammar> field: abcHeaderTree.children()) {
-    		reconstructedString += field.text();
-    	}
-    	for(String voice: voiceNoteDict.keySet()) {
-    		reconstructedString = reconstructedString + voice +String.join(" ", voiceNoteDict.get(voice)) + "\n";
-    		if (voiceLyricDict.containsKey(voice)) {
-    			reconstructedString = reconstructedString + "w:" + String.join(" NEWLINE ", voiceLyricDict.get(voice)) + "\n";
-    		}
-    	}
+    public Composition parse(final CharSequence string) throws UnableToParseException {
+        return parse(string, new ParseRecorder(engine, string.length(), false));
+    }
+    
+    /**
+     * Parse a string into an Composition as parse does, measuring where the time goes.
+     * @param string string to parse, which must not change while it is parsed
+     * @return the Composition parsed from the string, with the time, allocation and size of each phase
+     * @throws UnableToParseException if the string doesn't match the Abc grammar
+     */
+    public ParseStats parseWithStats(final CharSequence string) throws UnableToParseException {
+        final ParseRecorder recorder = new ParseRecorder(engine, string.length(), true);
+        final Composition composition = parse(string, recorder);
+        return recorder.stats(composition,
+                lazyVoices ? Collections.emptyList() : composition.voices().values());
+    }
+    
+    /**
+     * Parse a string into an Composition, recording the phases of the parse.
+     */
+    private Composition parse(final CharSequence string, final ParseRecorder recorder) throws UnableToParseException {
+        boolean succeeded = false;
+        try {
+            final Composition composition = engine == Engine.DESCENT
+                    ? DescentParser.parse(string, lazyVoices, recorder)
+                    : parseGrammar(string, recorder);
+            succeeded = true;
+            return composition;
+        }
+        finally {
+            recorder.finish(succeeded);
+        }
+    }
+    
+    /**
+     * Parse a string into an Composition with the GRAMMAR engine, recording the phases of the parse.
+     */
+    private Composition parseGrammar(final CharSequence string, final ParseRecorder recorder) throws UnableToParseException {
+        // group the interleaved lines of each voice together in one pass over the input
+        final ParseRecorder.Span layout = recorder.begin(Phase.LAYOUT);
+        final String groupedString = TuneLayout.split(string).groupedText();
+        layout.end();
     	
         // parse the example into a parse tree
-        final ParseTree<MusicGrammar> parseTree = parser.parse(reconstructedString);
+        final ParseRecorder.Span parse = recorder.begin(Phase.PARSE);
+        final ParseTree<MusicGrammar> parseTree = CompiledGrammar.PARSER.parse(groupedString);
 
         // display the parse tree in various ways, for debugging only
         //System.out.println("parse tree " + parseTree);
         //Visualizer.showInBrowser(parseTree);
         
         final Composition composition = makeCompositionHeader(parseTree);
+        parse.end();
         //System.out.println("AST " + expression);
-        Map<String, Voice> voiceMap = new HashMap<>();
+        //build the voices, differently named voices in parallel
+        final List<VoiceAssembler.VoiceLine> voiceLines = new ArrayList<>();
         for(int voiceNumber = 1; voiceNumber < parseTree.children().size(); voiceNumber++) {
             ParseTree<MusicGrammar> voice = parseTree.children().get(voiceNumber);
-            List<String> lyricList = parseLyrics(voice.childrenByName(MusicGrammar.LYRIC));
             String voiceName = "";
             if(voice.childrenByName(MusicGrammar.VOICENAME).size() > 0) {
                 voiceName = voice.childrenByName(MusicGrammar.VOICENAME)
                         .get(0).text();
             }
+            final ParseRecorder.Span lyrics = recorder.begin(Phase.LYRICS, voiceName);
+            final List<String> lyricList = tokenizeLyrics(voice.childrenByName(MusicGrammar.LYRIC));
+            lyrics.end();
+            recorder.countVoiceLine(lyricList.size());
             //use parsetree to make a line of music aligned with voices
-            int indexModifier = 0;
-            if(voiceMap.containsKey(voiceName)) {
-                indexModifier = voiceMap.get(voiceName).lyricLength();
-            }
-            NoteEnvironment environment = new NoteEnvironment(composition, lyricList, indexModifier);
-            Music line = makeMusicAST(voice.childrenByName(MusicGrammar.MUSICLINE)
-                    .get(0), environment);
-            //System.out.println(line);
-            Voice newVoice = new Voice(line, lyricList, voiceName);
-            if(voiceMap.containsKey(voiceName)) {
-                voiceMap.put(voiceName, voiceMap.get(voiceName).join(newVoice));
-            }
-            else {
-                voiceMap.put(voiceName, newVoice);
-            }
+            final ParseTree<MusicGrammar> musicLine = voice.childrenByName(MusicGrammar.MUSICLINE).get(0);
+            voiceLines.add(new VoiceAssembler.VoiceLine(voiceName, lyricList,
+                    environment -> makeMusicAST(musicLine, environment)));
+        }
+        if(lazyVoices) {
+            composition.setLazyVoices(VoiceAssembler.defer(composition, voiceLines, recorder));
+        }
+        else {
+            Map<String, Voice> voiceMap = VoiceAssembler.assemble(composition, voiceLines, VOICE_POOL, recorder);
+            composition.setVoices(voiceMap);
         }
-        
-        composition.setVoices(voiceMap);
         
         return composition;
     }
     
 
     /**
-     * Parse a File into an Composition.
+     * Parse a File into an Composition. The file is read in linear time by SourceText, which
+     * ends every line with \n.
      * @param file file to parse
      * @return Composition parsed from the string
      * @throws UnableToParseException if the string doesn't match the ABC grammar 
      */
     public Composition parseFile(final File file) throws UnableToParseException {
-        // parse the example into a parse tree
+        final CharSequence input;
         try {
-            String input = "";
-            Scanner inFile = new Scanner(file);
-            while(inFile.hasNextLine()) {
-                input+=inFile.nextLine()+"\n";
-            }
-            return this.parse(input);
+            input = SourceText.read(file);
         }
         catch(IOException e) {
             throw new UnableToParseException("File not found");
         }
+        return this.parse(input);
+    }
+    
+
+    /**
+     * Lazily parse an abc collection, a sequence of tunes each starting with an X: field.
+     * Tunes are read and parsed one at a time as the iterator advances, so only one tune is held
+     * in memory. Text before the first X: field is ignored.
+     * @param collection the text of the collection; closing it is up to the caller
+     * @return an iterator over the Compositions of the collection in order. Its next() throws
+     *         IllegalArgumentException, caused by an UnableToParseException, for a tune that doesn't
+     *         match the Abc grammar, and iteration may continue with the following tune. It throws
+     *         UncheckedIOException if the collection can't be read.
+     */
+    public Iterator<Composition> parseCollection(final Reader collection) {
+        final TuneSplitter tunes = new TuneSplitter(collection);
+        return new Iterator<Composition>() {
+            private int tuneNumber = 0;
+            
+            @Override public boolean hasNext() {
+                return tunes.hasNext();
+            }
+            
+            @Override public Composition next() {
+                final String tune = tunes.next();
+                tuneNumber++;
+                try {
+                    return parse(tune);
+                }
+                catch(UnableToParseException e) {
+                    throw new IllegalArgumentException("tune "+tuneNumber+" of the collection doesn't parse", e);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Lazily parse an abc collection file, as parseCollection does.
+     * The stream must be closed to release the file, for example with try-with-resources.
+     * @param file abc collection to parse
+     * @return an ordered stream of the Compositions in the file, parsed as the stream is consumed
+     * @throws IOException if the file can't be opened
+     */
+    public Stream<Composition> streamFile(final File file) throws IOException {
+        final Reader collection = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+        final Iterator<Composition> compositions = parseCollection(collection);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(compositions,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        collection.close();
+                    }
+                    catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
     }
     
 
@@ -614,7 +732,7 @@ public class MusicParser {
                     denominator = DEFAULT_DENOMINATOR;
                 }
             }
-            return new Rest(environment.defaultDuration()*(numerator/denominator));
+            return environment.makeRest(numerator, denominator);
         }
         
         
@@ -626,62 +744,32 @@ public class MusicParser {
     
     private static Music parseNote(ParseTree<MusicGrammar> note, NoteEnvironment environment) {
         String value = note.childrenByName(MusicGrammar.LETTER).get(0).text();
-        Pitch notePitch = new Pitch(value.toUpperCase().charAt(0));
-        //case of one octave up due to being lowercase
-        String octaveModifier = "";
-        if(value.toUpperCase() != value) {
-            notePitch = notePitch.transpose(Pitch.OCTAVE);
-            octaveModifier = "\'";
-            value = value.toUpperCase();
-        }
-        
-        for(ParseTree<MusicGrammar> octaveups: note.childrenByName(MusicGrammar.OCTAVEUP)) {
-            notePitch = notePitch.transpose(Pitch.OCTAVE);
-            octaveModifier+="\'";
-        }
-        
-        for(ParseTree<MusicGrammar> octaveDown: note.childrenByName(MusicGrammar.OCTAVEDOWN)) {
-            notePitch = notePitch.transpose(-Pitch.OCTAVE);
-            octaveModifier+=",";
-        }
+        int octavesUp = note.childrenByName(MusicGrammar.OCTAVEUP).size();
+        int octavesDown = note.childrenByName(MusicGrammar.OCTAVEDOWN).size();
         
+        Accidental accidental = null;
         if(note.childrenByName(MusicGrammar.ACCIDENTAL).size() > 0) {
-            ParseTree<MusicGrammar> accidental = note.childrenByName(MusicGrammar.ACCIDENTAL).get(0);
-            MusicGrammar name = accidental.children().get(0).name();
+            ParseTree<MusicGrammar> accidentalTree = note.childrenByName(MusicGrammar.ACCIDENTAL).get(0);
+            MusicGrammar name = accidentalTree.children().get(0).name();
             if(name == MusicGrammar.FLAT) { 
-                notePitch = notePitch.transpose(Accidental.FLAT.getTranspose());
-                environment.setAccidental(value+octaveModifier, Accidental.FLAT);
+                accidental = Accidental.FLAT;
             }
             else if(name == MusicGrammar.DOUBLEFLAT) {
-                notePitch = notePitch.transpose(Accidental.DOUBLE_FLAT.getTranspose());
-                environment.setAccidental(value+octaveModifier, Accidental.DOUBLE_FLAT);
+                accidental = Accidental.DOUBLE_FLAT;
             }
             else if(name == MusicGrammar.SHARP) {
-                notePitch = notePitch.transpose(Accidental.SHARP.getTranspose());
-                environment.setAccidental(value+octaveModifier, Accidental.SHARP);
+                accidental = Accidental.SHARP;
             }
             else if(name == MusicGrammar.DOUBLESHARP) { 
-                notePitch = notePitch.transpose(Accidental.DOUBLE_SHARP.getTranspose());
-                environment.setAccidental(value+octaveModifier, Accidental.DOUBLE_SHARP);
+                accidental = Accidental.DOUBLE_SHARP;
             }
             else if(name == MusicGrammar.NATURAL) {
-                environment.setAccidental(value+octaveModifier, Accidental.NATURAL);
+                accidental = Accidental.NATURAL;
             }
             else {
-                throw new AssertionError("should never get here: "+accidental.children().get(0).name().toString());
+                throw new AssertionError("should never get here: "+accidentalTree.children().get(0).name().toString());
             }
         }
-        
-        else if(environment.accidentalsForMeasure().containsKey(value+octaveModifier)) {
-            Accidental modifier = environment.accidentalsForMeasure().get(value+octaveModifier);
-            notePitch = notePitch.transpose(modifier.getTranspose());
-        }
-        
-        else if(environment.accidentalsForKey().containsKey(value+octaveModifier)) {
-            Accidental modifier = environment.accidentalsForKey().get(value);
-            notePitch = notePitch.transpose(modifier.getTranspose());
-        }
-        
             
         //Parse time info
         double numerator = 1;
@@ -704,9 +792,49 @@ public class MusicParser {
             }
         }
                
-        return new Note(environment.defaultDuration()*(numerator/denominator), 
-                notePitch, DEFAULT_INSTRUMENT, environment.lyricIndex());
-        
+        return environment.makeNote(value, octavesUp, octavesDown, accidental, numerator, denominator);
+    }
+
+    /**
+     * @param lyricList the Lyric matched for a voice, if any, which the grammar has checked
+     * @return the syllables of the lyrics, read from the text the Lyric matched by LyricTokenizer
+     * @throws UnableToParseException if LyricTokenizer rejects lyrics the grammar accepted
+     */
+    private static List<String> tokenizeLyrics(List<ParseTree<MusicGrammar>> lyricList) throws UnableToParseException {
+        if(lyricList.size() == 0) {
+            return Collections.emptyList();
+        }
+        final String text = lyricList.get(0).text();
+        int end = text.length();
+        if(end > 0 && text.charAt(end-1) == '\n') {
+            end--;
+        }
+        if(end > 0 && text.charAt(end-1) == '\r') {
+            end--;
+        }
+        return LyricTokenizer.tokenize(text.substring(0, end));
+    }
+
+    /**
+     * Read the lyrics of every voice of a tune from the parse tree of the Lyric production, syllable by
+     * syllable, the way the GRAMMAR engine read them before LyricTokenizer. Nothing parses with this;
+     * it is kept as the reference LyricTokenizer is tested against.
+     * @param tune abc text of a tune
+     * @return the syllables of every voice that has lyrics, by voice name
+     * @throws UnableToParseException if the tune doesn't match the grammar
+     */
+    static Map<String, List<String>> referenceLyrics(CharSequence tune) throws UnableToParseException {
+        final ParseTree<MusicGrammar> parseTree = CompiledGrammar.PARSER.parse(TuneLayout.split(tune).groupedText());
+        final Map<String, List<String>> lyrics = new HashMap<>();
+        for(int voiceNumber = 1; voiceNumber < parseTree.children().size(); voiceNumber++) {
+            final ParseTree<MusicGrammar> voice = parseTree.children().get(voiceNumber);
+            final List<ParseTree<MusicGrammar>> lyricList = voice.childrenByName(MusicGrammar.LYRIC);
+            if(lyricList.size() > 0) {
+                final List<ParseTree<MusicGrammar>> names = voice.childrenByName(MusicGrammar.VOICENAME);
+                lyrics.put(names.size() > 0 ? names.get(0).text() : "", parseLyrics(lyricList));
+            }
+        }
+        return lyrics;
     }
 
     private static List<String> parseLyrics(List<ParseTree<MusicGrammar>> lyricList) {
@@ -763,97 +891,4 @@ public class MusicParser {
         
         return lyricSyllables;
     }
-    
-    
-    private class NoteEnvironment{
-        private final double defaultDuration;
-        private double duration;
-        private int lyricIndex;
-        private final List<String> lyrics;
-        private boolean newMeasure;
-        private Map<String, Accidental> keyMap;
-        private Map<String, Accidental> measureMap;
-        private boolean lock;
-        private final int indexModifier;
-        
-        private NoteEnvironment(Composition composition, List<String> lyricList, int indexModifier) {
-            keyMap = new HashMap<>(KEY_SIGNATURES.get(composition.key()));
-            measureMap = new HashMap<>();
-            lyricIndex = 0;
-            lyrics = lyricList;
-            newMeasure = true;
-            defaultDuration = (1/DEFAULT_NOTE_LENGTH)*DEFAULT_TEMPO*composition.length()*(1/composition.tempo());
-            duration = defaultDuration;
-            lock = false;
-            this.indexModifier = indexModifier;
-        }
-        
-        
-        private void lockSyllableCounter() {
-            lock = true;
-        }
-        
-        private void unlockSyllableCounter() {
-            lock = false;
-        }
-
-        private void newMeasure() {
-            newMeasure = true;
-        }
-        
-
-        private void scaleLength(double scaleFactor) {
-            this.duration*=scaleFactor;
-        }
-        
-        private void resetLength() {
-            this.duration = defaultDuration;
-        }
-        
-        
-        private void incrementSyllable() {
-            if(lyricIndex >= lyrics.size()) {
-                return;
-            }
-            if(!lock) {
-                if(!lyrics.get(lyricIndex).trim().equals("|") || newMeasure) {
-                    if(lyrics.get(lyricIndex).trim().equals("|")) {
-                        lyrics.remove(lyricIndex);
-                        lyricIndex+=1;
-                    }
-                    else {
-                        lyricIndex+=1;
-                    }
-                    newMeasure = false;
-                }
-                //otherwise do nothing
-            }
-        }
-        
-        private void setAccidental(String key, Accidental accidental) {
-            measureMap.put(key, accidental);
-        }
-        
-        private void resetAccidentals() {
-            measureMap = new HashMap<>();
-        }
-        
-        private double defaultDuration() {
-            return this.duration;
-        }
-        
-        private Map<String, Accidental> accidentalsForKey(){
-            return new HashMap<>(this.keyMap);
-        }
-        
-        private Map<String, Accidental> accidentalsForMeasure(){
-            return new HashMap<>(this.measureMap);
-        }
-        
-        private int lyricIndex() {
-            return this.lyricIndex+this.indexModifier;
-        }
-        
-    }
 }
-
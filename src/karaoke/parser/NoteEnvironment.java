@@ -0,0 +1,272 @@
+package karaoke.parser;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import karaoke.Composition;
+import karaoke.Composition.Accidental;
+import karaoke.Composition.Key;
+import karaoke.Music;
+import karaoke.Note;
+import karaoke.Rest;
+import karaoke.sound.Pitch;
+
+/**
+ * The state needed while building the Music of one voice line: the current default note length,
+ * the accidentals in effect for the key and the current measure, and the position in the lyrics
+ * that the next note is sung to. It is shared by every parser engine so that they build the same
+ * notes, rests and lyric indices.
+ *
+ * Notes are built from precomputed tables, without making strings, maps or intermediate Pitches:
+ * the semitones of every letter come from a table per key, Pitches are the shared instances handed
+ * out by Pitch.transpose, and the accidentals of the current measure are kept in an array indexed by
+ * letter and octave marks, which is cleared for the next measure by starting a new generation.
+ */
+class NoteEnvironment {
+    private static final int LETTERS = 7;
+    // octave marks of each kind that measure accidentals are kept in the array for
+    private static final int MARKS = 4;
+
+    /** semitones of each letter A to G above middle C */
+    private static final int[] LETTER_SEMITONES = new int[LETTERS];
+    /** KEY_SEMITONES[key.ordinal()][letter] = semitones the key signature moves the letter, A to G */
+    private static final int[][] KEY_SEMITONES = new int[Key.values().length][LETTERS];
+    static {
+        for(int letter = 0; letter < LETTERS; letter++) {
+            final String name = String.valueOf((char)('A' + letter));
+            LETTER_SEMITONES[letter] = new Pitch(name.charAt(0)).difference(Pitch.MIDDLE_C);
+            for(Key key: Key.values()) {
+                final Accidental signature = MusicParser.KEY_SIGNATURES.get(key).get(name);
+                KEY_SEMITONES[key.ordinal()][letter] = signature == null ? 0 : signature.getTranspose();
+            }
+        }
+    }
+
+    private final double defaultDuration;
+    private double duration;
+    private int lyricIndex;
+    private final List<String> lyrics;
+    private final BitSet consumedBars;
+    private int consumedBarCount;
+    private boolean newMeasure;
+    private final int[] keySemitones;
+    private final Accidental[] measureAccidentals;
+    private final int[] measureGenerations;
+    private int generation;
+    private Map<Long, Accidental> markedAccidentals;
+    private boolean lock;
+    private final int indexModifier;
+
+    // AF(defaultDuration, duration, lyricIndex, lyrics, consumedBars, consumedBarCount, newMeasure, keySemitones,
+    //    measureAccidentals, measureGenerations, generation, markedAccidentals, lock, indexModifier) =
+    //      the environment of a voice line whose next note lasts <duration> units of its written length
+    //      (<defaultDuration> outside of tuplets), and is sung to syllable <lyricIndex> of <lyrics> without the
+    //      bar markers at the indices in <consumedBars>, offset by <indexModifier>. A note is altered by the accidental written earlier in the measure for the same
+    //      letter and octave marks, which is measureAccidentals[slot] if measureGenerations[slot] == generation,
+    //      or in markedAccidentals for notes with too many marks to have a slot. Otherwise an uppercase
+    //      letter without octave marks is moved keySemitones[letter] semitones by the key signature.
+    //      <newMeasure> is true iff no syllable has been consumed in the current measure, and <lock> is
+    //      true while the notes of a chord are being built
+
+    // Rep Invariant
+    // - lyricIndex and indexModifier are non-negative
+    // - consumedBarCount is the number of indices in consumedBars, all of which are below lyricIndex+consumedBarCount
+    // - measureAccidentals and measureGenerations have LETTERS*MARKS*MARKS elements
+    // - measureGenerations[i] <= generation for every i
+
+    // Safety from Rep Exposure
+    // - All fields are private and none is returned
+    // - lyrics is shared with the caller on purpose: the bar markers consumed are removed from it by removeConsumedBars
+    // - keySemitones is a row of KEY_SEMITONES, which is never changed
+
+    // Thread Safety Argument
+    // - A NoteEnvironment is confined to the thread building one voice line
+
+    /**
+     * Creates the environment for a voice line of a composition
+     * @param composition the composition supplying the key, default length and tempo
+     * @param lyricList the syllables of the line; the bar markers consumed as notes are built are removed
+     *                  from it by removeConsumedBars
+     * @param indexModifier the number of syllables sung by earlier lines of the same voice
+     */
+    NoteEnvironment(Composition composition, List<String> lyricList, int indexModifier) {
+        keySemitones = KEY_SEMITONES[composition.key().ordinal()];
+        measureAccidentals = new Accidental[LETTERS*MARKS*MARKS];
+        measureGenerations = new int[LETTERS*MARKS*MARKS];
+        generation = 1;
+        markedAccidentals = null;
+        lyricIndex = 0;
+        lyrics = lyricList;
+        consumedBars = new BitSet();
+        consumedBarCount = 0;
+        newMeasure = true;
+        defaultDuration = (1/MusicParser.DEFAULT_NOTE_LENGTH)*MusicParser.DEFAULT_TEMPO*composition.length()*(1/composition.tempo());
+        duration = defaultDuration;
+        lock = false;
+        this.indexModifier = indexModifier;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert lyricIndex >= 0;
+        assert indexModifier >= 0;
+        assert measureAccidentals.length == LETTERS*MARKS*MARKS;
+        assert measureGenerations.length == LETTERS*MARKS*MARKS;
+    }
+
+    void lockSyllableCounter() {
+        lock = true;
+    }
+
+    void unlockSyllableCounter() {
+        lock = false;
+    }
+
+    void newMeasure() {
+        newMeasure = true;
+    }
+
+    void scaleLength(double scaleFactor) {
+        this.duration*=scaleFactor;
+    }
+
+    void resetLength() {
+        this.duration = defaultDuration;
+    }
+
+    void incrementSyllable() {
+        // consumed bar markers are all before the current syllable, so it is this far into lyrics
+        final int current = lyricIndex + consumedBarCount;
+        if(current >= lyrics.size()) {
+            return;
+        }
+        if(!lock) {
+            if(!lyrics.get(current).trim().equals("|") || newMeasure) {
+                if(lyrics.get(current).trim().equals("|")) {
+                    // removed from lyrics later in one pass, rather than shifting the rest of lyrics now
+                    consumedBars.set(current);
+                    consumedBarCount++;
+                    lyricIndex+=1;
+                }
+                else {
+                    lyricIndex+=1;
+                }
+                newMeasure = false;
+            }
+            //otherwise do nothing
+        }
+    }
+
+    /**
+     * Remove the bar markers consumed so far from the lyrics, which must be done once the line is built.
+     */
+    void removeConsumedBars() {
+        if(consumedBarCount == 0) {
+            return;
+        }
+        int written = 0;
+        for(int read = 0; read < lyrics.size(); read++) {
+            if(!consumedBars.get(read)) {
+                lyrics.set(written++, lyrics.get(read));
+            }
+        }
+        lyrics.subList(written, lyrics.size()).clear();
+        consumedBars.clear();
+        consumedBarCount = 0;
+    }
+
+    void resetAccidentals() {
+        generation++;
+        markedAccidentals = null;
+    }
+
+    double defaultDuration() {
+        return this.duration;
+    }
+
+    int lyricIndex() {
+        return this.lyricIndex+this.indexModifier;
+    }
+
+    /**
+     * Build a note sung to the current syllable. Does not advance the syllable counter.
+     * @param letter the letter of the note, lowercase for one octave up
+     * @param octavesUp the number of ' marks after the letter
+     * @param octavesDown the number of , marks after the letter
+     * @param accidental the accidental written before the note, or null if there is none
+     * @param numerator the numerator of the note length, 1 if omitted
+     * @param denominator the denominator of the note length, 1 if omitted
+     * @return the note
+     */
+    Music makeNote(String letter, int octavesUp, int octavesDown, Accidental accidental, double numerator, double denominator) {
+        final char written = letter.charAt(0);
+        final boolean lowercase = written >= 'a';
+        final int letterIndex = (lowercase ? written - 'a' : written - 'A');
+        // a lowercase letter counts as one ' mark, so c and C' share their measure accidentals
+        final int upMarks = octavesUp + (lowercase ? 1 : 0);
+        int semitones = LETTER_SEMITONES[letterIndex] + Pitch.OCTAVE*(upMarks - octavesDown);
+
+        if(accidental != null) {
+            semitones += accidental.getTranspose();
+            setAccidental(letterIndex, upMarks, octavesDown, accidental);
+        }
+        else {
+            final Accidental earlier = measureAccidental(letterIndex, upMarks, octavesDown);
+            if(earlier != null) {
+                semitones += earlier.getTranspose();
+            }
+            else if(upMarks == 0 && octavesDown == 0) {
+                // the key signature only applies to notes written without octave marks
+                semitones += keySemitones[letterIndex];
+            }
+        }
+
+        return new Note(defaultDuration()*(numerator/denominator),
+                Pitch.MIDDLE_C.transpose(semitones), MusicParser.DEFAULT_INSTRUMENT, lyricIndex());
+    }
+
+    /**
+     * Record an accidental written in the current measure, which then applies to later notes with the
+     * same letter and octave marks.
+     */
+    private void setAccidental(int letter, int upMarks, int downMarks, Accidental accidental) {
+        if(upMarks < MARKS && downMarks < MARKS) {
+            final int slot = letter + LETTERS*(upMarks + MARKS*downMarks);
+            measureAccidentals[slot] = accidental;
+            measureGenerations[slot] = generation;
+        }
+        else {
+            if(markedAccidentals == null) {
+                markedAccidentals = new HashMap<>();
+            }
+            markedAccidentals.put(markedKey(letter, upMarks, downMarks), accidental);
+        }
+    }
+
+    /**
+     * @return the accidental written earlier in the current measure for the letter and octave marks, or null
+     */
+    private Accidental measureAccidental(int letter, int upMarks, int downMarks) {
+        if(upMarks < MARKS && downMarks < MARKS) {
+            final int slot = letter + LETTERS*(upMarks + MARKS*downMarks);
+            return measureGenerations[slot] == generation ? measureAccidentals[slot] : null;
+        }
+        return markedAccidentals == null ? null : markedAccidentals.get(markedKey(letter, upMarks, downMarks));
+    }
+
+    private static long markedKey(int letter, int upMarks, int downMarks) {
+        return letter + LETTERS*(upMarks + (1L << Integer.SIZE)*downMarks);
+    }
+
+    /**
+     * Build a rest. Rests are not sung, so the syllable counter is untouched.
+     * @param numerator the numerator of the rest length, 1 if omitted
+     * @param denominator the denominator of the rest length, 1 if omitted
+     * @return the rest
+     */
+    Music makeRest(double numerator, double denominator) {
+        return new Rest(defaultDuration()*(numerator/denominator));
+    }
+}
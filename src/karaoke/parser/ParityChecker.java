@@ -0,0 +1,95 @@
+package karaoke.parser;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Queue;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.MusicParser.Engine;
+
+/**
+ * Command line check that the DESCENT engine builds the same Composition as the GRAMMAR engine
+ * for every abc file in a directory, and how long each engine takes.
+ */
+public class ParityChecker {
+
+    private static final String DEFAULT_DIRECTORY = "sample-abc";
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Parse every .abc file in a directory with both engines and report the files they disagree on.
+     *
+     * Command line arguments:
+     *  [DIRECTORY]
+     *
+     *  DIRECTORY => directory of abc files to check, sample-abc if omitted
+     *
+     * Exits with status 1 if any file is parsed differently by the two engines.
+     * @param args is a list of command line arguments as specified above
+     */
+    public static void main(String[] args) {
+        final Queue<String> arguments = new LinkedList<>(Arrays.asList(args));
+        final File directory = new File(arguments.isEmpty() ? DEFAULT_DIRECTORY : arguments.remove());
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(".abc"));
+        if(files == null) {
+            throw new IllegalArgumentException("not a directory: "+directory);
+        }
+        Arrays.sort(files);
+
+        final MusicParser grammar = new MusicParser(Engine.GRAMMAR);
+        final MusicParser descent = new MusicParser(Engine.DESCENT);
+        long grammarNanos = 0;
+        long descentNanos = 0;
+        int mismatches = 0;
+        for(File file: files) {
+            Composition expected = null;
+            Composition actual = null;
+            String grammarError = null;
+            String descentError = null;
+
+            final long grammarStart = System.nanoTime();
+            try {
+                expected = grammar.parseFile(file);
+            }
+            catch(UnableToParseException | RuntimeException e) {
+                grammarError = e.getMessage();
+            }
+            final long descentStart = System.nanoTime();
+            try {
+                actual = descent.parseFile(file);
+            }
+            catch(UnableToParseException | RuntimeException e) {
+                descentError = e.getMessage();
+            }
+            final long descentEnd = System.nanoTime();
+            grammarNanos += descentStart - grammarStart;
+            descentNanos += descentEnd - descentStart;
+
+            final String status;
+            if(expected != null && actual != null) {
+                status = expected.equals(actual) ? "same" : "DIFFERENT";
+            }
+            else if(expected == null && actual == null) {
+                status = "both rejected";
+            }
+            else if(expected == null) {
+                status = "DIFFERENT: only grammar rejected: "+grammarError;
+            }
+            else {
+                status = "DIFFERENT: only descent rejected: "+descentError;
+            }
+            if(status.startsWith("DIFFERENT")) {
+                mismatches++;
+            }
+            System.out.println(String.format("%-30s %8.2fms %8.2fms  %s", file.getName(),
+                    (descentStart - grammarStart)/NANOS_PER_MILLI, (descentEnd - descentStart)/NANOS_PER_MILLI, status));
+        }
+        System.out.println(String.format("%d files, %d different, grammar %.2fms, descent %.2fms", files.length,
+                mismatches, grammarNanos/NANOS_PER_MILLI, descentNanos/NANOS_PER_MILLI));
+        if(mismatches > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package karaoke.parser;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import karaoke.Composition;
+import karaoke.Music;
+import karaoke.MusicTraversal;
+import karaoke.Note;
+import karaoke.Voice;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.parser.ParseStats.Phase;
+
+/**
+ * Records where the time of one parse goes. Every phase is emitted as a karaoke.ParsePhase Flight
+ * Recorder event and the whole parse as a karaoke.Parse event, which cost next to nothing unless a
+ * recording has them enabled. A collecting recorder also adds up the phases for a ParseStats.
+ */
+class ParseRecorder {
+
+    /** One phase of a parse, emitted while a Flight Recorder recording is running */
+    @Name("karaoke.ParsePhase")
+    @Label("Parse Phase")
+    @Category({"Karaoke", "Parser"})
+    @Description("One phase of parsing an abc tune")
+    static class PhaseEvent extends Event {
+        @Label("Engine")
+        String engine;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Voice")
+        @Description("Name of the voice the phase worked on, empty for phases of the whole tune")
+        String voice;
+
+        @Label("Allocated")
+        @Description("Bytes allocated by the thread during the phase, -1 if unknown")
+        @DataAmount
+        long allocated;
+    }
+
+    /** A whole parse, emitted while a Flight Recorder recording is running */
+    @Name("karaoke.Parse")
+    @Label("Parse")
+    @Category({"Karaoke", "Parser"})
+    @Description("Parsing an abc tune into a Composition")
+    static class ParseEvent extends Event {
+        @Label("Engine")
+        String engine;
+
+        @Label("Input Characters")
+        long inputChars;
+
+        @Label("Voice Lines")
+        int voiceLines;
+
+        @Label("Syllables")
+        int syllables;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    /** A phase that has begun and has to be ended by the thread that began it */
+    class Span {
+        private final Phase phase;
+        private final PhaseEvent event;
+        private final boolean measuring;
+        private final long startNanos;
+        private final long startBytes;
+
+        private Span(Phase phase, String voice) {
+            this.phase = phase;
+            this.event = new PhaseEvent();
+            this.measuring = collecting || event.isEnabled();
+            if(measuring) {
+                event.engine = engine.name();
+                event.phase = phase.name();
+                event.voice = voice;
+                event.begin();
+            }
+            this.startBytes = measuring ? allocatedBytes() : -1;
+            this.startNanos = measuring ? System.nanoTime() : 0;
+        }
+
+        /**
+         * End the phase.
+         */
+        void end() {
+            if(!measuring) {
+                return;
+            }
+            final long nanos = System.nanoTime() - startNanos;
+            final long endBytes = allocatedBytes();
+            final long bytes = startBytes < 0 || endBytes < 0 ? -1 : endBytes - startBytes;
+            event.allocated = bytes;
+            event.commit();
+            if(collecting) {
+                add(phase, nanos, bytes);
+            }
+        }
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Engine engine;
+    private final boolean collecting;
+    private final ParseEvent parseEvent;
+    private final long startNanos;
+    private final long inputChars;
+    private final Map<Phase, Long> phaseNanos;
+    private final Map<Phase, Long> phaseBytes;
+    private int voiceLines;
+    private int syllables;
+    private long totalNanos;
+
+    // Abstraction Function
+    // AF(engine, collecting, parseEvent, startNanos, inputChars, phaseNanos, phaseBytes, voiceLines, syllables, totalNanos) =
+    //      the record of a parse by engine of inputChars characters that started at startNanos, emitted as
+    //      parseEvent, and took totalNanos if it has finished. If collecting, phases that ended took
+    //      phaseNanos.get(p) and allocated phaseBytes.get(p) bytes, -1 if unknown, in phase p.
+    //      voiceLines voice lines sung to syllables syllables were parsed so far
+    //
+    // Rep Invariant
+    // - phaseNanos and phaseBytes have a value for every Phase; values of phaseNanos are non-negative and
+    //   values of phaseBytes are non-negative or -1
+    // - voiceLines, syllables and totalNanos are non-negative
+    //
+    // Safety from Rep Exposure
+    // - All fields are private, and stats() copies the maps
+    //
+    // Thread Safety Argument
+    // - Voices are built in parallel, so the mutable fields are only accessed while synchronized on this
+    // - A Span and its event are confined to the thread that began the phase
+
+    /**
+     * Start recording a parse.
+     * @param engine the engine parsing
+     * @param inputChars number of characters being parsed
+     * @param collecting true to add up the phases for stats(), false to only emit Flight Recorder events
+     */
+    ParseRecorder(Engine engine, long inputChars, boolean collecting) {
+        this.engine = engine;
+        this.collecting = collecting;
+        this.inputChars = inputChars;
+        this.phaseNanos = new EnumMap<>(Phase.class);
+        this.phaseBytes = new EnumMap<>(Phase.class);
+        for(Phase phase: Phase.values()) {
+            phaseNanos.put(phase, 0L);
+            phaseBytes.put(phase, 0L);
+        }
+        this.voiceLines = 0;
+        this.syllables = 0;
+        this.totalNanos = 0;
+        this.parseEvent = new ParseEvent();
+        parseEvent.begin();
+        this.startNanos = System.nanoTime();
+        checkRep();
+    }
+
+    private synchronized void checkRep() {
+        for(Phase phase: Phase.values()) {
+            assert phaseNanos.get(phase) >= 0;
+            assert phaseBytes.get(phase) >= -1;
+        }
+        assert voiceLines >= 0 && syllables >= 0 && totalNanos >= 0;
+    }
+
+    /**
+     * Begin a phase of the whole tune in the calling thread.
+     * @param phase the phase beginning
+     * @return the phase begun, to be ended by the calling thread
+     */
+    Span begin(Phase phase) {
+        return new Span(phase, "");
+    }
+
+    /**
+     * Begin a phase of one voice in the calling thread.
+     * @param phase the phase beginning
+     * @param voice the name of the voice
+     * @return the phase begun, to be ended by the calling thread
+     */
+    Span begin(Phase phase, String voice) {
+        return new Span(phase, voice);
+    }
+
+    private synchronized void add(Phase phase, long nanos, long bytes) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+        if(bytes < 0 || phaseBytes.get(phase) < 0) {
+            phaseBytes.put(phase, -1L);
+        }
+        else {
+            phaseBytes.merge(phase, bytes, Long::sum);
+        }
+    }
+
+    /**
+     * Count a voice line parsed.
+     * @param lineSyllables the number of syllables of its lyrics
+     */
+    synchronized void countVoiceLine(int lineSyllables) {
+        voiceLines++;
+        syllables += lineSyllables;
+    }
+
+    /**
+     * Finish recording the parse.
+     * @param succeeded true if the parse built a Composition, false if it failed
+     */
+    synchronized void finish(boolean succeeded) {
+        totalNanos = System.nanoTime() - startNanos;
+        if(parseEvent.shouldCommit()) {
+            parseEvent.engine = engine.name();
+            parseEvent.inputChars = inputChars;
+            parseEvent.voiceLines = voiceLines;
+            parseEvent.syllables = syllables;
+            parseEvent.succeeded = succeeded;
+            parseEvent.commit();
+        }
+        checkRep();
+    }
+
+    /**
+     * @param composition the Composition the finished parse built
+     * @param built the voices of composition built during the parse
+     * @return the stats of the parse, counting the Music nodes of the built voices and how many of them are distinct
+     */
+    synchronized ParseStats stats(Composition composition, Collection<Voice> built) {
+        assert collecting;
+        final long[] musicNodes = {0};
+        final long[] notes = {0};
+        final Set<Music> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Voice voice: built) {
+            MusicTraversal.forEachNode(voice.music(), node -> {
+                musicNodes[0]++;
+                distinct.add(node);
+                if(node instanceof Note) {
+                    notes[0]++;
+                }
+            });
+        }
+        return new ParseStats(composition, engine, inputChars, totalNanos, phaseNanos, phaseBytes,
+                voiceLines, syllables, musicNodes[0], distinct.size(), notes[0]);
+    }
+
+    /**
+     * @return the bytes the calling thread has allocated so far, or -1 if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        if(THREADS instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
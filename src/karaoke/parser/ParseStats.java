@@ -0,0 +1,216 @@
+package karaoke.parser;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import karaoke.Composition;
+import karaoke.parser.MusicParser.Engine;
+
+/**
+ * The result of a parse together with where its time went: the time and memory allocated in each
+ * phase of the parse, and the size of what was parsed and built. Made by MusicParser.parseWithStats.
+ *
+ * Voices are built in parallel, so the phases can add up to more than the total time of the parse.
+ * Voices left to be built on first use by a lazy parser are not counted.
+ */
+public class ParseStats {
+
+    /** The phases of a parse */
+    public enum Phase {
+        /** splitting the tune into its header and the lines of each voice */
+        LAYOUT,
+        /** parsing the header and the music lines, with parserlib or the descent parser */
+        PARSE,
+        /** splitting lyrics into syllables and aligning them with the notes */
+        LYRICS,
+        /** building the Music of each voice line */
+        BUILD,
+        /** joining the lines of each voice into a Voice */
+        JOIN,
+        /** flattening the Music of each voice with MusicOptimizer */
+        OPTIMIZE,
+        /** sharing equal pieces of the Music of the voices with MusicInterner */
+        INTERN
+    }
+
+    private final Composition composition;
+    private final Engine engine;
+    private final long inputChars;
+    private final long totalNanos;
+    private final Map<Phase, Long> phaseNanos;
+    private final Map<Phase, Long> phaseBytes;
+    private final int voiceLines;
+    private final int syllables;
+    private final long musicNodes;
+    private final long distinctNodes;
+    private final long notes;
+
+    // Abstraction Function
+    // AF(composition, engine, inputChars, totalNanos, phaseNanos, phaseBytes, voiceLines, syllables, musicNodes,
+    //    distinctNodes, notes) =
+    //      a parse by engine of inputChars characters into composition that took totalNanos, of which
+    //      phaseNanos.get(p) were spent in phase p allocating phaseBytes.get(p) bytes, or an unknown number
+    //      of bytes if phaseBytes.get(p) is -1. The tune had voiceLines voice lines sung to syllables
+    //      syllables, and its voices were built out of musicNodes Music nodes, notes of which are Notes,
+    //      counting a node shared by several places once for each; distinctNodes of them are different objects
+    //
+    // Rep Invariant
+    // - phaseNanos and phaseBytes have a value for every Phase; every value of phaseNanos is non-negative
+    //   and every value of phaseBytes is non-negative or -1
+    // - inputChars, totalNanos, voiceLines, syllables and notes are non-negative, and notes <= musicNodes
+    // - 0 <= distinctNodes <= musicNodes
+    //
+    // Safety from Rep Exposure
+    // - All fields are private and final, and the maps are unmodifiable copies
+    // - composition is the result of the parse and is handed to the caller, who owns it
+    //
+    // Thread Safety Argument
+    // - Immutable apart from composition, which is the caller's to share or not
+
+    /**
+     * Make the stats of a parse.
+     * @param composition the Composition the parse built
+     * @param engine the engine that parsed
+     * @param inputChars number of characters parsed
+     * @param totalNanos time the whole parse took
+     * @param phaseNanos time spent in each phase
+     * @param phaseBytes bytes allocated in each phase, -1 for a phase whose allocation is unknown
+     * @param voiceLines number of voice lines parsed
+     * @param syllables number of syllables of lyrics
+     * @param musicNodes number of Music nodes in the voices built, counting shared nodes once per use
+     * @param distinctNodes number of different Music node objects in the voices built
+     * @param notes number of Notes in the voices built
+     */
+    ParseStats(Composition composition, Engine engine, long inputChars, long totalNanos,
+            Map<Phase, Long> phaseNanos, Map<Phase, Long> phaseBytes,
+            int voiceLines, int syllables, long musicNodes, long distinctNodes, long notes) {
+        this.composition = composition;
+        this.engine = engine;
+        this.inputChars = inputChars;
+        this.totalNanos = totalNanos;
+        this.phaseNanos = Collections.unmodifiableMap(new EnumMap<>(phaseNanos));
+        this.phaseBytes = Collections.unmodifiableMap(new EnumMap<>(phaseBytes));
+        this.voiceLines = voiceLines;
+        this.syllables = syllables;
+        this.musicNodes = musicNodes;
+        this.distinctNodes = distinctNodes;
+        this.notes = notes;
+        checkRep();
+    }
+
+    private void checkRep() {
+        for(Phase phase: Phase.values()) {
+            assert phaseNanos.get(phase) >= 0;
+            assert phaseBytes.get(phase) >= -1;
+        }
+        assert inputChars >= 0 && totalNanos >= 0;
+        assert voiceLines >= 0 && syllables >= 0;
+        assert 0 <= notes && notes <= musicNodes;
+        assert 0 <= distinctNodes && distinctNodes <= musicNodes;
+    }
+
+    /**
+     * @return the Composition the parse built, owned by the caller
+     */
+    public Composition composition() {
+        return composition;
+    }
+
+    /**
+     * @return the engine that parsed
+     */
+    public Engine engine() {
+        return engine;
+    }
+
+    /**
+     * @return the number of characters parsed
+     */
+    public long inputChars() {
+        return inputChars;
+    }
+
+    /**
+     * @return the time the whole parse took, in nanoseconds
+     */
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @param phase a phase of the parse
+     * @return the time spent in the phase, in nanoseconds, summed over every thread that worked on it
+     */
+    public long nanos(Phase phase) {
+        return phaseNanos.get(phase);
+    }
+
+    /**
+     * @param phase a phase of the parse
+     * @return the bytes allocated in the phase, summed over every thread that worked on it, or -1 if
+     *         the JVM can't measure the memory threads allocate
+     */
+    public long allocatedBytes(Phase phase) {
+        return phaseBytes.get(phase);
+    }
+
+    /**
+     * @return the number of voice lines parsed; lines of the same voice that the parser groups together
+     *         count as one
+     */
+    public int voiceLines() {
+        return voiceLines;
+    }
+
+    /**
+     * @return the number of syllables of lyrics, including bar markers
+     */
+    public int syllables() {
+        return syllables;
+    }
+
+    /**
+     * @return the number of Music nodes in the voices built during the parse, counting a node shared
+     *         by several measures or voices once for every place it is used
+     */
+    public long musicNodes() {
+        return musicNodes;
+    }
+
+    /**
+     * @return the number of different Music node objects in the voices built during the parse
+     */
+    public long distinctNodes() {
+        return distinctNodes;
+    }
+
+    /**
+     * @return musicNodes() / distinctNodes(), how many places each node held in memory is used in on
+     *         average; 1 if nothing is shared or no voice was built
+     */
+    public double sharingRatio() {
+        return distinctNodes == 0 ? 1 : (double) musicNodes / distinctNodes;
+    }
+
+    /**
+     * @return the number of Notes in the voices built during the parse, including the notes of chords
+     */
+    public long notes() {
+        return notes;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder stats = new StringBuilder();
+        stats.append(String.format("%s parse of %d chars in %.3f ms: %d voice lines, %d syllables, %d music nodes"
+                + " (%d distinct, sharing ratio %.2f), %d notes%n", engine, inputChars, totalNanos / 1e6, voiceLines,
+                syllables, musicNodes, distinctNodes, sharingRatio(), notes));
+        for(Phase phase: Phase.values()) {
+            final long bytes = phaseBytes.get(phase);
+            stats.append(String.format("  %-6s %10.3f ms %14s%n", phase, phaseNanos.get(phase) / 1e6,
+                    bytes < 0 ? "unknown bytes" : bytes + " bytes"));
+        }
+        return stats.toString();
+    }
+}
@@ -0,0 +1,362 @@
+package karaoke.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import karaoke.Chord;
+import karaoke.Composition;
+import karaoke.Composition.Key;
+import karaoke.Concat;
+import karaoke.Music;
+import karaoke.MusicInterner;
+import karaoke.Note;
+import karaoke.Repeat;
+import karaoke.Rest;
+import karaoke.Sequence;
+import karaoke.Tuplet;
+import karaoke.Voice;
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+
+/**
+ * The compact binary form of a parsed Composition, as stored by CompiledScoreCache.
+ *
+ * A compiled score is, in order: the magic number, the format version, the hash of the abc text
+ * it was compiled from, the header fields, and for every voice its name, syllables and Music tree
+ * written in prefix order. It ends with a CRC-32 of everything before it.
+ * The parsers build Sequences, which are written as one node with all their parts. A left-deep
+ * chain of Concats is written the same way, and trees are read and written with stacks of their own,
+ * as MusicTraversal walks them. Shared subtrees are written out in
+ * full, once for every place they are used, and shared again by a MusicInterner as they are read.
+ */
+class ScoreCodec {
+
+    /** Magic number at the start of every compiled score, "ABCS" */
+    static final int MAGIC = 0x41424353;
+    /** Version of the format, to be increased whenever the format or the Music datatype changes */
+    static final int FORMAT_VERSION = 2;
+
+    private static final byte NOTE = 1;
+    private static final byte REST = 2;
+    private static final byte CHORD = 3;
+    private static final byte TUPLET = 4;
+    private static final byte REPEAT = 5;
+    private static final byte CONCAT = 6;
+    private static final byte SEQUENCE = 7;
+
+    private static final int CHECKSUM_BYTES = Long.BYTES;
+
+    private ScoreCodec() {
+        throw new AssertionError("ScoreCodec is not instantiable");
+    }
+
+    /**
+     * Write a Composition in compiled form.
+     * @param composition the composition to write
+     * @param sourceHash the hash of the abc text the composition was parsed from
+     * @return the compiled score
+     */
+    static byte[] encode(Composition composition, String sourceHash) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(sourceHash);
+            out.writeUTF(composition.title());
+            out.writeUTF(composition.composer());
+            out.writeDouble(composition.length());
+            out.writeDouble(composition.tempo());
+            out.writeDouble(composition.meter());
+            out.writeInt(composition.trackNumber());
+            out.writeUTF(composition.key().name());
+
+            final Map<String, Voice> voices = composition.voices();
+            out.writeInt(voices.size());
+            for(Voice voice: voices.values()) {
+                out.writeUTF(voice.name());
+                final List<String> syllables = voice.syllables();
+                out.writeInt(syllables.size());
+                for(String syllable: syllables) {
+                    out.writeUTF(syllable);
+                }
+                writeMusic(out, voice.music());
+            }
+
+            final CRC32 checksum = new CRC32();
+            checksum.update(bytes.toByteArray());
+            out.writeLong(checksum.getValue());
+        }
+        catch(IOException e) {
+            throw new AssertionError("a ByteArrayOutputStream never throws", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMusic(DataOutputStream out, Music music) throws IOException {
+        // pieces still to be written, next on top, and the count of endings due after the measures
+        // of a repeat
+        final Deque<Object> unwritten = new ArrayDeque<>();
+        unwritten.push(music);
+        while(!unwritten.isEmpty()) {
+            final Object next = unwritten.pop();
+            if(next instanceof Integer) {
+                out.writeInt((Integer) next);
+            }
+            else if(next instanceof Note) {
+                final Note note = (Note) next;
+                out.writeByte(NOTE);
+                out.writeDouble(note.duration());
+                out.writeInt(note.pitch().difference(Pitch.MIDDLE_C));
+                out.writeByte(note.instrument().ordinal());
+                out.writeInt(note.lyricIndex());
+            }
+            else if(next instanceof Rest) {
+                out.writeByte(REST);
+                out.writeDouble(((Rest) next).duration());
+            }
+            else if(next instanceof Chord) {
+                final Chord chord = (Chord) next;
+                out.writeByte(CHORD);
+                out.writeInt(chord.lyricIndex());
+                pushList(out, unwritten, chord.notes());
+            }
+            else if(next instanceof Tuplet) {
+                final Tuplet tuplet = (Tuplet) next;
+                out.writeByte(TUPLET);
+                out.writeInt(tuplet.tupletNumber());
+                pushList(out, unwritten, tuplet.notes());
+            }
+            else if(next instanceof Repeat) {
+                final Repeat repeat = (Repeat) next;
+                out.writeByte(REPEAT);
+                final List<Music> endings = repeat.endings();
+                for(int i = endings.size()-1; i >= 0; i--) {
+                    unwritten.push(endings.get(i));
+                }
+                unwritten.push(endings.size());
+                unwritten.push(repeat.measures());
+            }
+            else if(next instanceof Sequence) {
+                out.writeByte(SEQUENCE);
+                pushList(out, unwritten, ((Sequence) next).parts());
+            }
+            else if(next instanceof Concat) {
+                // walk down the left spine, then write the leftmost piece and every right piece in order
+                final List<Music> rights = new ArrayList<>();
+                Music left = (Music) next;
+                while(left instanceof Concat) {
+                    rights.add(((Concat) left).right());
+                    left = ((Concat) left).left();
+                }
+                out.writeByte(CONCAT);
+                out.writeInt(rights.size());
+                for(Music right: rights) {
+                    unwritten.push(right);
+                }
+                unwritten.push(left);
+            }
+            else {
+                throw new IllegalArgumentException("unknown kind of music: "+next.getClass());
+            }
+        }
+    }
+
+    /**
+     * Write the size of a list of pieces and push the pieces to be written next, in order.
+     */
+    private static void pushList(DataOutputStream out, Deque<Object> unwritten, List<Music> pieces) throws IOException {
+        out.writeInt(pieces.size());
+        for(int i = pieces.size()-1; i >= 0; i--) {
+            unwritten.push(pieces.get(i));
+        }
+    }
+
+    /**
+     * Read a compiled score.
+     * @param compiled a compiled score
+     * @param expectedHash the hash of the abc text the score must have been compiled from
+     * @return the Composition in the compiled score
+     * @throws IOException if the score is corrupt, was written by another format version,
+     *         or was compiled from other abc text
+     */
+    static Composition decode(byte[] compiled, String expectedHash) throws IOException {
+        if(compiled.length < CHECKSUM_BYTES) {
+            throw new IOException("compiled score is truncated");
+        }
+        final int payloadLength = compiled.length - CHECKSUM_BYTES;
+        final CRC32 checksum = new CRC32();
+        checksum.update(compiled, 0, payloadLength);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(compiled));
+        in.mark(compiled.length);
+        in.skipBytes(payloadLength);
+        if(in.readLong() != checksum.getValue()) {
+            throw new IOException("compiled score is corrupt");
+        }
+        in.reset();
+
+        if(in.readInt() != MAGIC) {
+            throw new IOException("not a compiled score");
+        }
+        final int version = in.readInt();
+        if(version != FORMAT_VERSION) {
+            throw new IOException("compiled score has format version "+version+", expected "+FORMAT_VERSION);
+        }
+        if(!in.readUTF().equals(expectedHash)) {
+            throw new IOException("compiled score is stale");
+        }
+
+        try {
+            final String title = in.readUTF();
+            final String composer = in.readUTF();
+            final double length = in.readDouble();
+            final double tempo = in.readDouble();
+            final double meter = in.readDouble();
+            final int trackNumber = in.readInt();
+            final Key key = Key.valueOf(in.readUTF());
+            final Composition composition = new Composition(title, composer, length, tempo, meter, trackNumber, key);
+
+            final int voiceCount = readCount(in);
+            final Map<String, Voice> voices = new HashMap<>();
+            final MusicInterner interner = new MusicInterner();
+            for(int i = 0; i < voiceCount; i++) {
+                final String name = in.readUTF();
+                final int syllableCount = readCount(in);
+                final List<String> syllables = new ArrayList<>();
+                for(int j = 0; j < syllableCount; j++) {
+                    syllables.add(in.readUTF());
+                }
+                voices.put(name, new Voice(interner.intern(readMusic(in)), syllables, name));
+            }
+            if(in.available() != CHECKSUM_BYTES) {
+                throw new IOException("compiled score has trailing data");
+            }
+            composition.setVoices(voices);
+            return composition;
+        }
+        catch(EOFException e) {
+            throw new IOException("compiled score is truncated", e);
+        }
+        catch(IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("compiled score is corrupt", e);
+        }
+    }
+
+    /** A node being read whose parts are not all read yet */
+    private static class Frame {
+        private final byte tag;
+        private final int number;
+        private final List<Music> parts;
+        private int remaining;
+
+        // AF(tag, number, parts, remaining) = a node of kind <tag> with lyric index or tuplet number
+        //                                     <number>, of which <parts> are read and <remaining> are still to be read
+        // RI: remaining >= 0
+
+        private Frame(byte tag, int number, int remaining) {
+            this.tag = tag;
+            this.number = number;
+            this.parts = new ArrayList<>();
+            this.remaining = remaining;
+        }
+
+        /**
+         * @return the node made of the parts read
+         */
+        private Music build() {
+            switch(tag) {
+            case CHORD:
+                return new Chord(parts, number);
+            case TUPLET:
+                return new Tuplet(number, parts);
+            case REPEAT:
+                return new Repeat(parts.get(0), parts.subList(1, parts.size()));
+            case SEQUENCE:
+                return new Sequence(parts);
+            case CONCAT: {
+                Music music = parts.get(0);
+                for(int i = 1; i < parts.size(); i++) {
+                    music = new Concat(music, parts.get(i));
+                }
+                return music;
+            }
+            default:
+                throw new AssertionError("not a node with parts: "+tag);
+            }
+        }
+    }
+
+    private static Music readMusic(DataInputStream in) throws IOException {
+        // the nodes being read, innermost on top
+        final Deque<Frame> open = new ArrayDeque<>();
+        while(true) {
+            Music read = null;
+            final byte tag = in.readByte();
+            switch(tag) {
+            case NOTE: {
+                final double duration = in.readDouble();
+                final Pitch pitch = Pitch.MIDDLE_C.transpose(in.readInt());
+                final Instrument instrument = Instrument.values()[in.readUnsignedByte()];
+                read = new Note(duration, pitch, instrument, in.readInt());
+                break;
+            }
+            case REST:
+                read = new Rest(in.readDouble());
+                break;
+            case CHORD:
+            case TUPLET: {
+                final int number = in.readInt();
+                open.push(new Frame(tag, number, readCount(in)));
+                break;
+            }
+            case REPEAT:
+                // the measures come first, then the count of endings
+                open.push(new Frame(tag, 0, 1));
+                break;
+            case SEQUENCE:
+                open.push(new Frame(tag, 0, readCount(in)));
+                break;
+            case CONCAT:
+                open.push(new Frame(tag, 0, readCount(in) + 1));
+                break;
+            default:
+                throw new IOException("compiled score has unknown music tag "+tag);
+            }
+            // hand what was read to the node it is a part of, finishing every node that has all its parts
+            while(read != null || open.peek().remaining == 0) {
+                if(read == null) {
+                    read = open.pop().build();
+                }
+                if(open.isEmpty()) {
+                    return read;
+                }
+                final Frame parent = open.peek();
+                parent.parts.add(read);
+                parent.remaining--;
+                if(parent.tag == REPEAT && parent.parts.size() == 1) {
+                    parent.remaining = readCount(in);
+                }
+                read = null;
+            }
+        }
+    }
+
+    /** Read a count of items, each of which takes at least one more byte */
+    private static int readCount(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        if(count < 0 || count > in.available()) {
+            throw new IOException("compiled score has an impossible count "+count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,220 @@
+package karaoke.parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.Composition.Key;
+
+/**
+ * The header fields and voice names of an abc tune, found by scanning its text without parsing
+ * its music. Scanning parses the header up to the K: field, then only looks at the first
+ * characters of each following line to find the voices, so it builds no Music and holds no more
+ * than one line of the body at a time. Listing a catalog this way costs little more than reading it.
+ */
+public class SongHeader {
+
+    private static final String UNNAMED_VOICE = "";
+
+    private final String title;
+    private final String composer;
+    private final Key key;
+    private final double meter;
+    private final double tempo;
+    private final double length;
+    private final int trackNumber;
+    private final List<String> voiceNames;
+
+    // Abstraction Function
+    // AF(title, composer, key, meter, tempo, length, trackNumber, voiceNames) = the header of a tune
+    //      with these fields, whose voices are named voiceNames in the order they first play,
+    //      "" being the unnamed voice
+    //
+    // Rep Invariant
+    // - title, composer, key and voiceNames are not null
+    // - voiceNames has no duplicates
+    //
+    // Safety from Rep Exposure
+    // - All fields are private and final
+    // - voiceNames is an unmodifiable list that is never changed
+    //
+    // Thread Safety Argument
+    // - The type is immutable
+
+    private SongHeader(Composition header, List<String> voiceNames) {
+        this.title = header.title();
+        this.composer = header.composer();
+        this.key = header.key();
+        this.meter = header.meter();
+        this.tempo = header.tempo();
+        this.length = header.length();
+        this.trackNumber = header.trackNumber();
+        this.voiceNames = Collections.unmodifiableList(new ArrayList<>(voiceNames));
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert title != null;
+        assert composer != null;
+        assert key != null;
+        assert voiceNames != null;
+        assert new LinkedHashSet<>(voiceNames).size() == voiceNames.size();
+    }
+
+    /**
+     * Scan the text of one abc tune for its header and voice names. Only the header is checked
+     * against the Abc grammar; the music is not parsed, so the tune may still fail to parse.
+     * @param tune the text of the tune; closing it is up to the caller
+     * @return the header of the tune
+     * @throws UnableToParseException if the header has no K: field or doesn't match the Abc grammar
+     * @throws IOException if the tune can't be read
+     */
+    public static SongHeader scan(Reader tune) throws UnableToParseException, IOException {
+        final BufferedReader lines = tune instanceof BufferedReader ? (BufferedReader) tune : new BufferedReader(tune);
+
+        final StringBuilder header = new StringBuilder();
+        String line;
+        do {
+            line = lines.readLine();
+            if(line == null) {
+                throw new UnableToParseException("header is missing the K: field");
+            }
+            header.append(line).append('\n');
+        } while(!line.startsWith("K:"));
+        final Composition fields = DescentParser.parseHeader(header.toString());
+
+        // assign music lines to voices the way TuneLayout does, without keeping the lines
+        final Set<String> voiceNames = new LinkedHashSet<>();
+        String pendingName = null;
+        while((line = lines.readLine()) != null) {
+            final int commentStart = line.indexOf('%');
+            final String content = commentStart < 0 ? line : line.substring(0, commentStart);
+            if(content.trim().isEmpty() || content.startsWith("w:")) {
+                // no music
+            }
+            else if(content.startsWith("V:")) {
+                pendingName = content.substring(2);
+            }
+            else {
+                voiceNames.add(pendingName == null ? UNNAMED_VOICE : stripLeadingWhitespace(pendingName));
+                pendingName = null;
+            }
+        }
+        return new SongHeader(fields, new ArrayList<>(voiceNames));
+    }
+
+    /**
+     * Scan an abc file of one tune, as scan(Reader) does.
+     * @param file the abc file
+     * @return the header of the tune in the file
+     * @throws UnableToParseException if the header has no K: field or doesn't match the Abc grammar
+     * @throws IOException if the file can't be read
+     */
+    public static SongHeader scanFile(File file) throws UnableToParseException, IOException {
+        try(BufferedReader tune = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return scan(tune);
+        }
+    }
+
+    private static String stripLeadingWhitespace(String text) {
+        int start = 0;
+        while(start < text.length() && (text.charAt(start) == ' ' || text.charAt(start) == '\t')) {
+            start++;
+        }
+        return text.substring(start);
+    }
+
+    /**
+     * @return the title of the tune
+     */
+    public String title() {
+        return title;
+    }
+
+    /**
+     * @return the composer of the tune, "Unknown" if the header doesn't name one
+     */
+    public String composer() {
+        return composer;
+    }
+
+    /**
+     * @return the key the tune is written in
+     */
+    public Key key() {
+        return key;
+    }
+
+    /**
+     * @return the length of a bar of the tune
+     */
+    public double meter() {
+        return meter;
+    }
+
+    /**
+     * @return the tempo of the tune
+     */
+    public double tempo() {
+        return tempo;
+    }
+
+    /**
+     * @return the default length of a note in the tune
+     */
+    public double length() {
+        return length;
+    }
+
+    /**
+     * @return the track number of the tune
+     */
+    public int trackNumber() {
+        return trackNumber;
+    }
+
+    /**
+     * @return the names of the voices of the tune in the order they first play, "" being the unnamed voice
+     */
+    public List<String> voiceNames() {
+        return voiceNames;
+    }
+
+    /**
+     * @return the title and composer of the tune, in the same form as Player.songInfo()
+     */
+    public String songInfo() {
+        return "Title: " + title + ", Composer: " + composer;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if(!(that instanceof SongHeader)) {
+            return false;
+        }
+        final SongHeader other = (SongHeader) that;
+        return title.equals(other.title) && composer.equals(other.composer) && key == other.key
+                && meter == other.meter && tempo == other.tempo && length == other.length
+                && trackNumber == other.trackNumber && voiceNames.equals(other.voiceNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return title.hashCode() + composer.hashCode() + key.hashCode() + trackNumber + voiceNames.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return trackNumber + ": " + title + " by " + composer + " in " + key + ", voices " + voiceNames;
+    }
+}
@@ -0,0 +1,48 @@
+package karaoke.parser;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes of abc text, used to key caches of parsed Compositions.
+ * Texts that parse the same because they differ only in their line endings have the same hash.
+ */
+class SourceHash {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private SourceHash() {
+        throw new AssertionError("SourceHash is not instantiable");
+    }
+
+    /**
+     * @param text abc text
+     * @return the text with every line ending as \n and a line ending at the end, which parses the same.
+     *         This is text itself if it is already normalized, as text read by SourceText is
+     */
+    static CharSequence normalize(CharSequence text) {
+        return SourceText.normalize(text);
+    }
+
+    /**
+     * @param normalized abc text returned by normalize
+     * @return the SHA-256 hash of the text's UTF-8 bytes, as 64 lowercase hex digits
+     */
+    static String of(CharSequence normalized) {
+        try {
+            final MessageDigest hash = MessageDigest.getInstance(HASH_ALGORITHM);
+            hash.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(normalized)));
+            final byte[] digest = hash.digest();
+            final StringBuilder hex = new StringBuilder();
+            for(byte b: digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new AssertionError("every Java platform supports " + HASH_ALGORITHM, e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package karaoke.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads abc files into text for the parsers in time linear in the size of the file.
+ *
+ * A file is decoded from UTF-8 straight into one CharBuffer, which is what every parser entry point
+ * takes, so no String of the whole file is made. Files of at least a megabyte are memory mapped
+ * rather than read onto the heap first. Line endings are normalized in the same buffer: every line
+ * ends in \n, including the last, as the parsers and SourceHash expect.
+ */
+public class SourceText {
+
+    // files at least this big are memory mapped
+    private static final long MAP_THRESHOLD = 1L << 20;
+
+    private SourceText() {
+        throw new AssertionError("SourceText is not instantiable");
+    }
+
+    /**
+     * Read an abc file. Bytes that are not valid UTF-8 are read as U+FFFD.
+     * @param file the abc file to read
+     * @return the text of the file with every line ending as \n and a line ending at the end;
+     *         a read-only sequence owned by the caller
+     * @throws IOException if the file can't be read
+     */
+    public static CharSequence read(File file) throws IOException {
+        final ByteBuffer bytes;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if(size >= Integer.MAX_VALUE) {
+                throw new IOException(file + " is too big to parse");
+            }
+            if(size >= MAP_THRESHOLD) {
+                bytes = channel.map(MapMode.READ_ONLY, 0, size);
+            }
+            else {
+                bytes = ByteBuffer.allocate((int) size);
+                while(bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // keep reading until the buffer is full or the file ends early
+                }
+                bytes.flip();
+            }
+        }
+        return decode(bytes);
+    }
+
+    /**
+     * Decode UTF-8 bytes into normalized text.
+     */
+    private static CharSequence decode(ByteBuffer bytes) throws CharacterCodingException {
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // UTF-8 never decodes to more chars than it has bytes; leave room for a final line ending
+        final CharBuffer chars = CharBuffer.allocate(bytes.remaining() + 1);
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if(!result.isUnderflow()) {
+            result.throwException();
+        }
+        result = decoder.flush(chars);
+        if(!result.isUnderflow()) {
+            result.throwException();
+        }
+        return normalize(chars.array(), chars.position());
+    }
+
+    /**
+     * @param text abc text
+     * @return the text with every line ending as \n and a line ending at the end, which parses the same.
+     *         This is text itself if it is already normalized
+     */
+    static CharSequence normalize(CharSequence text) {
+        final int length = text.length();
+        boolean normalized = length > 0 && text.charAt(length-1) == '\n';
+        for(int i = 0; i < length && normalized; i++) {
+            normalized = text.charAt(i) != '\r';
+        }
+        if(normalized) {
+            return text;
+        }
+        final char[] chars = new char[length + 1];
+        for(int i = 0; i < length; i++) {
+            chars[i] = text.charAt(i);
+        }
+        return normalize(chars, length);
+    }
+
+    /**
+     * Normalize the line endings of the first length chars in place.
+     * @param chars text to normalize, with room for at least one more char after it
+     * @return a read-only view of the normalized text at the start of chars
+     */
+    private static CharSequence normalize(char[] chars, int length) {
+        int written = 0;
+        for(int i = 0; i < length; i++) {
+            if(chars[i] == '\r') {
+                chars[written++] = '\n';
+                if(i+1 < length && chars[i+1] == '\n') {
+                    i++;
+                }
+            }
+            else {
+                chars[written++] = chars[i];
+            }
+        }
+        if(written == 0 || chars[written-1] != '\n') {
+            chars[written++] = '\n';
+        }
+        return CharBuffer.wrap(chars, 0, written).asReadOnlyBuffer();
+    }
+}
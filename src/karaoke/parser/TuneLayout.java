@@ -0,0 +1,258 @@
+package karaoke.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * A TuneLayout is the line structure of a single abc tune: its header and, for every voice,
+ * the music lines and lyric lines that belong to it in the order they appear in the file.
+ * It is built in one pass over the input and replaces the grammar based pre-pass that
+ * MusicParser used to group interleaved voices.
+ */
+public class TuneLayout {
+
+    private static final String UNNAMED_VOICE = "";
+    private static final String LYRIC_LINE_BREAK = " NEWLINE ";
+
+    private final String header;
+    private final Map<String, List<String>> musicLines;
+    private final Map<String, List<String>> lyricLines;
+    private final Map<String, Boolean> namedVoices;
+
+    // AF(header, musicLines, lyricLines, namedVoices) = an abc tune whose header fields are the text <header>,
+    //                                                   and whose voice v plays the music lines musicLines[v] one after
+    //                                                   another while singing the lyric lines lyricLines[v]. Voice v
+    //                                                   was introduced with a V: field iff namedVoices[v]
+
+    // Rep Invariant
+    // - header ends with a line break
+    // - musicLines, lyricLines and namedVoices have the same key set
+    // - every list in musicLines is non-empty
+
+    // Safety from Rep Exposure
+    // - All fields are private and final
+    // - Only unmodifiable views or copies of the maps and lists are returned
+
+    // Thread Safety Argument
+    // - The rep is never mutated after the constructor returns
+
+    private TuneLayout(String header, Map<String, List<String>> musicLines, Map<String, List<String>> lyricLines,
+            Map<String, Boolean> namedVoices) {
+        this.header = header;
+        this.musicLines = musicLines;
+        this.lyricLines = lyricLines;
+        this.namedVoices = namedVoices;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert header.endsWith("\n");
+        assert musicLines.keySet().equals(lyricLines.keySet());
+        assert musicLines.keySet().equals(namedVoices.keySet());
+        for(List<String> lines: musicLines.values()) {
+            assert !lines.isEmpty();
+        }
+    }
+
+    /**
+     * Split the text of one abc tune into its header and voices. The header runs up to and including
+     * the K: field. Every following music line belongs to the voice named by the V: field directly
+     * before it, or to the unnamed voice if there is none, and a w: line belongs to the voice of the
+     * music line before it. Comments and blank lines are dropped.
+     * @param input the text of the tune
+     * @return the layout of the tune
+     * @throws UnableToParseException if the header has no K: field or a lyric line has no music line before it
+     */
+    public static TuneLayout split(CharSequence input) throws UnableToParseException {
+        final StringBuilder header = new StringBuilder();
+        final Map<String, List<String>> musicLines = new LinkedHashMap<>();
+        final Map<String, List<String>> lyricLines = new LinkedHashMap<>();
+        final Map<String, Boolean> namedVoices = new LinkedHashMap<>();
+
+        boolean inHeader = true;
+        String pendingName = null;
+        String currentVoice = null;
+        int lineStart = 0;
+        final int length = input.length();
+        while(lineStart < length) {
+            int lineEnd = lineStart;
+            while(lineEnd < length && input.charAt(lineEnd) != '\n' && input.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            int nextLine = lineEnd;
+            if(nextLine < length && input.charAt(nextLine) == '\r') {
+                nextLine++;
+            }
+            if(nextLine < length && input.charAt(nextLine) == '\n') {
+                nextLine++;
+            }
+
+            if(inHeader) {
+                // The header is handed to the grammar untouched, including its comments
+                header.append(input, lineStart, nextLine);
+                if(lineEnd == nextLine) {
+                    header.append('\n');
+                }
+                if(startsWith(input, lineStart, lineEnd, "K:")) {
+                    inHeader = false;
+                }
+            }
+            else {
+                String content = stripComment(input, lineStart, lineEnd);
+                if(content.trim().isEmpty()) {
+                    // blank and comment-only lines carry no music
+                }
+                else if(content.startsWith("V:")) {
+                    pendingName = content.substring(2);
+                }
+                else if(content.startsWith("w:")) {
+                    if(currentVoice == null) {
+                        throw new UnableToParseException("lyric line without music: "+content);
+                    }
+                    lyricLines.get(currentVoice).add(content.substring(2));
+                }
+                else {
+                    currentVoice = pendingName == null ? UNNAMED_VOICE : stripLeadingWhitespace(pendingName);
+                    if(!musicLines.containsKey(currentVoice)) {
+                        musicLines.put(currentVoice, new ArrayList<>());
+                        lyricLines.put(currentVoice, new ArrayList<>());
+                        namedVoices.put(currentVoice, pendingName != null);
+                    }
+                    musicLines.get(currentVoice).add(content);
+                    pendingName = null;
+                }
+            }
+            lineStart = nextLine;
+        }
+
+        if(inHeader) {
+            throw new UnableToParseException("header is missing the K: field");
+        }
+        return new TuneLayout(header.toString(), musicLines, lyricLines, namedVoices);
+    }
+
+    private static boolean startsWith(CharSequence input, int start, int end, String prefix) {
+        if(end - start < prefix.length()) {
+            return false;
+        }
+        for(int i = 0; i < prefix.length(); i++) {
+            if(input.charAt(start+i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String stripLeadingWhitespace(String text) {
+        int start = 0;
+        while(start < text.length() && (text.charAt(start) == ' ' || text.charAt(start) == '\t')) {
+            start++;
+        }
+        return text.substring(start);
+    }
+
+    private static String stripComment(CharSequence input, int start, int end) {
+        int contentEnd = start;
+        while(contentEnd < end && input.charAt(contentEnd) != '%') {
+            contentEnd++;
+        }
+        return input.subSequence(start, contentEnd).toString();
+    }
+
+    /**
+     * @return the header of the tune, from the X: field up to and including the K: field
+     */
+    public String header() {
+        return this.header;
+    }
+
+    /**
+     * @return the names of the voices in the order they first appear, "" being the unnamed voice
+     */
+    public List<String> voiceNames() {
+        return Collections.unmodifiableList(new ArrayList<>(musicLines.keySet()));
+    }
+
+    /**
+     * @param voice name of a voice in this tune
+     * @return the music lines of the voice in order
+     */
+    public List<String> musicLines(String voice) {
+        return Collections.unmodifiableList(musicLines.get(voice));
+    }
+
+    /**
+     * @param voice name of a voice in this tune
+     * @return the lyric lines of the voice in order, without their w: prefix
+     */
+    public List<String> lyricLines(String voice) {
+        return Collections.unmodifiableList(lyricLines.get(voice));
+    }
+
+    /**
+     * @return abc text with the header of this tune followed by every voice written out once,
+     *         with its music lines joined into one line and its lyric lines joined into one w: line
+     *         separated by NEWLINE markers, as expected by the Abc grammar
+     */
+    public String groupedText() {
+        final StringBuilder grouped = new StringBuilder(header);
+        for(String voice: musicLines.keySet()) {
+            appendVoice(grouped, voice);
+        }
+        return grouped.toString();
+    }
+
+    /**
+     * @param voice name of a voice in this tune
+     * @return abc text with the header of this tune followed by only the given voice, written out
+     *         as in groupedText()
+     */
+    public String voiceText(String voice) {
+        return voicesText(Collections.singletonList(voice));
+    }
+
+    /**
+     * @param voices names of voices in this tune
+     * @return abc text with the header of this tune followed by only the given voices in the given
+     *         order, each written out as in groupedText()
+     */
+    public String voicesText(List<String> voices) {
+        final StringBuilder grouped = new StringBuilder(header);
+        for(String voice: voices) {
+            appendVoice(grouped, voice);
+        }
+        return grouped.toString();
+    }
+
+    /**
+     * @param voice name of a voice in this tune
+     * @return the music lines of the voice joined into one line
+     */
+    public String musicText(String voice) {
+        return String.join(" ", musicLines.get(voice));
+    }
+
+    /**
+     * @param voice name of a voice in this tune
+     * @return the lyric lines of the voice joined into one line, separated by NEWLINE markers,
+     *         or the empty string if the voice has no lyrics
+     */
+    public String lyricText(String voice) {
+        return String.join(LYRIC_LINE_BREAK, lyricLines.get(voice));
+    }
+
+    private void appendVoice(StringBuilder grouped, String voice) {
+        if(namedVoices.get(voice)) {
+            grouped.append("V:").append(voice).append('\n');
+        }
+        grouped.append(musicText(voice)).append('\n');
+        if(!lyricLines.get(voice).isEmpty()) {
+            grouped.append("w:").append(lyricText(voice)).append('\n');
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package karaoke.parser;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A TuneSplitter reads an abc collection, a file of many tunes each starting with an X: field,
+ * and returns the text of one tune at a time. Only the tune being returned is held in memory,
+ * the rest of the collection is read as next() is called.
+ */
+public class TuneSplitter implements Iterator<String>, Closeable {
+
+    private static final String TUNE_START = "X:";
+
+    private final BufferedReader reader;
+    private String nextTuneStart;
+    private boolean closed;
+
+    // AF(reader, nextTuneStart, closed) = the tunes of an abc collection not yet returned, which are
+    //                                     the X: line nextTuneStart followed by the rest of reader,
+    //                                     or no tunes if nextTuneStart is null. Text before the first
+    //                                     X: line is not part of any tune
+    //
+    // Rep Invariant
+    // - nextTuneStart is null or starts with X:
+    // - closed implies nextTuneStart is null
+    //
+    // Safety from Rep Exposure
+    // - All fields are private and only new Strings are returned
+    //
+    // Thread Safety Argument
+    // - A TuneSplitter is not threadsafe and must be confined to one thread, like the Reader it wraps
+
+    /**
+     * Make a splitter over an abc collection. Text before the first X: line is skipped.
+     * @param collection the text of the collection, which is closed when the splitter is
+     * @throws UncheckedIOException if the collection can't be read
+     */
+    public TuneSplitter(Reader collection) {
+        this.reader = collection instanceof BufferedReader
+                ? (BufferedReader) collection : new BufferedReader(collection);
+        this.closed = false;
+        this.nextTuneStart = readUntilTuneStart(null);
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert nextTuneStart == null || nextTuneStart.startsWith(TUNE_START);
+        assert !closed || nextTuneStart == null;
+    }
+
+    /**
+     * Read lines until the next X: line.
+     * @param tune if not null, every line read before the X: line is appended to it
+     * @return the X: line, or null if the collection ended first
+     */
+    private String readUntilTuneStart(StringBuilder tune) {
+        try {
+            String line = reader.readLine();
+            while(line != null && !line.startsWith(TUNE_START)) {
+                if(tune != null) {
+                    tune.append(line).append('\n');
+                }
+                line = reader.readLine();
+            }
+            return line;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("can't read abc collection", e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextTuneStart != null;
+    }
+
+    /**
+     * @return the text of the next tune, from its X: line up to the next X: line or the end of the collection
+     * @throws NoSuchElementException if every tune has been returned
+     * @throws UncheckedIOException if the collection can't be read
+     */
+    @Override
+    public String next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException("no more tunes");
+        }
+        final StringBuilder tune = new StringBuilder(nextTuneStart).append('\n');
+        nextTuneStart = readUntilTuneStart(tune);
+        checkRep();
+        return tune.toString();
+    }
+
+    /**
+     * Close the collection. No more tunes are returned afterwards.
+     * @throws IOException if the collection can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        nextTuneStart = null;
+        reader.close();
+        checkRep();
+    }
+}
@@ -0,0 +1,150 @@
+package karaoke.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import karaoke.Composition;
+import karaoke.Music;
+import karaoke.MusicInterner;
+import karaoke.MusicOptimizer;
+import karaoke.Voice;
+import karaoke.parser.ParseStats.Phase;
+
+/**
+ * Builds the voices of a composition from its parsed voice lines, building the Music of
+ * differently named voices in parallel.
+ *
+ * Lines that share a voice name depend on each other: each one's lyric indices start after the
+ * syllables of the lines before it, which are only known once those lines are built because bar
+ * markers are removed from the lyrics as they are consumed. So the lines of one name are built in
+ * order by one task and joined in the order they appear in the tune, while the tasks for different
+ * names run at the same time. The result is the same as building every line one after another.
+ *
+ * Every voice's Music is flattened by MusicOptimizer once its lines are joined, and then interned
+ * by a MusicInterner shared by the voices of the composition, so that equal measures share one tree
+ * within a voice and across voices.
+ */
+class VoiceAssembler {
+
+    /**
+     * One parsed voice line whose Music has not been built yet.
+     */
+    static class VoiceLine {
+        private final String name;
+        private final List<String> lyrics;
+        private final Function<NoteEnvironment, Music> builder;
+
+        // AF(name, lyrics, builder) = a line of the voice <name> singing <lyrics>, whose Music is
+        //                             made by applying <builder> to the line's NoteEnvironment
+        // RI: true
+        // Safety from Rep Exposure: lyrics is shared with the NoteEnvironment on purpose, since bar markers
+        //                           are removed from it as the line is built
+        // Thread Safety Argument: a line is built by exactly one task
+
+        /**
+         * @param name the name of the voice the line belongs to
+         * @param lyrics the syllables of the line, from which consumed bar markers are removed while building
+         * @param builder builds the Music of the line in the given environment without other side effects
+         */
+        VoiceLine(String name, List<String> lyrics, Function<NoteEnvironment, Music> builder) {
+            this.name = name;
+            this.lyrics = lyrics;
+            this.builder = builder;
+        }
+    }
+
+    private VoiceAssembler() {
+        throw new AssertionError("VoiceAssembler is not instantiable");
+    }
+
+    /**
+     * Build the voices of a composition.
+     * @param composition the composition the lines belong to, which is only read
+     * @param lines the voice lines of the composition in the order they appear
+     * @param pool the pool to build voices in; voices are built in the calling thread if there is only one name
+     * @param recorder records the time spent building and joining each voice
+     * @return a map from every voice name to the voice made of its lines joined in order
+     */
+    static Map<String, Voice> assemble(Composition composition, List<VoiceLine> lines, ForkJoinPool pool,
+            ParseRecorder recorder) {
+        final Map<String, List<VoiceLine>> linesByName = new LinkedHashMap<>();
+        for(VoiceLine line: lines) {
+            linesByName.computeIfAbsent(line.name, name -> new ArrayList<>()).add(line);
+        }
+
+        final MusicInterner interner = new MusicInterner();
+        final Map<String, Voice> voiceMap = new HashMap<>();
+        if(linesByName.size() <= 1) {
+            for(Map.Entry<String, List<VoiceLine>> voice: linesByName.entrySet()) {
+                voiceMap.put(voice.getKey(), buildVoice(composition, voice.getValue(), interner, recorder));
+            }
+            return voiceMap;
+        }
+
+        final Map<String, ForkJoinTask<Voice>> tasks = new LinkedHashMap<>();
+        for(Map.Entry<String, List<VoiceLine>> voice: linesByName.entrySet()) {
+            tasks.put(voice.getKey(), pool.submit(() -> buildVoice(composition, voice.getValue(), interner, recorder)));
+        }
+        for(Map.Entry<String, ForkJoinTask<Voice>> task: tasks.entrySet()) {
+            voiceMap.put(task.getKey(), task.getValue().join());
+        }
+        return voiceMap;
+    }
+
+    /**
+     * Prepare the voices of a composition to be built when they are first used instead of now.
+     * @param composition the composition the lines belong to, which is only read
+     * @param lines the voice lines of the composition in the order they appear
+     * @param recorder records the time spent building and joining each voice, when it is built
+     * @return a map from every voice name to a supplier that builds the voice made of its lines joined
+     *         in order, as assemble does; each supplier must be called at most once
+     */
+    static Map<String, Supplier<Voice>> defer(Composition composition, List<VoiceLine> lines, ParseRecorder recorder) {
+        final Map<String, List<VoiceLine>> linesByName = new LinkedHashMap<>();
+        for(VoiceLine line: lines) {
+            linesByName.computeIfAbsent(line.name, name -> new ArrayList<>()).add(line);
+        }
+        final MusicInterner interner = new MusicInterner();
+        final Map<String, Supplier<Voice>> voiceSources = new HashMap<>();
+        for(Map.Entry<String, List<VoiceLine>> voice: linesByName.entrySet()) {
+            voiceSources.put(voice.getKey(), () -> buildVoice(composition, voice.getValue(), interner, recorder));
+        }
+        return voiceSources;
+    }
+
+    /**
+     * Build the lines of one voice in order, join them, and optimize and intern the Music of the joined voice.
+     */
+    private static Voice buildVoice(Composition composition, List<VoiceLine> lines, MusicInterner interner,
+            ParseRecorder recorder) {
+        Voice voice = null;
+        for(VoiceLine line: lines) {
+            final int indexModifier = voice == null ? 0 : voice.lyricLength();
+            final ParseRecorder.Span build = recorder.begin(Phase.BUILD, line.name);
+            final NoteEnvironment environment = new NoteEnvironment(composition, line.lyrics, indexModifier);
+            final Music music = line.builder.apply(environment);
+            build.end();
+            final ParseRecorder.Span align = recorder.begin(Phase.LYRICS, line.name);
+            environment.removeConsumedBars();
+            align.end();
+            final ParseRecorder.Span join = recorder.begin(Phase.JOIN, line.name);
+            final Voice newVoice = new Voice(music, line.lyrics, line.name);
+            voice = voice == null ? newVoice : voice.join(newVoice);
+            join.end();
+        }
+        final ParseRecorder.Span optimize = recorder.begin(Phase.OPTIMIZE, voice.name());
+        final Music optimized = MusicOptimizer.optimize(voice.music());
+        optimize.end();
+        final ParseRecorder.Span intern = recorder.begin(Phase.INTERN, voice.name());
+        voice = new Voice(interner.intern(optimized), voice.syllables(), voice.name());
+        intern.end();
+        return voice;
+    }
+}
@@ -1,27 +1,49 @@
 package karaoke.player;
 
 import karaoke.Composition;
+import karaoke.Timeline;
+import karaoke.TimelineCache;
+import karaoke.Transform;
 import karaoke.Voice.LyricListener;
+import karaoke.parser.CompositionCache;
+import karaoke.parser.IncrementalParser;
 import karaoke.parser.MusicParser;
+import karaoke.parser.SourceText;
 import karaoke.sound.MidiSequencePlayer;
-import karaoke.sound.SequencePlayer;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiUnavailableException;
 
 import edu.mit.eecs.parserlib.UnableToParseException;
 
-//An immutable wrapper that plays parsed music
+//A mutable wrapper that plays parsed music, whose music can be reloaded from a new version of its text
 public class Player {
-    private final Composition music;
+    private Composition music;
+    private final CharSequence source;
+    private final Map<String, List<LyricListener>> listeners;
+    private IncrementalParser reloader;
+    private Transform transform;
+    private Composition playing;
+    private Timeline timeline;
     
-    //AF(music) = a music player that can play this piece of music 
+    //AF(music, source, listeners, reloader, transform, playing, timeline) = a music player that can play this
+    //      piece of music, parsed from the text source or from a later version given to reload, with transform
+    //      applied. listeners maps each voice to the listeners added to it, which are attached to every version
+    //      of the music. reloader, once made, follows the versions of the text. playing is the music with
+    //      transform applied, and timeline, once made, is playing compiled for playing it again
     //RI: True
+    //  source never changes: it is a String or the read-only text SourceText read from a file
+    //  playing is music itself if transform is the identity, otherwise a view of music with the listeners attached
     //Safety from rep exposure:
-    //  All internal variables are private and final
+    //  All internal variables are private
     //  Client has no reference to internal variables
     //Thread Safety:
     //  Uses monitor pattern
@@ -33,13 +55,24 @@ public class Player {
      * @throws UnableToParseException if the file cannot be parsed
      */
     public Player(File input) throws UnableToParseException {
-        //parse input into a Piece object
-        this.music = (new MusicParser()).parseFile(input);
-        checkRep();
+        this(read(input));
+    }
+    
+    private static CharSequence read(File input) throws UnableToParseException {
+        try {
+            return SourceText.read(input);
+        }
+        catch(IOException e) {
+            throw new UnableToParseException("File not found");
+        }
     }
     
     private void checkRep() {
         assert music != null;
+        assert source != null;
+        assert listeners != null;
+        assert transform != null;
+        assert playing != null;
     }
     /**
      * Creates a new player that plays the music represented by the given string
@@ -47,9 +80,72 @@ public class Player {
      * @throws UnableToParseException if the file cannot be parsed
      */
     public Player(String input) throws UnableToParseException {
-        //parse input into a Piece object
-        this.music = (new MusicParser()).parse(input);
+        this((CharSequence) input);
+    }
+    
+    private Player(CharSequence input) throws UnableToParseException {
+        //parse input into a Piece object, reusing an earlier parse of the same text
+        this.music = CompositionCache.shared().parse(input);
+        this.source = input;
+        this.listeners = new HashMap<>();
+        this.reloader = null;
+        this.transform = Transform.IDENTITY;
+        this.playing = music;
+        this.timeline = null;
+        checkRep();
+    }
+    
+    /**
+     * Replace the music with a new version of its text, parsing again only the voices that changed.
+     * Listeners stay attached to their voices in the new version; a play that already started
+     * finishes the old version.
+     * @param input the new version of the text of the music, which must not change while it is parsed
+     * @return the names of the voices that were parsed again
+     * @throws UnableToParseException if the new version can't be parsed, in which case the music is unchanged
+     */
+    public synchronized Set<String> reload(CharSequence input) throws UnableToParseException {
+        if(reloader == null) {
+            reloader = new IncrementalParser(new MusicParser(), source, music);
+        }
+        final Composition reloaded = reloader.reparse(input);
+        for(Map.Entry<String, List<LyricListener>> voice: listeners.entrySet()) {
+            for(LyricListener listener: voice.getValue()) {
+                reloaded.addVoiceListener(voice.getKey(), listener);
+            }
+        }
+        music = reloaded;
+        playing = view();
+        timeline = null;
         checkRep();
+        return reloader.reparsedVoices();
+    }
+    
+    /**
+     * Play the music in another key, at another speed or on another instrument from now on, without
+     * parsing it again. A play that already started finishes as it was.
+     * @param newTransform the transform to apply to the music as it was parsed, replacing any applied before
+     */
+    public synchronized void transform(Transform newTransform) {
+        transform = newTransform;
+        playing = view();
+        timeline = null;
+        checkRep();
+    }
+    
+    /**
+     * @return the music with transform applied and the listeners attached to its voices
+     */
+    private Composition view() {
+        if(transform.equals(Transform.IDENTITY)) {
+            return music;
+        }
+        final Composition view = music.transformed(transform);
+        for(Map.Entry<String, List<LyricListener>> voice: listeners.entrySet()) {
+            for(LyricListener listener: voice.getValue()) {
+                view.addVoiceListener(voice.getKey(), listener);
+            }
+        }
+        return view;
     }
     
     /**
@@ -62,7 +158,7 @@ public class Player {
     }
     
     /**
-     * Plays the music described by this.music
+     * Plays the music described by this.music, with its transform applied
      * @throws InvalidMidiDataException 
      * @throws MidiUnavailableException 
      * @return an object that can be used as a lock to wait for the piece to finish
@@ -71,10 +167,13 @@ public class Player {
         //play the piece
         final int beatsPerMinute = 100;
         final int ticksPerBeat = 64;    
-        SequencePlayer player = new MidiSequencePlayer(ticksPerBeat, beatsPerMinute);
-        music.play(player);
+        MidiSequencePlayer player = new MidiSequencePlayer(ticksPerBeat, beatsPerMinute);
+        if(timeline == null || timeline.ticksPerBeat() != player.ticksPerBeat()) {
+            timeline = TimelineCache.shared().timeline(playing, player.ticksPerBeat());
+        }
+        timeline.play(player, playing);
         Object lock = new Object();
-        player.addEvent(music.duration(), (Double beat) -> {
+        player.addEvent(playing.duration(), (Double beat) -> {
             synchronized (lock) {
                 lock.notify();
             }
@@ -93,6 +192,10 @@ public class Player {
      */
     public synchronized void addLyricListener(String voice, LyricListener listener) {
             music.addVoiceListener(voice, listener);
+            if(playing != music) {
+                playing.addVoiceListener(voice, listener);
+            }
+            listeners.computeIfAbsent(voice, name -> new ArrayList<>()).add(listener);
             checkRep();
     }
 }
@@ -9,7 +9,15 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.Executors;
 
 import javax.sound.midi.InvalidMidiDataException;
@@ -21,6 +29,7 @@ import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.parser.SourceText;
 import karaoke.player.Player;
 
 
@@ -28,14 +37,19 @@ public class StreamingServer {
     
     private final HttpServer server;
     private final Player karaoke;
+    private final Path abcFile;
+    private final WatchService watcher;
+    private final Thread reloader;
     // Abstraction Function
-    // AF(sever, piece, karaoke) => A webserver server that streams the music in piece, through the player karaoke and streams the lyrics
-    //                              of piece to clients. 
+    // AF(sever, piece, karaoke, abcFile, watcher, reloader) => A webserver server that streams the music in piece, through the player
+    //                              karaoke and streams the lyrics of piece to clients. piece is the latest version of abcFile
+    //                              that parses, reloaded by reloader whenever watcher sees abcFile change
     
     // Rep Invaraint
     // - server cannot be null
     // - piece cannot be null
     // - karaoke cannot be null
+    // - abcFile, watcher and reloader cannot be null
     
     // Safety from Rep Exposure
     // - All fields are private and final
@@ -45,6 +59,7 @@ public class StreamingServer {
     // Thread Safety Argument
     // - Player object is a threadsafe datatype allowing multiple clients to stream lyrics 
     // - Playback will only occur on the thread that started the server
+    // - Edits are reloaded on the reloader thread through Player, which swaps in the new piece under its lock
     
     /**
      * Make a new server to stream lyrics to a given piece of music
@@ -55,8 +70,14 @@ public class StreamingServer {
      */
     public StreamingServer(String filename, int port) throws IOException, UnableToParseException {
         this.server = HttpServer.create(new InetSocketAddress(port), 0);
-        File abcFile = new File(filename);
-        this.karaoke = new Player(abcFile);
+        this.abcFile = new File(filename).toPath().toAbsolutePath();
+        this.karaoke = new Player(abcFile.toFile());
+        
+        // watch the directory of the file, since a WatchService can't watch a single file
+        this.watcher = abcFile.getFileSystem().newWatchService();
+        abcFile.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.reloader = new Thread(this::watchForEdits, "abc-reloader");
+        this.reloader.setDaemon(true);
         
         // handle concurrent requests with multiple threads
         server.setExecutor(Executors.newCachedThreadPool());
@@ -172,9 +193,55 @@ public class StreamingServer {
         exchange.close();
     }
     
+    /**
+     * Reload the piece each time its file is edited, until the watcher is closed.
+     * Editors that save by replacing the file create it again, so creations count as edits.
+     */
+    private void watchForEdits() {
+        try {
+            while(true) {
+                final WatchKey key = watcher.take();
+                boolean edited = false;
+                for(WatchEvent<?> event: key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW || abcFile.getFileName().equals(event.context())) {
+                        edited = true;
+                    }
+                }
+                if(edited) {
+                    reload();
+                }
+                if(!key.reset()) {
+                    // the directory is gone
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            return;
+        }
+    }
+    
+    /**
+     * Parse the file of the piece again, reparsing only the voices that changed, and stream and play
+     * the new version from now on. Clients that are listening to a voice keep listening to it.
+     * If the file can't be read or parsed, for example because it is still being written, the
+     * current version is kept.
+     * @return the names of the voices that were parsed again, empty if the file couldn't be reloaded
+     */
+    public Set<String> reload() {
+        try {
+            return karaoke.reload(SourceText.read(abcFile.toFile()));
+        } catch (IOException | UnableToParseException e) {
+            System.err.println("not reloading " + abcFile + ": " + e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+    
     private void checkRep() {
         assert server != null;
         assert karaoke != null;
+        assert abcFile != null;
+        assert watcher != null;
+        assert reloader != null;
     }
     
     /**
@@ -185,17 +252,23 @@ public class StreamingServer {
     }
     
     /**
-     * Start the server in a new background thread
+     * Start the server in a new background thread, and reload the piece whenever its file is edited
      */
     public void start() {
         server.start();
+        reloader.start();
     }
     
     /**
-     * Stop the server.
+     * Stop the server and stop watching the file.
      */
     public void stop() {
        server.stop(0);
+       try {
+           watcher.close();
+       } catch (IOException e) {
+           // the reloader thread is a daemon, so at worst it outlives the server
+       }
     }
     
     /**
@@ -14,7 +14,7 @@ import javax.sound.midi.*;
 /**
  * Schedules and plays a sequence of notes using the MIDI synthesizer.
  */
-public class MidiSequencePlayer implements SequencePlayer {
+public class MidiSequencePlayer implements TickSequencePlayer {
 
     /**
      * Default tempo.
@@ -33,8 +33,10 @@ public class MidiSequencePlayer implements SequencePlayer {
     // the "end_of_track" meta message type
     private static final int META_END_OF_TRACK = 47;
 
-    // MIDI note number representing middle C
-    private static final int MIDI_NOTE_MIDDLE_C = 60;
+    /**
+     * MIDI note number representing middle C.
+     */
+    public static final int MIDI_NOTE_MIDDLE_C = 60;
     
     private final Synthesizer synthesizer;
 
@@ -109,18 +111,28 @@ public class MidiSequencePlayer implements SequencePlayer {
         checkRep();
     }
 
+    @Override
+    public int ticksPerBeat() {
+        return ticksPerBeat;
+    }
+
     @Override
     public void addNote(Instrument instr, Pitch pitch, double startBeat, double numBeats) {
+        addNoteAtTick(instr, getMidiNote(pitch), (int) (startBeat * ticksPerBeat),
+                (int) ((startBeat + numBeats) * ticksPerBeat));
+    }
+
+    @Override
+    public void addNoteAtTick(Instrument instr, int midiNote, int startTick, int endTick) {
         int channel = getChannel(instr);
-        int note = getMidiNote(pitch);
         try {
             // schedule two events in the track, one for starting a note and
             // the other for ending the note.
-            addMidiNoteEvent(ShortMessage.NOTE_ON, channel, note, (int) (startBeat * ticksPerBeat));
-            addMidiNoteEvent(ShortMessage.NOTE_OFF, channel, note, (int) ((startBeat + numBeats) * ticksPerBeat));
+            addMidiNoteEvent(ShortMessage.NOTE_ON, channel, midiNote, startTick);
+            addMidiNoteEvent(ShortMessage.NOTE_OFF, channel, midiNote, endTick);
         } catch (InvalidMidiDataException imde) {
-            String msg = MessageFormat.format("Cannot add note with the pitch {0} at beat {1} " +
-                                              "for duration {2}", note, startBeat, numBeats);
+            String msg = MessageFormat.format("Cannot add note with the pitch {0} at tick {1} " +
+                                              "until tick {2}", midiNote, startTick, endTick);
             throw new RuntimeException(msg, imde);
         }
     }
@@ -140,11 +152,16 @@ public class MidiSequencePlayer implements SequencePlayer {
 
     @Override
     public void addEvent(double atBeat, Consumer<Double> callback) {
+        addEventAtTick((int) (atBeat * ticksPerBeat), callback);
+    }
+
+    @Override
+    public void addEventAtTick(int atTick, Consumer<Double> callback) {
         int callbackNumber = saveCallback(callback);
         try {
-            addMidiMetaEvent(callbackNumber, (int) (atBeat * ticksPerBeat));
+            addMidiMetaEvent(callbackNumber, atTick);
         } catch (InvalidMidiDataException imde) {
-            throw new RuntimeException("Cannot add event at beat " + atBeat, imde);
+            throw new RuntimeException("Cannot add event at tick " + atTick, imde);
         }
     }
 
@@ -239,7 +256,7 @@ public class MidiSequencePlayer implements SequencePlayer {
      *         semitones above C 5 octaves below middle C; for example,
      *         middle C is note 60
      */
-    private static int getMidiNote(Pitch pitch) {
+    public static int getMidiNote(Pitch pitch) {
         return MIDI_NOTE_MIDDLE_C + pitch.difference(Pitch.MIDDLE_C);
     }
 
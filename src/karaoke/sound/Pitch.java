@@ -41,14 +41,26 @@ public class Pitch {
     };
     
     /**
-     * Middle C.
+     * Number of pitches in an octave.
+     */
+    public static final int OCTAVE = 12;
+
+    /*
+     * Pitches are immutable, so transpose hands out one shared instance for every pitch
+     * from five octaves below to six octaves above middle C, which covers the piano.
      */
-    public static final Pitch MIDDLE_C = new Pitch('C');
+    private static final int LOWEST_INTERNED = -5 * OCTAVE;
+    private static final Pitch[] INTERNED = new Pitch[11 * OCTAVE];
+    static {
+        for (int i = 0; i < INTERNED.length; i++) {
+            INTERNED[i] = new Pitch(LOWEST_INTERNED + i);
+        }
+    }
 
     /**
-     * Number of pitches in an octave.
+     * Middle C.
      */
-    public static final int OCTAVE = 12;
+    public static final Pitch MIDDLE_C = INTERNED[-LOWEST_INTERNED];
 
     private Pitch(int value) {
         this.value = value;
@@ -71,10 +83,16 @@ public class Pitch {
      * @param semitonesUp 
      * @return pitch made by transposing this pitch by semitonesUp semitones;
      *         for example, middle C transposed by 12 semitones is high C, and
-     *         E transposed by -1 semitones is E flat
+     *         E transposed by -1 semitones is E flat. Pitches within the range of a piano
+     *         are shared instances
      */
     public Pitch transpose(int semitonesUp) {
-        return new Pitch(value + semitonesUp);
+        final int transposed = value + semitonesUp;
+        final int index = transposed - LOWEST_INTERNED;
+        if (index >= 0 && index < INTERNED.length) {
+            return INTERNED[index];
+        }
+        return new Pitch(transposed);
     }
 
     /**
@@ -0,0 +1,32 @@
+package karaoke.sound;
+
+import java.util.function.Consumer;
+
+/**
+ * A SequencePlayer that schedules in whole ticks, a fixed number of them per beat, and can be
+ * given notes and events already in ticks. Compiled timelines schedule on it directly, without
+ * turning their ticks back into beats.
+ */
+public interface TickSequencePlayer extends SequencePlayer {
+
+    /**
+     * @return the number of ticks per beat this player schedules in
+     */
+    public int ticksPerBeat();
+
+    /**
+     * Schedule a note to be played from startTick until endTick.
+     * @param instr instrument for the note
+     * @param midiNote MIDI note number of the note, 60 for middle C
+     * @param startTick the tick the note starts on, at least 0
+     * @param endTick the tick the note ends on, at least startTick
+     */
+    public void addNoteAtTick(Instrument instr, int midiNote, int startTick, int endTick);
+
+    /**
+     * Schedule a callback when the synthesizer reaches a tick.
+     * @param atTick tick at which to call the callback, at least 0
+     * @param callback function to call with the time when actually called, in beats
+     */
+    public void addEventAtTick(int atTick, Consumer<Double> callback);
+}
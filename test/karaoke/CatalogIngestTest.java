@@ -0,0 +1,153 @@
+package karaoke;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.parser.MusicParser;
+
+public class CatalogIngestTest {
+
+    // Testing strategy
+    //
+    // Partitions for CatalogIngest.ingest:
+    //      directory: empty, flat, nested, containing files that are not .abc
+    //      files: all parse, some fail to parse, parser throws an Error
+    //      sink: accepts, throws an exception, throws an Error
+    //      threads: 1, >1
+    //
+    // Partitions for IngestReport.parseNanosPercentile:
+    //      files: 0, 1, >1
+    //      percentile: 50, 99, 100, out of range
+    
+    private static final String VALID = "X:1\nT:Valid\nK:C\nC D E F | G A B c |\n";
+    private static final String INVALID = "X:1\nT:Invalid\nK:C\nC D H F |\n";
+    
+    private Path directory;
+    
+    @Before
+    public void makeDirectory() throws IOException {
+        directory = Files.createTempDirectory("catalog");
+    }
+    
+    @After
+    public void deleteDirectory() throws IOException {
+        try(Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+    
+    private Path write(String name, String contents) throws IOException {
+        final Path file = directory.resolve(name);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers empty directory, 1 thread, 0 files
+    @Test
+    public void testEmptyDirectory() throws IOException {
+        final IngestReport report = CatalogIngest.ingest(directory.toFile(), new MusicParser(),
+                (source, composition) -> fail("expected no compositions"), 1);
+        assertEquals("expected no files", 0, report.files());
+        assertEquals("expected no bytes", 0, report.bytes());
+        assertEquals("expected no parse time", 0, report.parseNanosPercentile(50));
+    }
+    
+    // covers nested directory with other files, some fail, sink accepts, >1 threads
+    @Test
+    public void testCollectsFailuresAndSinksRest() throws IOException, UnableToParseException {
+        write("one.abc", VALID);
+        write("nested/two.abc", VALID.replace("Valid", "Two"));
+        write("nested/deeper/three.abc", VALID.replace("Valid", "Three"));
+        final Path broken = write("nested/broken.abc", INVALID);
+        write("notes.txt", INVALID);
+        
+        final Map<File, Composition> sunk = new ConcurrentHashMap<>();
+        final IngestReport report = CatalogIngest.ingest(directory.toFile(), new MusicParser(), sunk::put, 4);
+        
+        assertEquals("expected every .abc file", 4, report.files());
+        assertEquals("expected three parsed", 3, report.parsed());
+        assertEquals("expected one failure", Collections.singleton(broken.toFile()), report.failures().keySet());
+        assertEquals("expected three compositions", 3, sunk.size());
+        assertEquals("expected parsed composition", new MusicParser().parse(VALID),
+                sunk.get(directory.resolve("one.abc").toFile()));
+        assertEquals("expected total size", 3 * VALID.length() - 2 + INVALID.length(), report.bytes());
+        assertTrue("expected positive throughput", report.filesPerSecond() > 0 && report.bytesPerSecond() > 0);
+        assertTrue("expected ordered percentiles", report.parseNanosPercentile(50) <= report.parseNanosPercentile(99));
+    }
+    
+    // covers sink throws
+    @Test
+    public void testSinkFailureRecorded() throws IOException {
+        final Path file = write("one.abc", VALID);
+        final IngestReport report = CatalogIngest.ingest(directory.toFile(), new MusicParser(),
+                (source, composition) -> { throw new IllegalStateException("full"); }, 2);
+        assertEquals("expected sink failure", "sink failed: full", report.failures().get(file.toFile()));
+    }
+    
+    // covers parser throws an Error, sink throws an Error
+    @Test
+    public void testErrorsRecorded() throws IOException {
+        final Path overflows = write("long.abc", VALID.replace("Valid", "Long"));
+        final Path sunk = write("one.abc", VALID);
+        final MusicParser parser = new MusicParser() {
+            @Override
+            public Composition parse(CharSequence string) throws UnableToParseException {
+                if(string.toString().contains("Long")) {
+                    throw new StackOverflowError();
+                }
+                return super.parse(string);
+            }
+        };
+        final IngestReport report = CatalogIngest.ingest(directory.toFile(), parser,
+                (source, composition) -> { throw new Error("broken sink"); }, 2);
+        assertEquals("expected every file", 2, report.files());
+        assertEquals("expected no file counted as parsed", 0, report.parsed());
+        assertEquals("StackOverflowError", report.failures().get(overflows.toFile()));
+        assertEquals("sink failed: broken sink", report.failures().get(sunk.toFile()));
+    }
+    
+    // covers 1 and >1 files, percentiles 50, 99, 100 and out of range
+    @Test
+    public void testPercentiles() {
+        final IngestReport single = new IngestReport(10, 100, Arrays.asList(7L), new HashMap<>());
+        assertEquals(7, single.parseNanosPercentile(50));
+        assertEquals(7, single.parseNanosPercentile(99));
+        
+        final IngestReport report = new IngestReport(10, 1000000000L,
+                Arrays.asList(5L, 1L, 4L, 2L, 3L, 9L, 6L, 8L, 7L, 10L), new HashMap<>());
+        assertEquals(5, report.parseNanosPercentile(50));
+        assertEquals(10, report.parseNanosPercentile(99));
+        assertEquals(10, report.parseNanosPercentile(100));
+        assertEquals(10.0, report.filesPerSecond(), 1e-9);
+        assertEquals(10.0, report.bytesPerSecond(), 1e-9);
+        try {
+            report.parseNanosPercentile(0);
+            fail("expected percentile out of range");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
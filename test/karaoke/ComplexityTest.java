@@ -0,0 +1,229 @@
+package karaoke;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.parser.ParseStats;
+import karaoke.parser.ParseStats.Phase;
+import karaoke.sound.RecordingPlayer;
+
+public class ComplexityTest {
+
+    // Testing strategy
+    //
+    // Synthetic tunes are generated at doubling sizes, from MIN_MEASURES to MAX_MEASURES measures per
+    // voice, and an operation is timed at every size after WARM_UP_PASSES passes over every size. Each of
+    // ROUNDS rounds times every size once and works out the growth exponent log(t(max)/t(min)) / log(max/min),
+    // which is 1 for linear time, about 1.1 for n log n over these sizes, and 2 for quadratic. The median
+    // exponent of the rounds must be at most MAX_EXPONENT, so that a round slowed down by a loaded machine
+    // doesn't fail the suite. Nothing is played through MIDI, so the suite runs headless.
+    //
+    // Partitions:
+    //      operation: MusicParser.parse with the DESCENT engine, MusicParser.parseFile reading with SourceText,
+    //                 the default GRAMMAR engine's own phases, Composition.play into a recording
+    //                 SequencePlayer, lyric rendering by Voice for its listeners as the recorded events are played
+    //      tune: notes, rests, chords, tuplets, repeats, accidentals, two voices, lyrics with holds and hyphens
+    //
+    // The default GRAMMAR engine spends nearly all its time in parserlib, which is quadratic on long tunes
+    // and takes tens of seconds at these sizes. Its own phases, every phase but PARSE as ParseStats times
+    // them, are timed instead, at GRAMMAR_MIN_MEASURES to GRAMMAR_MAX_MEASURES measures.
+
+    private static final int MIN_MEASURES = 1024;
+    private static final int MAX_MEASURES = 8192;
+    private static final int GRAMMAR_MIN_MEASURES = 16;
+    private static final int GRAMMAR_MAX_MEASURES = 128;
+    private static final int WARM_UP_PASSES = 2;
+    private static final int ROUNDS = 7;
+    private static final double MAX_EXPONENT = 1.4;
+
+    private static final String HEADER = "X:1\nT:Synthetic\nC:Generated\nM:4/4\nL:1/4\nQ:1/4=120\nV:1\nV:2\nK:D\n";
+    private static final String[] MUSIC = {
+        "V:1\n|: A B c d | e2 f g :| (3abc d2 | [DFA] z2 =F |\n",
+        "V:2\nA,2 B,2 | ^C D E F | G3 z | A,4 |\n",
+    };
+    private static final String[] LYRICS = {
+        "w:one two three four | five_ six sev-en | a b c day | all done\n",
+        "w:low low | hum-ming a song | oh_ | yeah\n",
+    };
+    // measures in each line of MUSIC, counting each repeated measure once
+    private static final int MEASURES_PER_LINE = 4;
+
+    /** Something timed at one size of tune */
+    private interface Operation {
+        /**
+         * Prepare to time one run, then time it.
+         * @param tune text of a tune
+         * @return nanoseconds taken by the timed part of the run
+         */
+        long time(String tune) throws UnableToParseException;
+    }
+
+    /** Generate a tune with the given number of measures in each of its two voices */
+    private static String tune(int measures) {
+        final StringBuilder tune = new StringBuilder(HEADER);
+        for(int line = 0; line < measures / MEASURES_PER_LINE; line++) {
+            for(int voice = 0; voice < MUSIC.length; voice++) {
+                tune.append(MUSIC[voice]).append(LYRICS[voice]);
+            }
+        }
+        return tune.toString();
+    }
+
+    /**
+     * Time an operation at doubling sizes and assert that its time grows at most as fast as MAX_EXPONENT allows.
+     */
+    private static void assertScales(String name, Operation operation) throws UnableToParseException {
+        assertScales(name, MIN_MEASURES, MAX_MEASURES, operation);
+    }
+
+    /**
+     * Time an operation at doubling sizes from minMeasures to maxMeasures and assert that the median
+     * of the rounds' growth exponents is at most MAX_EXPONENT.
+     */
+    private static void assertScales(String name, int minMeasures, int maxMeasures, Operation operation)
+            throws UnableToParseException {
+        final List<String> tunes = new ArrayList<>();
+        for(int measures = minMeasures; measures <= maxMeasures; measures *= 2) {
+            tunes.add(tune(measures));
+        }
+        for(int pass = 0; pass < WARM_UP_PASSES; pass++) {
+            for(String tune: tunes) {
+                operation.time(tune);
+            }
+        }
+        final List<Double> exponents = new ArrayList<>();
+        final List<List<Long>> rounds = new ArrayList<>();
+        for(int round = 0; round < ROUNDS; round++) {
+            final List<Long> nanos = new ArrayList<>();
+            for(String tune: tunes) {
+                // so that garbage from earlier runs isn't collected during this one
+                System.gc();
+                nanos.add(Math.max(operation.time(tune), 1));
+            }
+            rounds.add(nanos);
+            exponents.add(Math.log((double) nanos.get(nanos.size()-1) / nanos.get(0))
+                    / Math.log((double) maxMeasures / minMeasures));
+        }
+        final List<Double> sorted = new ArrayList<>(exponents);
+        Collections.sort(sorted);
+        final double median = sorted.get(ROUNDS / 2);
+        assertTrue(String.format("%s grows as n^%.2f from %d to %d measures, the median of exponents %s"
+                + " of rounds taking nanoseconds %s", name, median, minMeasures, maxMeasures, exponents, rounds),
+                median <= MAX_EXPONENT);
+    }
+
+    private static Composition parse(String tune) throws UnableToParseException {
+        return new MusicParser(Engine.DESCENT).parse(tune);
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers every part of the tune, checked against the GRAMMAR engine on a small tune
+    @Test
+    public void testSyntheticTune() throws UnableToParseException {
+        final String small = tune(2 * MEASURES_PER_LINE);
+        final Composition composition = parse(small);
+        assertEquals(new MusicParser(Engine.GRAMMAR).parse(small), composition);
+        assertEquals(2, composition.voices().size());
+        final RecordingPlayer player = new RecordingPlayer();
+        composition.play(player);
+        assertFalse("expected notes scheduled", player.noteStarts().isEmpty());
+    }
+
+    // covers MusicParser.parse
+    @Test
+    public void testParseScales() throws UnableToParseException {
+        assertScales("MusicParser.parse", tune -> {
+            final long start = System.nanoTime();
+            parse(tune);
+            return System.nanoTime() - start;
+        });
+    }
+
+    // covers MusicParser.parseFile
+    @Test
+    public void testParseFileScales() throws UnableToParseException {
+        assertScales("MusicParser.parseFile", tune -> {
+            final File file;
+            try {
+                file = File.createTempFile("synthetic", ".abc");
+                Files.write(file.toPath(), tune.getBytes(StandardCharsets.UTF_8));
+            }
+            catch(IOException e) {
+                throw new AssertionError("can't write the tune", e);
+            }
+            try {
+                final long start = System.nanoTime();
+                new MusicParser(Engine.DESCENT).parseFile(file);
+                return System.nanoTime() - start;
+            }
+            finally {
+                file.delete();
+            }
+        });
+    }
+
+    // covers the default engine's own phases
+    @Test
+    public void testDefaultEngineScales() throws UnableToParseException {
+        assertScales("the default engine's own phases", GRAMMAR_MIN_MEASURES, GRAMMAR_MAX_MEASURES, tune -> {
+            final ParseStats stats = new MusicParser().parseWithStats(tune);
+            assertEquals(Engine.GRAMMAR, stats.engine());
+            long nanos = 0;
+            for(Phase phase: Phase.values()) {
+                if(phase != Phase.PARSE) {
+                    nanos += stats.nanos(phase);
+                }
+            }
+            return nanos;
+        });
+    }
+
+    // covers Composition.play
+    @Test
+    public void testPlayScales() throws UnableToParseException {
+        assertScales("Composition.play", tune -> {
+            final Composition composition = parse(tune);
+            // so that the garbage of parsing isn't collected while playing
+            System.gc();
+            final long start = System.nanoTime();
+            composition.play(new RecordingPlayer());
+            return System.nanoTime() - start;
+        });
+    }
+
+    // covers lyric rendering
+    @Test
+    public void testLyricRenderingScales() throws UnableToParseException {
+        assertScales("lyric rendering", tune -> {
+            final Composition composition = parse(tune);
+            final List<String> lines = new ArrayList<>();
+            for(String voice: composition.voices().keySet()) {
+                composition.addVoiceListener(voice, lines::add);
+            }
+            final RecordingPlayer player = new RecordingPlayer();
+            composition.play(player);
+            System.gc();
+            final long start = System.nanoTime();
+            player.play();
+            final long nanos = System.nanoTime() - start;
+            assertFalse("expected lines rendered", lines.isEmpty());
+            return nanos;
+        });
+    }
+}
@@ -0,0 +1,177 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.BeatIndex;
+import karaoke.BeatIndex.Event;
+import karaoke.Chord;
+import karaoke.Composition;
+import karaoke.Music;
+import karaoke.Note;
+import karaoke.Rest;
+import karaoke.Sequence;
+import karaoke.Transform;
+import karaoke.Voice;
+import karaoke.parser.MusicParser;
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+import karaoke.sound.RecordingPlayer;
+
+public class BeatIndexTest {
+
+    // Testing strategy
+    //
+    // A BeatIndex must hold the notes playing a voice plays, on the same beats, and find them by beat.
+    // Partitions:
+    //      music: notes, rests, chords, tuplets, repeats, views, no notes, a note held under many short ones
+    //      notesAt: before the first note, on a note's first beat, inside it, on its end beat, during a rest,
+    //               during a chord, after the end
+    //      lyricAt: before anything is sung, on a sung beat, between sung beats, after the end
+    //      between: empty range, range of one note, range across a repeat, backwards range
+    // Voice.index: made once, by one thread or by threads racing to make it
+
+    private static List<String> described(List<Event> events) {
+        final List<String> notes = new ArrayList<>();
+        for(Event event: events) {
+            final Note note = event.note();
+            notes.add(note.instrument() + " " + note.pitch() + "@" + event.beat() + "+" + note.duration());
+        }
+        return notes;
+    }
+
+    /** Assert that index holds the notes voice plays, and finds the notes at a beat as a scan of them would */
+    private static void assertIndexes(Voice voice, BeatIndex index) {
+        final RecordingPlayer player = new RecordingPlayer();
+        voice.music().play(player, 0, voice);
+        final List<Event> all = index.between(0, Double.POSITIVE_INFINITY);
+        assertEquals(index.size(), all.size());
+        assertEquals(player.sortedNotes(), RecordingPlayer.sorted(described(all)));
+        for(double beat = -1; beat <= index.duration() + 1; beat += 1.0/12) {
+            final List<Event> sounding = new ArrayList<>();
+            for(Event event: all) {
+                if(event.beat() <= beat && beat < event.endBeat()) {
+                    sounding.add(event);
+                }
+            }
+            assertEquals("notes at " + beat, sounding, index.notesAt(beat));
+        }
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers notes, rests, chords, tuplets, repeats, views, every notesAt partition
+    @Test
+    public void testNotesAt() throws UnableToParseException {
+        final Composition composition = new MusicParser().parse(Fixtures.TUNE);
+        final Voice voice = composition.voices().get("1");
+        assertIndexes(voice, voice.index());
+        final Voice viewed = composition.transformed(Transform.IDENTITY.scaledBy(1.5).transposedBy(3)).voices().get("1");
+        assertIndexes(viewed, viewed.index());
+
+        final BeatIndex index = voice.index();
+        assertEquals(Collections.emptyList(), index.notesAt(-0.5));
+        assertEquals(new Pitch('C'), index.notesAt(0).get(0).note().pitch());
+        assertEquals(new Pitch('D'), index.notesAt(1.5).get(0).note().pitch());
+        assertEquals("expected nothing during the rest", Collections.emptyList(), index.notesAt(2.5));
+        final List<Event> chord = index.notesAt(13.5);
+        assertEquals(3, chord.size());
+        assertNotNull(chord.get(0).chord());
+        assertSame(chord.get(0).chord(), chord.get(2).chord());
+        assertEquals(Collections.emptyList(), index.notesAt(index.duration()));
+    }
+
+    // covers a note held under many short ones, notes ending together
+    @Test
+    public void testHeldNote() {
+        final List<Music> shortNotes = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            shortNotes.add(i % 3 == 0 ? new Rest(0.5) : new Note(0.5, new Pitch('E'), Instrument.PIANO, 0));
+        }
+        final Music held = new Note(100, new Pitch('C'), Instrument.PIANO, 0);
+        final Music tune = new Sequence(Arrays.asList(new Note(1, new Pitch('G'), Instrument.PIANO, 0),
+                new Chord(Arrays.asList(held, new Sequence(shortNotes)), 0), new Note(2, new Pitch('D'), Instrument.PIANO, 0)));
+        final Voice voice = new Voice(tune, Collections.emptyList(), "");
+        final BeatIndex index = voice.index();
+        assertIndexes(voice, index);
+        final List<Event> sounding = index.notesAt(51.25);
+        assertEquals(2, sounding.size());
+        assertEquals(new Pitch('C'), sounding.get(0).note().pitch());
+        assertEquals(51.0, sounding.get(1).beat(), 0);
+        assertEquals("expected only the held note during a rest", 1, index.notesAt(2.75).size());
+        assertEquals(new Pitch('D'), index.notesAt(101).get(0).note().pitch());
+    }
+
+    // covers threads racing to make Voice.index
+    @Test
+    public void testIndexRace() throws Exception {
+        final Voice voice = new MusicParser().parse(Fixtures.TUNE).voices().get("1");
+        final BeatIndex[] indexes = new BeatIndex[4];
+        final List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < indexes.length; i++) {
+            final int thread = i;
+            threads.add(new Thread(() -> indexes[thread] = voice.index()));
+        }
+        for(Thread thread: threads) {
+            thread.start();
+        }
+        for(Thread thread: threads) {
+            thread.join();
+        }
+        for(BeatIndex index: indexes) {
+            assertSame("expected every thread handed the index published", voice.index(), index);
+        }
+    }
+
+    // covers every lyricAt partition, a chord sung once
+    @Test
+    public void testLyricAt() throws UnableToParseException {
+        final BeatIndex index = new MusicParser().parse(Fixtures.TUNE).voices().get("1").index();
+        final Music pickup = new Sequence(Arrays.asList(new Rest(1), new Note(1, new Pitch('C'), Instrument.PIANO, 0)));
+        assertEquals(BeatIndex.NO_LYRIC, BeatIndex.of(pickup).lyricAt(0.5));
+        assertEquals(0, BeatIndex.of(pickup).lyricAt(1));
+        assertEquals(0, index.lyricAt(0));
+        assertEquals(1, index.lyricAt(1.9));
+        assertEquals("expected the rest to keep the last syllable", 1, index.lyricAt(2.5));
+        // the second pass sings the same syllables again
+        assertEquals(0, index.lyricAt(4));
+        assertEquals(2, index.lyricAt(7));
+        assertEquals(7, index.lyricAt(13));
+        assertEquals(7, index.lyricAt(14.5));
+        assertEquals(12, index.lyricAt(index.duration() + 10));
+        int sungInChord = 0;
+        for(Event event: index.notesAt(13)) {
+            if(event.lyricIndex() != BeatIndex.NO_LYRIC) {
+                sungInChord++;
+            }
+        }
+        assertEquals("expected a chord's syllable sung once", 1, sungInChord);
+    }
+
+    // covers every between partition, no notes, Voice.index made once
+    @Test
+    public void testBetween() throws UnableToParseException {
+        final Voice voice = new MusicParser().parse(Fixtures.TUNE).voices().get("1");
+        final BeatIndex index = voice.index();
+        assertSame(index, voice.index());
+        assertEquals(Collections.emptyList(), index.between(2, 3));
+        assertEquals(1, index.between(0, 1).size());
+        final List<Event> passes = index.between(3, 5);
+        assertEquals(Arrays.asList(3.0, 4.0), Arrays.asList(passes.get(0).beat(), passes.get(1).beat()));
+        assertEquals(Collections.emptyList(), index.between(5, 1));
+        final BeatIndex silent = BeatIndex.of(new Chord(Collections.emptyList(), 0));
+        assertEquals(0, silent.size());
+        assertEquals(Collections.emptyList(), silent.notesAt(0));
+        assertEquals(BeatIndex.NO_LYRIC, silent.lyricAt(0));
+    }
+}
@@ -0,0 +1,163 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.CompiledScoreCache;
+import karaoke.parser.CompositionCache;
+import karaoke.parser.MusicParser;
+
+public class CompiledScoreCacheTest {
+
+    // Testing strategy
+    //
+    // Partitions for CompiledScoreCache.parse:
+    //      compiled score: missing, valid, corrupt, truncated, from another text, from another format version
+    //      music: notes, rests, chords, tuplets, repeats with and without endings, multiple voices, lyrics
+    //      cache instance: same as the one that compiled, new instance on the same directory (restart)
+    //      used behind a CompositionCache: yes, no
+    
+    private static final String TUNE = "X:1\n" +
+            "T:Compiled\n" +
+            "C:Someone\n" +
+            "L:1/8\n" +
+            "Q:1/8=120\n" +
+            "K:D\n" +
+            "V:upper\n" +
+            "|: C D E F | [C2E2G2] (3ABc z2 :| G A B c |[1 c B A G :|[2 c c c c |]\n" +
+            "w: do re mi fa sol la_ ti do * re\n" +
+            "V:lower\n" +
+            "C,4 ^F,4 | _B,8 |\n";
+    
+    private Path directory;
+    
+    @Before
+    public void makeDirectory() throws IOException {
+        directory = Files.createTempDirectory("compiled-scores");
+    }
+    
+    @After
+    public void deleteDirectory() throws IOException {
+        try(Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+    
+    private Path onlyScore() throws IOException {
+        try(Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.toString().endsWith(".score")).findFirst().get();
+        }
+    }
+    
+    private void assertFallsBack(byte[] damaged) throws IOException, UnableToParseException {
+        Files.write(onlyScore(), damaged);
+        final CompiledScoreCache restarted = new CompiledScoreCache(directory.toFile(), new MusicParser());
+        assertEquals("expected parsed composition", new MusicParser().parse(TUNE), restarted.parse(TUNE));
+        assertEquals("expected a parse", 1, restarted.parses());
+        assertEquals("expected the score to be rejected", 1, restarted.rejected());
+        final CompiledScoreCache again = new CompiledScoreCache(directory.toFile(), new MusicParser());
+        again.parse(TUNE);
+        assertEquals("expected the score to be recompiled", 1, again.loads());
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers missing then valid compiled score, every kind of music, restart
+    @Test
+    public void testLoadAfterRestart() throws IOException, UnableToParseException {
+        final Composition expected = new MusicParser().parse(TUNE);
+        final CompiledScoreCache first = new CompiledScoreCache(directory.toFile(), new MusicParser());
+        assertEquals("expected parsed composition", expected, first.parse(TUNE));
+        assertEquals("expected a parse", 1, first.parses());
+        
+        final CompiledScoreCache restarted = new CompiledScoreCache(directory.toFile(), new MusicParser());
+        final Composition loaded = restarted.parse(TUNE);
+        assertEquals("expected same composition", expected, loaded);
+        assertEquals("expected same duration", expected.duration(), loaded.duration(), 0);
+        assertEquals("expected a load", 1, restarted.loads());
+        assertEquals("expected no parse", 0, restarted.parses());
+    }
+    
+    // covers every sample file
+    @Test
+    public void testSampleFilesRoundTrip() throws IOException, UnableToParseException {
+        final CompiledScoreCache first = new CompiledScoreCache(directory.toFile(), new MusicParser());
+        final CompiledScoreCache restarted = new CompiledScoreCache(directory.toFile(), new MusicParser());
+        for(File sample: new File("sample-abc").listFiles()) {
+            if(sample.getName().endsWith(".abc")) {
+                final Composition parsed = first.parseFile(sample);
+                assertEquals(sample.getName(), parsed, restarted.parseFile(sample));
+            }
+        }
+        assertEquals("expected no parses after restart", 0, restarted.parses());
+    }
+    
+    // covers corrupt compiled score
+    @Test
+    public void testCorruptFallsBack() throws IOException, UnableToParseException {
+        new CompiledScoreCache(directory.toFile(), new MusicParser()).parse(TUNE);
+        final byte[] score = Files.readAllBytes(onlyScore());
+        score[score.length/2] ^= 0x55;
+        assertFallsBack(score);
+    }
+    
+    // covers truncated compiled score
+    @Test
+    public void testTruncatedFallsBack() throws IOException, UnableToParseException {
+        new CompiledScoreCache(directory.toFile(), new MusicParser()).parse(TUNE);
+        final byte[] score = Files.readAllBytes(onlyScore());
+        assertFallsBack(Arrays.copyOf(score, score.length/3));
+    }
+    
+    // covers compiled score from another text
+    @Test
+    public void testStaleFallsBack() throws IOException, UnableToParseException {
+        final CompiledScoreCache cache = new CompiledScoreCache(directory.toFile(), new MusicParser());
+        cache.parse(TUNE.replace("Compiled", "Other"));
+        final byte[] other = Files.readAllBytes(onlyScore());
+        Files.delete(onlyScore());
+        cache.parse(TUNE);
+        assertFallsBack(other);
+    }
+    
+    // covers compiled score from another format version
+    @Test
+    public void testOtherVersionFallsBack() throws IOException, UnableToParseException {
+        new CompiledScoreCache(directory.toFile(), new MusicParser()).parse(TUNE);
+        final byte[] score = Files.readAllBytes(onlyScore());
+        // the version is the int after the magic number
+        score[7]++;
+        assertFallsBack(score);
+    }
+    
+    // covers use behind a CompositionCache
+    @Test
+    public void testBehindMemoryCache() throws IOException, UnableToParseException {
+        final CompiledScoreCache compiled = new CompiledScoreCache(directory.toFile(), new MusicParser());
+        final CompositionCache memory = new CompositionCache(compiled, 4, Long.MAX_VALUE);
+        memory.parse(TUNE);
+        memory.parse(TUNE);
+        assertEquals("expected one parse", 1, compiled.parses());
+        assertEquals("expected one memory hit", 1, memory.hits());
+        
+        final CompiledScoreCache restartedCompiled = new CompiledScoreCache(directory.toFile(), new MusicParser());
+        new CompositionCache(restartedCompiled, 4, Long.MAX_VALUE).parse(TUNE);
+        assertEquals("expected load after restart", 1, restartedCompiled.loads());
+    }
+}
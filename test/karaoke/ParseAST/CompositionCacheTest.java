@@ -0,0 +1,127 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.CompositionCache;
+import karaoke.parser.MusicParser;
+
+public class CompositionCacheTest {
+
+    // Testing strategy
+    //
+    // Partitions for CompositionCache.parse:
+    //      text: not cached, cached, cached with different line endings, invalid
+    //      result: modified by the caller after parsing, not modified
+    //      bounds: within bounds, over the entry bound, over the byte bound, single text over the byte bound
+    //      recency: least recently used entry was looked up again, wasn't
+    
+    private static String tune(String title) {
+        return "X:1\n" +
+                "T:"+title+"\n" +
+                "K:C\n" +
+                "C D E F | G A B c |\n" +
+                "w: do re mi fa sol la ti do\n";
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers text not cached then cached, result not modified
+    @Test
+    public void testHitAfterMiss() throws UnableToParseException {
+        final CompositionCache cache = new CompositionCache(new MusicParser(), 4, Long.MAX_VALUE);
+        final Composition first = cache.parse(tune("One"));
+        final Composition second = cache.parse(tune("One"));
+        assertEquals("expected same composition", new MusicParser().parse(tune("One")), second);
+        assertEquals("expected same composition", first, second);
+        assertNotSame("expected a new copy", first, second);
+        assertEquals("expected one miss", 1, cache.misses());
+        assertEquals("expected one hit", 1, cache.hits());
+        assertEquals("expected one entry", 1, cache.size());
+        assertTrue("expected memory to be tracked", cache.estimatedBytes() > 0);
+    }
+    
+    // covers cached text with different line endings
+    @Test
+    public void testLineEndingsShareEntry() throws UnableToParseException {
+        final CompositionCache cache = new CompositionCache(new MusicParser(), 4, Long.MAX_VALUE);
+        cache.parse(tune("One"));
+        cache.parse(tune("One").replace("\n", "\r\n"));
+        assertEquals("expected one hit", 1, cache.hits());
+        assertEquals("expected one entry", 1, cache.size());
+    }
+    
+    // covers result modified by the caller
+    @Test
+    public void testResultsAreIndependent() throws UnableToParseException {
+        final CompositionCache cache = new CompositionCache(new MusicParser(), 4, Long.MAX_VALUE);
+        final Composition first = cache.parse(tune("One"));
+        final List<String> heard = new ArrayList<>();
+        first.addVoiceListener("", heard::add);
+        final Composition second = cache.parse(tune("One"));
+        assertNotEquals("expected listener only on first copy", first, second);
+        assertEquals("expected unmodified copy", new MusicParser().parse(tune("One")), second);
+    }
+    
+    // covers invalid text
+    @Test
+    public void testFailuresNotCached() {
+        final CompositionCache cache = new CompositionCache(new MusicParser(), 4, Long.MAX_VALUE);
+        for(int i = 0; i < 2; i++) {
+            try {
+                cache.parse("X:1\nT:Broken\nK:C\nC D H F |\n");
+                fail("expected parse failure");
+            }
+            catch(UnableToParseException e) {
+                // expected
+            }
+        }
+        assertEquals("expected two misses", 2, cache.misses());
+        assertEquals("expected nothing cached", 0, cache.size());
+    }
+    
+    // covers over the entry bound, least recently used entry looked up again
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws UnableToParseException {
+        final CompositionCache cache = new CompositionCache(new MusicParser(), 2, Long.MAX_VALUE);
+        cache.parse(tune("One"));
+        cache.parse(tune("Two"));
+        cache.parse(tune("One"));
+        cache.parse(tune("Three"));
+        assertEquals("expected one eviction", 1, cache.evictions());
+        assertEquals("expected two entries", 2, cache.size());
+        cache.parse(tune("One"));
+        assertEquals("expected One still cached", 2, cache.hits());
+        cache.parse(tune("Two"));
+        assertEquals("expected Two evicted", 4, cache.misses());
+    }
+    
+    // covers over the byte bound, single text over the byte bound
+    @Test
+    public void testByteBound() throws UnableToParseException {
+        final CompositionCache measuring = new CompositionCache(new MusicParser(), 4, Long.MAX_VALUE);
+        measuring.parse(tune("One"));
+        final long entryBytes = measuring.estimatedBytes();
+        
+        final CompositionCache cache = new CompositionCache(new MusicParser(), 4, entryBytes + entryBytes/2);
+        cache.parse(tune("One"));
+        cache.parse(tune("Two"));
+        assertEquals("expected one entry within byte bound", 1, cache.size());
+        assertEquals("expected one eviction", 1, cache.evictions());
+        assertTrue("expected bytes within bound", cache.estimatedBytes() <= entryBytes + entryBytes/2);
+        
+        final CompositionCache tiny = new CompositionCache(new MusicParser(), 4, 1);
+        assertEquals("expected parse without caching", "One", tiny.parse(tune("One")).title());
+        assertEquals("expected nothing cached", 0, tiny.size());
+        assertEquals("expected no eviction", 0, tiny.evictions());
+    }
+}
@@ -0,0 +1,149 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+
+public class ConcurrentParsingTest {
+
+    // Testing strategy
+    //
+    // One MusicParser is shared by many threads that start parsing at the same moment, and every
+    // result is compared with the Composition parsed by a single thread.
+    // Partitions:
+    //      engine: GRAMMAR, DESCENT
+    //      tunes: one voice, several voices, with lyrics, with repeats, tuplets and chords
+    //      outcome: parses, fails to parse while other threads succeed
+    //      threads: many more than available processors
+    
+    private static final int THREADS = 16;
+    private static final String INVALID = "X:1\nT:Broken\nK:C\nC D H F |\n";
+    
+    private static final String[] FAST_SAMPLES = {
+        "piece1.abc", "piece2.abc", "sample1.abc", "scale.abc", "multiple_lyrics.abc", "paddy.abc"
+    };
+    
+    private static List<String> read(String... names) throws IOException {
+        final List<String> texts = new ArrayList<>();
+        for(String name: names) {
+            texts.add(new String(Files.readAllBytes(new File("sample-abc", name).toPath()), StandardCharsets.UTF_8));
+        }
+        return texts;
+    }
+    
+    private static String[] allSamples() {
+        final List<String> names = new ArrayList<>();
+        for(File file: new File("sample-abc").listFiles()) {
+            if(file.getName().endsWith(".abc")) {
+                names.add(file.getName());
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+    
+    /**
+     * Parse every text with one parser on many threads at once, each thread in its own order and
+     * rounds times, and assert each result equals the one parsed alone.
+     */
+    private static void assertParsesConcurrently(Engine engine, List<String> texts, int rounds)
+            throws UnableToParseException, InterruptedException, ExecutionException {
+        final MusicParser parser = new MusicParser(engine);
+        final List<Composition> expected = new ArrayList<>();
+        for(String text: texts) {
+            expected.add(new MusicParser(engine).parse(text));
+        }
+        
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Integer>> results = new ArrayList<>();
+            for(int thread = 0; thread < THREADS; thread++) {
+                final int offset = thread;
+                results.add(threads.submit((Callable<Integer>) () -> {
+                    start.await();
+                    int parsed = 0;
+                    for(int i = 0; i < rounds * texts.size(); i++) {
+                        final int index = (i + offset) % texts.size();
+                        assertEquals("expected same composition as parsed alone",
+                                expected.get(index), parser.parse(texts.get(index)));
+                        parsed++;
+                        if(i % texts.size() == 0) {
+                            try {
+                                parser.parse(INVALID);
+                                fail("expected invalid tune to fail");
+                            }
+                            catch(UnableToParseException e) {
+                                // expected, and must not disturb the other threads
+                            }
+                        }
+                    }
+                    return parsed;
+                }));
+            }
+            start.countDown();
+            for(Future<Integer> result: results) {
+                assertEquals("expected every parse to finish", rounds * texts.size(), result.get().intValue());
+            }
+        }
+        finally {
+            threads.shutdownNow();
+        }
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers GRAMMAR, many threads, parses and fails
+    @Test
+    public void testGrammarConcurrent() throws Exception {
+        assertParsesConcurrently(Engine.GRAMMAR, read(FAST_SAMPLES), 1);
+    }
+    
+    // covers DESCENT, many threads, every sample, parses and fails
+    @Test
+    public void testDescentConcurrent() throws Exception {
+        assertParsesConcurrently(Engine.DESCENT, read(allSamples()), 5);
+    }
+    
+    // covers GRAMMAR and DESCENT sharing the same static tables at once
+    @Test
+    public void testEnginesConcurrent() throws Exception {
+        final List<String> texts = read(FAST_SAMPLES);
+        final ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> grammar = threads.submit(() -> {
+                assertParsesConcurrently(Engine.GRAMMAR, texts, 1);
+                return null;
+            });
+            final Future<?> descent = threads.submit(() -> {
+                assertParsesConcurrently(Engine.DESCENT, texts, 20);
+                return null;
+            });
+            grammar.get();
+            descent.get();
+        }
+        finally {
+            threads.shutdownNow();
+        }
+    }
+}
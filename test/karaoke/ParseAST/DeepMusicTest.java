@@ -0,0 +1,211 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import karaoke.Composition;
+import karaoke.Concat;
+import karaoke.Music;
+import karaoke.MusicInterner;
+import karaoke.MusicOptimizer;
+import karaoke.MusicTraversal;
+import karaoke.Note;
+import karaoke.Repeat;
+import karaoke.Rest;
+import karaoke.Sequence;
+import karaoke.Voice;
+import karaoke.parser.CompiledScoreCache;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+import karaoke.sound.RecordingPlayer;
+
+public class DeepMusicTest {
+
+    // Testing strategy
+    //
+    // Every whole-tree operation runs on a thread with a STACK_BYTES stack, over trees of more than
+    // NOTES notes that are as deep as they are long.
+    // Partitions:
+    //      tree: left-deep chain of Concats, right-deep chain of Concats, chain with repeats in it,
+    //            voices parsed from a long tune
+    //      operation: duration, hashCode, equals (equal tree built separately, tree differing at its far end,
+    //                 chains of other shapes),
+    //                 toString, play, MusicOptimizer.optimize, MusicInterner.intern, MusicTraversal.forEachNode,
+    //                 writing and reading a compiled score
+
+    private static final long STACK_BYTES = 256 * 1024;
+    private static final int NOTES = 150_000;
+    private static final double THIRD = 1.0/3;
+
+    /** Something run on a thread with a small stack */
+    private interface Deep {
+        void run() throws Exception;
+    }
+
+    /** Run on a thread with a STACK_BYTES stack, failing the way it failed */
+    private static void onSmallStack(Deep deep) throws Throwable {
+        final List<Throwable> failure = new ArrayList<>();
+        final Thread thread = new Thread(null, () -> {
+            try {
+                deep.run();
+            }
+            catch(Throwable t) {
+                failure.add(t);
+            }
+        }, "deep music", STACK_BYTES);
+        thread.start();
+        thread.join();
+        if(!failure.isEmpty()) {
+            throw failure.get(0);
+        }
+    }
+
+    private static Note note(int index) {
+        return new Note(THIRD, Pitch.MIDDLE_C.transpose(index % 12), Instrument.PIANO, 0);
+    }
+
+    /** A left-deep chain of NOTES notes, the last one replaced by last */
+    private static Music leftDeep(Music last) {
+        Music chain = note(0);
+        for(int i = 1; i < NOTES-1; i++) {
+            chain = new Concat(chain, note(i));
+        }
+        return new Concat(chain, last);
+    }
+
+    /** A right-deep chain of NOTES notes, the last one replaced by last */
+    private static Music rightDeep(Music last) {
+        Music chain = last;
+        for(int i = NOTES-2; i >= 0; i--) {
+            chain = new Concat(note(i), chain);
+        }
+        return chain;
+    }
+
+    private static List<Double> played(Music music) {
+        final RecordingPlayer player = new RecordingPlayer();
+        music.play(player, 0, new Voice(music, Collections.emptyList(), ""));
+        return player.noteStarts();
+    }
+
+    /** Assert that every whole-tree operation works on music, equal to same and not to different */
+    private static void assertOperationsWork(Music music, Music same, Music different, int notes) {
+        assertEquals(notes * THIRD, music.duration(), 1e-6);
+        assertEquals(same.hashCode(), music.hashCode());
+        assertEquals(same, music);
+        assertNotEquals(different, music);
+        final String string = music.toString();
+        assertEquals(same.toString(), string);
+        final List<Double> starts = played(music);
+        assertEquals(notes, starts.size());
+        final Music optimized = MusicOptimizer.optimize(music);
+        assertEquals(string, optimized.toString());
+        assertEquals(starts, played(optimized));
+        final Music interned = new MusicInterner().intern(music);
+        assertEquals(music, interned);
+        assertEquals(string, interned.toString());
+        final long[] nodes = {0};
+        MusicTraversal.forEachNode(music, node -> nodes[0]++);
+        assertTrue("expected every note visited", nodes[0] >= notes);
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers a left-deep chain, every operation but compiled scores
+    @Test
+    public void testLeftDeepChain() throws Throwable {
+        onSmallStack(() -> assertOperationsWork(leftDeep(note(NOTES-1)), leftDeep(note(NOTES-1)),
+                leftDeep(new Rest(THIRD)), NOTES));
+    }
+
+    // covers a right-deep chain, every operation but compiled scores
+    @Test
+    public void testRightDeepChain() throws Throwable {
+        onSmallStack(() -> {
+            final Music chain = rightDeep(note(NOTES-1));
+            assertOperationsWork(chain, rightDeep(note(NOTES-1)), rightDeep(new Rest(THIRD)), NOTES);
+            assertTrue(MusicOptimizer.optimize(chain) instanceof Sequence);
+        });
+    }
+
+    // covers a chain with repeats in it, every operation but compiled scores
+    @Test
+    public void testChainWithRepeats() throws Throwable {
+        onSmallStack(() -> {
+            final List<Music> pieces = new ArrayList<>();
+            for(int i = 0; i < NOTES / 4; i++) {
+                pieces.add(new Repeat(new Concat(note(i), note(i+1)), new ArrayList<>()));
+            }
+            Music chain = pieces.get(0);
+            Music same = pieces.get(0);
+            for(Music piece: pieces.subList(1, pieces.size())) {
+                chain = new Concat(chain, piece);
+                same = new Concat(same, piece);
+            }
+            final Music different = new Concat(same, new Rest(THIRD));
+            assertOperationsWork(chain, same, different, NOTES);
+        });
+    }
+
+    // covers voices parsed from a long tune, writing and reading a compiled score
+    @Test
+    public void testLongParsedTune() throws Throwable {
+        final StringBuilder tune = new StringBuilder("X:1\nT:Long\nL:1/4\nV:1\nK:C\n");
+        final int lines = NOTES / 16 + 1;
+        for(int line = 0; line < lines; line++) {
+            tune.append("V:1\nC D E F | G A B c | c B A G | (3FED C2 [CEG] z |\nw:la la la la la la la la\n");
+        }
+        final Path directory = Files.createTempDirectory("deep-scores");
+        try {
+            onSmallStack(() -> {
+                final MusicParser parser = new MusicParser(Engine.DESCENT);
+                final Composition parsed = new CompiledScoreCache(directory.toFile(), parser).parse(tune);
+                final CompiledScoreCache restarted = new CompiledScoreCache(directory.toFile(), parser);
+                final Composition loaded = restarted.parse(tune);
+                assertEquals(1, restarted.loads());
+                assertEquals(parsed, loaded);
+                final Music music = loaded.voices().get("1").music();
+                assertEquals(parsed.voices().get("1").music().toString(), music.toString());
+                final List<Double> starts = played(music);
+                assertTrue("expected every note played, got "+starts.size(), starts.size() > NOTES);
+                assertEquals(played(parsed.voices().get("1").music()), starts);
+            });
+        }
+        finally {
+            for(Path file: Files.list(directory).toArray(Path[]::new)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // covers equals between chains of different shapes playing the same pieces
+    @Test
+    public void testChainShapesEqual() throws Throwable {
+        onSmallStack(() -> {
+            final List<Music> pieces = Arrays.asList(note(0), note(1));
+            assertEquals(new Sequence(pieces), new Concat(note(0), note(1)));
+            assertEquals(new Concat(note(0), note(1)), new Sequence(pieces));
+            assertNotEquals(new Concat(note(0), note(1)), note(0));
+            final Music left = leftDeep(note(NOTES-1));
+            final Music right = rightDeep(note(NOTES-1));
+            assertEquals(left.hashCode(), right.hashCode());
+            assertEquals(left, right);
+            assertEquals(right, MusicOptimizer.optimize(left));
+            assertNotEquals(left, rightDeep(new Rest(THIRD)));
+        });
+    }
+}
@@ -0,0 +1,148 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+
+public class DescentParserTest {
+
+    // Testing strategy for the DESCENT engine: it must build a Composition equal to the
+    // one built by the GRAMMAR engine, and reject what the grammar rejects
+    //
+    // Partitions:
+    //      header: only required fields, all optional fields, comments, minor/sharp/flat keys
+    //      music: notes with accidentals and octave marks, lengths with and without numerators and denominators,
+    //             rests, chords, tuplets of 2, 3 and 4, repeats with and without |: and endings, bar types
+    //      voices: unnamed, named, interleaved
+    //      lyrics: none, -, _, *, ~, \-, |, spaces after hyphens, multiple w: lines
+    //      input: valid, malformed header, malformed music
+    
+    private static final String HEADER = "X:1\n" +
+            "T:Title\n" +
+            "M:4/4\n" +
+            "L:1/4\n" +
+            "Q:1/4=100\n" +
+            "K:C\n";
+    
+    private static void assertSameComposition(String input) throws UnableToParseException {
+        final Composition expected = new MusicParser(Engine.GRAMMAR).parse(input);
+        final Composition actual = new MusicParser(Engine.DESCENT).parse(input);
+        assertEquals("expected same composition", expected, actual);
+        assertEquals("expected same duration", expected.duration(), actual.duration(), 0);
+    }
+    
+    private static void assertBothReject(String input) {
+        for(Engine engine: Engine.values()) {
+            try {
+                new MusicParser(engine).parse(input);
+                fail("expected "+engine+" to reject input");
+            }
+            catch(UnableToParseException e) {
+                // expected
+            }
+        }
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers every sample file
+    @Test
+    public void testSampleFiles() throws UnableToParseException {
+        final File[] samples = new File("sample-abc").listFiles();
+        assertNotNull("expected sample directory", samples);
+        for(File sample: samples) {
+            if(sample.getName().endsWith(".abc")) {
+                final Composition expected = new MusicParser(Engine.GRAMMAR).parseFile(sample);
+                final Composition actual = new MusicParser(Engine.DESCENT).parseFile(sample);
+                assertEquals(sample.getName(), expected, actual);
+            }
+        }
+    }
+    
+    // covers header with comments, composer, common time meter, minor key, notes with accidentals and octaves
+    @Test
+    public void testHeaderAndAccidentals() throws UnableToParseException {
+        assertSameComposition("X: 7\n" +
+                "% a comment\n" +
+                "T:A Title\n" +
+                "C:Someone\n" +
+                "M:C\n" +
+                "L:1/8\n" +
+                "Q:1/8=200\n" +
+                "K:Abm\n" +
+                "^C _D =F ^^G __B c' C,, d'' | F G f g z2 z/ z3/4 |\n");
+    }
+    
+    // covers sharp and flat keys, note lengths
+    @Test
+    public void testKeysAndLengths() throws UnableToParseException {
+        for(String key: new String[] {"C", "G", "Fb", "C#", "Dbm", "Am"}) {
+            assertSameComposition(HEADER.replace("K:C", "K:"+key) + "A B/ c2 d3/2 e/4 F ^F F | F B b |]\n");
+        }
+    }
+    
+    // covers chords, tuplets of 2, 3 and 4
+    @Test
+    public void testChordsAndTuplets() throws UnableToParseException {
+        assertSameComposition(HEADER + "[CEG] [C2E2G2] (3CDE (2[CE][DF] (4^FGAB | [ce] (3cde2 |\n");
+    }
+    
+    // covers simple repeat, repeat with start bar, repeat with endings, double bars, |:| starting a repeat
+    @Test
+    public void testRepeatsAndEndings() throws UnableToParseException {
+        assertSameComposition(HEADER + "|: C D E F | G A B c :| C C C C |] D D D D || E E E E |\n");
+        assertSameComposition(HEADER + "C D E F | G A B c |[1 c B A G :|[2 c c c c | C4 |]\n");
+        assertSameComposition(HEADER + "C D | E F :| G A B c |\n");
+        assertSameComposition(HEADER + "|:|C D E F :| G A B c |\n");
+        assertSameComposition(HEADER + "C D :||:|E F :|\n");
+        assertBothReject(HEADER + "|:||C D E F :|\n");
+    }
+    
+    // covers named interleaved voices with lyrics
+    @Test
+    public void testVoicesAndLyrics() throws UnableToParseException {
+        assertSameComposition(HEADER +
+                "V: upper\n" +
+                "C D E F | G A B c |\n" +
+                "w: Ma-ry had a lit-tle lamb\n" +
+                "V: lower\n" +
+                "C, D, E, F, | G, A, B, C |\n" +
+                "w: low~er voice | sings -- here\n" +
+                "V: upper\n" +
+                "c B A G | F E D C |\n" +
+                "w: and_ its fleece * was white\n");
+    }
+    
+    // covers every lyric operator
+    @Test
+    public void testLyricOperators() throws UnableToParseException {
+        assertSameComposition(HEADER + "C D E F | G A B c | c B A G | F E D C |\n" +
+                "w: syll-a-ble  - word--skip __ star * x\\-y bar | next~tilde\n" +
+                "w: sec-ond line\n");
+    }
+    
+    // covers comments inside the body
+    @Test
+    public void testComments() throws UnableToParseException {
+        assertSameComposition(HEADER + "% comment line\nC D E F % after music\nG A B c |\n");
+    }
+    
+    // covers malformed header and malformed music
+    @Test
+    public void testRejected() {
+        assertBothReject("X:1\nK:C\nC D E F\n");
+        assertBothReject(HEADER + "C D E F :\n");
+        assertBothReject(HEADER + "C D [E F\n");
+        assertBothReject(HEADER + "C D H F\n");
+    }
+}
@@ -0,0 +1,22 @@
+package karaoke.ParseAST;
+
+/**
+ * Tunes shared by the tests of playing, compiling, indexing and viewing music.
+ */
+class Fixtures {
+
+    /**
+     * Two voices with repeats, endings, a triplet, a chord, rests, a held note and lyrics. At a beat per
+     * quarter note, voice 1 plays its repeat from beat 0 to 8, the triplet from 8 to 10, c3 to 13, the
+     * chord on 13, a rest on 14 and [D2F2] from 15 to 17, then |: G2 A2 |[1 c4 :|[2 C4 |] from 17 to 33;
+     * voice 2 plays C,4 from 0 to 4, the triplet and F3 to 9, a rest to 13 and holds G,8 from 13 to 21.
+     */
+    static final String TUNE = "X:1\nT:Fixture\nL:1/4\nQ:1/4=100\nV:1\nV:2\nK:C\n"
+            + "V:1\n|: C D z F :| (3GAB c3 | [CEG] z [D2F2] |\nw:do re fa sol la ti do chord hm\n"
+            + "V:1\n|: G2 A2 |[1 c4 :|[2 C4 |]\nw:one two three four\n"
+            + "V:2\nC,4 | (3CDE F3 | z4 | G,8 |\nw:low a b c d e\n";
+
+    private Fixtures() {
+        throw new AssertionError("Fixtures is not instantiable");
+    }
+}
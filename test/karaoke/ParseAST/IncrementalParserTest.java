@@ -0,0 +1,117 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.IncrementalParser;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+
+public class IncrementalParserTest {
+
+    // Testing strategy
+    //
+    // Every reparse is compared with a full parse of the same text.
+    // Partitions for reparse:
+    //      header: unchanged, changed
+    //      voices: none changed, one music line changed, one lyric line changed, added, removed
+    //      voice lines: one per voice, interleaved with other voices
+    //      text: parses, doesn't parse
+    //      engine: GRAMMAR, DESCENT
+    
+    private static final String HEADER = "X:1\nT:Duet\nL:1/4\nK:C\n";
+    private static final String UPPER = "V:upper\nC D E F | G A B c |\nw: up-per voice sings * | here\n";
+    private static final String LOWER = "V:lower\nC, D, E, F, | G,4 |\nw: low\n";
+    private static final String UPPER_AGAIN = "V:upper\nc B A G | F E D C |\nw: and down a-gain\n";
+    private static final String LOWER_AGAIN = "V:lower\nC,4 | z4 |\n";
+    private static final String DUET = HEADER + UPPER + LOWER + UPPER_AGAIN + LOWER_AGAIN;
+    
+    /** Reparse text, assert the result equals a full parse and that exactly the given voices were parsed again */
+    private static void assertReparses(IncrementalParser incremental, Engine engine, String text, String... reparsed)
+            throws UnableToParseException {
+        final Composition expected = new MusicParser(engine).parse(text);
+        assertEquals("expected same as a full parse", expected, incremental.reparse(text));
+        assertEquals("expected voices parsed again", new HashSet<>(Arrays.asList(reparsed)),
+                incremental.reparsedVoices());
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers header unchanged, no voices changed
+    @Test
+    public void testUnchanged() throws UnableToParseException {
+        final IncrementalParser incremental = new IncrementalParser(new MusicParser(), DUET);
+        assertEquals("expected every voice parsed first", new HashSet<>(Arrays.asList("upper", "lower")),
+                incremental.reparsedVoices());
+        assertReparses(incremental, Engine.GRAMMAR, DUET);
+    }
+    
+    // covers one music line of interleaved voice changed, both engines
+    @Test
+    public void testMusicLineChanged() throws UnableToParseException {
+        for(Engine engine: Engine.values()) {
+            final IncrementalParser incremental = new IncrementalParser(new MusicParser(engine), DUET);
+            assertReparses(incremental, engine, DUET.replace("C,4 | z4 |", "C,2 E,2 | z4 |"), "lower");
+        }
+    }
+    
+    // covers one lyric line changed
+    @Test
+    public void testLyricLineChanged() throws UnableToParseException {
+        final IncrementalParser incremental = new IncrementalParser(new MusicParser(Engine.DESCENT), DUET);
+        assertReparses(incremental, Engine.DESCENT, DUET.replace("and down a-gain", "and back down"), "upper");
+    }
+    
+    // covers voice added and removed
+    @Test
+    public void testVoicesAddedAndRemoved() throws UnableToParseException {
+        final IncrementalParser incremental = new IncrementalParser(new MusicParser(Engine.DESCENT), DUET);
+        final String trio = DUET + "V:bass\nC,,4 | C,,4 |\nw: doom doom\n";
+        assertReparses(incremental, Engine.DESCENT, trio, "bass");
+        final String solo = HEADER + UPPER + UPPER_AGAIN;
+        assertReparses(incremental, Engine.DESCENT, solo);
+        assertEquals("expected one voice", Collections.singleton("upper"), incremental.reparse(solo).voices().keySet());
+    }
+    
+    // covers header changed
+    @Test
+    public void testHeaderChanged() throws UnableToParseException {
+        final IncrementalParser incremental = new IncrementalParser(new MusicParser(Engine.DESCENT), DUET);
+        assertReparses(incremental, Engine.DESCENT, DUET.replace("K:C", "K:G"), "upper", "lower");
+        assertReparses(incremental, Engine.DESCENT, DUET.replace("K:C", "K:G").replace("z4", "z2 G,2"), "lower");
+    }
+    
+    // covers text doesn't parse, then the previous version is still compared against
+    @Test
+    public void testInvalidVersionKeepsPrevious() throws UnableToParseException {
+        final IncrementalParser incremental = new IncrementalParser(new MusicParser(Engine.DESCENT), DUET);
+        try {
+            incremental.reparse(DUET.replace("C,4 | z4 |", "C,4 | H4 |"));
+            fail("expected invalid version to fail");
+        }
+        catch(UnableToParseException e) {
+            // expected
+        }
+        assertReparses(incremental, Engine.DESCENT, DUET.replace("c B A G", "c c A G"), "upper");
+    }
+    
+    // covers composition returned is owned by the caller
+    @Test
+    public void testReturnedCopies() throws UnableToParseException {
+        final IncrementalParser incremental = new IncrementalParser(new MusicParser(Engine.DESCENT), DUET);
+        final Composition first = incremental.reparse(DUET);
+        first.addVoiceListener("upper", line -> {});
+        assertEquals("expected listener not to leak into later versions",
+                new MusicParser(Engine.DESCENT).parse(DUET), incremental.reparse(DUET));
+    }
+}
@@ -0,0 +1,131 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+
+public class LazyVoiceTest {
+
+    // Testing strategy
+    //
+    // Compositions parsed with lazy voices are compared with eagerly parsed ones.
+    // Partitions:
+    //      engine: GRAMMAR, DESCENT
+    //      first use: none, addVoiceListener of one voice, duration, voices, play (through equals)
+    //      copies: none, copied before building, built from several threads at once
+    //      text: valid, a voice doesn't parse
+    
+    private static final String TRIO = "X:1\nT:Trio\nL:1/4\nK:D\n" +
+            "V:high\nd e f g | a4 |\nw: one two three four five\n" +
+            "V:mid\nA B c d | (3efg a2 |\n" +
+            "V:low\nD, E, F, G, | [DF] [DF] z2 |\nw: low notes * | here\n";
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers no use, addVoiceListener of one voice, duration, both engines
+    @Test
+    public void testBuiltOnFirstUse() throws UnableToParseException {
+        for(Engine engine: Engine.values()) {
+            final Composition lazy = new MusicParser(engine, true).parse(TRIO);
+            assertEquals("expected every voice name", new HashSet<>(Arrays.asList("high", "mid", "low")), lazy.voiceNames());
+            assertEquals("expected nothing built", Collections.emptySet(), lazy.builtVoices());
+            assertEquals("expected header read", "Trio", lazy.title());
+            
+            lazy.addVoiceListener("low", line -> {});
+            assertEquals("expected only the listened voice built", Collections.singleton("low"), lazy.builtVoices());
+            
+            assertEquals("expected eager duration", new MusicParser(engine).parse(TRIO).duration(), lazy.duration(), 0);
+            assertEquals("expected every voice built", lazy.voiceNames(), lazy.builtVoices());
+        }
+    }
+    
+    // covers voices and equals on every sample, both engines
+    @Test
+    public void testSamplesEqualEager() throws UnableToParseException, IOException {
+        for(File file: new File("sample-abc").listFiles()) {
+            if(!file.getName().endsWith(".abc")) {
+                continue;
+            }
+            final String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            for(Engine engine: Engine.values()) {
+                if(engine == Engine.GRAMMAR && text.length() > 2000) {
+                    // the grammar is slow on the long samples, and the descent engine covers them
+                    continue;
+                }
+                final Composition eager = new MusicParser(engine).parse(text);
+                assertEquals(file.getName(), eager.voices(), new MusicParser(engine, true).parse(text).voices());
+                assertEquals(file.getName(), eager, new MusicParser(engine, true).parse(text));
+            }
+        }
+    }
+    
+    // covers copied before building: each copy has its own listeners
+    @Test
+    public void testCopiesShareBuild() throws UnableToParseException {
+        final Composition original = new MusicParser(Engine.DESCENT, true).parse(TRIO);
+        final Composition copy = original.copy();
+        original.addVoiceListener("high", line -> {});
+        assertEquals("expected copy not built by the original", Collections.emptySet(), copy.builtVoices());
+        assertEquals("expected copy without the original's listener",
+                new MusicParser(Engine.DESCENT).parse(TRIO).voices().get("high"), copy.voices().get("high"));
+    }
+    
+    // covers copies built from several threads at once
+    @Test
+    public void testConcurrentBuild() throws Exception {
+        final Composition original = new MusicParser(Engine.DESCENT, true).parse(TRIO);
+        final Composition expected = new MusicParser(Engine.DESCENT).parse(TRIO);
+        final ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Composition>> built = new ArrayList<>();
+            for(int i = 0; i < 32; i++) {
+                final Composition copy = original.copy();
+                built.add(threads.submit(() -> {
+                    copy.duration();
+                    return copy;
+                }));
+            }
+            for(Future<Composition> copy: built) {
+                assertEquals("expected same voices as eager", expected.voices(), copy.get().voices());
+            }
+        }
+        finally {
+            threads.shutdownNow();
+        }
+    }
+    
+    // covers a voice that doesn't parse: lazy parsing fails like eager parsing
+    @Test
+    public void testInvalidVoiceFailsAtParse() {
+        for(Engine engine: Engine.values()) {
+            try {
+                new MusicParser(engine, true).parse(TRIO.replace("A B c d", "A B H d"));
+                fail("expected invalid voice to fail with "+engine);
+            }
+            catch(UnableToParseException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -85,6 +85,19 @@ public class LyricAndVoiceParsingTest {
 	        //check that some property of voice is correct
 	    }
 	    
+	    //Covers: parseString: Voices: 2 voices, interleaved, separated by comments and blank lines
+	    @Test public void testParseStringInterleavedVoicesWithComments() throws UnableToParseException {
+	        String basicSong = "X:1\r\nT:Title\r\nV:1\r\nV:2\r\nK:C\r\n"
+	        		+ "V:1\r\nC D E F|\r\n% first line done\r\n"
+	        		+ "V:2\r\nC2 C2|\r\n\r\n"
+	        		+ "V:1\r\nG A B c| % end\r\n"
+	        		+ "V:2\r\nz4|\r\n";
+	        Composition music = (new MusicParser()).parse(basicSong);
+	        assertEquals(8.0, music.duration(), .001);
+	        assertTrue(music.toString().contains("V: 1\nCDEFGABC'\n"));
+	        assertTrue(music.toString().contains("V: 2\nCCz\n"));
+	    }
+	    
 		//LYRICS Nick
 	    //Covers: hyphen between strings
 	    @Test public void testParseLyricsHyphenBetweenStrings() throws UnableToParseException, MidiUnavailableException, InvalidMidiDataException {
@@ -0,0 +1,151 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Chord;
+import karaoke.Composition;
+import karaoke.Concat;
+import karaoke.Music;
+import karaoke.MusicInterner;
+import karaoke.Note;
+import karaoke.Repeat;
+import karaoke.Rest;
+import karaoke.Sequence;
+import karaoke.Tuplet;
+import karaoke.Voice;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.parser.ParseStats;
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+import karaoke.sound.RecordingPlayer;
+
+public class MusicInternerTest {
+
+    // Testing strategy
+    //
+    // MusicInterner.intern must hand back equal music, sharing every subtree equal to one interned before.
+    // Partitions:
+    //      nodes: Note, Rest, Chord, Tuplet, Concat, Sequence, Repeat with and without endings
+    //      equal subtrees: none, within one tree, across trees interned separately
+    //      lyric indices: equal measures sung to the same syllables, to different syllables
+    //      threads: one, several interning equal trees at once
+    // Parsers: GRAMMAR, DESCENT; voices repeating measures within a voice and across voices
+    // sharingRatio: nothing shared, shared measures, agrees with ParseStats
+
+    private static Note note(char letter, int lyricIndex) {
+        return new Note(0.5, new Pitch(letter), Instrument.PIANO, lyricIndex);
+    }
+
+    /** A measure of every kind of leaf and small node, sung from syllable lyricIndex */
+    private static Music measure(int lyricIndex) {
+        final Music chord = new Chord(Arrays.asList(note('C', lyricIndex), note('E', lyricIndex)), lyricIndex);
+        final Music tuplet = new Tuplet(3, Arrays.asList(note('D', lyricIndex+1), note('E', lyricIndex+2),
+                note('F', lyricIndex+3)));
+        return new Sequence(Arrays.asList(chord, tuplet, new Rest(0.5), note('G', lyricIndex+4)));
+    }
+
+    private static List<String> played(Music music) {
+        final RecordingPlayer player = new RecordingPlayer();
+        music.play(player, 0, new Voice(music, Collections.emptyList(), ""));
+        return player.notes();
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers every kind of node, equal subtrees within one tree and across trees, the same syllables
+    @Test
+    public void testSharesEqualSubtrees() {
+        final Music tune = new Concat(new Repeat(measure(0), Arrays.asList(measure(0), new Rest(1))),
+                new Repeat(measure(0), new ArrayList<>()));
+        final MusicInterner interner = new MusicInterner();
+        final Music interned = interner.intern(tune);
+        assertEquals(tune, interned);
+        assertEquals(tune.toString(), interned.toString());
+        assertEquals(played(tune), played(interned));
+
+        final Concat concat = (Concat) interned;
+        final Repeat first = (Repeat) concat.left();
+        final Repeat second = (Repeat) concat.right();
+        assertSame(first.measures(), first.endings().get(0));
+        assertSame(first.measures(), second.measures());
+        final Sequence measure = (Sequence) first.measures();
+        final Chord chord = (Chord) measure.parts().get(0);
+        assertSame(chord.notes().get(0), interner.intern(note('C', 0)));
+
+        final Music again = new Concat(new Repeat(measure(0), Arrays.asList(measure(0), new Rest(1))),
+                new Repeat(measure(0), new ArrayList<>()));
+        final int size = interner.size();
+        assertSame(interned, interner.intern(again));
+        assertEquals("expected nothing new interned", size, interner.size());
+    }
+
+    // covers no equal subtrees, different syllables
+    @Test
+    public void testKeepsDifferentSyllablesApart() {
+        final MusicInterner interner = new MusicInterner();
+        final Music sungOnce = interner.intern(measure(0));
+        final Music sungLater = interner.intern(measure(5));
+        assertNotSame(sungOnce, sungLater);
+        assertNotEquals(sungOnce, sungLater);
+        assertEquals(measure(5), sungLater);
+        final Music single = note('A', 0);
+        assertSame(single, new MusicInterner().intern(single));
+    }
+
+    // covers several threads interning equal trees at once
+    @Test
+    public void testThreadsShareOneInstance() throws Exception {
+        final MusicInterner interner = new MusicInterner();
+        final ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Music>> results = new ArrayList<>();
+            for(int i = 0; i < 16; i++) {
+                results.add(threads.submit(() -> interner.intern(new Repeat(measure(0), Arrays.asList(measure(0))))));
+            }
+            final Music first = results.get(0).get();
+            for(Future<Music> result: results) {
+                assertSame(first, result.get());
+            }
+        }
+        finally {
+            threads.shutdown();
+        }
+    }
+
+    // covers both parsers, measures repeated within a voice and across voices, sharingRatio
+    @Test
+    public void testParsersShareRepeatedMeasures() throws UnableToParseException {
+        final StringBuilder tune = new StringBuilder("X:1\nT:Ostinato\nL:1/8\nV:1\nV:2\nK:C\n");
+        for(int line = 0; line < 32; line++) {
+            tune.append("V:1\nC2 E2 G2 c2 | [C4E4G4] z4 |\nV:2\nC2 E2 G2 c2 | [C4E4G4] z4 |\n");
+        }
+        for(Engine engine: Engine.values()) {
+            final ParseStats stats = new MusicParser(engine).parseWithStats(tune);
+            final Composition composition = stats.composition();
+            assertTrue("expected most nodes shared, got " + stats, stats.sharingRatio() > 10);
+            assertTrue(stats.distinctNodes() * 10 < stats.musicNodes());
+            assertEquals(stats.sharingRatio(), MusicInterner.sharingRatio(composition), 0);
+            final Sequence one = (Sequence) composition.voices().get("1").music();
+            final Sequence two = (Sequence) composition.voices().get("2").music();
+            assertSame("expected voices playing the same measures to share them, " + engine,
+                    one.parts().get(0), two.parts().get(0));
+        }
+        final ParseStats unshared = new MusicParser().parseWithStats("X:1\nT:Scale\nL:1/4\nK:C\nC D E F |\n");
+        assertEquals(1, MusicInterner.sharingRatio(unshared.composition()), 0);
+    }
+}
@@ -0,0 +1,101 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import karaoke.Chord;
+import karaoke.Concat;
+import karaoke.Music;
+import karaoke.Note;
+import karaoke.Repeat;
+import karaoke.Rest;
+import karaoke.Tuplet;
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+
+public class MusicNodeTest {
+
+    // Testing strategy
+    //
+    // Every kind of Music works out its duration and hash code when it is made.
+    // Partitions:
+    //      node: Note, Rest, Concat, Chord, Tuplet, Repeat with and without endings
+    //      duration: same as the sum of its parts, after the list it was made from changes
+    //      equals/hashCode: same object, equal trees built separately, trees that differ deep down,
+    //                       trees containing rests
+    //      depth: a few levels, a chain of Concats deeper than the stack could recurse through
+
+    private static Note note(char letter, double duration) {
+        return new Note(duration, new Pitch(letter), Instrument.PIANO, 0);
+    }
+
+    /** Build the same small tree anew, with a rest of the given length after its chord */
+    private static Music tree(double rest) {
+        final Music chord = new Chord(Arrays.asList(note('C', 1), note('E', 1), note('G', 1)), 0);
+        final Music tuplet = new Tuplet(3, Arrays.asList(note('A', 0.5), note('B', 0.5), note('C', 0.5)));
+        final Music measure = new Concat(new Concat(chord, new Rest(rest)), tuplet);
+        return new Repeat(measure, Arrays.asList(note('D', 2), new Concat(note('E', 1), new Rest(1))));
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers every node, duration the sum of its parts
+    @Test
+    public void testDurations() {
+        assertEquals(1, note('C', 1).duration(), 0);
+        assertEquals(2.5, new Rest(2.5).duration(), 0);
+        assertEquals(3, new Concat(note('C', 1), new Rest(2)).duration(), 0);
+        assertEquals(1, new Chord(Arrays.asList(note('C', 1), note('E', 1)), 0).duration(), 0);
+        assertEquals(1.5, new Tuplet(3, Arrays.asList(note('C', 0.5), note('D', 0.5), note('E', 0.5))).duration(), 0);
+        assertEquals(4, new Repeat(new Concat(note('C', 1), note('D', 1)), new ArrayList<>()).duration(), 0);
+        // chord 1 + rest 1 + tuplet 1.5, played once with each ending of 2 beats
+        assertEquals(2 * (3.5 + 2), tree(1).duration(), 0);
+    }
+
+    // covers duration after the list a Chord or Tuplet was made from changes
+    @Test
+    public void testListsCopied() {
+        final List<Music> notes = new ArrayList<>(Arrays.asList(note('C', 0.5), note('D', 0.5), note('E', 0.5)));
+        final Tuplet tuplet = new Tuplet(3, notes);
+        final Chord chord = new Chord(notes, 0);
+        notes.set(0, note('C', 4));
+        assertEquals(1.5, tuplet.duration(), 0);
+        assertEquals(0.5, chord.duration(), 0);
+        assertEquals(note('C', 0.5), tuplet.notes().get(0));
+        assertEquals(note('C', 0.5), chord.notes().get(0));
+    }
+
+    // covers same object, equal trees built separately, trees that differ deep down, rests
+    @Test
+    public void testEqualsAndHashCode() {
+        final Music tree = tree(1);
+        assertEquals(tree, tree);
+        assertEquals(tree(1), tree);
+        assertEquals(tree(1).hashCode(), tree.hashCode());
+        assertNotEquals(tree(2), tree);
+        assertEquals(new Rest(1).hashCode(), new Rest(1).hashCode());
+        assertNotEquals(new Rest(1), new Rest(2));
+    }
+
+    // covers a chain of Concats deeper than the stack could recurse through
+    @Test
+    public void testDeepChain() {
+        final int length = 1_000_000;
+        Music chain = note('C', 1);
+        Music other = note('C', 1);
+        for(int i = 1; i < length; i++) {
+            chain = new Concat(chain, new Rest(0.5));
+            other = new Concat(other, new Rest(0.5));
+        }
+        assertEquals(1 + (length - 1) * 0.5, chain.duration(), 0);
+        assertEquals(other.hashCode(), chain.hashCode());
+    }
+}
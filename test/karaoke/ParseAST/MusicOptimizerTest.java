@@ -0,0 +1,215 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Chord;
+import karaoke.Concat;
+import karaoke.Music;
+import karaoke.MusicOptimizer;
+import karaoke.Note;
+import karaoke.Repeat;
+import karaoke.Rest;
+import karaoke.Sequence;
+import karaoke.Voice;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+import karaoke.sound.RecordingPlayer;
+
+public class MusicOptimizerTest {
+
+    // Testing strategy
+    //
+    // MusicOptimizer.optimize must keep toString and duration, and play every note on exactly the beat it did.
+    // Partitions:
+    //      chain: left-deep Concats starting with a zero-length rest, Concats on the right, Sequences on the
+    //             left spine, nothing but zero-length rests, a single piece, deeper than the stack could recurse
+    //      nested music: Repeat with and without endings, Chord
+    //      durations: exact in binary, thirds and fifths that round
+    //      mergeRests: no rests, adjacent rests, rests apart
+    //      parser: GRAMMAR, DESCENT emit optimized trees
+    // Sequence: equals and hashCode of equal sequences, different sequences, a Concat of the same pieces,
+    //      chains of other shapes, with zero-length rests, the single piece a chain optimizes to, nothing
+
+    private static Note note(char letter, double duration) {
+        return new Note(duration, new Pitch(letter), Instrument.PIANO, 0);
+    }
+
+    /** Chain pieces the way the parsers do, starting with a zero-length rest */
+    private static Music chain(Music... pieces) {
+        Music base = new Rest(0);
+        for(Music piece: pieces) {
+            base = new Concat(base, piece);
+        }
+        return base;
+    }
+
+    /** @return the notes music schedules, each with its start beat and length */
+    private static List<String> played(Music music) {
+        final RecordingPlayer player = new RecordingPlayer();
+        music.play(player, 0.1, new Voice(music, Collections.emptyList(), ""));
+        return player.notes();
+    }
+
+    /** Assert that optimized is a faithful optimization of original */
+    private static void assertSameMusic(Music original, Music optimized) {
+        assertEquals(original.toString(), optimized.toString());
+        assertEquals(original.duration(), optimized.duration(), 0);
+        assertEquals(played(original), played(optimized));
+    }
+
+    /** Assert that music has no Concat and no zero-length Rest apart from a tree of nothing but one */
+    private static void assertOptimized(Music music) {
+        final Deque<Music> unvisited = new ArrayDeque<>(Arrays.asList(music));
+        while(!unvisited.isEmpty()) {
+            final Music piece = unvisited.pop();
+            assertFalse("expected no Concats in "+music, piece instanceof Concat);
+            assertFalse("expected no zero-length rests in "+music,
+                    piece != music && piece instanceof Rest && piece.duration() == 0);
+            if(piece instanceof Sequence) {
+                assertTrue("expected sequences of more than one piece", ((Sequence) piece).parts().size() > 1);
+                unvisited.addAll(((Sequence) piece).parts());
+            }
+            else if(piece instanceof Repeat) {
+                unvisited.push(((Repeat) piece).measures());
+                unvisited.addAll(((Repeat) piece).endings());
+            }
+        }
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers left-deep Concats starting with a zero-length rest, durations exact in binary
+    @Test
+    public void testFlattensChain() {
+        final Music chain = chain(note('C', 1), new Rest(1), note('D', 0.5));
+        final Music optimized = MusicOptimizer.optimize(chain);
+        assertEquals(new Sequence(Arrays.asList(note('C', 1), new Rest(1), note('D', 0.5))), optimized);
+        assertSameMusic(chain, optimized);
+    }
+
+    // covers Concats on the right, Repeat with and without endings, Chord, thirds and fifths that round
+    @Test
+    public void testKeepsBeatsOfNestedChains() {
+        final double third = 1.0/3;
+        final double fifth = 1.0/5;
+        final Music measure = chain(note('C', third), note('D', fifth), note('E', third));
+        final Music chord = new Chord(Arrays.asList(note('C', fifth), note('E', fifth)), 0);
+        final Music line = chain(measure, chain(chord, new Rest(third), note('F', fifth)),
+                new Repeat(chain(measure, measure), new ArrayList<>()),
+                new Repeat(measure, Arrays.asList(chain(note('G', third)), chain(note('A', fifth), measure))),
+                measure);
+        final Music voice = new Concat(new Concat(line, line), line);
+        final Music optimized = MusicOptimizer.optimize(voice);
+        assertSameMusic(voice, optimized);
+        assertOptimized(optimized);
+        assertEquals("expected the lines of the voice and the measures of the first line in one sequence",
+                5 + 2, ((Sequence) optimized).parts().size());
+    }
+
+    // covers a Sequence on the left spine, nothing but zero-length rests, a single piece
+    @Test
+    public void testSmallChains() {
+        final Music sequence = new Sequence(Arrays.asList(note('C', 1), note('D', 1)));
+        final Music optimized = MusicOptimizer.optimize(new Concat(sequence, note('E', 1)));
+        assertEquals(new Sequence(Arrays.asList(note('C', 1), note('D', 1), note('E', 1))), optimized);
+        assertEquals(new Rest(0), MusicOptimizer.optimize(chain(new Rest(0), chain())));
+        assertEquals(new Rest(0), MusicOptimizer.optimize(new Sequence(new ArrayList<>())));
+        assertEquals(note('C', 1), MusicOptimizer.optimize(chain(note('C', 1))));
+        assertEquals(note('C', 1), MusicOptimizer.optimize(note('C', 1)));
+    }
+
+    // covers a chain deeper than the stack could recurse through
+    @Test
+    public void testDeepChain() {
+        final int length = 1_000_000;
+        Music chain = new Rest(0);
+        final List<Music> pieces = new ArrayList<>();
+        for(int i = 0; i < length; i++) {
+            final Music piece = i % 2 == 0 ? note('C', 0.5) : new Rest(0.25);
+            chain = new Concat(chain, piece);
+            pieces.add(piece);
+        }
+        assertEquals(new Sequence(pieces), MusicOptimizer.optimize(chain));
+    }
+
+    // covers mergeRests with adjacent rests, rests apart, no rests
+    @Test
+    public void testMergeRests() {
+        final Music chain = chain(new Rest(1), new Rest(0.5), note('C', 1), new Rest(1), note('D', 1),
+                chain(new Rest(2), new Rest(2)));
+        assertEquals(new Sequence(Arrays.asList(new Rest(1.5), note('C', 1), new Rest(1), note('D', 1), new Rest(4))),
+                MusicOptimizer.mergeRests(chain));
+        assertEquals(played(chain), played(MusicOptimizer.mergeRests(chain)));
+        final Music notes = chain(note('C', 1), note('D', 1));
+        assertEquals(MusicOptimizer.optimize(notes), MusicOptimizer.mergeRests(notes));
+    }
+
+    // covers Sequence equals and hashCode
+    @Test
+    public void testSequenceEquality() {
+        final List<Music> pieces = Arrays.asList(note('C', 1), new Rest(1));
+        assertEquals(new Sequence(pieces), new Sequence(new ArrayList<>(pieces)));
+        assertEquals(new Sequence(pieces).hashCode(), new Sequence(new ArrayList<>(pieces)).hashCode());
+        assertNotEquals(new Sequence(pieces), new Sequence(Arrays.asList(note('C', 1), new Rest(2))));
+        assertEquals(new Sequence(pieces), new Concat(note('C', 1), new Rest(1)));
+        assertEquals(new Concat(note('C', 1), new Rest(1)), new Sequence(pieces));
+        assertEquals(new Sequence(pieces).hashCode(), new Concat(note('C', 1), new Rest(1)).hashCode());
+        assertNotEquals(new Sequence(pieces), new Concat(new Rest(1), note('C', 1)));
+    }
+
+    // covers chains of other shapes, zero-length rests, the single piece left, nothing
+    @Test
+    public void testOptimizedEqualsChain() {
+        final Music chain = chain(note('C', 1), note('D', 1), note('E', 1));
+        final Music optimized = MusicOptimizer.optimize(chain);
+        assertEquals(chain, optimized);
+        assertEquals(optimized, chain);
+        assertEquals(chain.hashCode(), optimized.hashCode());
+        final Music rightDeep = new Concat(note('C', 1), new Concat(note('D', 1), new Sequence(Arrays.asList(note('E', 1)))));
+        assertEquals(chain, rightDeep);
+        assertEquals(rightDeep, optimized);
+        assertEquals(chain.hashCode(), rightDeep.hashCode());
+        assertNotEquals(chain, chain(note('C', 1), note('D', 1)));
+
+        final Music single = chain(note('C', 1));
+        assertEquals(note('C', 1), MusicOptimizer.optimize(single));
+        assertEquals(single, note('C', 1));
+        assertEquals(note('C', 1), single);
+        assertEquals(single.hashCode(), note('C', 1).hashCode());
+        assertEquals(chain(), new Rest(0));
+        assertEquals(new Rest(0), chain());
+        assertEquals(new Rest(0).hashCode(), chain().hashCode());
+        assertNotEquals(new Rest(1), chain());
+
+        final Music repeated = new Repeat(chain(note('C', 1), note('D', 1)), Collections.emptyList());
+        assertEquals(repeated, MusicOptimizer.optimize(repeated));
+        assertEquals(repeated.hashCode(), MusicOptimizer.optimize(repeated).hashCode());
+    }
+
+    // covers both parsers emitting optimized trees
+    @Test
+    public void testParsersEmitOptimizedTrees() throws UnableToParseException {
+        final String tune = "X:1\nT:Optimized\nL:1/4\nK:C\n|: C D E F | G A B c :| [CEG] z2 z | (3CDE F2 |]\n"
+                + "|: c B A G |[1 F E D C :|[2 C4 |]\n";
+        for(Engine engine: Engine.values()) {
+            for(Voice voice: new MusicParser(engine).parse(tune).voices().values()) {
+                assertOptimized(voice.music());
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.Music;
+import karaoke.MusicView;
+import karaoke.Note;
+import karaoke.Timeline;
+import karaoke.TimelineCache;
+import karaoke.Transform;
+import karaoke.Voice;
+import karaoke.parser.MusicParser;
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+import karaoke.sound.RecordingPlayer;
+
+public class MusicViewTest {
+
+    // Testing strategy
+    //
+    // A MusicView must play its music with its Transform applied, and a Timeline of a view must schedule
+    // what playing the view does.
+    // Partitions:
+    //      transform: identity, transposed up and down, scaled slower and faster, on another instrument,
+    //                 all three, a view of a view
+    //      start beat: 0, later
+    //      music: notes, chords, tuplets, repeats, lyrics
+    //      Transform: invalid scale, equal transforms made in different orders
+    // Composition.transformed: shares the music, has its own voices
+    // TimelineCache: equal views of copies share a timeline, different transforms don't, eviction
+
+    private static final int TICKS_PER_BEAT = 64;
+
+    private static List<String> played(Music music, double beat) {
+        final RecordingPlayer player = new RecordingPlayer();
+        music.play(player, beat, new Voice(music, Collections.emptyList(), ""));
+        return player.notes();
+    }
+
+    /**
+     * Assert that a timeline of composition schedules the notes playing it does, and its lyric events at
+     * the same ticks; the timeline drops the events notes of chords schedule, which do nothing
+     */
+    private static void assertTimelineMatches(Composition composition) {
+        final RecordingPlayer played = RecordingPlayer.inTicks(TICKS_PER_BEAT);
+        composition.play(played);
+        final RecordingPlayer compiled = RecordingPlayer.inTicks(TICKS_PER_BEAT);
+        Timeline.compile(composition, TICKS_PER_BEAT).play(compiled, composition);
+        assertEquals(played.sortedTickNotes(), compiled.sortedTickNotes());
+        assertEquals(new TreeSet<>(played.eventTicks()), new TreeSet<>(compiled.eventTicks()));
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers identity, transposed up and down, scaled slower and faster, another instrument, start beats 0 and later
+    @Test
+    public void testTransformsNotes() {
+        final Music note = new Note(1, new Pitch('C'), Instrument.PIANO, 0);
+        assertEquals(played(note, 2), played(new MusicView(note, Transform.IDENTITY), 2));
+        assertEquals(Collections.singletonList("PIANO D@2.0+1.0"), played(new MusicView(note, Transform.IDENTITY.transposedBy(2)), 2));
+        assertEquals(Collections.singletonList("PIANO B,@0.0+1.0"), played(new MusicView(note, Transform.IDENTITY.transposedBy(-1)), 0));
+        final Music slow = new MusicView(note, Transform.IDENTITY.scaledBy(2));
+        assertEquals(2, slow.duration(), 0);
+        assertEquals(Collections.singletonList("PIANO C@3.0+2.0"), played(slow, 3));
+        final Music fast = new MusicView(note, Transform.IDENTITY.scaledBy(0.5).playedOn(Instrument.TRUMPET));
+        assertEquals(Collections.singletonList("TRUMPET C@3.0+0.5"), played(fast, 3));
+    }
+
+    // covers all three at once, a view of a view, notes, chords, tuplets, repeats, lyrics
+    @Test
+    public void testTimelinesOfViews() throws UnableToParseException {
+        final Composition composition = new MusicParser().parse(Fixtures.TUNE);
+        final Transform all = Transform.IDENTITY.transposedBy(-3).scaledBy(1.5).playedOn(Instrument.VIOLIN);
+        assertTimelineMatches(composition.transformed(all));
+        assertTimelineMatches(composition.transformed(all).transformed(Transform.IDENTITY.scaledBy(1.0/3).transposedBy(5)));
+        final Composition slower = composition.transformed(Transform.IDENTITY.scaledBy(2));
+        assertEquals(2 * composition.duration(), slower.duration(), 1e-9);
+        final Timeline timeline = Timeline.compile(slower, TICKS_PER_BEAT);
+        final Timeline original = Timeline.compile(composition, TICKS_PER_BEAT);
+        assertEquals(original.track("1").size(), timeline.track("1").size());
+        assertEquals(2 * original.track("1").durationTicks(0), timeline.track("1").durationTicks(0));
+        assertEquals(Instrument.VIOLIN, Timeline.compile(composition.transformed(all), TICKS_PER_BEAT).track("2").instrument(0));
+    }
+
+    // covers Composition.transformed sharing the music and having its own voices
+    @Test
+    public void testTransformedComposition() throws UnableToParseException {
+        final Composition composition = new MusicParser().parse(Fixtures.TUNE);
+        final Transform up = Transform.IDENTITY.transposedBy(2);
+        final Composition view = composition.transformed(up);
+        final Music viewed = view.voices().get("1").music();
+        assertTrue(viewed instanceof MusicView);
+        assertSame(composition.voices().get("1").music(), ((MusicView) viewed).music());
+        assertEquals(up, ((MusicView) viewed).transform());
+        assertEquals(composition.voiceNames(), view.voiceNames());
+        assertNotSame("expected the view to have its own voices",
+                composition.voices().get("1"), view.voices().get("1"));
+        assertEquals(composition.transformed(up), view);
+        assertNotEquals(composition.transformed(up.transposedBy(1)), view);
+    }
+
+    // covers an invalid scale, equal transforms made in different orders
+    @Test
+    public void testTransform() {
+        final Transform one = Transform.IDENTITY.transposedBy(2).scaledBy(2).playedOn(Instrument.VIOLIN);
+        final Transform other = Transform.IDENTITY.playedOn(Instrument.VIOLIN).scaledBy(2).transposedBy(1).transposedBy(1);
+        assertEquals(one, other);
+        assertEquals(one.hashCode(), other.hashCode());
+        assertEquals(2, one.semitones());
+        assertEquals(2, one.timeScale(), 0);
+        assertEquals(Instrument.VIOLIN, one.instrument(Instrument.PIANO));
+        assertEquals(Instrument.PIANO, Transform.IDENTITY.instrument(Instrument.PIANO));
+        try {
+            Transform.IDENTITY.scaledBy(0);
+            fail("expected a zero scale to be rejected");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    // covers TimelineCache: equal views of copies share a timeline, different transforms don't, eviction
+    @Test
+    public void testTimelineCache() throws UnableToParseException {
+        final Composition parsed = new MusicParser().parse(Fixtures.TUNE);
+        final TimelineCache cache = new TimelineCache(2, 1L << 20);
+        final Transform down = Transform.IDENTITY.transposedBy(-2);
+        final Timeline first = cache.timeline(parsed.copy().transformed(down), TICKS_PER_BEAT);
+        assertSame(first, cache.timeline(parsed.copy().transformed(down), TICKS_PER_BEAT));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        final Timeline up = cache.timeline(parsed.transformed(Transform.IDENTITY.transposedBy(2)), TICKS_PER_BEAT);
+        assertNotSame(first, up);
+        assertEquals(first.track("1").midiNote(0) + 4, up.track("1").midiNote(0));
+        assertNotSame(first, cache.timeline(parsed.copy().transformed(down), TICKS_PER_BEAT / 2));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertNotSame("expected the first to be evicted", first, cache.timeline(parsed.transformed(down), TICKS_PER_BEAT));
+    }
+}
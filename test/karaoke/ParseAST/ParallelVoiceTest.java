@@ -0,0 +1,91 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.Voice;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.parser.TuneLayout;
+
+public class ParallelVoiceTest {
+
+    // Testing strategy
+    //
+    // Voices are built in parallel by both engines.
+    // Partitions:
+    //      number of voice names: 1, >1, many more than available processors
+    //      lines per voice name: 1, >1 (interleaved)
+    //      lyrics: none, with bar markers that are consumed while building
+    //      engine: GRAMMAR, DESCENT
+    
+    private static final String HEADER = "X:1\n" +
+            "T:Choir\n" +
+            "L:1/4\n" +
+            "K:C\n";
+    
+    /** A tune with the given number of voices, each written as two interleaved lines with lyrics */
+    private static String choir(int voices) {
+        final StringBuilder tune = new StringBuilder(HEADER);
+        for(int part = 0; part < 2; part++) {
+            for(int voice = 0; voice < voices; voice++) {
+                tune.append("V:").append(voice).append('\n');
+                tune.append(voice % 2 == 0 ? "C D E F | G A B c | C D z2 |\n" : "[CE] (3CDE F | G2 z2 | c4 |\n");
+                tune.append("w: voice"+voice+" part"+part+" | sings-a-long * _ | ends\n");
+            }
+        }
+        return tune.toString();
+    }
+    
+    /** Assert that every voice is built as if its lines were parsed alone */
+    private static void assertVoicesIndependent(String tune, Engine engine) throws UnableToParseException {
+        final TuneLayout layout = TuneLayout.split(tune);
+        final Map<String, Voice> voices = new MusicParser(engine).parse(tune).voices();
+        assertEquals("expected every voice", layout.voiceNames().size(), voices.size());
+        for(String name: layout.voiceNames()) {
+            final Composition alone = new MusicParser(engine).parse(layout.voiceText(name));
+            assertEquals("expected voice "+name+" built as if alone", alone.voices().get(name), voices.get(name));
+        }
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers 1 voice name, 1 line, no lyrics, both engines
+    @Test
+    public void testSingleVoice() throws UnableToParseException {
+        for(Engine engine: Engine.values()) {
+            assertVoicesIndependent(HEADER + "C D E F |\n", engine);
+        }
+    }
+    
+    // covers >1 voice names, >1 lines per name, lyrics with bar markers, both engines
+    @Test
+    public void testInterleavedVoices() throws UnableToParseException {
+        for(Engine engine: Engine.values()) {
+            assertVoicesIndependent(choir(3), engine);
+        }
+    }
+    
+    // covers many more voice names than processors, result the same on every parse
+    @Test
+    public void testWideArrangementDeterministic() throws UnableToParseException {
+        final String tune = choir(4 * Runtime.getRuntime().availableProcessors() + 3);
+        for(Engine engine: Engine.values()) {
+            assertVoicesIndependent(tune, engine);
+            final Composition first = new MusicParser(engine).parse(tune);
+            for(int i = 0; i < 10; i++) {
+                assertEquals("expected the same composition on every parse", first, new MusicParser(engine).parse(tune));
+            }
+        }
+        assertEquals("expected engines to agree", new MusicParser(Engine.GRAMMAR).parse(tune),
+                new MusicParser(Engine.DESCENT).parse(tune));
+    }
+}
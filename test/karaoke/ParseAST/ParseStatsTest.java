@@ -0,0 +1,128 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.parser.ParseStats;
+import karaoke.parser.ParseStats.Phase;
+
+public class ParseStatsTest {
+
+    // Testing strategy
+    //
+    // MusicParser.parseWithStats:
+    //      engine: GRAMMAR, DESCENT
+    //      voices: built while parsing, left to be built on first use
+    //      music: notes, rests, chords; lyrics: none, some
+    // Flight Recorder events:
+    //      parse: succeeds, fails
+    //      phases: every phase of the whole tune and of each voice
+
+    private static final String TUNE = "X:1\nT:Stats\nL:1/4\nV:1\nV:2\nK:C\n"
+            + "V:1\nC D E F | [CEG] z G2 |\nw:do re mi fa | so so\n"
+            + "V:2\nC,4 | C, D, E, F, |\n";
+    // notes of TUNE, counting each note of the chord
+    private static final long NOTES = 4 + 3 + 1 + 1 + 4;
+    private static final int SYLLABLES = 7;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers both engines, voices built while parsing, notes, rests, chords, lyrics none and some
+    @Test
+    public void testStats() throws UnableToParseException {
+        for(Engine engine: Engine.values()) {
+            final MusicParser parser = new MusicParser(engine);
+            final ParseStats stats = parser.parseWithStats(TUNE);
+            assertEquals("expected same composition as parse, "+engine, parser.parse(TUNE), stats.composition());
+            assertEquals(engine, stats.engine());
+            assertEquals(TUNE.length(), stats.inputChars());
+            assertEquals("expected one line per voice, "+engine, 2, stats.voiceLines());
+            assertEquals(SYLLABLES, stats.syllables());
+            assertEquals(NOTES, stats.notes());
+            assertTrue("expected notes, rests and the nodes joining them", stats.musicNodes() > NOTES + 1);
+            long phases = 0;
+            for(Phase phase: Phase.values()) {
+                assertTrue(stats.nanos(phase) >= 0);
+                assertTrue(stats.allocatedBytes(phase) >= -1);
+                phases += stats.nanos(phase);
+            }
+            assertTrue("expected time spent parsing and building, "+engine,
+                    stats.nanos(Phase.PARSE) > 0 && stats.nanos(Phase.BUILD) > 0);
+            assertTrue(phases > 0 && stats.totalNanos() > 0);
+            assertTrue(stats.toString().contains(Phase.JOIN.name()));
+        }
+    }
+
+    // covers voices left to be built on first use
+    @Test
+    public void testLazyVoicesNotCounted() throws UnableToParseException {
+        final ParseStats stats = new MusicParser(Engine.DESCENT, true).parseWithStats(TUNE);
+        assertEquals(0, stats.musicNodes());
+        assertEquals(0, stats.nanos(Phase.BUILD));
+        assertEquals(2, stats.voiceLines());
+        assertEquals(new MusicParser(Engine.DESCENT).parse(TUNE), stats.composition());
+    }
+
+    // covers Flight Recorder events of a parse that succeeds and one that fails, every phase
+    @Test
+    public void testFlightRecorderEvents() throws IOException {
+        final File dump = File.createTempFile("parse", ".jfr");
+        dump.deleteOnExit();
+        try(Recording recording = new Recording()) {
+            recording.enable("karaoke.Parse");
+            recording.enable("karaoke.ParsePhase");
+            recording.start();
+            for(Engine engine: Engine.values()) {
+                try {
+                    new MusicParser(engine).parse(TUNE);
+                    new MusicParser(engine).parse("X:1\nT:Broken\nK:C\nC D E F | (\n");
+                }
+                catch(UnableToParseException e) {
+                    // the second parse is expected to fail
+                }
+            }
+            recording.stop();
+            recording.dump(dump.toPath());
+        }
+
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+        final Set<String> parses = new HashSet<>();
+        final Set<String> phases = new HashSet<>();
+        for(RecordedEvent event: events) {
+            final String type = event.getEventType().getName();
+            if(type.equals("karaoke.Parse")) {
+                parses.add(event.getString("engine") + " " + event.getBoolean("succeeded"));
+            }
+            else if(type.equals("karaoke.ParsePhase")) {
+                phases.add(event.getString("engine") + " " + event.getString("phase") + " " + event.getString("voice"));
+            }
+        }
+        for(Engine engine: Engine.values()) {
+            assertTrue("expected a successful parse, "+engine, parses.contains(engine + " true"));
+            assertTrue("expected a failed parse, "+engine, parses.contains(engine + " false"));
+            assertTrue(phases.contains(engine + " LAYOUT "));
+            for(String voice: new String[] {"1", "2"}) {
+                for(Phase phase: new Phase[] {Phase.LYRICS, Phase.BUILD, Phase.JOIN}) {
+                    assertTrue("expected "+phase+" of voice "+voice+", "+engine,
+                            phases.contains(engine + " " + phase + " " + voice));
+                }
+            }
+        }
+    }
+}
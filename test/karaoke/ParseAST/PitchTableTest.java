@@ -0,0 +1,108 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Concat;
+import karaoke.Music;
+import karaoke.Note;
+import karaoke.Sequence;
+import karaoke.Voice;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.sound.Pitch;
+
+public class PitchTableTest {
+
+    // Testing strategy
+    //
+    // Pitch.transpose hands out shared instances within the interned range and new ones outside it.
+    // Notes are built from the key and measure accidental tables, and must have the same pitches
+    // the parsers always gave them.
+    // Partitions:
+    //      transpose: result in the interned range, below it, above it
+    //      key signature: applies (uppercase letter without marks), doesn't (lowercase letter, octave marks)
+    //      measure accidental: none, earlier in the measure for the same letter and marks, for other marks,
+    //                          in an earlier measure, natural, more marks than the measure table holds
+    //      engine: GRAMMAR, DESCENT
+
+    private static final String HEADER = "X:1\nT:Pitches\nL:1/4\n";
+
+    /** Parse a one-voice tune with both engines and return the semitones above middle C of its notes */
+    private static List<Integer> semitones(String key, String music) throws UnableToParseException {
+        final String tune = HEADER + "K:" + key + "\n" + music + "\n";
+        List<Integer> expected = null;
+        for(Engine engine: Engine.values()) {
+            final List<Integer> pitches = new ArrayList<>();
+            for(Voice voice: new MusicParser(engine).parse(tune).voices().values()) {
+                collect(voice.music(), pitches);
+            }
+            if(expected != null) {
+                assertEquals("expected same pitches from both engines", expected, pitches);
+            }
+            expected = pitches;
+        }
+        return expected;
+    }
+
+    private static void collect(Music music, List<Integer> pitches) {
+        if(music instanceof Concat) {
+            collect(((Concat) music).left(), pitches);
+            collect(((Concat) music).right(), pitches);
+        }
+        else if(music instanceof Sequence) {
+            for(Music part: ((Sequence) music).parts()) {
+                collect(part, pitches);
+            }
+        }
+        else if(music instanceof Note) {
+            pitches.add(((Note) music).pitch().difference(Pitch.MIDDLE_C));
+        }
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers transpose in the interned range, below it, above it
+    @Test
+    public void testTransposeSharesPitches() {
+        assertSame(Pitch.MIDDLE_C.transpose(7), new Pitch('G').transpose(0));
+        assertSame(Pitch.MIDDLE_C.transpose(-30), new Pitch('C').transpose(12).transpose(-42));
+        assertEquals(Pitch.MIDDLE_C.transpose(-200), Pitch.MIDDLE_C.transpose(-200));
+        assertEquals(Pitch.MIDDLE_C.transpose(300), Pitch.MIDDLE_C.transpose(300));
+        assertEquals(300, Pitch.MIDDLE_C.transpose(300).difference(Pitch.MIDDLE_C));
+    }
+
+    // covers key signature applies and doesn't, both engines
+    @Test
+    public void testKeySignature() throws UnableToParseException {
+        assertEquals(Arrays.asList(6, 17, -7, 17, 0), semitones("G", "F f F, F' C"));
+        assertEquals(Arrays.asList(10, 23, 23), semitones("F", "B B' b"));
+    }
+
+    // covers measure accidental none, same letter and marks, other marks, earlier measure, natural
+    @Test
+    public void testMeasureAccidentals() throws UnableToParseException {
+        assertEquals(Arrays.asList(13, 13, 13, 0, 5, 5, 6),
+                semitones("G", "^c c C' c, =F F | F"));
+        assertEquals(Arrays.asList(1, 0, 1, 0),
+                semitones("C", "^C c, C | C"));
+        assertEquals(Arrays.asList(-1, -1, -2, 0),
+                semitones("C", "_c, c, __c, | c,"));
+    }
+
+    // covers more marks than the measure table holds
+    @Test
+    public void testManyOctaveMarks() throws UnableToParseException {
+        assertEquals(Arrays.asList(61, 61, 60, -59, -59, -60),
+                semitones("C", "^c'''' c'''' | c'''' ^C,,,,, C,,,,, | C,,,,,"));
+    }
+}
@@ -0,0 +1,226 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.Music;
+import karaoke.MusicTraversal;
+import karaoke.Note;
+import karaoke.Sequence;
+import karaoke.Transform;
+import karaoke.Voice;
+import karaoke.parser.MusicParser;
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+import karaoke.sound.RecordingPlayer;
+import karaoke.sound.SequencePlayer;
+
+public class RangePlaybackTest {
+
+    // Testing strategy
+    //
+    // Playing a window [fromBeat, toBeat) must schedule exactly the notes playing the whole piece
+    // schedules sounding in the window, clipped to it, and the events it schedules starting in the
+    // window, moved to start on atBeat, then end every voice where the window ends.
+    // Partitions:
+    //      window: the whole piece, empty, inside one note, across a repeat, a tuplet and a chord,
+    //              starting and ending mid-note, past the end
+    //      atBeat: fromBeat, earlier, later
+    //      music: parsed voices, a view, a long sequence
+    //      held note: none, a long note, a chord's note ringing past the chord
+    //      loop: 0 times, several times, over a held note
+    //      END: after a window, once after the last time looped
+    // Work: playing a window of a long sequence plays only the pieces near the window
+    // Invalid: window ending before it starts, negative loop count
+
+    /** A piece of music that counts the times it is played */
+    private static class CountingNote implements Music {
+        private final Note note = new Note(1, new Pitch('C'), Instrument.PIANO, 0);
+        private final int[] plays;
+
+        private CountingNote(int[] plays) {
+            this.plays = plays;
+        }
+
+        @Override public double duration() {
+            return note.duration();
+        }
+
+        @Override public void play(SequencePlayer player, double beat, Voice voice) {
+            plays[0]++;
+            note.play(player, beat, voice);
+        }
+    }
+
+    private static double moved(double beat, double fromBeat, double atBeat) {
+        return atBeat == fromBeat ? beat : atBeat + (beat - fromBeat);
+    }
+
+    /**
+     * Assert that playing a window of composition on atBeat schedules what playing all of it does in
+     * the window, moved and clipped to it, and ends every voice where the window ends
+     */
+    private static void assertWindow(Composition composition, double fromBeat, double toBeat, double atBeat) {
+        final RecordingPlayer whole = new RecordingPlayer();
+        for(Voice voice: composition.voices().values()) {
+            voice.music().play(whole, 0, voice);
+        }
+        final List<String> expectedNotes = new ArrayList<>();
+        final List<Double> expectedEvents = new ArrayList<>();
+        final RecordingPlayer window = new RecordingPlayer();
+        composition.playBetween(window, fromBeat, toBeat, atBeat);
+        for(String note: whole.notes()) {
+            final String[] parts = note.split("[@+]");
+            final double start = Double.parseDouble(parts[1]);
+            final double beats = Double.parseDouble(parts[2]);
+            if(fromBeat <= start && start < toBeat) {
+                expectedNotes.add(parts[0] + "@" + moved(start, fromBeat, atBeat) + "+"
+                        + (start + beats > toBeat ? toBeat - start : beats));
+            }
+            else if(start < fromBeat && fromBeat < toBeat && start + beats > fromBeat) {
+                expectedNotes.add(parts[0] + "@" + moved(fromBeat, fromBeat, atBeat) + "+"
+                        + (Math.min(start + beats, toBeat) - fromBeat));
+            }
+        }
+        for(double event: whole.eventBeats()) {
+            if(fromBeat <= event && event < toBeat) {
+                expectedEvents.add(moved(event, fromBeat, atBeat));
+            }
+        }
+        for(int voice = 0; voice < composition.voices().size(); voice++) {
+            expectedEvents.add(atBeat + (toBeat - fromBeat));
+        }
+        assertEquals("notes of " + fromBeat + " to " + toBeat, RecordingPlayer.sorted(expectedNotes), window.sortedNotes());
+        final List<Double> events = new ArrayList<>(window.eventBeats());
+        Collections.sort(expectedEvents);
+        Collections.sort(events);
+        assertEquals("events of " + fromBeat + " to " + toBeat, expectedEvents, events);
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers every window, every atBeat, parsed voices and a view
+    @Test
+    public void testWindows() throws UnableToParseException {
+        final Composition composition = new MusicParser().parse(Fixtures.TUNE);
+        final double end = composition.duration();
+        final double[][] windows = {{0, end}, {3, 3}, {0.25, 0.75}, {2, 9}, {8.5, 13.5}, {10, 14}, {12, end + 4}};
+        for(double[] window: windows) {
+            assertWindow(composition, window[0], window[1], window[0]);
+            assertWindow(composition, window[0], window[1], 0);
+            assertWindow(composition, window[0], window[1], window[0] + 7);
+        }
+        final RecordingPlayer whole = new RecordingPlayer();
+        composition.play(whole);
+        final RecordingPlayer window = new RecordingPlayer();
+        composition.playBetween(window, 0, end, 0);
+        assertEquals("expected the whole piece played as play plays it", whole.notes(), window.notes());
+
+        final Composition view = composition.transformed(Transform.IDENTITY.scaledBy(1.5).transposedBy(-2));
+        for(double[] frame: windows) {
+            assertWindow(view, frame[0], frame[1] * 1.5, 3);
+        }
+    }
+
+    // covers a long sequence, work done
+    @Test
+    public void testSkipsMusicOutsideWindow() {
+        final int[] plays = {0};
+        final List<Music> notes = new ArrayList<>();
+        for(int i = 0; i < 10000; i++) {
+            notes.add(new CountingNote(plays));
+        }
+        final Music music = new Sequence(notes);
+        final RecordingPlayer player = new RecordingPlayer();
+        MusicTraversal.playBetween(music, player, 0, new Voice(music, Collections.emptyList(), ""), 5000, 5008);
+        assertTrue("expected only notes near the window played, played " + plays[0], plays[0] <= 10);
+        final List<Music> realNotes = new ArrayList<>();
+        for(int i = 0; i < 10000; i++) {
+            realNotes.add(new Note(1, new Pitch('C'), Instrument.PIANO, 0));
+        }
+        final Voice voice = new Voice(new Sequence(realNotes), Collections.emptyList(), "");
+        final RecordingPlayer window = new RecordingPlayer();
+        voice.playBetween(window, 5000, 5008, 0);
+        assertEquals(8, window.notes().size());
+        assertEquals("PIANO C@0.0+1.0", window.notes().get(0));
+    }
+
+    // covers looping over a held note, a chord's note ringing past the chord, END once after the last time
+    @Test
+    public void testLoopHeldNote() throws UnableToParseException {
+        final Composition composition = new MusicParser().parse(Fixtures.TUNE);
+        final RecordingPlayer looped = new RecordingPlayer();
+        // V:2 holds G,8 from beat 13 to 21
+        composition.loop(looped, 14, 18, 3);
+        for(double pass: new double[] {0, 4, 8}) {
+            assertTrue("expected the held note to sound from the start of pass " + pass + " in " + looped.notes(),
+                    looped.notes().contains("PIANO G,@" + pass + "+4.0"));
+        }
+        final List<String> lines = looped.lines(composition);
+        int ends = 0;
+        for(String line: lines) {
+            if(line.endsWith(": END")) {
+                ends++;
+            }
+        }
+        assertEquals("expected every voice ended once", 2, ends);
+        assertTrue("expected the voices ended last", lines.get(lines.size() - 1).endsWith(": END")
+                && lines.get(lines.size() - 2).endsWith(": END"));
+        final List<Double> ended = looped.eventBeats();
+        assertEquals(12.0, ended.get(ended.size() - 1), 0);
+
+        // the chord lasts as long as its E, while its C rings on under D and F
+        final Composition ringing = new MusicParser().parse("X:1\nT:Ringing\nL:1/4\nK:C\n[EC4] D F z |\n");
+        assertWindow(ringing, 2, 3, 0);
+        final RecordingPlayer window = new RecordingPlayer();
+        ringing.playBetween(window, 2, 3, 0);
+        assertTrue("expected the ringing note in " + window.notes(), window.notes().contains("PIANO C@0.0+1.0"));
+    }
+
+    // covers looping 0 and several times, invalid windows and loop counts
+    @Test
+    public void testLoop() throws UnableToParseException {
+        final Composition composition = new MusicParser().parse(Fixtures.TUNE);
+        final RecordingPlayer none = new RecordingPlayer();
+        composition.loop(none, 0, 4, 0);
+        assertEquals(Collections.emptyList(), none.notes());
+        final RecordingPlayer looped = new RecordingPlayer();
+        composition.loop(looped, 12, 16, 3);
+        final RecordingPlayer once = new RecordingPlayer();
+        composition.playBetween(once, 12, 16, 0);
+        final int voices = composition.voices().size();
+        assertEquals(3 * once.notes().size(), looped.notes().size());
+        assertEquals("expected the voices ended once, after the last time",
+                3 * (once.eventBeats().size() - voices) + voices, looped.eventBeats().size());
+        for(String note: looped.notes()) {
+            final String[] parts = note.split("[@+]");
+            final double start = Double.parseDouble(parts[1]);
+            final double end = start + Double.parseDouble(parts[2]);
+            assertTrue("expected " + note + " within its pass", Math.floor(start / 4) == Math.ceil(end / 4) - 1);
+        }
+        try {
+            composition.playBetween(new RecordingPlayer(), 4, 2, 0);
+            fail("expected a window ending before it starts to be rejected");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            composition.loop(new RecordingPlayer(), 0, 4, -1);
+            fail("expected a negative loop count to be rejected");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
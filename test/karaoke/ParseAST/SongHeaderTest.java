@@ -0,0 +1,106 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.Composition.Key;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.parser.SongHeader;
+import karaoke.parser.TuneLayout;
+
+public class SongHeaderTest {
+
+    // Testing strategy
+    //
+    // Partitions for SongHeader.scan:
+    //      header: only required fields, every field, missing K:, malformed
+    //      voices: unnamed, named, unnamed then named, interleaved, named in comments
+    //      music: valid, doesn't parse
+    //      line endings: LF, CRLF
+    // Every sample file is also compared with a full parse.
+    
+    private static SongHeader scan(String text) throws UnableToParseException, IOException {
+        return SongHeader.scan(new StringReader(text));
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers every sample: header fields and voices agree with a full parse
+    @Test
+    public void testSamplesAgreeWithParse() throws UnableToParseException, IOException {
+        for(File file: new File("sample-abc").listFiles()) {
+            if(!file.getName().endsWith(".abc")) {
+                continue;
+            }
+            final String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            final SongHeader header = SongHeader.scanFile(file);
+            final Composition parsed = new MusicParser(Engine.DESCENT).parse(text);
+            final String message = file.getName();
+            assertEquals(message, parsed.title(), header.title());
+            assertEquals(message, parsed.composer(), header.composer());
+            assertEquals(message, parsed.key(), header.key());
+            assertEquals(message, parsed.meter(), header.meter(), 0);
+            assertEquals(message, parsed.tempo(), header.tempo(), 0);
+            assertEquals(message, parsed.length(), header.length(), 0);
+            assertEquals(message, parsed.trackNumber(), header.trackNumber());
+            assertEquals(message, TuneLayout.split(text).voiceNames(), header.voiceNames());
+            assertEquals(message, parsed.voices().keySet(), new HashSet<>(header.voiceNames()));
+        }
+    }
+    
+    // covers only required fields, unnamed voice, LF
+    @Test
+    public void testRequiredFieldsOnly() throws UnableToParseException, IOException {
+        final SongHeader header = scan("X:7\nT:Plain\nK:C\nC D E F |\n");
+        assertEquals("Plain", header.title());
+        assertEquals("Unknown", header.composer());
+        assertEquals(7, header.trackNumber());
+        assertEquals(Arrays.asList(""), header.voiceNames());
+        assertEquals("Title: Plain, Composer: Unknown", header.songInfo());
+    }
+    
+    // covers every field, unnamed then named, interleaved, names in comments, music doesn't parse, CRLF
+    @Test
+    public void testEveryFieldAndVoices() throws UnableToParseException, IOException {
+        final String text = "X:2\r\nT:Round\r\nC:Someone\r\nM:3/4\r\nL:1/8\r\nQ:1/8=120\r\nK:Am\r\n"
+                + "C D H |\r\n"
+                + "V:  lead % V:comment\r\nH H H |\r\nw: la la la\r\n"
+                + "% V:ignored\r\nV:bass\r\nC, |\r\n"
+                + "V:lead\r\nD |\r\n";
+        final SongHeader header = scan(text);
+        assertEquals("Someone", header.composer());
+        assertEquals(Key.Am, header.key());
+        assertEquals(0.75, header.meter(), 0);
+        assertEquals(1.0/8, header.length(), 0);
+        assertEquals(120, header.tempo(), 0);
+        assertEquals(Arrays.asList("", "lead ", "bass", "lead"), header.voiceNames());
+        assertEquals(TuneLayout.split(text).voiceNames(), header.voiceNames());
+    }
+    
+    // covers missing K:
+    @Test(expected=UnableToParseException.class)
+    public void testMissingKey() throws UnableToParseException, IOException {
+        scan("X:1\nT:No key\nC D E F |\n");
+    }
+    
+    // covers malformed header
+    @Test(expected=UnableToParseException.class)
+    public void testMalformedHeader() throws UnableToParseException, IOException {
+        scan("X:1\nT:Bad\nZ:nope\nK:C\nC D E F |\n");
+    }
+}
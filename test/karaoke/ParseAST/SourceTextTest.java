@@ -0,0 +1,97 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.MusicParser;
+import karaoke.parser.MusicParser.Engine;
+import karaoke.parser.SourceText;
+
+public class SourceTextTest {
+
+    // Testing strategy
+    //
+    // SourceText.read:
+    //      line endings: \n, \r\n, \r, mixed
+    //      last line: ends in a line ending, doesn't, file is empty
+    //      characters: ASCII, multi-byte UTF-8, invalid UTF-8
+    //      file size: below the memory mapping threshold, above it
+    // MusicParser.parseFile: same Composition as parsing the text as a String, GRAMMAR and DESCENT engines
+
+    private static final String TUNE = "X:1\nT:Café 🎵\nC:Someone\nL:1/4\nK:D\n"
+            + "A B c d | e f g a |\nw: one two three four five six sev-en eight\n";
+
+    /** Write bytes to a new temporary file that is deleted when the test VM exits */
+    private static File write(byte[] contents) throws IOException {
+        final File file = File.createTempFile("source-text", ".abc");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents);
+        return file;
+    }
+
+    private static String read(String contents) throws IOException {
+        return SourceText.read(write(contents.getBytes(StandardCharsets.UTF_8))).toString();
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers \n, ends in a line ending, ASCII and multi-byte UTF-8, below the threshold
+    @Test
+    public void testReadUnchanged() throws IOException {
+        assertEquals(TUNE, read(TUNE));
+    }
+
+    // covers \r\n, \r, mixed, doesn't end in a line ending, empty file
+    @Test
+    public void testLineEndings() throws IOException {
+        assertEquals(TUNE, read(TUNE.replace("\n", "\r\n")));
+        assertEquals(TUNE, read(TUNE.replace("\n", "\r")));
+        assertEquals("a\nb\nc\n\nd\n", read("a\r\nb\rc\n\r\nd"));
+        assertEquals("\n", read(""));
+    }
+
+    // covers invalid UTF-8
+    @Test
+    public void testInvalidUtf8() throws IOException {
+        final byte[] contents = { 'a', (byte) 0xff, 'b', '\n' };
+        assertEquals("a�b\n", SourceText.read(write(contents)).toString());
+    }
+
+    // covers above the threshold, mixed line endings
+    @Test
+    public void testLargeFile() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for(int line = 0; text.length() < 3 << 20; line++) {
+            text.append("% comment line é ").append(line).append(line % 2 == 0 ? "\r\n" : "\n");
+            expected.append("% comment line é ").append(line).append('\n');
+        }
+        final CharSequence read = SourceText.read(write(text.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(expected.length(), read.length());
+        assertEquals(expected.toString(), read.toString());
+    }
+
+    // covers parseFile for both engines, \r\n, doesn't end in a line ending
+    @Test
+    public void testParseFile() throws IOException, UnableToParseException {
+        final String crlf = TUNE.replace("\n", "\r\n");
+        final File file = write(crlf.substring(0, crlf.length()-2).getBytes(StandardCharsets.UTF_8));
+        for(Engine engine: Engine.values()) {
+            final MusicParser parser = new MusicParser(engine);
+            final Composition parsed = parser.parseFile(file);
+            assertEquals("expected same composition as the text, "+engine, parser.parse(TUNE), parsed);
+            assertEquals("Café 🎵", parsed.title());
+        }
+    }
+}
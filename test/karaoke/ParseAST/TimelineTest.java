@@ -0,0 +1,159 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.Composition.Key;
+import karaoke.Concat;
+import karaoke.Music;
+import karaoke.Note;
+import karaoke.Repeat;
+import karaoke.Timeline;
+import karaoke.Timeline.Track;
+import karaoke.Tuplet;
+import karaoke.Voice;
+import karaoke.parser.MusicParser;
+import karaoke.sound.Instrument;
+import karaoke.sound.Pitch;
+import karaoke.sound.RecordingPlayer;
+
+public class TimelineTest {
+
+    // Testing strategy
+    //
+    // A timeline must hold the notes playing the composition schedules, rounded to ticks the way
+    // MidiSequencePlayer rounds them, and play them with the same lyric lines.
+    // Partitions:
+    //      music: plain notes, repeats with and without endings, tuplets, chords, rests, several voices
+    //      durations: exact in ticks, thirds that round
+    //      player: TickSequencePlayer with the same ticks per beat, with other ticks per beat, SequencePlayer
+    //      track: sorted by start tick, notes starting together, lyric on the first note of a chord only
+    //      voices: named, unknown name
+    //      repeats: nested, starting off a whole tick, holding triplets, measures repeated many times
+    //      lyric callbacks: one per syllable however often it is sung
+
+    private static final int TICKS_PER_BEAT = 64;
+
+    private static Note note(int semitones, double duration, int lyricIndex) {
+        return new Note(duration, Pitch.MIDDLE_C.transpose(semitones), Instrument.PIANO, lyricIndex);
+    }
+
+    /** A composition of one voice named "1" playing music, with a syllable for each of the lyric indices 0 to 3 */
+    private static Composition compose(Music music) {
+        final Composition composition = new Composition("Repeats", "", 0.25, 100, 1, 1, Key.C);
+        final Map<String, Voice> voices = new HashMap<>();
+        voices.put("1", new Voice(music, Arrays.asList("a", "b", "c", "d"), "1"));
+        composition.setVoices(voices);
+        return composition;
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers repeats, tuplets, chords, rests, several voices, thirds that round, TickSequencePlayer with the same ticks
+    @Test
+    public void testSchedulesWhatPlayingSchedules() throws UnableToParseException {
+        final Composition composition = new MusicParser().parse(Fixtures.TUNE);
+        final RecordingPlayer played = RecordingPlayer.inTicks(TICKS_PER_BEAT);
+        composition.play(played);
+        final Composition recompiled = new MusicParser().parse(Fixtures.TUNE);
+        final Timeline timeline = Timeline.compile(recompiled, TICKS_PER_BEAT);
+        final RecordingPlayer compiled = RecordingPlayer.inTicks(TICKS_PER_BEAT);
+        timeline.play(compiled, recompiled);
+        assertTrue("expected the notes scheduled in ticks", compiled.usedTicks());
+        assertEquals(played.sortedTickNotes(), compiled.sortedTickNotes());
+        final List<String> lines = played.lines(composition);
+        assertTrue("expected lyric lines", lines.size() > 10);
+        assertEquals(lines, compiled.lines(recompiled));
+    }
+
+    // covers tracks sorted by start tick, notes starting together, lyric on the first note of a chord only
+    @Test
+    public void testTracks() throws UnableToParseException {
+        final Composition composition = new MusicParser().parse(Fixtures.TUNE);
+        final Timeline timeline = Timeline.compile(composition, TICKS_PER_BEAT);
+        assertEquals(composition.voiceNames(), timeline.voices());
+        final Track track = timeline.track("1");
+        // 3 notes twice, 3 + 1 notes, 3 + 2 notes of chords, 2 notes twice and 1 note of each ending
+        assertEquals(6 + 4 + 5 + 6, track.size());
+        for(int row = 1; row < track.size(); row++) {
+            assertTrue(track.startTick(row-1) <= track.startTick(row));
+        }
+        assertEquals(60, track.midiNote(0));
+        assertEquals(Instrument.PIANO, track.instrument(0));
+        assertEquals(TICKS_PER_BEAT, track.durationTicks(0));
+        final int chord = 10;
+        final int chordTick = track.startTick(chord);
+        assertEquals(chordTick, track.startTick(chord+1));
+        assertEquals(chordTick, track.startTick(chord+2));
+        assertNotEquals(Timeline.NO_LYRIC, track.lyricIndex(chord));
+        assertEquals(Timeline.NO_LYRIC, track.lyricIndex(chord+1));
+        assertEquals(Timeline.NO_LYRIC, track.lyricIndex(chord+2));
+        assertEquals((int) (composition.voices().get("1").duration() * TICKS_PER_BEAT), track.endTick());
+        final Track low = timeline.track("2");
+        assertEquals(1 + 3 + 1 + 1, low.size());
+        assertEquals(2 * TICKS_PER_BEAT / 3, low.durationTicks(1), 1);
+    }
+
+    // covers TickSequencePlayer with other ticks per beat, SequencePlayer
+    @Test
+    public void testPlaysInBeats() throws UnableToParseException {
+        final Composition composition = new MusicParser().parse(Fixtures.TUNE);
+        final Timeline timeline = Timeline.compile(composition, TICKS_PER_BEAT);
+        final RecordingPlayer other = RecordingPlayer.inTicks(TICKS_PER_BEAT / 2);
+        timeline.play(other, composition);
+        assertFalse("expected the notes scheduled in beats", other.usedTicks());
+        final RecordingPlayer played = RecordingPlayer.inTicks(TICKS_PER_BEAT / 2);
+        composition.play(played);
+        assertEquals(played.tickNotes().size(), other.tickNotes().size());
+        final RecordingPlayer beats = new RecordingPlayer();
+        timeline.play(beats, composition);
+        assertEquals(played.tickNotes().size(), beats.noteStarts().size());
+        for(double start: beats.noteStarts()) {
+            assertEquals("expected starts on whole ticks", Math.rint(start * TICKS_PER_BEAT), start * TICKS_PER_BEAT, 0);
+        }
+    }
+
+    // covers nested repeats, repeats starting off a whole tick, repeats holding triplets,
+    // measures repeated many times, one lyric callback per syllable
+    @Test
+    public void testRepeats() {
+        final double third = 1.0/3;
+        final Music measure = new Concat(new Concat(note(0, 0.25, 0), note(2, 0.5, 1)), note(4, 0.25, 2));
+        final Music triplet = new Tuplet(3, Arrays.asList(note(5, third, 3), note(7, third, 3), note(9, third, 3)));
+        Music nested = measure;
+        for(int depth = 0; depth < 8; depth++) {
+            nested = new Repeat(nested, new ArrayList<>());
+        }
+        final Music offTick = new Repeat(new Concat(measure, note(11, 0.1, 0)), Arrays.asList(measure, triplet));
+        final Music music = new Concat(new Concat(new Concat(nested, triplet), offTick),
+                new Repeat(new Concat(triplet, measure), new ArrayList<>()));
+        final RecordingPlayer played = RecordingPlayer.inTicks(TICKS_PER_BEAT);
+        final Composition composition = compose(music);
+        composition.play(played);
+        final Composition recompiled = compose(music);
+        final RecordingPlayer compiled = RecordingPlayer.inTicks(TICKS_PER_BEAT);
+        Timeline.compile(recompiled, TICKS_PER_BEAT).play(compiled, recompiled);
+        assertEquals(256 * 3 + 3 + 2 * 4 + 3 + 3 + 2 * 6, compiled.tickNotes().size());
+        assertEquals(played.sortedTickNotes(), compiled.sortedTickNotes());
+        assertEquals(played.lines(composition), compiled.lines(recompiled));
+        assertEquals("expected a callback per syllable and one for the end", 4 + 1, compiled.distinctCallbacks());
+    }
+
+    // covers an unknown voice
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownVoice() throws UnableToParseException {
+        Timeline.compile(new MusicParser().parse(Fixtures.TUNE), TICKS_PER_BEAT).track("3");
+    }
+}
@@ -0,0 +1,113 @@
+package karaoke.ParseAST;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.MusicParser;
+import karaoke.parser.TuneSplitter;
+
+public class TuneCollectionTest {
+
+    // Testing strategy
+    //
+    // Partitions for TuneSplitter and MusicParser.parseCollection/streamFile:
+    //      number of tunes: 0, 1, >1
+    //      text before the first X: field: none, comments
+    //      line endings: \n, \r\n
+    //      tunes: all valid, some invalid
+    //      iteration: hasNext called repeatedly, next past the end
+    
+    private static String tune(int number, String title, String music) {
+        return "X:"+number+"\n" +
+                "T:"+title+"\n" +
+                "K:C\n" +
+                music+"\n";
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers 0 tunes, text before the first X: field
+    @Test
+    public void testNoTunes() {
+        final TuneSplitter tunes = new TuneSplitter(new StringReader("% a songbook with no tunes\n\n"));
+        assertFalse("expected no tunes", tunes.hasNext());
+        try {
+            tunes.next();
+            fail("expected no next tune");
+        }
+        catch(NoSuchElementException e) {
+            // expected
+        }
+    }
+    
+    // covers >1 tunes, comments before the first tune, \r\n line endings, hasNext called repeatedly
+    @Test
+    public void testSplitTunes() {
+        final String first = tune(1, "One", "C D E F |");
+        final String second = tune(2, "Two", "G A B c |");
+        final TuneSplitter tunes = new TuneSplitter(new StringReader("% songbook\r\n" +
+                first.replace("\n", "\r\n") + "\r\n" + second));
+        assertTrue("expected a tune", tunes.hasNext());
+        assertTrue("expected a tune", tunes.hasNext());
+        assertEquals("expected first tune", first+"\n", tunes.next());
+        assertEquals("expected second tune", second, tunes.next());
+        assertFalse("expected no more tunes", tunes.hasNext());
+    }
+    
+    // covers 1 tune, parsing each tune like a single tune
+    @Test
+    public void testParseCollectionSingleTune() throws UnableToParseException {
+        final String text = tune(1, "One", "C D E F | G A B c |");
+        final Iterator<Composition> compositions = new MusicParser().parseCollection(new StringReader(text));
+        assertEquals("expected parsed tune", new MusicParser().parse(text), compositions.next());
+        assertFalse("expected no more tunes", compositions.hasNext());
+    }
+    
+    // covers >1 tunes, some invalid, tunes parsed only as the iterator advances
+    @Test
+    public void testParseCollectionLazily() {
+        final String text = tune(1, "One", "C D E F |") + tune(2, "Broken", "C D H F |") + tune(3, "Three", "z4 |");
+        final Iterator<Composition> compositions = new MusicParser().parseCollection(new StringReader(text));
+        assertEquals("expected first title", "One", compositions.next().title());
+        try {
+            compositions.next();
+            fail("expected second tune not to parse");
+        }
+        catch(IllegalArgumentException e) {
+            assertTrue("expected parse failure as cause", e.getCause() instanceof UnableToParseException);
+        }
+        assertEquals("expected third title", "Three", compositions.next().title());
+        assertFalse("expected no more tunes", compositions.hasNext());
+    }
+    
+    // covers streaming a collection file with >1 tunes
+    @Test
+    public void testStreamFile() throws IOException {
+        final File file = File.createTempFile("collection", ".abc");
+        file.deleteOnExit();
+        Files.write(file.toPath(), (tune(1, "One", "C D E F |") + tune(2, "Two", "G A B c |")
+                + tune(3, "Three", "c B A G |")).getBytes(StandardCharsets.UTF_8));
+        try(Stream<Composition> compositions = new MusicParser().streamFile(file)) {
+            final List<String> titles = compositions.map(Composition::title).collect(Collectors.toList());
+            assertEquals("expected titles in order", Arrays.asList("One", "Two", "Three"), titles);
+        }
+    }
+}
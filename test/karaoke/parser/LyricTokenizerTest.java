@@ -0,0 +1,144 @@
+package karaoke.parser;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import karaoke.Composition;
+import karaoke.parser.MusicParser.Engine;
+
+public class LyricTokenizerTest {
+
+    // Testing strategy
+    //
+    // Both engines tokenize lyrics with LyricTokenizer; MusicParser.referenceLyrics reads them from the
+    // parse tree of the Lyric production of Abc.g, syllable by syllable. For tunes that differ only in
+    // their w: lines, LyricTokenizer and the reference must both fail or read the same syllables, and
+    // both engines must both fail or build equal voices.
+    // Partitions:
+    //      separators: hyphen, several hyphens, hyphen after a space, spaces, |, *
+    //      syllables: plain, joined with ~, joined with \-, held with _
+    //      lyric lines: 1, >1 (NEWLINE markers)
+    //      lyrics: valid, trailing separator, invalid character
+    // plus generated lyric lines made of random pieces of all of the above
+    
+    private static final String TUNE = "X:1\nT:Lyrics\nL:1/4\nK:C\n";
+    private static final String MUSIC = "C D E F | G A B c | c B A G | F E D C |\n";
+    private static final String[] PIECES = {
+        "la", "Twin", "kle,", "it's", "-", "--", " ", "  ", " -", "_", "*", "|", "~", "\\-", "\t"
+    };
+    
+    /** Assert that both engines fail, or build the same composition, for a tune with the given lyric lines */
+    private static void assertSameAsGrammar(String... lyricLines) {
+        final StringBuilder tune = new StringBuilder(TUNE);
+        for(String lyrics: lyricLines) {
+            tune.append(MUSIC).append("w:").append(lyrics).append('\n');
+        }
+        assertEquals("expected the reference's syllables for lyrics "+Arrays.toString(lyricLines),
+                referenceOrNull(tune), tokenizedOrNull(tune));
+        final Composition grammar = parseOrNull(Engine.GRAMMAR, tune.toString());
+        final Composition descent = parseOrNull(Engine.DESCENT, tune.toString());
+        assertEquals("expected same result for lyrics "+Arrays.toString(lyricLines), grammar, descent);
+    }
+
+    private static Map<String, List<String>> referenceOrNull(CharSequence tune) {
+        try {
+            return MusicParser.referenceLyrics(tune);
+        }
+        catch(UnableToParseException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, List<String>> tokenizedOrNull(CharSequence tune) {
+        try {
+            final TuneLayout layout = TuneLayout.split(tune);
+            final Map<String, List<String>> lyrics = new HashMap<>();
+            for(String voice: layout.voiceNames()) {
+                if(!layout.lyricLines(voice).isEmpty()) {
+                    lyrics.put(voice, LyricTokenizer.tokenize(layout.lyricText(voice)));
+                }
+            }
+            return lyrics;
+        }
+        catch(UnableToParseException | RuntimeException e) {
+            return null;
+        }
+    }
+    
+    private static Composition parseOrNull(Engine engine, String tune) {
+        try {
+            return new MusicParser(engine).parse(tune);
+        }
+        catch(UnableToParseException | RuntimeException e) {
+            return null;
+        }
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers plain syllables, hyphen, several hyphens, hyphen after a space, spaces, 1 line
+    @Test
+    public void testHyphensAndSpaces() {
+        assertSameAsGrammar("twin-kle twin--kle lit -tle  star");
+    }
+    
+    // covers |, *, _, joined with ~ and \-, 1 line
+    @Test
+    public void testMarkersAndJoins() {
+        assertSameAsGrammar("how I won~der | what you * are_ | up a\\-bove_ the | world so high");
+    }
+    
+    // covers >1 lines
+    @Test
+    public void testSeveralLines() {
+        assertSameAsGrammar("twin-kle twin-kle | lit-tle star", "how I | won-der", "what you | are");
+    }
+    
+    // covers trailing separator and invalid character
+    @Test
+    public void testInvalid() {
+        assertSameAsGrammar("twin-kle ");
+        assertSameAsGrammar("twin-kle |");
+        assertSameAsGrammar("twin-kle & star");
+        assertSameAsGrammar("~twin");
+    }
+    
+    // covers random lyric lines of every kind
+    @Test
+    public void testGeneratedLyrics() {
+        final Random random = new Random(6031);
+        for(int test = 0; test < 150; test++) {
+            final int lines = 1 + random.nextInt(2);
+            final String[] lyricLines = new String[lines];
+            for(int line = 0; line < lines; line++) {
+                final StringBuilder lyrics = new StringBuilder();
+                final int pieces = 1 + random.nextInt(10);
+                for(int piece = 0; piece < pieces; piece++) {
+                    lyrics.append(PIECES[random.nextInt(PIECES.length)]);
+                }
+                lyricLines[line] = lyrics.toString();
+            }
+            assertSameAsGrammar(lyricLines);
+        }
+    }
+    
+    // covers the result itself for one line, independently of the grammar
+    @Test
+    public void testSyllables() throws UnableToParseException {
+        final Composition composition = new MusicParser(Engine.DESCENT)
+                .parse(TUNE + "C D E F G A B c |\nw: Twin-kle lit--tle st~ar_ * end\n");
+        final List<String> expected = Arrays.asList("Twin", "kle ", "lit", "", "tle ", "st ar", "_ ", "* ", "end");
+        assertEquals(expected, composition.voices().get("").syllables());
+    }
+}
@@ -0,0 +1,58 @@
+package karaoke.server;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class HotReloadTest {
+
+    // Testing strategy
+    //
+    // Reloading the file of a StreamingServer, without playing it.
+    // Partitions:
+    //      file: unchanged, one voice edited, edited so that it doesn't parse, deleted
+    
+    private static final String TUNE = "X:1\nT:Reload\nK:C\n" +
+            "V:1\nC D E F |\nw: one two three four\n" +
+            "V:2\nG A B c |\n";
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // covers unchanged, one voice edited, doesn't parse, deleted
+    @Test
+    public void testReload() throws IOException, UnableToParseException {
+        final Path file = Files.createTempFile("reload", ".abc");
+        try {
+            Files.write(file, TUNE.getBytes(StandardCharsets.UTF_8));
+            final StreamingServer server = new StreamingServer(file.toString(), 0);
+            assertEquals("expected nothing parsed again", Collections.emptySet(), server.reload());
+            
+            Files.write(file, TUNE.replace("G A B c", "G2 B2").getBytes(StandardCharsets.UTF_8));
+            assertEquals("expected edited voice parsed again", Collections.singleton("2"), server.reload());
+            
+            Files.write(file, TUNE.replace("G A B c", "H").getBytes(StandardCharsets.UTF_8));
+            assertEquals("expected invalid edit ignored", Collections.emptySet(), server.reload());
+            
+            Files.write(file, TUNE.replace("C D E F", "C4").replace("G A B c", "G2 B2").getBytes(StandardCharsets.UTF_8));
+            assertEquals("expected only the newly edited voice parsed again", Collections.singleton("1"), server.reload());
+            
+            Files.delete(file);
+            assertEquals("expected missing file ignored", Collections.emptySet(), server.reload());
+            server.stop();
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
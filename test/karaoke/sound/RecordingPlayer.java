@@ -0,0 +1,214 @@
+package karaoke.sound;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import karaoke.Composition;
+
+/**
+ * A SequencePlayer for tests that records the notes and events scheduled on it instead of playing
+ * them, and runs the events in order when played.
+ *
+ * A player made by inTicks is a TickSequencePlayer too: it records every note and event in ticks as
+ * well, rounded the way MidiSequencePlayer rounds them, so what is scheduled in beats and what is
+ * scheduled in ticks can be compared.
+ */
+public class RecordingPlayer implements SequencePlayer {
+
+    /** A RecordingPlayer that timelines with the same ticks per beat schedule on in ticks */
+    private static class Ticks extends RecordingPlayer implements TickSequencePlayer {
+        private Ticks(int ticksPerBeat) {
+            super(ticksPerBeat);
+        }
+    }
+
+    private final int ticksPerBeat;
+    private final List<String> notes = new ArrayList<>();
+    private final List<Double> noteStarts = new ArrayList<>();
+    private final List<String> tickNotes = new ArrayList<>();
+    private final List<Double> eventBeats = new ArrayList<>();
+    private final List<Integer> eventTicks = new ArrayList<>();
+    private final List<Consumer<Double>> callbacks = new ArrayList<>();
+    private boolean usedTicks = false;
+
+    /**
+     * Make a player that records in beats only.
+     */
+    public RecordingPlayer() {
+        this(0);
+    }
+
+    private RecordingPlayer(int ticksPerBeat) {
+        this.ticksPerBeat = ticksPerBeat;
+    }
+
+    /**
+     * @param ticksPerBeat ticks per beat to record in, positive
+     * @return a player that records in beats and in ticks, and is a TickSequencePlayer
+     */
+    public static RecordingPlayer inTicks(int ticksPerBeat) {
+        return new Ticks(ticksPerBeat);
+    }
+
+    /**
+     * @return the number of ticks per beat this player records in, 0 if it records in beats only
+     */
+    public int ticksPerBeat() {
+        return ticksPerBeat;
+    }
+
+    @Override
+    public void addNote(Instrument instr, Pitch pitch, double startBeat, double numBeats) {
+        notes.add(instr + " " + pitch + "@" + startBeat + "+" + numBeats);
+        noteStarts.add(startBeat);
+        if(ticksPerBeat > 0) {
+            tickNotes.add(instr + " " + MidiSequencePlayer.getMidiNote(pitch) + "@" + (int) (startBeat * ticksPerBeat)
+                    + "-" + (int) ((startBeat + numBeats) * ticksPerBeat));
+        }
+        usedTicks = false;
+    }
+
+    /**
+     * Record a note scheduled in ticks, as TickSequencePlayer.addNoteAtTick schedules it.
+     */
+    public void addNoteAtTick(Instrument instr, int midiNote, int startTick, int endTick) {
+        tickNotes.add(instr + " " + midiNote + "@" + startTick + "-" + endTick);
+        noteStarts.add((double) startTick / ticksPerBeat);
+        usedTicks = true;
+    }
+
+    @Override
+    public void addEvent(double atBeat, Consumer<Double> callback) {
+        eventBeats.add(atBeat);
+        if(ticksPerBeat > 0) {
+            eventTicks.add((int) (atBeat * ticksPerBeat));
+        }
+        callbacks.add(callback);
+    }
+
+    /**
+     * Record an event scheduled in ticks, as TickSequencePlayer.addEventAtTick schedules it.
+     */
+    public void addEventAtTick(int atTick, Consumer<Double> callback) {
+        eventBeats.add((double) atTick / ticksPerBeat);
+        eventTicks.add(atTick);
+        callbacks.add(callback);
+    }
+
+    /**
+     * Run the events scheduled so far in the order of their beats, events on the same beat in the
+     * order they were scheduled.
+     */
+    @Override
+    public void play() {
+        final List<Integer> order = new ArrayList<>();
+        for(int i = 0; i < callbacks.size(); i++) {
+            order.add(i);
+        }
+        if(ticksPerBeat > 0) {
+            order.sort((a, b) -> Integer.compare(eventTicks.get(a), eventTicks.get(b)));
+        }
+        else {
+            order.sort((a, b) -> Double.compare(eventBeats.get(a), eventBeats.get(b)));
+        }
+        for(int i: order) {
+            callbacks.get(i).accept(eventBeats.get(i));
+        }
+    }
+
+    /**
+     * @return every note scheduled in beats, as "INSTRUMENT pitch@startBeat+numBeats", in the order scheduled
+     */
+    public List<String> notes() {
+        return Collections.unmodifiableList(notes);
+    }
+
+    /**
+     * @return every note scheduled in beats, as notes() describes them, sorted so that notes scheduled
+     *         in another order compare equal
+     */
+    public List<String> sortedNotes() {
+        return sorted(notes);
+    }
+
+    /**
+     * @return every note, as tickNotes() describes them, sorted so that notes scheduled in another order
+     *         compare equal
+     */
+    public List<String> sortedTickNotes() {
+        return sorted(tickNotes);
+    }
+
+    /**
+     * @param notes notes described as a RecordingPlayer describes them
+     * @return a sorted copy of notes
+     */
+    public static List<String> sorted(List<String> notes) {
+        final List<String> copy = new ArrayList<>(notes);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    /**
+     * @return the beat every note starts on, in the order scheduled
+     */
+    public List<Double> noteStarts() {
+        return Collections.unmodifiableList(noteStarts);
+    }
+
+    /**
+     * @return every note, as "INSTRUMENT midiNote@startTick-endTick", in the order scheduled; empty if
+     *         this player records in beats only
+     */
+    public List<String> tickNotes() {
+        return Collections.unmodifiableList(tickNotes);
+    }
+
+    /**
+     * @return the beat of every event, in the order scheduled
+     */
+    public List<Double> eventBeats() {
+        return Collections.unmodifiableList(eventBeats);
+    }
+
+    /**
+     * @return the tick of every event, in the order scheduled; empty if this player records in beats only
+     */
+    public List<Integer> eventTicks() {
+        return Collections.unmodifiableList(eventTicks);
+    }
+
+    /**
+     * @return the number of different callback objects scheduled
+     */
+    public int distinctCallbacks() {
+        final Set<Consumer<Double>> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(callbacks);
+        return distinct.size();
+    }
+
+    /**
+     * @return true iff the last note was scheduled in ticks
+     */
+    public boolean usedTicks() {
+        return usedTicks;
+    }
+
+    /**
+     * Listen to every voice of a composition, then run the events scheduled.
+     * @param composition the composition whose events were scheduled on this player
+     * @return the lines the events sent to the listeners, each prefixed by its voice, in order
+     */
+    public List<String> lines(Composition composition) {
+        final List<String> lines = new ArrayList<>();
+        for(String voice: composition.voiceNames()) {
+            composition.addVoiceListener(voice, line -> lines.add(voice + ": " + line));
+        }
+        play();
+        return lines;
+    }
+}